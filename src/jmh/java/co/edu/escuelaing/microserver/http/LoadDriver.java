@@ -0,0 +1,353 @@
+package co.edu.escuelaing.microserver.http;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import co.edu.escuelaing.microserver.ioc.SimpleIoCContainer;
+
+/**
+ * End-to-end loopback load driver. Starts the server in-process on a free
+ * port with the example controllers, then runs closed-loop clients against
+ * one path, each sending a request and waiting for the whole response
+ * before sending the next. Reports throughput and latency percentiles with
+ * and without keep-alive.
+ * <p>
+ * Options, in the form --name=value: --engine (blocking|nio),
+ * --acceptors, --connections, --duration (seconds), --warmup (seconds), --path and
+ * --keep-alive (on|off|both). Without keep-alive every request opens a new
+ * connection, so long runs can exhaust ephemeral ports on some systems.
+ */
+public final class LoadDriver {
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final int port;
+    private final String path;
+    private final int connections;
+
+    /**
+     * Creates a driver for a running server.
+     *
+     * @param port        the server port
+     * @param path        the request path
+     * @param connections the number of concurrent clients
+     */
+    private LoadDriver(int port, String path, int connections) {
+        this.port = port;
+        this.path = path;
+        this.connections = connections;
+    }
+
+    /**
+     * Runs the load test.
+     *
+     * @param args the options
+     * @throws Exception if the server cannot be started
+     */
+    public static void main(String[] args) throws Exception {
+        String engine = "blocking";
+        int acceptors = 1;
+        int connections = 16;
+        int duration = 10;
+        int warmup = 3;
+        String path = "/api";
+        String keepAlive = "both";
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Option must have the form --name=value: " + arg);
+            }
+            String value = arg.substring(separator + 1);
+            switch (arg.substring(2, separator)) {
+                case "engine":
+                    engine = value;
+                    break;
+                case "acceptors":
+                    acceptors = Integer.parseInt(value);
+                    break;
+                case "connections":
+                    connections = Integer.parseInt(value);
+                    break;
+                case "duration":
+                    duration = Integer.parseInt(value);
+                    break;
+                case "warmup":
+                    warmup = Integer.parseInt(value);
+                    break;
+                case "path":
+                    path = value;
+                    break;
+                case "keep-alive":
+                    keepAlive = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+
+        ServerConfig config = new ServerConfig(freePort());
+        config.setEngine("nio".equalsIgnoreCase(engine) ? ServerEngine.NIO : ServerEngine.BLOCKING);
+        config.setAcceptorThreads(acceptors);
+        config.setAccessLogEnabled(false);
+        config.setMaxConnections(Math.max(config.getMaxConnections(), connections * 2));
+        config.setMaxRequestsPerConnection(Integer.MAX_VALUE);
+        SimpleIoCContainer container = new SimpleIoCContainer();
+        container.scanAndRegisterControllers("co.edu.escuelaing.microserver.examples");
+        HttpServer server = new HttpServer(config, container);
+        Thread serverThread = new Thread(() -> {
+            try {
+                server.start();
+            } catch (IOException e) {
+                System.err.println("Server failed: " + e.getMessage());
+            }
+        }, "load-driver-server");
+        serverThread.setDaemon(true);
+        serverThread.start();
+        awaitServer(config.getPort());
+
+        LoadDriver driver = new LoadDriver(config.getPort(), path, connections);
+        System.out.printf("%s engine, %d connections, GET %s%n", config.getEngine(), connections, path);
+        if (!"off".equalsIgnoreCase(keepAlive)) {
+            driver.run(true, warmup, duration);
+        }
+        if (!"on".equalsIgnoreCase(keepAlive)) {
+            driver.run(false, warmup, duration);
+        }
+        server.stop();
+    }
+
+    /**
+     * Runs a warm-up phase and a measured phase and prints the results.
+     *
+     * @param keepAlive       whether clients reuse their connection
+     * @param warmupSeconds   how long to run before measuring
+     * @param durationSeconds how long to measure
+     * @throws InterruptedException if interrupted while waiting for the clients
+     */
+    private void run(boolean keepAlive, int warmupSeconds, int durationSeconds) throws InterruptedException {
+        measure(keepAlive, warmupSeconds);
+        Result result = measure(keepAlive, durationSeconds);
+
+        long[] latencies = result.latencies.quantiles(QUANTILES);
+        long requests = result.latencies.getCount();
+        System.out.printf("keep-alive %-3s  %,10d requests  %,12.0f req/s  p50 %,8d us  p90 %,8d us"
+                + "  p99 %,8d us  p99.9 %,8d us  errors %d%n",
+                keepAlive ? "on" : "off", requests, requests / (result.elapsedNanos / 1e9),
+                latencies[0] / 1000, latencies[1] / 1000, latencies[2] / 1000, latencies[3] / 1000,
+                result.errors.sum());
+    }
+
+    /**
+     * Runs the clients for a while.
+     *
+     * @param keepAlive whether clients reuse their connection
+     * @param seconds   how long to run
+     * @return the recorded latencies and errors
+     * @throws InterruptedException if interrupted while waiting for the clients
+     */
+    private Result measure(boolean keepAlive, int seconds) throws InterruptedException {
+        Result result = new Result();
+        long started = System.nanoTime();
+        long deadline = started + TimeUnit.SECONDS.toNanos(seconds);
+        byte[] request = ("GET " + path + " HTTP/1.1\r\nHost: localhost\r\n"
+                + (keepAlive ? "" : "Connection: close\r\n") + "\r\n").getBytes(StandardCharsets.ISO_8859_1);
+
+        List<Thread> clients = new ArrayList<>();
+        for (int i = 0; i < connections; i++) {
+            Thread client = new Thread(() -> runClient(request, keepAlive, deadline, result), "load-client-" + i);
+            client.start();
+            clients.add(client);
+        }
+        for (Thread client : clients) {
+            client.join();
+        }
+        result.elapsedNanos = System.nanoTime() - started;
+        return result;
+    }
+
+    /**
+     * Client loop: sends a request, reads the whole response and records
+     * the latency, until the deadline.
+     *
+     * @param request   the encoded request
+     * @param keepAlive whether the connection is reused
+     * @param deadline  when to stop, from {@link System#nanoTime()}
+     * @param result    where latencies and errors are recorded
+     */
+    private void runClient(byte[] request, boolean keepAlive, long deadline, Result result) {
+        Socket socket = null;
+        InputStream in = null;
+        OutputStream out = null;
+        while (System.nanoTime() < deadline) {
+            long sent = System.nanoTime();
+            try {
+                if (socket == null) {
+                    socket = new Socket("localhost", port);
+                    socket.setTcpNoDelay(true);
+                    in = new BufferedInputStream(socket.getInputStream());
+                    out = socket.getOutputStream();
+                }
+                out.write(request);
+                out.flush();
+                if (readResponse(in) != 200) {
+                    result.errors.increment();
+                }
+                result.latencies.record(System.nanoTime() - sent);
+            } catch (IOException e) {
+                result.errors.increment();
+                closeQuietly(socket);
+                socket = null;
+                continue;
+            }
+            if (!keepAlive) {
+                closeQuietly(socket);
+                socket = null;
+            }
+        }
+        closeQuietly(socket);
+    }
+
+    /**
+     * Reads one response, skipping its body.
+     *
+     * @param in the connection input
+     * @return the status code
+     * @throws IOException if the connection fails or the response is malformed
+     */
+    private static int readResponse(InputStream in) throws IOException {
+        String statusLine = readLine(in);
+        int statusCode = Integer.parseInt(statusLine.substring(9, 12));
+        long contentLength = 0;
+        boolean chunked = false;
+        String line;
+        while (!(line = readLine(in)).isEmpty()) {
+            String lower = line.toLowerCase();
+            if (lower.startsWith("content-length:")) {
+                contentLength = Long.parseLong(line.substring(15).trim());
+            } else if (lower.startsWith("transfer-encoding:") && lower.contains("chunked")) {
+                chunked = true;
+            }
+        }
+
+        if (!chunked) {
+            skip(in, contentLength);
+            return statusCode;
+        }
+        while (true) {
+            String size = readLine(in);
+            int extension = size.indexOf(';');
+            long chunk = Long.parseLong(extension < 0 ? size.trim() : size.substring(0, extension).trim(), 16);
+            if (chunk == 0) {
+                while (!readLine(in).isEmpty()) {
+                    // Trailer fields.
+                }
+                return statusCode;
+            }
+            skip(in, chunk);
+            readLine(in);
+        }
+    }
+
+    /**
+     * Reads a CRLF-terminated line.
+     *
+     * @param in the connection input
+     * @return the line without its terminator
+     * @throws IOException if the connection closes first
+     */
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder(64);
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                throw new IOException("Connection closed");
+            }
+            if (b != '\r') {
+                line.append((char) b);
+            }
+        }
+        return line.toString();
+    }
+
+    /**
+     * Discards a number of bytes.
+     *
+     * @param in    the connection input
+     * @param count the number of bytes
+     * @throws IOException if the connection closes first
+     */
+    private static void skip(InputStream in, long count) throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new IOException("Connection closed");
+                }
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+
+    /**
+     * Waits until the server accepts connections.
+     *
+     * @param port the server port
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private static void awaitServer(int port) throws InterruptedException {
+        for (int attempt = 0; attempt < 100; attempt++) {
+            try (Socket socket = new Socket("localhost", port)) {
+                return;
+            } catch (IOException e) {
+                Thread.sleep(50);
+            }
+        }
+        throw new IllegalStateException("Server did not start on port " + port);
+    }
+
+    /**
+     * Finds a free local port.
+     *
+     * @return the port
+     * @throws IOException if no port can be bound
+     */
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * Closes a socket, ignoring failures.
+     *
+     * @param socket the socket, or null
+     */
+    private static void closeQuietly(Socket socket) {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already broken.
+            }
+        }
+    }
+
+    /**
+     * Latencies and errors of one phase, shared by all clients.
+     */
+    private static final class Result {
+        private final LatencyHistogram latencies = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+        private long elapsedNanos;
+    }
+}
@@ -0,0 +1,103 @@
+package co.edu.escuelaing.microserver.http;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Request head parsing: framing, request line and headers, and reading
+ * typed query parameters from the parsed view.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RequestParsingBenchmark {
+
+    private static final String BROWSER_HEAD = "GET /greeting?name=World&page=3&ratio=0.75&flag=true HTTP/1.1\r\n"
+            + "Host: localhost:8080\r\n"
+            + "User-Agent: Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko)\r\n"
+            + "Accept: text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8\r\n"
+            + "Accept-Language: en-US,en;q=0.5\r\n"
+            + "Accept-Encoding: gzip, deflate, br\r\n"
+            + "Connection: keep-alive\r\n"
+            + "Cache-Control: max-age=0\r\n"
+            + "\r\n";
+
+    private static final String MINIMAL_HEAD = "GET /api HTTP/1.1\r\nHost: localhost\r\n\r\n";
+
+    private HttpRequestParser parser;
+    private HttpRequest request;
+    private byte[] browserHead;
+    private byte[] minimalHead;
+
+    /**
+     * Prepares the parser and the encoded request heads.
+     */
+    @Setup
+    public void setUp() {
+        parser = new HttpRequestParser(new ServerConfig());
+        request = new HttpRequest();
+        browserHead = BROWSER_HEAD.getBytes(StandardCharsets.ISO_8859_1);
+        minimalHead = MINIMAL_HEAD.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Frames and parses a typical browser request.
+     *
+     * @return the parsed request
+     * @throws HttpParseException never for this input
+     */
+    @Benchmark
+    public HttpRequest parseBrowserHead() throws HttpParseException {
+        int headEnd = parser.findHeadEnd(browserHead, 0, 0, browserHead.length);
+        parser.parseHead(browserHead, 0, headEnd, request);
+        return request;
+    }
+
+    /**
+     * Frames and parses the smallest valid HTTP/1.1 request.
+     *
+     * @return the parsed request
+     * @throws HttpParseException never for this input
+     */
+    @Benchmark
+    public HttpRequest parseMinimalHead() throws HttpParseException {
+        int headEnd = parser.findHeadEnd(minimalHead, 0, 0, minimalHead.length);
+        parser.parseHead(minimalHead, 0, headEnd, request);
+        return request;
+    }
+
+    /**
+     * Parses a browser request and reads what a controller typically needs:
+     * the path, one header and typed query parameters.
+     *
+     * @param blackhole consumes the values
+     * @throws HttpParseException never for this input
+     */
+    @Benchmark
+    public void parseAndReadQuery(Blackhole blackhole) throws HttpParseException {
+        int headEnd = parser.findHeadEnd(browserHead, 0, 0, browserHead.length);
+        parser.parseHead(browserHead, 0, headEnd, request);
+        QueryString query = request.getQuery();
+        blackhole.consume(request.getPath());
+        blackhole.consume(request.getHeader("Accept-Encoding"));
+        blackhole.consume(query.get("name"));
+        blackhole.consume(query.getInt("page", 1));
+        blackhole.consume(query.getDouble("ratio", 1.0));
+        blackhole.consume(query.getBoolean("flag", false));
+    }
+}
@@ -0,0 +1,161 @@
+package co.edu.escuelaing.microserver.http;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Static file serving through the cache: a small page, its gzip variant,
+ * a conditional request answered with 304 and a large file sent by
+ * zero-copy transfer. Each benchmark also encodes the response head, which
+ * is part of what every static response costs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StaticServingBenchmark {
+
+    private Path root;
+    private StaticFileHandler handler;
+    private HttpRequest plain;
+    private HttpRequest gzip;
+    private HttpRequest conditional;
+    private HttpRequest large;
+
+    /**
+     * Creates a static root with an 8 KiB page and a 1 MiB file, and parses
+     * the requests once.
+     *
+     * @throws Exception if the files cannot be written
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        root = Files.createTempDirectory("microserver-bench");
+        StringBuilder page = new StringBuilder("<html><body>");
+        while (page.length() < 8 * 1024) {
+            page.append("<p>Micro WebServer IoC static page benchmark paragraph.</p>\n");
+        }
+        Files.write(root.resolve("page.html"), page.append("</body></html>").toString()
+                .getBytes(StandardCharsets.UTF_8));
+        byte[] blob = new byte[1024 * 1024];
+        Arrays.fill(blob, (byte) 'x');
+        Files.write(root.resolve("large.bin"), blob);
+
+        ServerConfig config = new ServerConfig();
+        config.setStaticRoot(root.toString());
+        handler = new StaticFileHandler(config);
+
+        plain = request("/page.html", "");
+        gzip = request("/page.html", "Accept-Encoding: gzip, deflate\r\n");
+        conditional = request("/page.html", "If-None-Match: " + etag(handler.serve(plain)) + "\r\n");
+        large = request("/large.bin", "");
+    }
+
+    /**
+     * Deletes the static root.
+     *
+     * @throws IOException if a file cannot be deleted
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Serves a small page from memory.
+     *
+     * @return the encoded head
+     * @throws IOException if the file cannot be read
+     */
+    @Benchmark
+    public byte[] smallFile() throws IOException {
+        return handler.serve(plain).encodeHead(true, 5);
+    }
+
+    /**
+     * Serves the cached gzip variant of a small page.
+     *
+     * @return the encoded head
+     * @throws IOException if the file cannot be read
+     */
+    @Benchmark
+    public byte[] smallFileGzip() throws IOException {
+        return handler.serve(gzip).encodeHead(true, 5);
+    }
+
+    /**
+     * Answers a revalidation with 304 Not Modified.
+     *
+     * @return the encoded head
+     * @throws IOException if the file cannot be read
+     */
+    @Benchmark
+    public byte[] notModified() throws IOException {
+        return handler.serve(conditional).encodeHead(true, 5);
+    }
+
+    /**
+     * Prepares a large file for zero-copy transfer.
+     *
+     * @return the encoded head
+     * @throws IOException if the file cannot be read
+     */
+    @Benchmark
+    public byte[] largeFile() throws IOException {
+        return handler.serve(large).encodeHead(true, 5);
+    }
+
+    /**
+     * Extracts the ETag from a response head.
+     *
+     * @param response the response
+     * @return the entity tag
+     */
+    private static String etag(HttpResponse response) {
+        String head = new String(response.encodeHead(true, 5), StandardCharsets.ISO_8859_1);
+        int start = head.indexOf("ETag: ") + 6;
+        return head.substring(start, head.indexOf("\r\n", start));
+    }
+
+    /**
+     * Parses a GET request with extra header lines.
+     *
+     * @param path    the request path
+     * @param headers the extra header lines, each terminated by CRLF
+     * @return the request
+     * @throws HttpParseException if the request is malformed
+     */
+    private static HttpRequest request(String path, String headers) throws HttpParseException {
+        byte[] head = ("GET " + path + " HTTP/1.1\r\nHost: localhost\r\n" + headers + "\r\n")
+                .getBytes(StandardCharsets.ISO_8859_1);
+        HttpRequestParser parser = new HttpRequestParser(new ServerConfig());
+        HttpRequest request = new HttpRequest();
+        parser.parseHead(head, 0, parser.findHeadEnd(head, 0, 0, head.length), request);
+        return request;
+    }
+}
@@ -0,0 +1,151 @@
+package co.edu.escuelaing.microserver.ioc;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import co.edu.escuelaing.microserver.annotations.PathVariable;
+import co.edu.escuelaing.microserver.annotations.RequestParam;
+import co.edu.escuelaing.microserver.http.QueryString;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parameter binding and handler invocation through compiled method
+ * handles, from a handler without parameters to one binding several typed
+ * query parameters and a path variable.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BindingBenchmark {
+
+    private HandlerInvoker noArguments;
+    private HandlerInvoker oneString;
+    private HandlerInvoker typed;
+    private InvocationContext context;
+
+    /**
+     * Compiles the handlers and builds the invocation context of a request
+     * to {@code /orders/42?name=World&page=3&ratio=0.5&active=true&status=OPEN&tags=7}.
+     *
+     * @throws Exception if a handler cannot be compiled
+     */
+    @Setup
+    public void setUp() throws Exception {
+        OrderController controller = new OrderController();
+        noArguments = new HandlerInvoker(controller, OrderController.class.getMethod("ping"),
+                Collections.emptyList());
+        oneString = new HandlerInvoker(controller, OrderController.class.getMethod("greet", String.class),
+                Collections.emptyList());
+        typed = new HandlerInvoker(controller, OrderController.class.getMethod("search", long.class, int.class,
+                double.class, boolean.class, Status.class, List.class), List.of("id"));
+
+        Router<HandlerInvoker> router = new Router<>();
+        router.add("/orders/{id}", typed);
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("name", "World");
+        parameters.put("page", "3");
+        parameters.put("ratio", "0.5");
+        parameters.put("active", "true");
+        parameters.put("status", "open");
+        parameters.put("tags", "7");
+        context = new InvocationContext(QueryString.of(parameters), router.match("/orders/42"), null);
+    }
+
+    /**
+     * Invokes a handler without parameters.
+     *
+     * @return the result
+     * @throws Throwable if the handler fails
+     */
+    @Benchmark
+    public Object noArguments() throws Throwable {
+        return noArguments.invoke(context);
+    }
+
+    /**
+     * Binds one String query parameter.
+     *
+     * @return the result
+     * @throws Throwable if the handler fails
+     */
+    @Benchmark
+    public Object oneString() throws Throwable {
+        return oneString.invoke(context);
+    }
+
+    /**
+     * Binds a path variable and five typed query parameters, including an
+     * enum and a list.
+     *
+     * @return the result
+     * @throws Throwable if the handler fails
+     */
+    @Benchmark
+    public Object typedParameters() throws Throwable {
+        return typed.invoke(context);
+    }
+
+    /**
+     * Order status bound from a query parameter.
+     */
+    public enum Status {
+        OPEN, CLOSED
+    }
+
+    /**
+     * Controller with handlers of increasing binding cost.
+     */
+    public static class OrderController {
+
+        /**
+         * Answers without parameters.
+         *
+         * @return the response
+         */
+        public String ping() {
+            return "pong";
+        }
+
+        /**
+         * Greets by name.
+         *
+         * @param name the name
+         * @return the response
+         */
+        public String greet(@RequestParam(value = "name", defaultValue = "World") String name) {
+            return name;
+        }
+
+        /**
+         * Searches orders.
+         *
+         * @param id     the customer id
+         * @param page   the page number
+         * @param ratio  a ratio
+         * @param active whether only active orders are listed
+         * @param status the order status
+         * @param tags   tag ids
+         * @return the response
+         */
+        public String search(@PathVariable("id") long id, @RequestParam("page") int page,
+                @RequestParam("ratio") double ratio, @RequestParam("active") boolean active,
+                @RequestParam("status") Status status, @RequestParam("tags") List<Integer> tags) {
+            return status.name();
+        }
+    }
+}
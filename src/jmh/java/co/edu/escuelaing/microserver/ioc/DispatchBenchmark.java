@@ -0,0 +1,130 @@
+package co.edu.escuelaing.microserver.ioc;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import co.edu.escuelaing.microserver.annotations.PathVariable;
+import co.edu.escuelaing.microserver.annotations.RequestParam;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link SimpleIoCContainer#dispatch} against route tables of different
+ * sizes: routing, binding and invoking a handler, and a request no route
+ * matches.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DispatchBenchmark {
+
+    @Param({"1", "100", "10000"})
+    private int routes;
+
+    private SimpleIoCContainer container;
+    private String staticPath;
+    private String variablePath;
+    private Map<String, String> query;
+
+    /**
+     * Registers the route table. Half of the routes are literal paths and
+     * half have a path variable, all backed by the same controller.
+     *
+     * @throws Exception if a handler cannot be compiled
+     */
+    @Setup
+    public void setUp() throws Exception {
+        container = new SimpleIoCContainer();
+        ItemController controller = new ItemController();
+        HandlerInvoker list = new HandlerInvoker(controller,
+                ItemController.class.getMethod("list", String.class), Collections.emptyList());
+        HandlerInvoker item = new HandlerInvoker(controller,
+                ItemController.class.getMethod("item", long.class), List.of("id"));
+
+        for (int i = 0; i < routes; i++) {
+            if (i % 2 == 0) {
+                container.registerMapping("GET", "/shop" + i + "/items", list);
+            } else {
+                container.registerMapping("GET", "/shop" + i + "/items/{id}", item);
+            }
+        }
+
+        // Target routes in the middle of the table; with a single route there is no variable one.
+        int middle = routes / 2;
+        staticPath = "/shop" + (middle & ~1) + "/items";
+        variablePath = routes > 1 ? "/shop" + (middle | 1) + "/items/42" : staticPath;
+        query = new HashMap<>();
+        query.put("sort", "price");
+    }
+
+    /**
+     * Dispatches to a literal route.
+     *
+     * @return the response
+     */
+    @Benchmark
+    public String literalRoute() {
+        return container.dispatch(staticPath, query);
+    }
+
+    /**
+     * Dispatches to a route with a path variable.
+     *
+     * @return the response
+     */
+    @Benchmark
+    public String variableRoute() {
+        return container.dispatch(variablePath, query);
+    }
+
+    /**
+     * Looks up a path that no route matches.
+     *
+     * @return null
+     */
+    @Benchmark
+    public String unmatched() {
+        return container.dispatch("/missing/path", query);
+    }
+
+    /**
+     * Controller registered under every route.
+     */
+    public static class ItemController {
+
+        /**
+         * Lists items.
+         *
+         * @param sort the sort key
+         * @return the response
+         */
+        public String list(@RequestParam(value = "sort", defaultValue = "name") String sort) {
+            return "items by " + sort;
+        }
+
+        /**
+         * Gets one item.
+         *
+         * @param id the item id
+         * @return the response
+         */
+        public String item(@PathVariable("id") long id) {
+            return "item " + id;
+        }
+    }
+}
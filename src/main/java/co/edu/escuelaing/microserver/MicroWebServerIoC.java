@@ -2,7 +2,11 @@ package co.edu.escuelaing.microserver;
 
 import java.io.IOException;
 
+import co.edu.escuelaing.microserver.http.ExecutionModel;
 import co.edu.escuelaing.microserver.http.HttpServer;
+import co.edu.escuelaing.microserver.http.RejectionPolicy;
+import co.edu.escuelaing.microserver.http.ServerConfig;
+import co.edu.escuelaing.microserver.http.ServerEngine;
 import co.edu.escuelaing.microserver.ioc.SimpleIoCContainer;
 
 /**
@@ -16,24 +20,54 @@ public class MicroWebServerIoC {
     /**
      * Main entry point for the framework.
      *
-     * @param args command line arguments - first argument should be the controller
-     *
+     * @param args command line arguments - an optional controller class name
+     *             followed or preceded by options in the form --name=value:
+     *             --port, --engine (blocking|nio), --http2 (on|off),
+     *             --event-loops, --acceptors, --reuse-port (on|off),
+     *             --backlog, --workers, --max-connections,
+     *             --threads (platform|virtual), --on-saturation (503|close),
+     *             --keep-alive-timeout (ms), --header-timeout (ms),
+     *             --request-timeout (ms), --body-timeout (ms),
+     *             --max-body-size (bytes), --max-requests-per-connection,
+     *             --async-timeout (ms), --rate-limit (requests/s per
+     *             client, 0 to disable), --rate-limit-burst,
+     *             --adaptive-limit (on|off), --adaptive-limit-min,
+     *             --adaptive-limit-max, --static-root,
+     *             --static-cache-size (bytes),
+     *             --zero-copy-threshold (bytes), --compression (on|off),
+     *             --compression-min-size (bytes), --metrics (on|off),
+     *             --metrics-path, --access-log (file|stdout|off),
+     *             --access-log-format, --access-log-max-size (bytes),
+     *             --access-log-max-files, --access-log-flush (ms) and
+     *             --access-log-buffer (events, a power of two)
      */
     public static void main(String[] args) {
         try {
             SimpleIoCContainer container = new SimpleIoCContainer();
+            ServerConfig config = new ServerConfig(DEFAULT_PORT);
+            String controller = null;
+
+            for (String arg : args) {
+                if (arg.startsWith("--")) {
+                    applyOption(config, arg);
+                } else {
+                    controller = arg;
+                }
+            }
 
-            if (args.length > 0) {
-                container.registerController(args[0]);
-                System.out.println("Registered controller: " + args[0]);
+            if (controller != null) {
+                container.registerController(controller);
+                System.out.println("Registered controller: " + controller);
             } else {
                 container.scanAndRegisterControllers("co.edu.escuelaing.microserver.examples");
                 System.out.println("Scanned and registered controllers from examples package");
             }
 
-            HttpServer server = new HttpServer(DEFAULT_PORT, container);
+            HttpServer server = new HttpServer(config, container);
+            container.setErrorLog(server.getLog()::error);
+            container.setAsyncTimeoutMillis(config.getAsyncTimeoutMillis());
 
-            System.out.println("Starting Micro WebServer IoC on port " + DEFAULT_PORT);
+            System.out.println("Starting Micro WebServer IoC on port " + config.getPort());
 
             Runtime.getRuntime().addShutdownHook(new Thread(() -> {
                 try {
@@ -50,4 +84,147 @@ public class MicroWebServerIoC {
             System.err.println("Error starting server: " + e.getMessage());
         }
     }
+
+    /**
+     * Applies a single --name=value command line option to the configuration.
+     *
+     * @param config the configuration to update
+     * @param option the raw option
+     */
+    private static void applyOption(ServerConfig config, String option) {
+        int separator = option.indexOf('=');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Option must have the form --name=value: " + option);
+        }
+        String name = option.substring(2, separator);
+        String value = option.substring(separator + 1);
+
+        switch (name) {
+            case "port":
+                config.setPort(Integer.parseInt(value));
+                break;
+            case "engine":
+                config.setEngine("nio".equalsIgnoreCase(value) ? ServerEngine.NIO : ServerEngine.BLOCKING);
+                break;
+            case "http2":
+                config.setHttp2Enabled(!"off".equalsIgnoreCase(value));
+                break;
+            case "event-loops":
+                config.setEventLoopThreads(Integer.parseInt(value));
+                break;
+            case "acceptors":
+                config.setAcceptorThreads(Integer.parseInt(value));
+                break;
+            case "reuse-port":
+                config.setReusePort("on".equalsIgnoreCase(value));
+                break;
+            case "backlog":
+                config.setAcceptBacklog(Integer.parseInt(value));
+                break;
+            case "workers":
+                config.setWorkerThreads(Integer.parseInt(value));
+                break;
+            case "max-connections":
+                config.setMaxConnections(Integer.parseInt(value));
+                break;
+            case "threads":
+                if ("virtual".equalsIgnoreCase(value)) {
+                    config.setExecutionModel(ExecutionModel.VIRTUAL_THREADS);
+                } else if ("platform".equalsIgnoreCase(value)) {
+                    config.setExecutionModel(ExecutionModel.PLATFORM_THREADS);
+                } else {
+                    throw new IllegalArgumentException("--threads must be platform or virtual: " + option);
+                }
+                break;
+            case "on-saturation":
+                if ("close".equalsIgnoreCase(value)) {
+                    config.setRejectionPolicy(RejectionPolicy.CLOSE);
+                } else if ("503".equals(value)) {
+                    config.setRejectionPolicy(RejectionPolicy.SERVICE_UNAVAILABLE);
+                } else {
+                    throw new IllegalArgumentException("--on-saturation must be 503 or close: " + option);
+                }
+                break;
+            case "keep-alive-timeout":
+                config.setKeepAliveTimeoutMillis(Integer.parseInt(value));
+                break;
+            case "header-timeout":
+                config.setHeaderTimeoutMillis(Integer.parseInt(value));
+                break;
+            case "request-timeout":
+                config.setRequestTimeoutMillis(Integer.parseInt(value));
+                break;
+            case "body-timeout":
+                config.setBodyTimeoutMillis(Integer.parseInt(value));
+                break;
+            case "max-body-size":
+                config.setMaxRequestBodySize(Long.parseLong(value));
+                break;
+            case "max-requests-per-connection":
+                config.setMaxRequestsPerConnection(Integer.parseInt(value));
+                break;
+            case "async-timeout":
+                config.setAsyncTimeoutMillis(Integer.parseInt(value));
+                break;
+            case "rate-limit":
+                config.setRateLimitPerSecond(Double.parseDouble(value));
+                break;
+            case "rate-limit-burst":
+                config.setRateLimitBurst(Integer.parseInt(value));
+                break;
+            case "adaptive-limit":
+                config.setAdaptiveConcurrencyEnabled("on".equalsIgnoreCase(value));
+                break;
+            case "adaptive-limit-min":
+                config.setConcurrencyLimitMin(Integer.parseInt(value));
+                break;
+            case "adaptive-limit-max":
+                config.setConcurrencyLimitMax(Integer.parseInt(value));
+                break;
+            case "static-root":
+                config.setStaticRoot(value);
+                break;
+            case "static-cache-size":
+                config.setStaticCacheMaxBytes(Long.parseLong(value));
+                break;
+            case "zero-copy-threshold":
+                config.setZeroCopyThreshold(Long.parseLong(value));
+                break;
+            case "compression":
+                config.setCompressionEnabled(!"off".equalsIgnoreCase(value));
+                break;
+            case "compression-min-size":
+                config.setCompressionMinSize(Integer.parseInt(value));
+                break;
+            case "metrics":
+                config.setMetricsEnabled(!"off".equalsIgnoreCase(value));
+                break;
+            case "metrics-path":
+                config.setMetricsPath(value);
+                break;
+            case "access-log":
+                config.setAccessLogEnabled(!"off".equalsIgnoreCase(value));
+                config.setAccessLogFile("stdout".equalsIgnoreCase(value) || "off".equalsIgnoreCase(value)
+                        ? null
+                        : value);
+                break;
+            case "access-log-format":
+                config.setAccessLogFormat(value);
+                break;
+            case "access-log-max-size":
+                config.setAccessLogMaxFileSize(Long.parseLong(value));
+                break;
+            case "access-log-max-files":
+                config.setAccessLogMaxFiles(Integer.parseInt(value));
+                break;
+            case "access-log-flush":
+                config.setAccessLogFlushMillis(Long.parseLong(value));
+                break;
+            case "access-log-buffer":
+                config.setAccessLogBufferSize(Integer.parseInt(value));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option: " + option);
+        }
+    }
 }
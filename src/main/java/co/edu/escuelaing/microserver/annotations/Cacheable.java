@@ -0,0 +1,24 @@
+package co.edu.escuelaing.microserver.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation to cache the encoded response of a @GetMapping method. The
+ * cache key is the request path together with the values of the method's
+ * @RequestParam parameters, so requests that bind the same arguments share
+ * one entry.
+ *
+ * @param ttl        how long, in seconds, a response is served from the cache
+ * @param maxEntries how many distinct keys the endpoint keeps
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Cacheable {
+
+    long ttl() default 60;
+
+    int maxEntries() default 256;
+}
@@ -0,0 +1,16 @@
+package co.edu.escuelaing.microserver.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation to mark a class as a component managed by the IoC container.
+ * Components are discovered together with controllers and can be injected
+ * into controllers and other components by type.
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Component {
+}
@@ -0,0 +1,18 @@
+package co.edu.escuelaing.microserver.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation to map HTTP DELETE requests to specific handler methods.
+ *
+ * @param value the URI path to map the method to
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface DeleteMapping {
+
+    String value();
+}
@@ -0,0 +1,17 @@
+package co.edu.escuelaing.microserver.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation to mark the constructor the container creates a component
+ * with, or a field it sets after construction. Dependencies are matched by
+ * type; a {@code Supplier<T>} dependency is resolved on every call to
+ * {@code get()} instead of once.
+ */
+@Target({ElementType.CONSTRUCTOR, ElementType.FIELD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Inject {
+}
@@ -0,0 +1,20 @@
+package co.edu.escuelaing.microserver.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation to bind a method parameter to a variable of the mapped path,
+ * such as {@code id} in {@code @GetMapping("/users/{id}")} or {@code path}
+ * in {@code @GetMapping("/files/{*path}")}.
+ *
+ * @param value the name of the path variable to bind to
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface PathVariable {
+
+    String value();
+}
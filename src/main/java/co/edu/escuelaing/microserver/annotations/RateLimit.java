@@ -0,0 +1,29 @@
+package co.edu.escuelaing.microserver.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation to limit the request rate of a @GetMapping method. Requests
+ * over the limit are answered with 429 Too Many Requests and a Retry-After
+ * header, without invoking the method. The limit applies on top of the
+ * server-wide one.
+ *
+ * @param perSecond the sustained rate, in requests per second
+ * @param burst     how many requests may arrive at once, or 0 for one
+ *                  second's worth
+ * @param perClient whether each client address has its own limit, rather
+ *                  than all clients sharing one
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RateLimit {
+
+    double perSecond();
+
+    int burst() default 0;
+
+    boolean perClient() default true;
+}
@@ -0,0 +1,23 @@
+package co.edu.escuelaing.microserver.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation to bind a method parameter to the body of the request.
+ * An InputStream parameter reads the body as it arrives; a byte[] or
+ * String parameter receives it whole, the String decoded as UTF-8.
+ * Larger bodies are answered with 413 Content Too Large. A stream is never
+ * buffered, so its limit may exceed the server's; a body received whole,
+ * or over HTTP/2, stays within the server's limit.
+ *
+ * @param maxSize the largest body accepted in bytes, or -1 for the server's limit
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RequestBody {
+
+    long maxSize() default -1;
+}
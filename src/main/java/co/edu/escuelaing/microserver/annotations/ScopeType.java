@@ -0,0 +1,16 @@
+package co.edu.escuelaing.microserver.annotations;
+
+/**
+ * Lifetimes of the instances the container creates.
+ */
+public enum ScopeType {
+
+    /** One instance for the whole container. */
+    SINGLETON,
+
+    /** A new instance for every injection point and lookup. */
+    PROTOTYPE,
+
+    /** One instance per dispatched request. */
+    REQUEST
+}
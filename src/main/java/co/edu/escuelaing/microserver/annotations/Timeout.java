@@ -0,0 +1,24 @@
+package co.edu.escuelaing.microserver.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation to bound how long the server waits for an asynchronous
+ * @GetMapping method. A CompletableFuture that does not complete in time is
+ * answered with 504 Gateway Timeout, and so is a Flow.Publisher that emits
+ * nothing at all in time; one that goes this long without emitting a later
+ * item has its stream aborted, since its status line has already been sent.
+ * Without this annotation the server-wide asynchronous timeout applies, and
+ * it still applies when it is shorter.
+ *
+ * @param value the timeout in milliseconds
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Timeout {
+
+    long value();
+}
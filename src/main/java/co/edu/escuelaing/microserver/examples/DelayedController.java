@@ -0,0 +1,32 @@
+package co.edu.escuelaing.microserver.examples;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import co.edu.escuelaing.microserver.annotations.GetMapping;
+import co.edu.escuelaing.microserver.annotations.RequestParam;
+import co.edu.escuelaing.microserver.annotations.RestController;
+import co.edu.escuelaing.microserver.annotations.Timeout;
+
+/**
+ * Controller that demonstrates asynchronous responses: the answer is
+ * produced later by a timer while no server thread waits for it.
+ */
+@RestController
+public class DelayedController {
+
+    /**
+     * Answers after the requested delay, or with 504 Gateway Timeout when
+     * the delay exceeds one second.
+     *
+     * @param ms the delay in milliseconds
+     * @return the future response
+     */
+    @Timeout(1000)
+    @GetMapping("/delayed")
+    public CompletableFuture<String> delayed(@RequestParam(value = "ms", defaultValue = "200") long ms) {
+        long delay = Math.max(ms, 0);
+        return CompletableFuture.supplyAsync(() -> "Respuesta tras " + delay + " ms",
+                CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS));
+    }
+}
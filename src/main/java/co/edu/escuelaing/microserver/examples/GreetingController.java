@@ -1,18 +1,38 @@
 package co.edu.escuelaing.microserver.examples;
 
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.Map;
 
 import co.edu.escuelaing.microserver.annotations.GetMapping;
+import co.edu.escuelaing.microserver.annotations.Inject;
+import co.edu.escuelaing.microserver.annotations.PathVariable;
+import co.edu.escuelaing.microserver.annotations.RateLimit;
 import co.edu.escuelaing.microserver.annotations.RequestParam;
 import co.edu.escuelaing.microserver.annotations.RestController;
+import co.edu.escuelaing.microserver.template.Template;
+import co.edu.escuelaing.microserver.template.View;
 
 /**
- * Greeting controller that demonstrates @RequestParam usage.
+ * Greeting controller that demonstrates @RequestParam usage and
+ * constructor injection of a shared component. Pages are rendered from
+ * templates, which escape the name so it cannot inject markup.
  */
 @RestController
 public class GreetingController {
 
-    private final AtomicLong counter = new AtomicLong();
+    private static final Template GREETING = Template.load("templates/greeting.html");
+    private static final Template COUNTER = Template.load("templates/counter.html");
+
+    private final VisitCounter counter;
+
+    /**
+     * Creates the controller.
+     *
+     * @param counter the shared visit counter
+     */
+    @Inject
+    public GreetingController(VisitCounter counter) {
+        this.counter = counter;
+    }
 
     /**
      * Returns a personalized greeting message.
@@ -21,57 +41,32 @@ public class GreetingController {
      * @return personalized greeting
      */
     @GetMapping("/greeting")
-    public String greeting(@RequestParam(value = "name", defaultValue = "World") String name) {
-        long count = counter.incrementAndGet();
-        return "<!DOCTYPE html>" +
-                "<html lang='es'>" +
-                "<head>" +
-                "<meta charset='UTF-8'>" +
-                "<title>Saludo</title>" +
-                "<link rel='icon' type='image/x-icon' href='/Pictures/Logo.jpg'>" +
-                "<link rel='stylesheet' href='/styles.css'>" +
-                "</head>" +
-                "<body>" +
-                "<div class='container'>" +
-                "<h1>Servicio de Saludo</h1>" +
-                "<p><strong>¡Hola " + name + "!</strong></p>" +
-                "<p>Request #" + count + "</p>" +
-                "<form onsubmit='greetUser(); return false;'>" +
-                "<input type='text' id='nameInput' placeholder='Tu nombre' value='" + name + "'>" +
-                "<button type='submit'>Saludar</button>" +
-                "</form>" +
-                "<p><a href='/'>Inicio</a> | <a href='/counter'>Contador</a></p>" +
-                "</div>" +
-                "<script>" +
-                "function greetUser() {" +
-                "const name = document.getElementById('nameInput').value || 'World';" +
-                "window.location.href = '/greeting?name=' + name;" +
-                "}" +
-                "</script>" +
-                "</body></html>";
+    public View greeting(@RequestParam(value = "name", defaultValue = "World") String name) {
+        long count = counter.increment();
+        return GREETING.with(Map.of("name", name, "count", count));
+    }
+
+    /**
+     * Returns the same greeting with the name taken from the path,
+     * e.g. /greeting/Estudiante.
+     *
+     * @param name the name to greet
+     * @return personalized greeting
+     */
+    @GetMapping("/greeting/{name}")
+    public View greetingByPath(@PathVariable("name") String name) {
+        return greeting(name);
     }
 
     /**
-     * Returns the current counter value.
+     * Returns the current counter value. Limited to 10 requests per second
+     * per client, with bursts of 20.
      *
      * @return counter information
      */
+    @RateLimit(perSecond = 10, burst = 20)
     @GetMapping("/counter")
-    public String counter() {
-        return "<!DOCTYPE html>" +
-                "<html lang='es'>" +
-                "<head>" +
-                "<meta charset='UTF-8'>" +
-                "<title>Contador</title>" +
-                "<link rel='icon' type='image/x-icon' href='/Pictures/Logo.jpg'>" +
-                "<link rel='stylesheet' href='/styles.css'>" +
-                "</head>" +
-                "<body>" +
-                "<div class='container'>" +
-                "<h1>Contador de Requests</h1>" +
-                "<p>Total de solicitudes: <strong>" + counter.get() + "</strong></p>" +
-                "<p><a href='javascript:location.reload()'>Actualizar</a> | <a href='/'>Inicio</a></p>" +
-                "</div>" +
-                "</body></html>";
+    public View counter() {
+        return COUNTER.with(Map.of("count", counter.get()));
     }
 }
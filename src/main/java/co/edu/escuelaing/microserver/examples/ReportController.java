@@ -0,0 +1,50 @@
+package co.edu.escuelaing.microserver.examples;
+
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import co.edu.escuelaing.microserver.annotations.GetMapping;
+import co.edu.escuelaing.microserver.annotations.RequestParam;
+import co.edu.escuelaing.microserver.annotations.RestController;
+import co.edu.escuelaing.microserver.http.StreamingBody;
+
+/**
+ * Report controller that demonstrates streaming responses: rows are sent
+ * as they are generated instead of building the whole page in memory.
+ */
+@RestController
+public class ReportController {
+
+    private static final int MAX_ROWS = 1_000_000;
+
+    /**
+     * Streams a table with the requested number of rows.
+     *
+     * @param rows the number of rows to generate
+     * @return the streaming body
+     */
+    @GetMapping("/report")
+    public StreamingBody report(@RequestParam(value = "rows", defaultValue = "1000") int rows) {
+        int count = Math.min(Math.max(rows, 0), MAX_ROWS);
+        return out -> {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            writer.write("<!DOCTYPE html>"
+                    + "<html lang='es'>"
+                    + "<head>"
+                    + "<meta charset='UTF-8'>"
+                    + "<title>Reporte</title>"
+                    + "<link rel='stylesheet' href='/styles.css'>"
+                    + "</head>"
+                    + "<body>"
+                    + "<div class='container'>"
+                    + "<h1>Reporte</h1>"
+                    + "<table><tr><th>#</th><th>Cuadrado</th></tr>");
+            for (int i = 1; i <= count; i++) {
+                writer.write("<tr><td>" + i + "</td><td>" + ((long) i * i) + "</td></tr>");
+            }
+            writer.write("</table><p><a href='/'>Inicio</a></p></div></body></html>");
+            writer.flush();
+        };
+    }
+}
@@ -0,0 +1,87 @@
+package co.edu.escuelaing.microserver.examples;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import co.edu.escuelaing.microserver.annotations.DeleteMapping;
+import co.edu.escuelaing.microserver.annotations.GetMapping;
+import co.edu.escuelaing.microserver.annotations.PathVariable;
+import co.edu.escuelaing.microserver.annotations.PostMapping;
+import co.edu.escuelaing.microserver.annotations.PutMapping;
+import co.edu.escuelaing.microserver.annotations.RequestBody;
+import co.edu.escuelaing.microserver.annotations.RestController;
+import co.edu.escuelaing.microserver.template.Template;
+import co.edu.escuelaing.microserver.template.View;
+
+/**
+ * Controller that demonstrates request bodies: an upload read as a stream
+ * without keeping it in memory, and small notes received whole as text.
+ * Notes and ids come from clients, so they are rendered through escaping
+ * templates.
+ */
+@RestController
+public class UploadController {
+
+    private static final long MAX_UPLOAD_SIZE = 10L * 1024 * 1024;
+    private static final long MAX_NOTE_SIZE = 4 * 1024;
+    private static final Template NOTE = Template.load("templates/note.html");
+    private static final Template NOTE_STATUS = Template.load("templates/note-status.html");
+
+    private final Map<String, String> notes = new ConcurrentHashMap<>();
+
+    /**
+     * Reads an upload as it arrives and reports its size.
+     *
+     * @param body the request body
+     * @return the number of bytes received
+     * @throws IOException if the upload fails
+     */
+    @PostMapping("/upload")
+    public String upload(@RequestBody(maxSize = MAX_UPLOAD_SIZE) InputStream body) throws IOException {
+        byte[] buffer = new byte[8192];
+        long total = 0;
+        int read;
+        while ((read = body.read(buffer)) >= 0) {
+            total += read;
+        }
+        return "Recibidos " + total + " bytes";
+    }
+
+    /**
+     * Stores a note.
+     *
+     * @param id   the note id
+     * @param text the note text
+     * @return a confirmation
+     */
+    @PutMapping("/notes/{id}")
+    public View save(@PathVariable("id") String id, @RequestBody(maxSize = MAX_NOTE_SIZE) String text) {
+        notes.put(id, text);
+        return NOTE_STATUS.with(Map.of("id", id, "status", "guardada"));
+    }
+
+    /**
+     * Reads a note. The text is whatever a client stored, so it is only
+     * ever shown escaped.
+     *
+     * @param id the note id
+     * @return the page showing the note text
+     */
+    @GetMapping("/notes/{id}")
+    public View read(@PathVariable("id") String id) {
+        return NOTE.with(Map.of("id", id, "text", notes.getOrDefault(id, "")));
+    }
+
+    /**
+     * Deletes a note.
+     *
+     * @param id the note id
+     * @return a confirmation
+     */
+    @DeleteMapping("/notes/{id}")
+    public View delete(@PathVariable("id") String id) {
+        return NOTE_STATUS.with(Map.of("id", id, "status", notes.remove(id) != null ? "borrada" : "no existe"));
+    }
+}
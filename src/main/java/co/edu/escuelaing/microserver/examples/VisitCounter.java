@@ -0,0 +1,32 @@
+package co.edu.escuelaing.microserver.examples;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import co.edu.escuelaing.microserver.annotations.Component;
+
+/**
+ * Shared request counter, injected into the controllers that need it.
+ */
+@Component
+public class VisitCounter {
+
+    private final AtomicLong visits = new AtomicLong();
+
+    /**
+     * Counts a visit.
+     *
+     * @return the number of visits so far, including this one
+     */
+    public long increment() {
+        return visits.incrementAndGet();
+    }
+
+    /**
+     * Gets the number of visits.
+     *
+     * @return the count
+     */
+    public long get() {
+        return visits.get();
+    }
+}
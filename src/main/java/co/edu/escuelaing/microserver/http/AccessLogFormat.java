@@ -0,0 +1,163 @@
+package co.edu.escuelaing.microserver.http;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Access log line format, compiled once from an Apache-style pattern.
+ * Supported directives:
+ * <ul>
+ *   <li>{@code %h} client address</li>
+ *   <li>{@code %t} time the response completed, e.g. {@code 10/Oct/2024:13:55:36 -0500}</li>
+ *   <li>{@code %r} request line</li>
+ *   <li>{@code %m}, {@code %U}, {@code %H} method, request target and protocol</li>
+ *   <li>{@code %s} status code</li>
+ *   <li>{@code %b} body size in bytes, or {@code -} if none or unknown</li>
+ *   <li>{@code %D} time taken in microseconds</li>
+ *   <li>{@code %R} route pattern that handled the request</li>
+ *   <li>{@code %%} a literal percent sign</li>
+ * </ul>
+ * Only used by the log writer thread, so the formatted time of the current
+ * second is cached without synchronization.
+ */
+final class AccessLogFormat {
+
+    /** The Common Log Format followed by the time taken in microseconds. */
+    static final String COMMON = "%h - - [%t] \"%r\" %s %b %D";
+
+    private static final DateTimeFormatter TIME_FORMAT =
+            DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss Z", Locale.ROOT).withZone(ZoneId.systemDefault());
+
+    private final String[] literals;
+    private final char[] directives;
+    private long cachedSecond = Long.MIN_VALUE;
+    private String cachedTime;
+
+    /**
+     * Creates a compiled format.
+     *
+     * @param literals   the text before each directive, plus the trailing text
+     * @param directives the directive letters
+     */
+    private AccessLogFormat(String[] literals, char[] directives) {
+        this.literals = literals;
+        this.directives = directives;
+    }
+
+    /**
+     * Compiles a pattern.
+     *
+     * @param pattern the format pattern
+     * @return the compiled format
+     * @throws IllegalArgumentException if the pattern uses an unknown directive
+     */
+    static AccessLogFormat compile(String pattern) {
+        List<String> literals = new ArrayList<>();
+        StringBuilder directives = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c != '%') {
+                literal.append(c);
+                continue;
+            }
+            if (++i == pattern.length()) {
+                throw new IllegalArgumentException("Access log format ends with '%': " + pattern);
+            }
+            char directive = pattern.charAt(i);
+            if (directive == '%') {
+                literal.append('%');
+            } else if ("htrmUHsbDR".indexOf(directive) >= 0) {
+                literals.add(literal.toString());
+                literal.setLength(0);
+                directives.append(directive);
+            } else {
+                throw new IllegalArgumentException("Unknown access log directive %" + directive + ": " + pattern);
+            }
+        }
+        literals.add(literal.toString());
+        return new AccessLogFormat(literals.toArray(new String[0]), directives.toString().toCharArray());
+    }
+
+    /**
+     * Formats an access event as one line, without the line terminator.
+     *
+     * @param event the event
+     * @param out   the line being built
+     */
+    void format(LogEvent event, StringBuilder out) {
+        for (int i = 0; i < directives.length; i++) {
+            out.append(literals[i]);
+            switch (directives[i]) {
+                case 'h':
+                    appendOrDash(out, event.remoteAddress);
+                    break;
+                case 't':
+                    out.append(time(event.timeMillis));
+                    break;
+                case 'r':
+                    if (event.method == null) {
+                        out.append('-');
+                    } else {
+                        out.append(event.method).append(' ').append(event.uri).append(' ').append(event.version);
+                    }
+                    break;
+                case 'm':
+                    appendOrDash(out, event.method);
+                    break;
+                case 'U':
+                    appendOrDash(out, event.uri);
+                    break;
+                case 'H':
+                    appendOrDash(out, event.version);
+                    break;
+                case 's':
+                    out.append(event.statusCode);
+                    break;
+                case 'b':
+                    if (event.bytes > 0) {
+                        out.append(event.bytes);
+                    } else {
+                        out.append('-');
+                    }
+                    break;
+                case 'D':
+                    out.append(event.durationNanos / 1000);
+                    break;
+                default:
+                    appendOrDash(out, event.route);
+                    break;
+            }
+        }
+        out.append(literals[directives.length]);
+    }
+
+    /**
+     * Formats a timestamp, reusing the result while the second is the same.
+     *
+     * @param timeMillis the time in epoch milliseconds
+     * @return the formatted time
+     */
+    private String time(long timeMillis) {
+        long second = timeMillis / 1000;
+        if (second != cachedSecond) {
+            cachedTime = TIME_FORMAT.format(Instant.ofEpochSecond(second));
+            cachedSecond = second;
+        }
+        return cachedTime;
+    }
+
+    /**
+     * Appends a value, or a dash when it is missing.
+     *
+     * @param out   the line being built
+     * @param value the value, or null
+     */
+    private static void appendOrDash(StringBuilder out, String value) {
+        out.append(value != null ? value : "-");
+    }
+}
@@ -0,0 +1,203 @@
+package co.edu.escuelaing.microserver.http;
+
+/**
+ * Incremental decoder for the framing of a request body: a fixed
+ * Content-Length or chunked transfer coding. Bytes are pushed in as they
+ * arrive, in pieces of any size, and the content is written back over them
+ * in place, which is safe because content never outruns the framing around
+ * it. The decoder stops exactly at the end of the body, so the bytes of a
+ * pipelined request that follows are left untouched.
+ * <p>
+ * Chunk extensions are ignored and trailer fields are skipped.
+ */
+class BodyDecoder {
+
+    private static final int SIZE = 0;
+    private static final int EXTENSION = 1;
+    private static final int SIZE_LINE_FEED = 2;
+    private static final int DATA = 3;
+    private static final int DATA_CARRIAGE_RETURN = 4;
+    private static final int DATA_LINE_FEED = 5;
+    private static final int TRAILER = 6;
+    private static final int DONE = 7;
+
+    private static final int MAX_SIZE_DIGITS = 15;
+    private static final int MAX_TRAILER_SIZE = 8 * 1024;
+
+    private final boolean chunked;
+    private int state;
+    private long remaining;
+    private int digits;
+    private int lineLength;
+    private int trailerSize;
+    private int consumed;
+
+    /**
+     * Creates a decoder for one body.
+     *
+     * @param length the Content-Length, or {@link HttpRequest#CHUNKED}
+     */
+    BodyDecoder(long length) {
+        this.chunked = length == HttpRequest.CHUNKED;
+        this.remaining = chunked ? 0 : length;
+        this.state = chunked ? SIZE : length > 0 ? DATA : DONE;
+    }
+
+    /**
+     * Decodes framed bytes, writing the content they carry over them.
+     *
+     * @param buffer the bytes
+     * @param offset the first byte to decode
+     * @param length how many bytes are available
+     * @return the number of content bytes now at {@code buffer[offset]}
+     * @throws HttpStatusException with 400 if the chunked framing is malformed
+     */
+    int decode(byte[] buffer, int offset, int length) {
+        int in = offset;
+        int out = offset;
+        int end = offset + length;
+        while (in < end && state != DONE) {
+            if (state == DATA) {
+                int count = (int) Math.min(remaining, end - in);
+                if (out != in) {
+                    System.arraycopy(buffer, in, buffer, out, count);
+                }
+                in += count;
+                out += count;
+                remaining -= count;
+                if (remaining == 0) {
+                    state = chunked ? DATA_CARRIAGE_RETURN : DONE;
+                }
+                continue;
+            }
+            frame(buffer[in++]);
+        }
+        consumed = in - offset;
+        return out - offset;
+    }
+
+    /**
+     * Advances through one byte of chunk framing.
+     *
+     * @param b the byte
+     */
+    private void frame(byte b) {
+        switch (state) {
+            case SIZE:
+                int digit = Character.digit(b, 16);
+                if (digit >= 0) {
+                    if (++digits > MAX_SIZE_DIGITS) {
+                        throw malformed("Chunk size too large");
+                    }
+                    remaining = remaining * 16 + digit;
+                } else if (digits > 0 && (b == ';' || b == ' ' || b == '\t')) {
+                    state = EXTENSION;
+                } else if (digits > 0 && b == '\r') {
+                    state = SIZE_LINE_FEED;
+                } else if (digits > 0 && b == '\n') {
+                    endSizeLine();
+                } else {
+                    throw malformed("Malformed chunk size");
+                }
+                break;
+            case EXTENSION:
+                if (++lineLength > MAX_TRAILER_SIZE) {
+                    throw malformed("Chunk extension too long");
+                }
+                if (b == '\n') {
+                    endSizeLine();
+                }
+                break;
+            case SIZE_LINE_FEED:
+                if (b != '\n') {
+                    throw malformed("Malformed chunk size");
+                }
+                endSizeLine();
+                break;
+            case DATA_CARRIAGE_RETURN:
+                if (b == '\r') {
+                    state = DATA_LINE_FEED;
+                } else if (b == '\n') {
+                    state = SIZE;
+                } else {
+                    throw malformed("Missing line break after chunk");
+                }
+                break;
+            case DATA_LINE_FEED:
+                if (b != '\n') {
+                    throw malformed("Missing line break after chunk");
+                }
+                state = SIZE;
+                break;
+            case TRAILER:
+                if (++trailerSize > MAX_TRAILER_SIZE) {
+                    throw malformed("Trailer section too large");
+                }
+                if (b == '\n') {
+                    if (lineLength == 0) {
+                        state = DONE;
+                    }
+                    lineLength = 0;
+                } else if (b != '\r') {
+                    lineLength++;
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unexpected decoder state " + state);
+        }
+    }
+
+    /**
+     * Finishes a chunk size line: starts the chunk data, or the trailer
+     * section after the last, empty chunk.
+     */
+    private void endSizeLine() {
+        digits = 0;
+        lineLength = 0;
+        state = remaining > 0 ? DATA : TRAILER;
+    }
+
+    /**
+     * Gets how many framed bytes the last call to {@link #decode} used. Fewer
+     * than were passed in only once the body is complete.
+     *
+     * @return the number of bytes consumed
+     */
+    int getConsumed() {
+        return consumed;
+    }
+
+    /**
+     * Gets how many bytes to read next so that nothing past the body is
+     * taken from a stream: the rest of the current content, or a single
+     * byte of framing.
+     *
+     * @param wanted how many bytes the caller would like
+     * @return a number between 1 and {@code wanted}, or 0 if the body is complete
+     */
+    int nextReadSize(int wanted) {
+        if (state == DONE) {
+            return 0;
+        }
+        return state == DATA ? (int) Math.min(wanted, remaining) : 1;
+    }
+
+    /**
+     * Checks whether the whole body has been decoded.
+     *
+     * @return true once the body has ended
+     */
+    boolean isComplete() {
+        return state == DONE;
+    }
+
+    /**
+     * Creates the error for malformed chunked framing.
+     *
+     * @param message the reason
+     * @return the exception to throw
+     */
+    private static HttpStatusException malformed(String message) {
+        return new HttpStatusException(400, message);
+    }
+}
@@ -0,0 +1,225 @@
+package co.edu.escuelaing.microserver.http;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+
+/**
+ * Request body handed from an event loop to the worker thread running the
+ * handler. The loop decodes what it reads in place and copies the content
+ * into buffers taken from a pool; the worker reads them out and returns
+ * them as it goes. At most {@link #CAPACITY} bytes wait in the pipe: once
+ * it is full the loop leaves the rest in the socket, so a handler that
+ * reads slowly slows the client down instead of filling the heap, and is
+ * told through a callback when to read again.
+ * <p>
+ * A body the handler stops reading is discarded as it arrives. Feeding,
+ * finishing and failing happen on the loop thread; reading on the worker.
+ */
+class BodyPipe extends RequestBody {
+
+    /**
+     * Size of the pooled buffers the content is copied into.
+     */
+    static final int BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * Most body bytes buffered between the loop and the handler.
+     */
+    static final int CAPACITY = 4 * BUFFER_SIZE;
+
+    private final BodyDecoder decoder;
+    private final BufferPool pool;
+    private final Runnable onRoom;
+    private final Runnable onContinue;
+    private final ArrayDeque<byte[]> buffers = new ArrayDeque<>();
+    private int readPosition;
+    private int writePosition = BUFFER_SIZE;
+    private int buffered;
+    private int failure;
+    private boolean abandoned;
+    private volatile boolean finished;
+    private volatile boolean stalled;
+
+    /**
+     * Creates a pipe for the body of a request.
+     *
+     * @param request    the request the body belongs to
+     * @param limit      the server's body size limit in bytes
+     * @param pool       the pool buffers of {@link #BUFFER_SIZE} bytes are taken from
+     * @param onRoom     asks the loop to feed the pipe again after it was full
+     * @param onContinue asks the loop to send 100 Continue
+     */
+    BodyPipe(HttpRequest request, long limit, BufferPool pool, Runnable onRoom, Runnable onContinue) {
+        super(request.getBodyLength(), limit, request.expectsContinue());
+        this.decoder = new BodyDecoder(request.getBodyLength());
+        this.pool = pool;
+        this.onRoom = onRoom;
+        this.onContinue = onContinue;
+    }
+
+    /**
+     * Decodes received bytes and queues their content for the handler, as
+     * far as the pipe has room. Called by the loop.
+     *
+     * @param bytes  the received bytes, decoded in place
+     * @param offset the first byte of the body
+     * @param length how many bytes are available
+     * @return how many of them were consumed; fewer than available once the
+     *         body has ended or while the pipe is full
+     * @throws HttpStatusException with 400 if the chunked framing is malformed
+     */
+    int feed(byte[] bytes, int offset, int length) {
+        int accepted;
+        synchronized (this) {
+            accepted = abandoned ? length : Math.min(length, CAPACITY - buffered);
+            stalled = accepted < length;
+            if (accepted == 0) {
+                return 0;
+            }
+        }
+        int decoded = decoder.decode(bytes, offset, accepted);
+        if (decoded > 0) {
+            append(bytes, offset, decoded);
+        }
+        if (decoder.isComplete()) {
+            synchronized (this) {
+                finished = true;
+                notifyAll();
+            }
+        }
+        return decoder.getConsumed();
+    }
+
+    /**
+     * Copies decoded content into the pipe, unless the handler has given
+     * up on the body.
+     *
+     * @param bytes  the content
+     * @param offset the first byte
+     * @param length the number of bytes
+     */
+    private synchronized void append(byte[] bytes, int offset, int length) {
+        if (abandoned) {
+            return;
+        }
+        while (length > 0) {
+            if (writePosition == BUFFER_SIZE) {
+                buffers.add(pool.acquire());
+                writePosition = 0;
+            }
+            int count = Math.min(length, BUFFER_SIZE - writePosition);
+            System.arraycopy(bytes, offset, buffers.getLast(), writePosition, count);
+            writePosition += count;
+            offset += count;
+            length -= count;
+            buffered += count;
+        }
+        notifyAll();
+    }
+
+    /**
+     * Makes every further read fail, after the connection closed or the
+     * body stopped arriving. Called by the loop.
+     *
+     * @param statusCode the status the reading handler fails with
+     */
+    synchronized void fail(int statusCode) {
+        if (failure == 0 && !finished) {
+            failure = statusCode;
+        }
+        notifyAll();
+    }
+
+    /**
+     * Checks whether the pipe was full the last time the loop fed it and
+     * the handler has not made room since. The loop then waits for the
+     * handler rather than for the client.
+     *
+     * @return true while the loop holds input back
+     */
+    boolean isStalled() {
+        return stalled;
+    }
+
+    @Override
+    boolean isComplete() {
+        return finished;
+    }
+
+    @Override
+    int readContent(byte[] b, int off, int len) throws IOException {
+        boolean resume;
+        int count;
+        synchronized (this) {
+            while (buffered == 0 && !finished && failure == 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while reading the request body");
+                }
+            }
+            if (failure != 0) {
+                throw new HttpStatusException(failure, "Request body not received");
+            }
+            if (buffered == 0) {
+                return -1;
+            }
+            byte[] first = buffers.getFirst();
+            int available = buffers.size() == 1 ? writePosition - readPosition
+                    : BUFFER_SIZE - readPosition;
+            count = Math.min(len, available);
+            System.arraycopy(first, readPosition, b, off, count);
+            readPosition += count;
+            buffered -= count;
+            if (buffered == 0) {
+                releaseBuffers();
+            } else if (readPosition == BUFFER_SIZE) {
+                pool.release(buffers.removeFirst());
+                readPosition = 0;
+            }
+            resume = stalled && CAPACITY - buffered >= BUFFER_SIZE;
+            if (resume) {
+                stalled = false;
+            }
+        }
+        if (resume) {
+            onRoom.run();
+        }
+        return count;
+    }
+
+    @Override
+    void sendContinue() {
+        onContinue.run();
+    }
+
+    @Override
+    void detach() {
+        super.detach();
+        boolean resume;
+        synchronized (this) {
+            abandoned = true;
+            releaseBuffers();
+            resume = stalled;
+            stalled = false;
+        }
+        if (resume) {
+            onRoom.run();
+        }
+    }
+
+    /**
+     * Returns every buffer to the pool. Called with the lock held.
+     */
+    private void releaseBuffers() {
+        for (byte[] buffer : buffers) {
+            pool.release(buffer);
+        }
+        buffers.clear();
+        buffered = 0;
+        readPosition = 0;
+        writePosition = BUFFER_SIZE;
+    }
+}
@@ -0,0 +1,72 @@
+package co.edu.escuelaing.microserver.http;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded free list of equally sized byte arrays, shared by the threads of
+ * one engine. Buffers are taken by one thread and often returned by
+ * another, so the list is lock-free. Beyond the bound, returned buffers
+ * are left to the garbage collector, which keeps a burst of traffic from
+ * pinning its peak memory for good.
+ */
+class BufferPool {
+
+    private final Queue<byte[]> free = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger freeCount = new AtomicInteger();
+    private final int bufferSize;
+    private final int maxFree;
+
+    /**
+     * Creates an empty pool.
+     *
+     * @param bufferSize the size of every buffer in bytes
+     * @param maxFree    the most idle buffers kept for reuse
+     */
+    BufferPool(int bufferSize, int maxFree) {
+        this.bufferSize = bufferSize;
+        this.maxFree = maxFree;
+    }
+
+    /**
+     * Gets the size of the pooled buffers.
+     *
+     * @return the size in bytes
+     */
+    int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Takes a buffer, allocating one if none is free.
+     *
+     * @return a buffer of {@link #getBufferSize()} bytes with arbitrary content
+     */
+    byte[] acquire() {
+        byte[] buffer = free.poll();
+        if (buffer == null) {
+            return new byte[bufferSize];
+        }
+        freeCount.decrementAndGet();
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer for reuse. The caller must not touch it afterwards.
+     * Arrays of another size are left to the garbage collector, so callers
+     * that fall back to an array of their own can release either.
+     *
+     * @param buffer a buffer taken from this pool
+     */
+    void release(byte[] buffer) {
+        if (buffer.length != bufferSize) {
+            return;
+        }
+        if (freeCount.incrementAndGet() > maxFree) {
+            freeCount.decrementAndGet();
+            return;
+        }
+        free.add(buffer);
+    }
+}
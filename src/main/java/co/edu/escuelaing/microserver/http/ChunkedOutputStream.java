@@ -0,0 +1,110 @@
+package co.edu.escuelaing.microserver.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Output stream that frames what is written to it as HTTP/1.1 chunks.
+ * Writes are buffered into chunks of up to {@link #CHUNK_SIZE} bytes; a
+ * flush sends the current chunk early. {@link #finish()} writes the last,
+ * empty chunk but leaves the underlying stream open for the next response.
+ */
+class ChunkedOutputStream extends OutputStream {
+
+    static final int CHUNK_SIZE = 8 * 1024;
+
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] LAST_CHUNK = {'0', '\r', '\n', '\r', '\n'};
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[CHUNK_SIZE];
+    private int count;
+    private boolean finished;
+
+    /**
+     * Creates a chunked stream.
+     *
+     * @param out the connection stream the chunks are written to
+     */
+    ChunkedOutputStream(OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (count == buffer.length) {
+            writeChunk();
+        }
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        ensureOpen();
+        while (length > 0) {
+            if (count == buffer.length) {
+                writeChunk();
+            }
+            int copied = Math.min(length, buffer.length - count);
+            System.arraycopy(bytes, offset, buffer, count, copied);
+            count += copied;
+            offset += copied;
+            length -= copied;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        writeChunk();
+        out.flush();
+    }
+
+    /**
+     * Sends any buffered bytes and the terminating chunk.
+     *
+     * @throws IOException if the connection fails
+     */
+    void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        writeChunk();
+        out.write(LAST_CHUNK);
+        out.flush();
+        finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+    }
+
+    /**
+     * Writes the buffered bytes as one chunk.
+     *
+     * @throws IOException if the connection fails
+     */
+    private void writeChunk() throws IOException {
+        if (count == 0) {
+            return;
+        }
+        out.write((Integer.toHexString(count) + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+        out.write(buffer, 0, count);
+        out.write(CRLF);
+        count = 0;
+    }
+
+    /**
+     * Rejects writes after the last chunk.
+     *
+     * @throws IOException if the body is already finished
+     */
+    private void ensureOpen() throws IOException {
+        if (finished) {
+            throw new IOException("Chunked body already finished");
+        }
+    }
+}
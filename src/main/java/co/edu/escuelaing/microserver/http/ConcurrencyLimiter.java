@@ -0,0 +1,127 @@
+package co.edu.escuelaing.microserver.http;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Adaptive limit on the number of requests dispatched at once, adjusted
+ * with additive increase and multiplicative decrease. Every completed
+ * request is compared against a slow moving average of recent latencies:
+ * when it took much longer the server is queueing work somewhere, so the
+ * limit is cut by a tenth, at most once per typical request time; while
+ * latency stays near the average and the limit is actually in use it grows
+ * by about one request per limit's worth of completions. Requests beyond
+ * the limit are turned away at once, which keeps the latency of admitted
+ * ones bounded instead of letting every queue grow.
+ * <p>
+ * The limit is kept as the bits of a double in an {@link AtomicLong} and
+ * the in-flight count in an {@link AtomicInteger}, so admission is one
+ * compare-and-set. The average is updated without synchronization; a
+ * sample lost to a race only delays it.
+ */
+class ConcurrencyLimiter {
+
+    private static final double TOLERANCE = 2.0;
+    private static final double BACKOFF = 0.9;
+    private static final double SMOOTHING = 0.01;
+    private static final long MIN_DECREASE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong limit;
+    private volatile double averageNanos;
+    private volatile long nextDecrease = System.nanoTime();
+
+    /**
+     * Creates a limiter that starts at its minimum and grows with demand.
+     *
+     * @param minLimit the lowest limit
+     * @param maxLimit the highest limit
+     */
+    ConcurrencyLimiter(int minLimit, int maxLimit) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = new AtomicLong(Double.doubleToLongBits(minLimit));
+    }
+
+    /**
+     * Admits a request if fewer than the limit are in flight.
+     *
+     * @return true if the request may proceed; it must then be released
+     */
+    boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) getLimitValue()) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases an admitted request and adjusts the limit by its latency.
+     *
+     * @param latencyNanos how long the request took
+     */
+    void release(long latencyNanos) {
+        int current = inFlight.getAndDecrement();
+        double average = averageNanos;
+        averageNanos = average == 0 ? latencyNanos : average + (latencyNanos - average) * SMOOTHING;
+        if (average == 0) {
+            return;
+        }
+
+        double value = getLimitValue();
+        if (latencyNanos > average * TOLERANCE) {
+            long now = System.nanoTime();
+            if (now - nextDecrease >= 0) {
+                nextDecrease = now + Math.max((long) average, MIN_DECREASE_INTERVAL_NANOS);
+                update(Math.max(minLimit, value * BACKOFF));
+            }
+        } else if (current >= value / 2 && value < maxLimit) {
+            update(Math.min(maxLimit, value + 1 / value));
+        }
+    }
+
+    /**
+     * Gets the current limit.
+     *
+     * @return the limit, rounded down
+     */
+    int getLimit() {
+        return (int) getLimitValue();
+    }
+
+    /**
+     * Gets the number of admitted requests not yet released.
+     *
+     * @return the count
+     */
+    int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Gets the fractional limit.
+     *
+     * @return the limit
+     */
+    private double getLimitValue() {
+        return Double.longBitsToDouble(limit.get());
+    }
+
+    /**
+     * Sets the limit. Concurrent adjustments may overwrite each other,
+     * which only loses one small step.
+     *
+     * @param value the new limit
+     */
+    private void update(double value) {
+        limit.set(Double.doubleToLongBits(value));
+    }
+}
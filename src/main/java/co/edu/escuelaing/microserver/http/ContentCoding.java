@@ -0,0 +1,142 @@
+package co.edu.escuelaing.microserver.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Content coding negotiation and compression with the JDK's zlib support.
+ * Only gzip and deflate are offered; brotli has no implementation in the
+ * JDK, and clients that send it also accept gzip.
+ */
+final class ContentCoding {
+
+    static final String GZIP = "gzip";
+    static final String DEFLATE = "deflate";
+
+    /** Header line telling caches that the body depends on Accept-Encoding. */
+    static final String VARY = "Vary: Accept-Encoding\r\n";
+
+    private ContentCoding() {
+    }
+
+    /**
+     * Picks the coding to use for an Accept-Encoding header, honouring
+     * q-values and preferring gzip on ties.
+     *
+     * @param acceptEncoding the header value, may be null
+     * @return {@link #GZIP}, {@link #DEFLATE}, or null for identity
+     */
+    static String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+
+        double gzip = -1;
+        double deflate = -1;
+        double any = -1;
+        for (String entry : acceptEncoding.split(",")) {
+            int semicolon = entry.indexOf(';');
+            String coding = (semicolon < 0 ? entry : entry.substring(0, semicolon)).trim();
+            double quality = semicolon < 0 ? 1 : parseQuality(entry.substring(semicolon + 1));
+            if (coding.equalsIgnoreCase(GZIP) || coding.equalsIgnoreCase("x-gzip")) {
+                gzip = Math.max(gzip, quality);
+            } else if (coding.equalsIgnoreCase(DEFLATE)) {
+                deflate = Math.max(deflate, quality);
+            } else if (coding.equals("*")) {
+                any = quality;
+            }
+        }
+        if (gzip < 0) {
+            gzip = any;
+        }
+        if (deflate < 0) {
+            deflate = any;
+        }
+
+        if (gzip > 0 && gzip >= deflate) {
+            return GZIP;
+        }
+        return deflate > 0 ? DEFLATE : null;
+    }
+
+    /**
+     * Checks whether a content type is worth compressing. Images and other
+     * binary formats are already compressed.
+     *
+     * @param contentType the content type
+     * @return true for text-like content
+     */
+    static boolean isCompressible(String contentType) {
+        return contentType.startsWith("text/")
+                || contentType.startsWith("application/javascript")
+                || contentType.startsWith("application/json")
+                || contentType.startsWith("application/xml")
+                || contentType.startsWith("image/svg+xml");
+    }
+
+    /**
+     * Compresses a body.
+     *
+     * @param content the uncompressed bytes
+     * @param coding  {@link #GZIP} or {@link #DEFLATE}
+     * @return the compressed bytes
+     */
+    static byte[] compress(byte[] content, String coding) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, content.length / 3));
+        try (OutputStream out = wrap(compressed, coding)) {
+            out.write(content);
+        } catch (IOException e) {
+            throw new UncheckedIOException("In-memory compression failed", e);
+        }
+        return compressed.toByteArray();
+    }
+
+    /**
+     * Wraps a stream so that what is written to it is compressed. Flushing
+     * the returned stream flushes the compressor as well, so streamed
+     * responses still reach the client incrementally.
+     *
+     * @param out    the stream receiving compressed bytes
+     * @param coding {@link #GZIP} or {@link #DEFLATE}
+     * @return the compressing stream
+     * @throws IOException if the gzip header cannot be written
+     */
+    static DeflaterOutputStream wrap(OutputStream out, String coding) throws IOException {
+        if (GZIP.equals(coding)) {
+            return new GZIPOutputStream(out, 8192, true);
+        }
+        return new DeflaterOutputStream(out, true);
+    }
+
+    /**
+     * Encodes the headers announcing a coding.
+     *
+     * @param coding the coding
+     * @return the header lines
+     */
+    static String headers(String coding) {
+        return "Content-Encoding: " + coding + "\r\n" + VARY;
+    }
+
+    /**
+     * Parses the q parameter of an Accept-Encoding entry.
+     *
+     * @param parameters the text after the coding name
+     * @return the quality, 1 if absent and 0 if malformed
+     */
+    private static double parseQuality(String parameters) {
+        String parameter = parameters.trim();
+        if (!parameter.startsWith("q=")) {
+            return 1;
+        }
+        try {
+            return Double.parseDouble(parameter.substring(2).trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package co.edu.escuelaing.microserver.http;
+
+/**
+ * Connection deadlines enforced by the engines, as counted in the metrics.
+ */
+enum Deadline {
+
+    /**
+     * A persistent connection sat without a request for longer than the
+     * keep-alive timeout. The connection is closed.
+     */
+    IDLE("idle"),
+
+    /**
+     * A request head took longer than the header timeout to arrive. The
+     * client gets 408 Request Timeout and the connection is closed.
+     */
+    HEADER("header"),
+
+    /**
+     * A client paused for longer than the body timeout while sending a
+     * request body. The handler reading it fails and the connection is
+     * closed.
+     */
+    BODY("body"),
+
+    /**
+     * A request was not answered completely within the request timeout,
+     * usually because the client stopped reading. The connection is closed.
+     */
+    REQUEST("request");
+
+    private final String label;
+
+    /**
+     * Creates a deadline kind.
+     *
+     * @param label the metric label
+     */
+    Deadline(String label) {
+        this.label = label;
+    }
+
+    /**
+     * Gets the label the deadline is reported under.
+     *
+     * @return the metric label
+     */
+    String getLabel() {
+        return label;
+    }
+}
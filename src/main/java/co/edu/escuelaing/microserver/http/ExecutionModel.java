@@ -0,0 +1,18 @@
+package co.edu.escuelaing.microserver.http;
+
+/**
+ * Strategies used by the server to run accepted connections.
+ */
+public enum ExecutionModel {
+
+    /**
+     * Connections are handled by a bounded pool of platform threads.
+     */
+    PLATFORM_THREADS,
+
+    /**
+     * Each connection gets its own virtual thread. Falls back to
+     * {@link #PLATFORM_THREADS} when the running JDK has no virtual threads.
+     */
+    VIRTUAL_THREADS
+}
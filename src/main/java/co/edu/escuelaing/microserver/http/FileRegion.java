@@ -0,0 +1,80 @@
+package co.edu.escuelaing.microserver.http;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Response body that is sent straight from a file to the socket with
+ * {@link FileChannel#transferTo}, which the JDK maps to sendfile(2) where
+ * available. The content never passes through the Java heap.
+ */
+class FileRegion {
+
+    private final Path file;
+    private final long offset;
+    private final long length;
+
+    /**
+     * Creates a region of a file.
+     *
+     * @param file   the file
+     * @param offset the first byte to send
+     * @param length the number of bytes to send
+     */
+    FileRegion(Path file, long offset, long length) {
+        this.file = file;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Gets the number of bytes in the region.
+     *
+     * @return the length
+     */
+    long getLength() {
+        return length;
+    }
+
+    /**
+     * Gets the first byte to send.
+     *
+     * @return the offset
+     */
+    long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Opens the file for reading.
+     *
+     * @return the file channel
+     * @throws IOException if the file cannot be opened
+     */
+    FileChannel open() throws IOException {
+        return FileChannel.open(file, StandardOpenOption.READ);
+    }
+
+    /**
+     * Sends the whole region to a blocking channel.
+     *
+     * @param target the socket channel
+     * @throws IOException if the transfer fails or the file shrank
+     */
+    void transferTo(WritableByteChannel target) throws IOException {
+        try (FileChannel channel = open()) {
+            long position = offset;
+            long end = offset + length;
+            while (position < end) {
+                long sent = channel.transferTo(position, end - position, target);
+                if (sent <= 0 && position >= channel.size()) {
+                    throw new IOException("File shrank while being sent: " + file);
+                }
+                position += sent;
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package co.edu.escuelaing.microserver.http;
+
+import java.io.IOException;
+
+/**
+ * Request body pulled straight from the connection by the thread running
+ * the handler. Framed bytes are read into the caller's array and decoded
+ * there, so the body passes through no buffer of its own; the decoder
+ * sizes every read so that nothing past the end of the body is taken from
+ * the connection.
+ */
+class FramedBody extends RequestBody {
+
+    private final BodyDecoder decoder;
+    private final Source source;
+
+    /**
+     * Creates a body read from a source.
+     *
+     * @param request the request the body belongs to
+     * @param limit   the server's body size limit in bytes
+     * @param source  where the framed bytes come from
+     */
+    FramedBody(HttpRequest request, long limit, Source source) {
+        super(request.getBodyLength(), limit, request.expectsContinue());
+        this.decoder = new BodyDecoder(request.getBodyLength());
+        this.source = source;
+    }
+
+    @Override
+    int readContent(byte[] b, int off, int len) throws IOException {
+        while (true) {
+            int wanted = decoder.nextReadSize(len);
+            if (wanted == 0) {
+                return -1;
+            }
+            int read = source.read(b, off, wanted);
+            if (read < 0) {
+                throw new HttpStatusException(400, "Request body ended early");
+            }
+            int decoded = decoder.decode(b, off, read);
+            if (decoded > 0) {
+                return decoded;
+            }
+        }
+    }
+
+    @Override
+    void sendContinue() throws IOException {
+        source.sendContinue();
+    }
+
+    @Override
+    boolean isComplete() {
+        return decoder.isComplete();
+    }
+
+    /**
+     * Connection a framed body is read from.
+     */
+    interface Source {
+
+        /**
+         * Reads framed body bytes, blocking until at least one arrives.
+         *
+         * @param b   the destination
+         * @param off the first index to fill
+         * @param len the most bytes to read
+         * @return the number of bytes read, or -1 if the connection ended
+         * @throws IOException if reading fails
+         */
+        int read(byte[] b, int off, int len) throws IOException;
+
+        /**
+         * Writes the 100 Continue interim response.
+         *
+         * @throws IOException if writing fails
+         */
+        void sendContinue() throws IOException;
+    }
+
+    /**
+     * Body that was received in full before its handler runs, read
+     * straight from the array holding it.
+     */
+    static class ArraySource implements Source {
+        private final byte[] bytes;
+        private final int end;
+        private int position;
+
+        /**
+         * Creates a source over a region of an array.
+         *
+         * @param bytes  the array
+         * @param offset the first byte of the body
+         * @param length the length of the body
+         */
+        ArraySource(byte[] bytes, int offset, int length) {
+            this.bytes = bytes;
+            this.position = offset;
+            this.end = offset + length;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (position == end) {
+                return -1;
+            }
+            int count = Math.min(len, end - position);
+            System.arraycopy(bytes, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void sendContinue() {
+            // The client sent the body without waiting.
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package co.edu.escuelaing.microserver.http;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * HPACK header table (RFC 7541, section 2.3): the 61 predefined entries of
+ * the static table followed by a dynamic table of recently sent fields.
+ * The dynamic table is a ring of name and value arrays, newest first, and
+ * evicts its oldest entries to stay within its size bound. Each side of a
+ * connection keeps one table per direction, so an instance is only used
+ * by one coder.
+ */
+class HeaderTable {
+
+    /**
+     * Size of the dynamic table unless the peer agrees to another.
+     */
+    static final int DEFAULT_MAX_SIZE = 4096;
+
+    /**
+     * Size accounted for each entry on top of its name and value.
+     */
+    private static final int ENTRY_OVERHEAD = 32;
+
+    private static final String[][] STATIC = {
+        {":authority", ""}, {":method", "GET"}, {":method", "POST"}, {":path", "/"},
+        {":path", "/index.html"}, {":scheme", "http"}, {":scheme", "https"}, {":status", "200"},
+        {":status", "204"}, {":status", "206"}, {":status", "304"}, {":status", "400"},
+        {":status", "404"}, {":status", "500"}, {"accept-charset", ""}, {"accept-encoding", "gzip, deflate"},
+        {"accept-language", ""}, {"accept-ranges", ""}, {"accept", ""}, {"access-control-allow-origin", ""},
+        {"age", ""}, {"allow", ""}, {"authorization", ""}, {"cache-control", ""},
+        {"content-disposition", ""}, {"content-encoding", ""}, {"content-language", ""}, {"content-length", ""},
+        {"content-location", ""}, {"content-range", ""}, {"content-type", ""}, {"cookie", ""},
+        {"date", ""}, {"etag", ""}, {"expect", ""}, {"expires", ""},
+        {"from", ""}, {"host", ""}, {"if-match", ""}, {"if-modified-since", ""},
+        {"if-none-match", ""}, {"if-range", ""}, {"if-unmodified-since", ""}, {"last-modified", ""},
+        {"link", ""}, {"location", ""}, {"max-forwards", ""}, {"proxy-authenticate", ""},
+        {"proxy-authorization", ""}, {"range", ""}, {"referer", ""}, {"refresh", ""},
+        {"retry-after", ""}, {"server", ""}, {"set-cookie", ""}, {"strict-transport-security", ""},
+        {"transfer-encoding", ""}, {"user-agent", ""}, {"vary", ""}, {"via", ""},
+        {"www-authenticate", ""}
+    };
+
+    /**
+     * Static indexes by name, and by name and value joined with a NUL.
+     */
+    private static final Map<String, Integer> STATIC_INDEX = new HashMap<>();
+
+    static {
+        for (int i = STATIC.length - 1; i >= 0; i--) {
+            STATIC_INDEX.put(STATIC[i][0], i + 1);
+            STATIC_INDEX.put(STATIC[i][0] + '\0' + STATIC[i][1], i + 1);
+        }
+    }
+
+    private String[] names = new String[16];
+    private String[] values = new String[16];
+    private int first;
+    private int count;
+    private int size;
+    private int maxSize;
+
+    /**
+     * Creates a table with an empty dynamic part.
+     *
+     * @param maxSize the bound of the dynamic table, in HPACK size units
+     */
+    HeaderTable(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Gets the highest valid index.
+     *
+     * @return the number of static and dynamic entries
+     */
+    int length() {
+        return STATIC.length + count;
+    }
+
+    /**
+     * Gets the name of an entry.
+     *
+     * @param index the HPACK index, from 1 to {@link #length()}
+     * @return the name
+     */
+    String name(int index) {
+        return index <= STATIC.length ? STATIC[index - 1][0] : names[slot(index)];
+    }
+
+    /**
+     * Gets the value of an entry.
+     *
+     * @param index the HPACK index, from 1 to {@link #length()}
+     * @return the value
+     */
+    String value(int index) {
+        return index <= STATIC.length ? STATIC[index - 1][1] : values[slot(index)];
+    }
+
+    /**
+     * Looks a field up, preferring an entry that matches both name and
+     * value over one that only matches the name.
+     *
+     * @param name  the field name
+     * @param value the field value
+     * @return the index of an exact match, the negated index of a name
+     *         match, or 0 if neither exists
+     */
+    int find(String name, String value) {
+        Integer exact = STATIC_INDEX.get(name + '\0' + value);
+        if (exact != null) {
+            return exact;
+        }
+        int nameMatch = 0;
+        for (int i = 0; i < count; i++) {
+            int slot = (first + count - 1 - i) & (names.length - 1);
+            if (names[slot].equals(name)) {
+                if (values[slot].equals(value)) {
+                    return STATIC.length + 1 + i;
+                }
+                if (nameMatch == 0) {
+                    nameMatch = STATIC.length + 1 + i;
+                }
+            }
+        }
+        Integer staticName = STATIC_INDEX.get(name);
+        if (staticName != null) {
+            return -staticName;
+        }
+        return -nameMatch;
+    }
+
+    /**
+     * Adds a field as the newest dynamic entry, evicting old entries to
+     * make room. A field larger than the whole table empties it.
+     *
+     * @param name  the field name
+     * @param value the field value
+     */
+    void add(String name, String value) {
+        int entrySize = name.length() + value.length() + ENTRY_OVERHEAD;
+        evict(maxSize - entrySize);
+        if (entrySize > maxSize) {
+            return;
+        }
+        if (count == names.length) {
+            grow();
+        }
+        int slot = (first + count) & (names.length - 1);
+        names[slot] = name;
+        values[slot] = value;
+        count++;
+        size += entrySize;
+    }
+
+    /**
+     * Changes the bound of the dynamic table, evicting entries if it shrinks.
+     *
+     * @param maxSize the new bound
+     */
+    void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        evict(maxSize);
+    }
+
+    /**
+     * Gets the bound of the dynamic table.
+     *
+     * @return the bound, in HPACK size units
+     */
+    int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Evicts the oldest entries until the table fits a size.
+     *
+     * @param target the size to fit
+     */
+    private void evict(int target) {
+        while (count > 0 && size > target) {
+            size -= names[first].length() + values[first].length() + ENTRY_OVERHEAD;
+            names[first] = null;
+            values[first] = null;
+            first = (first + 1) & (names.length - 1);
+            count--;
+        }
+    }
+
+    /**
+     * Doubles the ring, keeping the entries in order.
+     */
+    private void grow() {
+        String[] grownNames = new String[names.length * 2];
+        String[] grownValues = new String[values.length * 2];
+        for (int i = 0; i < count; i++) {
+            grownNames[i] = names[(first + i) & (names.length - 1)];
+            grownValues[i] = values[(first + i) & (values.length - 1)];
+        }
+        names = grownNames;
+        values = grownValues;
+        first = 0;
+    }
+
+    /**
+     * Finds the ring slot of a dynamic entry.
+     *
+     * @param index the HPACK index, above the static table
+     * @return the slot
+     */
+    private int slot(int index) {
+        return (first + count - 1 - (index - STATIC.length - 1)) & (names.length - 1);
+    }
+}
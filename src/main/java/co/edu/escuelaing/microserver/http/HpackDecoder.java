@@ -0,0 +1,170 @@
+package co.edu.escuelaing.microserver.http;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes HPACK header blocks (RFC 7541) received on one connection. The
+ * dynamic table is bounded by the size this server advertised, and the
+ * decoded list by a header list limit, so a small block that references
+ * large table entries over and over cannot inflate into a large request.
+ */
+class HpackDecoder {
+
+    private final HeaderTable table;
+    private final int maxTableSize;
+    private final int maxListSize;
+
+    /**
+     * Creates a decoder.
+     *
+     * @param maxTableSize the dynamic table size advertised to the peer
+     * @param maxListSize  the largest header list accepted, in HPACK size units
+     */
+    HpackDecoder(int maxTableSize, int maxListSize) {
+        this.table = new HeaderTable(maxTableSize);
+        this.maxTableSize = maxTableSize;
+        this.maxListSize = maxListSize;
+    }
+
+    /**
+     * Decodes a complete header block. The whole block is always decoded,
+     * since the dynamic table must stay in step with the peer's even when
+     * the fields are refused.
+     *
+     * @param block  the bytes of the header block
+     * @param offset the first byte
+     * @param length the number of bytes
+     * @return names and values in alternating order, or null if the list
+     *         is larger than the limit
+     * @throws Http2Exception with COMPRESSION_ERROR if the block is malformed
+     */
+    List<String> decode(byte[] block, int offset, int length) throws Http2Exception {
+        List<String> fields = new ArrayList<>();
+        long listSize = 0;
+        int[] position = {offset};
+        int end = offset + length;
+        boolean fieldSeen = false;
+        while (position[0] < end) {
+            int first = block[position[0]] & 0xff;
+            String name;
+            String value;
+            if ((first & 0x80) != 0) {
+                int index = decodeInteger(block, position, end, 7);
+                checkIndex(index);
+                name = table.name(index);
+                value = table.value(index);
+            } else if ((first & 0xe0) == 0x20) {
+                if (fieldSeen) {
+                    throw compressionError("Table size update after a header field");
+                }
+                int size = decodeInteger(block, position, end, 5);
+                if (size > maxTableSize) {
+                    throw compressionError("Table size update above the advertised limit");
+                }
+                table.setMaxSize(size);
+                continue;
+            } else {
+                boolean indexed = (first & 0xc0) == 0x40;
+                int index = decodeInteger(block, position, end, indexed ? 6 : 4);
+                if (index == 0) {
+                    name = decodeString(block, position, end);
+                } else {
+                    checkIndex(index);
+                    name = table.name(index);
+                }
+                value = decodeString(block, position, end);
+                if (indexed) {
+                    table.add(name, value);
+                }
+            }
+            fieldSeen = true;
+            listSize += name.length() + value.length() + 32;
+            if (listSize <= maxListSize) {
+                fields.add(name);
+                fields.add(value);
+            }
+        }
+        return listSize <= maxListSize ? fields : null;
+    }
+
+    /**
+     * Checks that an index refers to an existing entry.
+     *
+     * @param index the HPACK index
+     * @throws Http2Exception with COMPRESSION_ERROR if it does not
+     */
+    private void checkIndex(int index) throws Http2Exception {
+        if (index == 0 || index > table.length()) {
+            throw compressionError("Invalid header table index " + index);
+        }
+    }
+
+    /**
+     * Decodes a prefixed integer (RFC 7541, section 5.1).
+     *
+     * @param block    the header block
+     * @param position the current position, advanced past the integer
+     * @param end      the end of the block
+     * @param prefix   the number of bits of the first byte holding the integer
+     * @return the integer
+     * @throws Http2Exception with COMPRESSION_ERROR if it is truncated or too large
+     */
+    private static int decodeInteger(byte[] block, int[] position, int end, int prefix) throws Http2Exception {
+        int mask = (1 << prefix) - 1;
+        int value = block[position[0]++] & mask;
+        if (value < mask) {
+            return value;
+        }
+        int shift = 0;
+        while (true) {
+            if (position[0] == end) {
+                throw compressionError("Truncated integer");
+            }
+            int next = block[position[0]++] & 0xff;
+            if (shift > 21) {
+                throw compressionError("Integer too large");
+            }
+            value += (next & 0x7f) << shift;
+            shift += 7;
+            if ((next & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Decodes a string literal, plain or Huffman-coded.
+     *
+     * @param block    the header block
+     * @param position the current position, advanced past the string
+     * @param end      the end of the block
+     * @return the string, one char per octet
+     * @throws Http2Exception with COMPRESSION_ERROR if it is malformed
+     */
+    private static String decodeString(byte[] block, int[] position, int end) throws Http2Exception {
+        if (position[0] == end) {
+            throw compressionError("Missing string literal");
+        }
+        boolean huffman = (block[position[0]] & 0x80) != 0;
+        int length = decodeInteger(block, position, end, 7);
+        if (length > end - position[0]) {
+            throw compressionError("Truncated string literal");
+        }
+        int start = position[0];
+        position[0] += length;
+        return huffman ? Huffman.decode(block, start, length)
+                : new String(block, start, length, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Creates the error for a malformed header block.
+     *
+     * @param message the reason
+     * @return the exception to throw
+     */
+    private static Http2Exception compressionError(String message) {
+        return new Http2Exception(Http2Exception.COMPRESSION_ERROR, message);
+    }
+}
@@ -0,0 +1,150 @@
+package co.edu.escuelaing.microserver.http;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Encodes response header blocks with HPACK (RFC 7541). Fields found in
+ * the static or dynamic table go out as a single index; fields whose
+ * values tend to repeat across responses, such as the content type, are
+ * added to the dynamic table the first time; per-response values such as
+ * lengths and validators are sent as literals without indexing. Literals
+ * are Huffman-coded when that is shorter. The block is built in a reused
+ * array, so callers must write it out before encoding the next one.
+ */
+class HpackEncoder {
+
+    private static final List<String> NOT_INDEXED = List.of(
+            "content-length", "content-range", "date", "etag", "last-modified", "set-cookie", "retry-after");
+
+    private final HeaderTable table = new HeaderTable(HeaderTable.DEFAULT_MAX_SIZE);
+    private byte[] block = new byte[256];
+    private int length;
+    private int smallestPendingSize = -1;
+
+    /**
+     * Applies the table size the peer allows, announcing the change at
+     * the start of the next block. Sizes above the default are not used.
+     *
+     * @param peerMaxSize the peer's SETTINGS_HEADER_TABLE_SIZE
+     */
+    void setMaxTableSize(int peerMaxSize) {
+        int size = Math.min(peerMaxSize, HeaderTable.DEFAULT_MAX_SIZE);
+        if (size == table.getMaxSize() && smallestPendingSize < 0) {
+            return;
+        }
+        smallestPendingSize = smallestPendingSize < 0 ? size : Math.min(smallestPendingSize, size);
+        table.setMaxSize(size);
+    }
+
+    /**
+     * Encodes the header block of a response.
+     *
+     * @param statusCode the status code
+     * @param fields     lower-case names and values in alternating order
+     * @return the length of the block, available from {@link #getBlock()}
+     */
+    int encode(int statusCode, List<String> fields) {
+        length = 0;
+        if (smallestPendingSize >= 0) {
+            encodeInteger(0x20, 5, smallestPendingSize);
+            if (smallestPendingSize != table.getMaxSize()) {
+                encodeInteger(0x20, 5, table.getMaxSize());
+            }
+            smallestPendingSize = -1;
+        }
+        encodeField(":status", Integer.toString(statusCode));
+        for (int i = 0; i < fields.size(); i += 2) {
+            encodeField(fields.get(i), fields.get(i + 1));
+        }
+        return length;
+    }
+
+    /**
+     * Gets the array holding the last encoded block.
+     *
+     * @return the block, valid up to the length returned by {@link #encode}
+     */
+    byte[] getBlock() {
+        return block;
+    }
+
+    /**
+     * Encodes one field.
+     *
+     * @param name  the lower-case name
+     * @param value the value
+     */
+    private void encodeField(String name, String value) {
+        int index = table.find(name, value);
+        if (index > 0) {
+            encodeInteger(0x80, 7, index);
+            return;
+        }
+        boolean indexed = !NOT_INDEXED.contains(name);
+        if (indexed) {
+            encodeInteger(0x40, 6, -index);
+            table.add(name, value);
+        } else {
+            encodeInteger(0x00, 4, -index);
+        }
+        if (index == 0) {
+            encodeString(name);
+        }
+        encodeString(value);
+    }
+
+    /**
+     * Encodes a string literal, Huffman-coded if that is shorter.
+     *
+     * @param text the ISO-8859-1 text
+     */
+    private void encodeString(String text) {
+        int huffmanLength = Huffman.encodedLength(text);
+        if (huffmanLength < text.length()) {
+            encodeInteger(0x80, 7, huffmanLength);
+            ensureCapacity(huffmanLength);
+            length = Huffman.encode(text, block, length);
+            return;
+        }
+        encodeInteger(0x00, 7, text.length());
+        ensureCapacity(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            block[length++] = (byte) text.charAt(i);
+        }
+    }
+
+    /**
+     * Encodes a prefixed integer (RFC 7541, section 5.1).
+     *
+     * @param pattern the bits above the prefix in the first byte
+     * @param prefix  the number of bits of the first byte holding the integer
+     * @param value   the integer
+     */
+    private void encodeInteger(int pattern, int prefix, int value) {
+        ensureCapacity(6);
+        int mask = (1 << prefix) - 1;
+        if (value < mask) {
+            block[length++] = (byte) (pattern | value);
+            return;
+        }
+        block[length++] = (byte) (pattern | mask);
+        value -= mask;
+        while (value >= 0x80) {
+            block[length++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        block[length++] = (byte) value;
+    }
+
+    /**
+     * Grows the block array so that more bytes fit.
+     *
+     * @param extra the number of bytes about to be written
+     */
+    private void ensureCapacity(int extra) {
+        if (length + extra > block.length) {
+            block = Arrays.copyOf(block, Math.max(block.length * 2, length + extra));
+        }
+    }
+}
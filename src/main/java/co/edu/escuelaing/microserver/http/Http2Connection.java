@@ -0,0 +1,1505 @@
+package co.edu.escuelaing.microserver.http;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * HTTP/2 over cleartext TCP (h2c, RFC 9113) on a connection of the
+ * blocking engine, entered either with the prior-knowledge preface or by
+ * upgrading an HTTP/1.1 request. The connection thread only reads frames
+ * and decodes header blocks; each complete request is handed to a pool of
+ * stream workers, so the streams of one connection are served concurrently
+ * and their responses interleave on the socket instead of queueing behind
+ * each other as pipelined HTTP/1.1 requests do.
+ * <p>
+ * Each request head is rebuilt as an HTTP/1.1 head and parsed by the usual
+ * {@link HttpRequestParser}, so routing, limits and handlers see the same
+ * request as over HTTP/1. Request bodies are collected in full, up to the
+ * body size limit, before the handler runs; received data is acknowledged
+ * as soon as it is buffered. Frames are written under one lock, with the
+ * header block encoded while it is held so that the peer's HPACK table
+ * sees blocks in the order they were encoded. Response data is sent
+ * within the peer's connection and stream windows, the writing worker
+ * waiting for a WINDOW_UPDATE when they are exhausted, never the
+ * connection thread.
+ * <p>
+ * Server push and stream priorities are not implemented: push is never
+ * used and priority signals are ignored.
+ */
+class Http2Connection {
+
+    /**
+     * The client connection preface.
+     */
+    static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+    private static final byte[] SWITCHING_PROTOCOLS =
+            "HTTP/1.1 101 Switching Protocols\r\nConnection: Upgrade\r\nUpgrade: h2c\r\n\r\n"
+                    .getBytes(StandardCharsets.ISO_8859_1);
+
+    private static final String VERSION = "HTTP/2.0";
+
+    private static final int DATA = 0x0;
+    private static final int HEADERS = 0x1;
+    private static final int PRIORITY = 0x2;
+    private static final int RST_STREAM = 0x3;
+    private static final int SETTINGS = 0x4;
+    private static final int PUSH_PROMISE = 0x5;
+    private static final int PING = 0x6;
+    private static final int GOAWAY = 0x7;
+    private static final int WINDOW_UPDATE = 0x8;
+    private static final int CONTINUATION = 0x9;
+
+    private static final int FLAG_END_STREAM = 0x1;
+    private static final int FLAG_ACK = 0x1;
+    private static final int FLAG_END_HEADERS = 0x4;
+    private static final int FLAG_PADDED = 0x8;
+    private static final int FLAG_PRIORITY = 0x20;
+
+    private static final int SETTINGS_HEADER_TABLE_SIZE = 0x1;
+    private static final int SETTINGS_ENABLE_PUSH = 0x2;
+    private static final int SETTINGS_MAX_CONCURRENT_STREAMS = 0x3;
+    private static final int SETTINGS_INITIAL_WINDOW_SIZE = 0x4;
+    private static final int SETTINGS_MAX_FRAME_SIZE = 0x5;
+    private static final int SETTINGS_MAX_HEADER_LIST_SIZE = 0x6;
+
+    private static final int FRAME_HEADER_LENGTH = 9;
+    private static final int DEFAULT_FRAME_SIZE = 16 * 1024;
+    private static final int MAX_FRAME_SIZE = 16 * 1024 * 1024 - 1;
+    private static final int DEFAULT_WINDOW = 65535;
+    private static final long MAX_WINDOW = Integer.MAX_VALUE;
+
+    /**
+     * Receive window of the connection, larger than the default so that
+     * several streams can upload at once without waiting for updates.
+     */
+    private static final int CONNECTION_WINDOW = 1024 * 1024;
+
+    /**
+     * Streams a client may have open at once.
+     */
+    private static final int MAX_CONCURRENT_STREAMS = 100;
+
+    /**
+     * Fields that only make sense on an HTTP/1 connection and are
+     * malformed in an HTTP/2 request or dropped from a response head.
+     */
+    private static final List<String> CONNECTION_HEADERS =
+            List.of("connection", "keep-alive", "proxy-connection", "transfer-encoding", "upgrade");
+
+    private final ServerConfig config;
+    private final RequestProcessor processor;
+    private final ServerMetrics metrics;
+    private final ServerLog log;
+    private final Executor workers;
+    private final RequestReader in;
+    private final OutputStream out;
+    private final String remoteAddress;
+    private final ObjLongConsumer<Deadline> watch;
+    private final HttpRequestParser parser;
+    private final HpackDecoder decoder;
+    private final HpackEncoder encoder = new HpackEncoder();
+    private final int maxHeaderListSize;
+    private final Map<Integer, Stream> streams = new ConcurrentHashMap<>();
+    private final Object writeLock = new Object();
+    private final Object flowLock = new Object();
+    private final byte[] frameHeader = new byte[FRAME_HEADER_LENGTH];
+    private final byte[] payload = new byte[DEFAULT_FRAME_SIZE];
+    private final byte[] outHeader = new byte[FRAME_HEADER_LENGTH];
+    private byte[] headerBlock = new byte[1024];
+    private int headerBlockLength;
+    private int headerBlockStream;
+    private int headerBlockFlags;
+    private int lastStreamId;
+    private int receiveWindow = CONNECTION_WINDOW;
+    private int unacknowledged;
+    private long sendWindow = DEFAULT_WINDOW;
+    private int initialSendWindow = DEFAULT_WINDOW;
+    private volatile int peerMaxFrameSize = DEFAULT_FRAME_SIZE;
+    private volatile boolean closed;
+
+    /**
+     * Creates the HTTP/2 state of a blocking connection.
+     *
+     * @param config        the server configuration
+     * @param processor     processes the requests of every stream
+     * @param metrics       the server metrics
+     * @param log           the server log
+     * @param workers       runs the streams
+     * @param in            the connection's reader, positioned at the preface
+     * @param out           the connection's buffered output stream
+     * @param remoteAddress the client address
+     * @param watch         moves the connection's deadline
+     */
+    Http2Connection(ServerConfig config, RequestProcessor processor, ServerMetrics metrics, ServerLog log,
+            Executor workers, RequestReader in, OutputStream out, String remoteAddress,
+            ObjLongConsumer<Deadline> watch) {
+        this.config = config;
+        this.processor = processor;
+        this.metrics = metrics;
+        this.log = log;
+        this.workers = workers;
+        this.in = in;
+        this.out = out;
+        this.remoteAddress = remoteAddress;
+        this.watch = watch;
+        this.parser = new HttpRequestParser(config);
+        this.maxHeaderListSize = config.getMaxHeaderSize() + 32 * config.getMaxHeaderCount();
+        this.decoder = new HpackDecoder(HeaderTable.DEFAULT_MAX_SIZE, maxHeaderListSize);
+    }
+
+    /**
+     * Gets the settings an HTTP/1.1 request offers for upgrading to h2c.
+     * Only bodyless requests are upgraded, so the request never has to be
+     * read further once the protocol has switched.
+     *
+     * @param request the parsed HTTP/1 request
+     * @return the decoded SETTINGS payload, or null if the request does not
+     *         ask for a valid upgrade
+     */
+    static byte[] upgradeSettings(HttpRequest request) {
+        String settings = request.getHeader("HTTP2-Settings");
+        if (settings == null || !"HTTP/1.1".equals(request.getVersion()) || request.hasBody()
+                || !request.headerContainsToken("Upgrade", "h2c")
+                || !request.headerContainsToken("Connection", "Upgrade")
+                || !request.headerContainsToken("Connection", "HTTP2-Settings")) {
+            return null;
+        }
+        try {
+            byte[] decoded = Base64.getUrlDecoder().decode(settings.trim());
+            return decoded.length % 6 == 0 ? decoded : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Serves the connection until the client closes it, it stays idle past
+     * the keep-alive timeout or the client breaks the protocol, and says
+     * goodbye with GOAWAY.
+     *
+     * @param upgraded the request that asked for the upgrade, answered on
+     *                 stream 1, or null after the prior-knowledge preface
+     * @param settings the settings sent with the upgrade request, or null
+     * @throws IOException if the connection fails
+     */
+    void serve(HttpRequest upgraded, byte[] settings) throws IOException {
+        int errorCode = Http2Exception.NO_ERROR;
+        Stream upgradeStream = upgraded != null ? openUpgradeStream(upgraded) : null;
+        try {
+            if (upgradeStream != null) {
+                synchronized (writeLock) {
+                    out.write(SWITCHING_PROTOCOLS);
+                }
+                applySettings(settings, settings.length);
+            }
+            writeSettings();
+            if (upgradeStream != null) {
+                dispatch(upgradeStream);
+            }
+            updateDeadline();
+            readPreface();
+            while (readFrame()) {
+                // Each frame is handled as it is read.
+            }
+        } catch (Http2Exception e) {
+            errorCode = e.getErrorCode();
+            log.error("HTTP/2 connection error from " + remoteAddress + ": " + e.getMessage());
+        } finally {
+            closed = true;
+            synchronized (flowLock) {
+                flowLock.notifyAll();
+            }
+            if (upgradeStream != null && !upgradeStream.dispatched) {
+                // The upgrade request was counted as parsed; the switch itself failed.
+                metrics.responseAborted(ServerMetrics.ROUTE_INVALID, 101);
+            }
+        }
+        writeGoAway(errorCode);
+    }
+
+    /**
+     * Reads the client preface, which follows the server's settings.
+     *
+     * @throws IOException if it is missing or reading fails
+     */
+    private void readPreface() throws IOException {
+        byte[] preface = new byte[PREFACE.length];
+        if (!readFully(preface, preface.length, true) || !Arrays.equals(preface, PREFACE)) {
+            throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Missing connection preface");
+        }
+        if (!readFully(frameHeader, FRAME_HEADER_LENGTH, false) || (frameHeader[3] & 0xff) != SETTINGS
+                || (frameHeader[4] & FLAG_ACK) != 0) {
+            throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Connection preface without SETTINGS");
+        }
+        handleFrame();
+    }
+
+    /**
+     * Reads and handles the next frame.
+     *
+     * @return false if the client closed the connection between frames
+     * @throws IOException if the connection fails or the client breaks the protocol
+     */
+    private boolean readFrame() throws IOException {
+        if (!readFully(frameHeader, FRAME_HEADER_LENGTH, true)) {
+            return false;
+        }
+        handleFrame();
+        return true;
+    }
+
+    /**
+     * Reads the payload of the frame whose header was just read and acts on
+     * it. Stream errors reset the stream and leave the connection open.
+     *
+     * @throws IOException if the connection fails or the client breaks the protocol
+     */
+    private void handleFrame() throws IOException {
+        int length = ((frameHeader[0] & 0xff) << 16) | ((frameHeader[1] & 0xff) << 8) | (frameHeader[2] & 0xff);
+        int type = frameHeader[3] & 0xff;
+        int flags = frameHeader[4] & 0xff;
+        int streamId = readInt(frameHeader, 5) & 0x7fffffff;
+        if (length > DEFAULT_FRAME_SIZE) {
+            throw new Http2Exception(Http2Exception.FRAME_SIZE_ERROR, "Frame of " + length + " bytes");
+        }
+        readFully(payload, length, false);
+        if (headerBlockStream != 0 && (type != CONTINUATION || streamId != headerBlockStream)) {
+            throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Header block interrupted");
+        }
+        try {
+            switch (type) {
+                case DATA:
+                    onData(streamId, flags, length);
+                    break;
+                case HEADERS:
+                    onHeaders(streamId, flags, length);
+                    break;
+                case PRIORITY:
+                    checkStreamFrame(streamId);
+                    if (length != 5) {
+                        throw new Http2Exception(Http2Exception.FRAME_SIZE_ERROR, streamId, "Bad PRIORITY frame");
+                    }
+                    break;
+                case RST_STREAM:
+                    onReset(streamId, length);
+                    break;
+                case SETTINGS:
+                    onSettings(streamId, flags, length);
+                    break;
+                case PUSH_PROMISE:
+                    throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Clients cannot push");
+                case PING:
+                    onPing(streamId, flags, length);
+                    break;
+                case GOAWAY:
+                    if (streamId != 0) {
+                        throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "GOAWAY on a stream");
+                    }
+                    break;
+                case WINDOW_UPDATE:
+                    onWindowUpdate(streamId, length);
+                    break;
+                case CONTINUATION:
+                    if (headerBlockStream == 0) {
+                        throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Unexpected CONTINUATION");
+                    }
+                    appendHeaderBlock(0, length, flags);
+                    break;
+                default:
+                    // Unknown frame types are ignored.
+                    break;
+            }
+        } catch (Http2Exception e) {
+            if (e.getStreamId() == 0) {
+                throw e;
+            }
+            resetStream(e.getStreamId(), e.getErrorCode());
+        }
+    }
+
+    /**
+     * Handles a DATA frame: the content is appended to the stream's body
+     * and the windows are replenished at once, since it is buffered.
+     *
+     * @param streamId the stream
+     * @param flags    the frame flags
+     * @param length   the payload length
+     * @throws IOException if the frame breaks the protocol or writing fails
+     */
+    private void onData(int streamId, int flags, int length) throws IOException {
+        checkStreamFrame(streamId);
+        if (length > receiveWindow) {
+            throw new Http2Exception(Http2Exception.FLOW_CONTROL_ERROR, "Connection receive window exceeded");
+        }
+        receiveWindow -= length;
+        unacknowledged += length;
+        if (unacknowledged >= CONNECTION_WINDOW / 2) {
+            writeWindowUpdate(0, unacknowledged);
+            receiveWindow += unacknowledged;
+            unacknowledged = 0;
+        }
+        int offset = 0;
+        int end = length;
+        if ((flags & FLAG_PADDED) != 0) {
+            offset = 1;
+            end -= length > 0 ? payload[0] & 0xff : 0;
+            if (length == 0 || end < offset) {
+                throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Padding exceeds the frame");
+            }
+        }
+
+        Stream stream = streams.get(streamId);
+        if (stream == null) {
+            if (streamId > lastStreamId) {
+                throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "DATA on idle stream " + streamId);
+            }
+            // Already reset or answered; frames still in flight are ignored.
+            return;
+        }
+        if (stream.requestEnded) {
+            throw new Http2Exception(Http2Exception.STREAM_CLOSED, streamId, "DATA after END_STREAM");
+        }
+        if (length > stream.receiveWindow) {
+            throw new Http2Exception(Http2Exception.FLOW_CONTROL_ERROR, streamId, "Stream receive window exceeded");
+        }
+        stream.receiveWindow -= length;
+        if (!stream.discarding) {
+            if (stream.bodyLength + end - offset > config.getMaxRequestBodySize()) {
+                reject(stream, 413);
+            } else {
+                stream.append(payload, offset, end - offset);
+            }
+        }
+        if ((flags & FLAG_END_STREAM) != 0) {
+            endRequest(stream);
+            return;
+        }
+        stream.unacknowledged += length;
+        if (stream.unacknowledged >= DEFAULT_WINDOW / 2) {
+            writeWindowUpdate(streamId, stream.unacknowledged);
+            stream.receiveWindow += stream.unacknowledged;
+            stream.unacknowledged = 0;
+        }
+    }
+
+    /**
+     * Handles a HEADERS frame, starting a header block.
+     *
+     * @param streamId the stream
+     * @param flags    the frame flags
+     * @param length   the payload length
+     * @throws IOException if the frame breaks the protocol or writing fails
+     */
+    private void onHeaders(int streamId, int flags, int length) throws IOException {
+        checkStreamFrame(streamId);
+        int offset = 0;
+        int end = length;
+        if ((flags & FLAG_PADDED) != 0) {
+            offset = 1;
+            end -= length > 0 ? payload[0] & 0xff : 0;
+        }
+        if ((flags & FLAG_PRIORITY) != 0) {
+            offset += 5;
+        }
+        if (end < offset) {
+            throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Padding exceeds the frame");
+        }
+        headerBlockStream = streamId;
+        headerBlockFlags = flags;
+        headerBlockLength = 0;
+        appendHeaderBlock(offset, end - offset, flags);
+    }
+
+    /**
+     * Adds a fragment to the header block being received, and handles the
+     * block once it is complete.
+     *
+     * @param offset the first byte of the fragment in the payload
+     * @param length the fragment length
+     * @param flags  the flags of the frame carrying it
+     * @throws IOException if the block breaks the protocol or writing fails
+     */
+    private void appendHeaderBlock(int offset, int length, int flags) throws IOException {
+        if (headerBlockLength + length > maxHeaderListSize) {
+            throw new Http2Exception(Http2Exception.ENHANCE_YOUR_CALM, "Header block too large");
+        }
+        if (headerBlockLength + length > headerBlock.length) {
+            headerBlock = Arrays.copyOf(headerBlock, Math.max(headerBlock.length * 2, headerBlockLength + length));
+        }
+        System.arraycopy(payload, offset, headerBlock, headerBlockLength, length);
+        headerBlockLength += length;
+        if ((flags & FLAG_END_HEADERS) != 0) {
+            int streamId = headerBlockStream;
+            headerBlockStream = 0;
+            onHeaderBlock(streamId, (headerBlockFlags & FLAG_END_STREAM) != 0);
+        }
+    }
+
+    /**
+     * Handles a complete header block: opens a stream for a new request,
+     * or ends the request of an open stream when it carries trailers.
+     *
+     * @param streamId  the stream
+     * @param endStream whether the block ends the request
+     * @throws IOException if the block breaks the protocol or writing fails
+     */
+    private void onHeaderBlock(int streamId, boolean endStream) throws IOException {
+        List<String> fields = decoder.decode(headerBlock, 0, headerBlockLength);
+        Stream stream = streams.get(streamId);
+        if (stream != null) {
+            if (stream.requestEnded || !endStream) {
+                throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, streamId, "Trailers must end the stream");
+            }
+            // Trailer fields are not passed on to handlers.
+            endRequest(stream);
+            return;
+        }
+        if ((streamId & 1) == 0) {
+            throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Even stream identifier " + streamId);
+        }
+        if (streamId <= lastStreamId) {
+            // Trailers of a stream that was already reset or answered.
+            return;
+        }
+        lastStreamId = streamId;
+        if (streams.size() >= MAX_CONCURRENT_STREAMS) {
+            throw new Http2Exception(Http2Exception.REFUSED_STREAM, streamId, "Too many concurrent streams");
+        }
+
+        long started = System.nanoTime();
+        HttpRequest request = null;
+        int rejectedStatus = fields == null ? 431 : 0;
+        if (fields != null) {
+            try {
+                request = buildRequest(streamId, fields);
+            } catch (HttpParseException e) {
+                rejectedStatus = e.getStatusCode();
+            }
+        }
+        synchronized (flowLock) {
+            stream = new Stream(streamId, initialSendWindow);
+        }
+        stream.request = request;
+        stream.started = started;
+        stream.parseNanos = System.nanoTime() - started;
+        stream.requestEnded = endStream;
+        streams.put(streamId, stream);
+        updateDeadline();
+        if (rejectedStatus != 0) {
+            reject(stream, rejectedStatus);
+        } else if (request.getBodyLength() > config.getMaxRequestBodySize()) {
+            reject(stream, 413);
+        } else if (endStream) {
+            dispatch(stream);
+        }
+    }
+
+    /**
+     * Ends the request half of a stream and dispatches the request unless
+     * it was already answered.
+     *
+     * @param stream the stream
+     * @throws Http2Exception if the body does not match its declared length
+     */
+    private void endRequest(Stream stream) throws Http2Exception {
+        boolean answered = stream.discarding;
+        finish(stream, false);
+        if (!answered) {
+            dispatch(stream);
+        }
+    }
+
+    /**
+     * Builds the request view of a decoded header block by rewriting it as
+     * an HTTP/1.1 head and parsing that.
+     *
+     * @param streamId the stream
+     * @param fields   names and values in alternating order
+     * @return the parsed request
+     * @throws Http2Exception     if the fields are malformed for HTTP/2
+     * @throws HttpParseException if the rebuilt head is rejected by the parser
+     */
+    private HttpRequest buildRequest(int streamId, List<String> fields) throws Http2Exception, HttpParseException {
+        String method = null;
+        String scheme = null;
+        String path = null;
+        String authority = null;
+        boolean regular = false;
+        boolean host = false;
+        StringBuilder headers = new StringBuilder(256);
+        StringBuilder cookies = null;
+        for (int i = 0; i < fields.size(); i += 2) {
+            String name = fields.get(i);
+            String value = fields.get(i + 1);
+            if (!isValidValue(value)) {
+                throw malformed(streamId, "Invalid value of " + name);
+            }
+            if (name.startsWith(":")) {
+                if (regular) {
+                    throw malformed(streamId, "Pseudo-header " + name + " after regular fields");
+                }
+                if (name.equals(":method") && method == null) {
+                    method = value;
+                } else if (name.equals(":scheme") && scheme == null) {
+                    scheme = value;
+                } else if (name.equals(":path") && path == null) {
+                    path = value;
+                } else if (name.equals(":authority") && authority == null) {
+                    authority = value;
+                } else {
+                    throw malformed(streamId, "Unexpected pseudo-header " + name);
+                }
+                continue;
+            }
+            regular = true;
+            if (!isValidName(name) || CONNECTION_HEADERS.contains(name)
+                    || (name.equals("te") && !value.equals("trailers"))) {
+                throw malformed(streamId, "Field " + name + " is not allowed");
+            }
+            if (name.equals("cookie")) {
+                cookies = cookies == null ? new StringBuilder(value) : cookies.append("; ").append(value);
+                continue;
+            }
+            host |= name.equals("host");
+            headers.append(name).append(": ").append(value).append("\r\n");
+        }
+        if (method == null || scheme == null || path == null || !path.startsWith("/")) {
+            throw malformed(streamId, "Missing or invalid request pseudo-headers");
+        }
+
+        StringBuilder head = new StringBuilder(path.length() + headers.length() + 64);
+        head.append(method).append(' ').append(path).append(" HTTP/1.1\r\n");
+        if (!host && authority != null) {
+            head.append("host: ").append(authority).append("\r\n");
+        }
+        head.append(headers);
+        if (cookies != null) {
+            head.append("cookie: ").append(cookies).append("\r\n");
+        }
+        head.append("\r\n");
+        byte[] bytes = head.toString().getBytes(StandardCharsets.ISO_8859_1);
+        HttpRequest request = new HttpRequest();
+        parser.parseHead(bytes, 0, bytes.length, request);
+        request.setRemoteAddress(remoteAddress);
+        return request;
+    }
+
+    /**
+     * Creates the stream error for a malformed request.
+     *
+     * @param streamId the stream
+     * @param message  the reason
+     * @return the exception to throw
+     */
+    private static Http2Exception malformed(int streamId, String message) {
+        return new Http2Exception(Http2Exception.PROTOCOL_ERROR, streamId, message);
+    }
+
+    /**
+     * Checks that a field name is a lower-case token.
+     *
+     * @param name the name
+     * @return true if the name is valid in HTTP/2
+     */
+    private static boolean isValidName(String name) {
+        if (name.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            boolean valid = (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || "!#$%&'*+-.^_`|~".indexOf(c) >= 0;
+            if (!valid) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks that a field value cannot split the rebuilt head.
+     *
+     * @param value the value
+     * @return true if it holds no NUL, CR or LF
+     */
+    private static boolean isValidValue(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\0' || c == '\r' || c == '\n') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Opens stream 1 for the request that asked for the upgrade, which
+     * the client sent in full as HTTP/1.1. It is dispatched once the
+     * server's settings are out.
+     *
+     * @param request the upgrade request, already counted as parsed
+     * @return the stream
+     */
+    private Stream openUpgradeStream(HttpRequest request) {
+        lastStreamId = 1;
+        Stream stream = new Stream(1, initialSendWindow);
+        stream.request = request;
+        stream.started = System.nanoTime();
+        stream.parseNanos = -1;
+        stream.requestEnded = true;
+        streams.put(1, stream);
+        return stream;
+    }
+
+    /**
+     * Hands a complete request to a worker.
+     *
+     * @param stream the stream
+     * @throws Http2Exception if the body does not match its declared length
+     */
+    private void dispatch(Stream stream) throws Http2Exception {
+        HttpRequest request = stream.request;
+        long declared = request.getBodyLength();
+        if (declared > 0 && declared != stream.bodyLength || declared < 0) {
+            throw malformed(stream.id, "Content-Length does not match the data received");
+        }
+        if (stream.bodyLength > 0) {
+            request.setBodyLength(stream.bodyLength);
+            stream.requestBody = new FramedBody(request, config.getMaxRequestBodySize(),
+                    new FramedBody.ArraySource(stream.body, 0, stream.bodyLength));
+            request.setBody(stream.requestBody);
+        }
+        if (stream.parseNanos >= 0) {
+            metrics.requestParsed(stream.parseNanos);
+        }
+        stream.dispatched = true;
+        execute(stream, () -> process(stream));
+    }
+
+    /**
+     * Answers a stream without dispatching its request, because the head
+     * could not be used or the body is over the limit. Whatever else the
+     * client sends on the stream is discarded.
+     *
+     * @param stream     the stream
+     * @param statusCode the status code
+     */
+    private void reject(Stream stream, int statusCode) {
+        metrics.requestRejected(ServerMetrics.ROUTE_INVALID, statusCode);
+        log.access(remoteAddress, null, null, null, ServerMetrics.ROUTE_INVALID, statusCode, -1, 0);
+        stream.discarding = true;
+        stream.body = null;
+        HttpResponse response = HttpResponse.error(statusCode);
+        execute(stream, () -> respond(stream, response));
+    }
+
+    /**
+     * Runs a task for a stream on the workers, refusing the stream if they
+     * are saturated so that the client may retry it.
+     *
+     * @param stream the stream
+     * @param task   the task
+     */
+    private void execute(Stream stream, Runnable task) {
+        try {
+            workers.execute(task);
+        } catch (RejectedExecutionException e) {
+            if (stream.dispatched) {
+                metrics.responseAborted(ServerMetrics.ROUTE_OVERLOADED, 503);
+                log.access(remoteAddress, stream.request.getMethod(), stream.request.getUri(), VERSION,
+                        ServerMetrics.ROUTE_OVERLOADED, 503, -1, System.nanoTime() - stream.started);
+            }
+            resetStream(stream.id, Http2Exception.REFUSED_STREAM);
+        }
+    }
+
+    /**
+     * Processes a request on a worker and answers it, or waits for its
+     * deferred response without holding the worker.
+     *
+     * @param stream the stream
+     */
+    private void process(Stream stream) {
+        HttpResponse response;
+        try {
+            response = processor.process(stream.request);
+        } catch (IOException | RuntimeException e) {
+            log.error("Error handling request: " + e.getMessage());
+            response = HttpResponse.error(500);
+        }
+        if (stream.requestBody != null) {
+            stream.requestBody.detach();
+        }
+        CompletableFuture<HttpResponse> deferred = response.getDeferred();
+        if (deferred != null) {
+            if (!deferred.isDone()) {
+                deferred.whenComplete((completed, error) -> {
+                    HttpResponse actual = completed != null ? completed : HttpResponse.error(500);
+                    execute(stream, () -> respond(stream, actual));
+                });
+                return;
+            }
+            response = deferred.join();
+        }
+        respond(stream, response);
+    }
+
+    /**
+     * Writes a response on its stream and records it.
+     *
+     * @param stream   the stream
+     * @param response the response
+     */
+    private void respond(Stream stream, HttpResponse response) {
+        long writeStarted = System.nanoTime();
+        boolean written = false;
+        try {
+            writeResponse(stream, response);
+            written = true;
+        } catch (IOException e) {
+            // The stream was reset or the connection closed.
+        } finally {
+            if (stream.dispatched) {
+                record(stream, response, written, writeStarted);
+            }
+            finish(stream, true);
+        }
+    }
+
+    /**
+     * Records the outcome of a stream's request in the metrics and the
+     * access log.
+     *
+     * @param stream       the stream
+     * @param response     the response
+     * @param written      whether the response reached the client
+     * @param writeStarted when writing started, from {@link System#nanoTime()}
+     */
+    private void record(Stream stream, HttpResponse response, boolean written, long writeStarted) {
+        HttpRequest request = stream.request;
+        String route = request.getRoute() != null ? request.getRoute() : ServerMetrics.ROUTE_UNMATCHED;
+        long finished = System.nanoTime();
+        if (written) {
+            metrics.responseWritten(route, response.getStatusCode(), finished - writeStarted);
+        } else {
+            metrics.responseAborted(route, response.getStatusCode());
+        }
+        log.access(remoteAddress, request.getMethod(), request.getUri(), VERSION, route,
+                response.getStatusCode(), response.getContentLength(), finished - stream.started);
+    }
+
+    /**
+     * Closes one half of a stream, and forgets the stream once both are
+     * closed. A response that ends before its request leaves the stream
+     * open, discarding the rest of the body, since some clients drop a
+     * response that is followed by a reset while they are still sending.
+     *
+     * @param stream   the stream
+     * @param response true to close the response half, false for the request half
+     */
+    private void finish(Stream stream, boolean response) {
+        synchronized (stream) {
+            if (response) {
+                stream.responseEnded = true;
+            } else {
+                stream.requestEnded = true;
+            }
+            if (!stream.responseEnded || !stream.requestEnded) {
+                return;
+            }
+        }
+        if (streams.remove(stream.id) != null) {
+            updateDeadline();
+        }
+    }
+
+    /**
+     * Arms the idle deadline while no stream is open and the request
+     * deadline otherwise.
+     */
+    private synchronized void updateDeadline() {
+        long now = TimerWheel.currentMillis();
+        if (streams.isEmpty()) {
+            watch.accept(Deadline.IDLE, now + config.getKeepAliveTimeoutMillis());
+        } else {
+            watch.accept(Deadline.REQUEST, now + config.getRequestTimeoutMillis());
+        }
+    }
+
+    /**
+     * Handles a RST_STREAM frame.
+     *
+     * @param streamId the stream
+     * @param length   the payload length
+     * @throws Http2Exception if the frame is malformed
+     */
+    private void onReset(int streamId, int length) throws Http2Exception {
+        checkStreamFrame(streamId);
+        if (length != 4) {
+            throw new Http2Exception(Http2Exception.FRAME_SIZE_ERROR, "Bad RST_STREAM frame");
+        }
+        if (streamId > lastStreamId) {
+            throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "RST_STREAM on idle stream " + streamId);
+        }
+        Stream stream = streams.remove(streamId);
+        if (stream != null) {
+            stream.reset = true;
+            synchronized (flowLock) {
+                flowLock.notifyAll();
+            }
+            updateDeadline();
+        }
+    }
+
+    /**
+     * Handles a SETTINGS frame and acknowledges it.
+     *
+     * @param streamId the stream, which must be 0
+     * @param flags    the frame flags
+     * @param length   the payload length
+     * @throws IOException if the frame is malformed or writing fails
+     */
+    private void onSettings(int streamId, int flags, int length) throws IOException {
+        if (streamId != 0) {
+            throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "SETTINGS on a stream");
+        }
+        if ((flags & FLAG_ACK) != 0) {
+            if (length != 0) {
+                throw new Http2Exception(Http2Exception.FRAME_SIZE_ERROR, "SETTINGS acknowledgement with a payload");
+            }
+            return;
+        }
+        if (length % 6 != 0) {
+            throw new Http2Exception(Http2Exception.FRAME_SIZE_ERROR, "Bad SETTINGS frame");
+        }
+        applySettings(payload, length);
+        writeFrame(SETTINGS, FLAG_ACK, 0, payload, 0);
+    }
+
+    /**
+     * Applies the client's settings.
+     *
+     * @param settings the SETTINGS payload
+     * @param length   the payload length, a multiple of 6
+     * @throws Http2Exception if a value is out of range
+     */
+    private void applySettings(byte[] settings, int length) throws Http2Exception {
+        for (int i = 0; i < length; i += 6) {
+            int id = ((settings[i] & 0xff) << 8) | (settings[i + 1] & 0xff);
+            int value = readInt(settings, i + 2);
+            switch (id) {
+                case SETTINGS_HEADER_TABLE_SIZE:
+                    synchronized (writeLock) {
+                        encoder.setMaxTableSize(value < 0 ? Integer.MAX_VALUE : value);
+                    }
+                    break;
+                case SETTINGS_ENABLE_PUSH:
+                    if (value != 0 && value != 1) {
+                        throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Invalid SETTINGS_ENABLE_PUSH");
+                    }
+                    break;
+                case SETTINGS_INITIAL_WINDOW_SIZE:
+                    if (value < 0) {
+                        throw new Http2Exception(Http2Exception.FLOW_CONTROL_ERROR, "Initial window too large");
+                    }
+                    changeInitialWindow(value);
+                    break;
+                case SETTINGS_MAX_FRAME_SIZE:
+                    if (value < DEFAULT_FRAME_SIZE || value > MAX_FRAME_SIZE) {
+                        throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Invalid SETTINGS_MAX_FRAME_SIZE");
+                    }
+                    peerMaxFrameSize = value;
+                    break;
+                default:
+                    // Other settings only constrain what the client receives from us as a server.
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Moves the send window of every open stream by the change of the
+     * initial window size.
+     *
+     * @param value the new initial window size
+     * @throws Http2Exception if a window would overflow
+     */
+    private void changeInitialWindow(int value) throws Http2Exception {
+        synchronized (flowLock) {
+            int delta = value - initialSendWindow;
+            initialSendWindow = value;
+            for (Stream stream : streams.values()) {
+                stream.sendWindow += delta;
+                if (stream.sendWindow > MAX_WINDOW) {
+                    throw new Http2Exception(Http2Exception.FLOW_CONTROL_ERROR, "Stream window overflow");
+                }
+            }
+            flowLock.notifyAll();
+        }
+    }
+
+    /**
+     * Answers a PING frame.
+     *
+     * @param streamId the stream, which must be 0
+     * @param flags    the frame flags
+     * @param length   the payload length
+     * @throws IOException if the frame is malformed or writing fails
+     */
+    private void onPing(int streamId, int flags, int length) throws IOException {
+        if (streamId != 0) {
+            throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "PING on a stream");
+        }
+        if (length != 8) {
+            throw new Http2Exception(Http2Exception.FRAME_SIZE_ERROR, "Bad PING frame");
+        }
+        if ((flags & FLAG_ACK) == 0) {
+            writeFrame(PING, FLAG_ACK, 0, payload, 8);
+        }
+    }
+
+    /**
+     * Handles a WINDOW_UPDATE frame, waking writers waiting for room.
+     *
+     * @param streamId the stream, or 0 for the connection
+     * @param length   the payload length
+     * @throws Http2Exception if the frame is malformed or a window overflows
+     */
+    private void onWindowUpdate(int streamId, int length) throws Http2Exception {
+        if (length != 4) {
+            throw new Http2Exception(Http2Exception.FRAME_SIZE_ERROR, "Bad WINDOW_UPDATE frame");
+        }
+        int increment = readInt(payload, 0) & 0x7fffffff;
+        if (increment == 0) {
+            throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, streamId, "Window increment of 0");
+        }
+        synchronized (flowLock) {
+            if (streamId == 0) {
+                sendWindow += increment;
+                if (sendWindow > MAX_WINDOW) {
+                    throw new Http2Exception(Http2Exception.FLOW_CONTROL_ERROR, "Connection window overflow");
+                }
+            } else {
+                Stream stream = streams.get(streamId);
+                if (stream == null) {
+                    if (streamId > lastStreamId) {
+                        throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "WINDOW_UPDATE on idle stream");
+                    }
+                    return;
+                }
+                stream.sendWindow += increment;
+                if (stream.sendWindow > MAX_WINDOW) {
+                    throw new Http2Exception(Http2Exception.FLOW_CONTROL_ERROR, streamId, "Stream window overflow");
+                }
+            }
+            flowLock.notifyAll();
+        }
+    }
+
+    /**
+     * Checks that a stream frame names a stream.
+     *
+     * @param streamId the stream identifier of the frame
+     * @throws Http2Exception if it names the connection
+     */
+    private static void checkStreamFrame(int streamId) throws Http2Exception {
+        if (streamId == 0) {
+            throw new Http2Exception(Http2Exception.PROTOCOL_ERROR, "Stream frame on stream 0");
+        }
+    }
+
+    /**
+     * Writes a response as HEADERS, CONTINUATION and DATA frames.
+     *
+     * @param stream   the stream
+     * @param response the response
+     * @throws IOException if the stream was reset or the connection failed
+     */
+    private void writeResponse(Stream stream, HttpResponse response) throws IOException {
+        List<String> fields = responseFields(response);
+        boolean head = stream.request != null && stream.request.isMethod("HEAD");
+        StreamingBody streaming = response.getStreamingBody();
+        FileRegion file = response.getFileBody();
+        byte[] body = response.getBody();
+        if (head || (streaming == null && file == null && body.length == 0)) {
+            writeHeaders(stream, response.getStatusCode(), fields, true);
+            return;
+        }
+        writeHeaders(stream, response.getStatusCode(), fields, false);
+        if (streaming != null) {
+            DataOutput data = new DataOutput(stream);
+            try {
+                streaming.writeTo(data);
+            } catch (RuntimeException e) {
+                resetStream(stream.id, Http2Exception.INTERNAL_ERROR);
+                throw new IOException("Streaming body failed", e);
+            }
+            data.finish();
+        } else if (file == null) {
+            writeData(stream, body, 0, body.length, true);
+        } else {
+            if (body.length > 0) {
+                writeData(stream, body, 0, body.length, false);
+            }
+            writeFile(stream, file);
+        }
+    }
+
+    /**
+     * Extracts the header fields of a response from its HTTP/1 head,
+     * lower-casing the names and dropping connection-specific fields.
+     *
+     * @param response the response
+     * @return names and values in alternating order
+     */
+    private static List<String> responseFields(HttpResponse response) {
+        String head = new String(response.encodeHead(false, 0), StandardCharsets.ISO_8859_1);
+        List<String> fields = new ArrayList<>();
+        int position = head.indexOf("\r\n") + 2;
+        while (position < head.length()) {
+            int lineEnd = head.indexOf("\r\n", position);
+            if (lineEnd <= position) {
+                break;
+            }
+            int colon = head.indexOf(':', position);
+            if (colon > position && colon < lineEnd) {
+                String name = head.substring(position, colon).trim().toLowerCase();
+                if (!CONNECTION_HEADERS.contains(name)) {
+                    fields.add(name);
+                    fields.add(head.substring(colon + 1, lineEnd).trim());
+                }
+            }
+            position = lineEnd + 2;
+        }
+        return fields;
+    }
+
+    /**
+     * Encodes and writes the header block of a response, split into
+     * CONTINUATION frames if it exceeds the peer's frame size.
+     *
+     * @param stream     the stream
+     * @param statusCode the status code
+     * @param fields     names and values in alternating order
+     * @param endStream  whether the response has no body
+     * @throws IOException if the stream was reset or the connection failed
+     */
+    private void writeHeaders(Stream stream, int statusCode, List<String> fields, boolean endStream)
+            throws IOException {
+        synchronized (writeLock) {
+            checkOpen(stream);
+            int length = encoder.encode(statusCode, fields);
+            byte[] block = encoder.getBlock();
+            int maxFrameSize = peerMaxFrameSize;
+            int offset = 0;
+            int type = HEADERS;
+            do {
+                int size = Math.min(length - offset, maxFrameSize);
+                int flags = offset + size == length ? FLAG_END_HEADERS : 0;
+                if (type == HEADERS && endStream) {
+                    flags |= FLAG_END_STREAM;
+                }
+                writeFrameHeader(size, type, flags, stream.id);
+                out.write(block, offset, size);
+                offset += size;
+                type = CONTINUATION;
+            } while (offset < length);
+            if (endStream) {
+                out.flush();
+            }
+        }
+    }
+
+    /**
+     * Writes body bytes as DATA frames, each as large as the windows and
+     * the peer's frame size allow, waiting for window updates as needed.
+     *
+     * @param stream    the stream
+     * @param bytes     the data
+     * @param offset    the first byte
+     * @param length    the number of bytes
+     * @param endStream whether these bytes end the response
+     * @throws IOException if the stream was reset or the connection failed
+     */
+    private void writeData(Stream stream, byte[] bytes, int offset, int length, boolean endStream)
+            throws IOException {
+        do {
+            int size = length == 0 ? 0 : reserve(stream, length);
+            synchronized (writeLock) {
+                checkOpen(stream);
+                writeFrameHeader(size, DATA, size == length && endStream ? FLAG_END_STREAM : 0, stream.id);
+                out.write(bytes, offset, size);
+                // Flushed every frame: a writer about to wait for a window update must not hold back the data
+                // the update depends on.
+                out.flush();
+            }
+            offset += size;
+            length -= size;
+        } while (length > 0);
+    }
+
+    /**
+     * Writes a file region as DATA frames, reading it chunk by chunk.
+     *
+     * @param stream the stream
+     * @param file   the region
+     * @throws IOException if reading the file or writing fails
+     */
+    private void writeFile(Stream stream, FileRegion file) throws IOException {
+        try (FileChannel channel = file.open()) {
+            byte[] chunk = new byte[DEFAULT_FRAME_SIZE];
+            long position = file.getOffset();
+            long remaining = file.getLength();
+            if (remaining == 0) {
+                writeData(stream, chunk, 0, 0, true);
+            }
+            while (remaining > 0) {
+                int size = (int) Math.min(chunk.length, remaining);
+                ByteBuffer buffer = ByteBuffer.wrap(chunk, 0, size);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, position + buffer.position()) < 0) {
+                        throw new EOFException("File shrank while being sent");
+                    }
+                }
+                remaining -= size;
+                position += size;
+                writeData(stream, chunk, 0, size, remaining == 0);
+            }
+        }
+    }
+
+    /**
+     * Takes room for DATA from the connection and stream send windows,
+     * waiting until both have some.
+     *
+     * @param stream the stream
+     * @param wanted the bytes waiting to be sent
+     * @return how many of them may be sent now, at least one
+     * @throws IOException if the stream is reset or the connection closes meanwhile
+     */
+    private int reserve(Stream stream, int wanted) throws IOException {
+        synchronized (flowLock) {
+            while (true) {
+                checkOpen(stream);
+                long available = Math.min(Math.min(sendWindow, stream.sendWindow), peerMaxFrameSize);
+                if (available > 0) {
+                    int size = (int) Math.min(wanted, available);
+                    sendWindow -= size;
+                    stream.sendWindow -= size;
+                    return size;
+                }
+                try {
+                    flowLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for a window update");
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks that a response may still be written on a stream.
+     *
+     * @param stream the stream
+     * @throws IOException if the stream was reset or the connection closed
+     */
+    private void checkOpen(Stream stream) throws IOException {
+        if (closed || stream.reset) {
+            throw new IOException("Stream " + stream.id + " was reset");
+        }
+    }
+
+    /**
+     * Resets a stream and forgets it. Failing to send the frame only means
+     * the connection is going away as well.
+     *
+     * @param streamId   the stream
+     * @param errorCode the error code sent to the client
+     */
+    private void resetStream(int streamId, int errorCode) {
+        Stream stream = streams.remove(streamId);
+        if (stream != null) {
+            stream.reset = true;
+            synchronized (flowLock) {
+                flowLock.notifyAll();
+            }
+            updateDeadline();
+        }
+        byte[] code = new byte[4];
+        writeInt(code, 0, errorCode);
+        try {
+            writeFrame(RST_STREAM, 0, streamId, code, code.length);
+        } catch (IOException e) {
+            // The connection is failing; its reader finds out.
+        }
+    }
+
+    /**
+     * Writes the server's settings, which open the connection, followed by
+     * an update that widens the connection receive window.
+     *
+     * @throws IOException if writing fails
+     */
+    private void writeSettings() throws IOException {
+        byte[] settings = new byte[12];
+        writeSetting(settings, 0, SETTINGS_MAX_CONCURRENT_STREAMS, MAX_CONCURRENT_STREAMS);
+        writeSetting(settings, 6, SETTINGS_MAX_HEADER_LIST_SIZE, maxHeaderListSize);
+        writeFrame(SETTINGS, 0, 0, settings, settings.length);
+        writeWindowUpdate(0, CONNECTION_WINDOW - DEFAULT_WINDOW);
+    }
+
+    /**
+     * Encodes one setting.
+     *
+     * @param settings the SETTINGS payload
+     * @param offset   where the setting goes
+     * @param id       the setting identifier
+     * @param value    the value
+     */
+    private static void writeSetting(byte[] settings, int offset, int id, int value) {
+        settings[offset] = (byte) (id >>> 8);
+        settings[offset + 1] = (byte) id;
+        writeInt(settings, offset + 2, value);
+    }
+
+    /**
+     * Writes a WINDOW_UPDATE frame.
+     *
+     * @param streamId  the stream, or 0 for the connection
+     * @param increment the window increment
+     * @throws IOException if writing fails
+     */
+    private void writeWindowUpdate(int streamId, int increment) throws IOException {
+        byte[] update = new byte[4];
+        writeInt(update, 0, increment);
+        writeFrame(WINDOW_UPDATE, 0, streamId, update, update.length);
+    }
+
+    /**
+     * Tells the client the connection is closing. Failing to send the frame
+     * only means the client is gone already.
+     *
+     * @param errorCode the error code, {@link Http2Exception#NO_ERROR} for a clean close
+     */
+    private void writeGoAway(int errorCode) {
+        byte[] goAway = new byte[8];
+        writeInt(goAway, 0, lastStreamId);
+        writeInt(goAway, 4, errorCode);
+        try {
+            writeFrame(GOAWAY, 0, 0, goAway, goAway.length);
+        } catch (IOException e) {
+            // The client is gone.
+        }
+    }
+
+    /**
+     * Writes and flushes a control frame.
+     *
+     * @param type     the frame type
+     * @param flags    the frame flags
+     * @param streamId the stream, or 0 for the connection
+     * @param bytes    the payload
+     * @param length   the payload length
+     * @throws IOException if writing fails
+     */
+    private void writeFrame(int type, int flags, int streamId, byte[] bytes, int length) throws IOException {
+        synchronized (writeLock) {
+            writeFrameHeader(length, type, flags, streamId);
+            out.write(bytes, 0, length);
+            out.flush();
+        }
+    }
+
+    /**
+     * Writes a frame header. Called with the write lock held.
+     *
+     * @param length   the payload length
+     * @param type     the frame type
+     * @param flags    the frame flags
+     * @param streamId the stream, or 0 for the connection
+     * @throws IOException if writing fails
+     */
+    private void writeFrameHeader(int length, int type, int flags, int streamId) throws IOException {
+        outHeader[0] = (byte) (length >>> 16);
+        outHeader[1] = (byte) (length >>> 8);
+        outHeader[2] = (byte) length;
+        outHeader[3] = (byte) type;
+        outHeader[4] = (byte) flags;
+        writeInt(outHeader, 5, streamId);
+        out.write(outHeader, 0, FRAME_HEADER_LENGTH);
+    }
+
+    /**
+     * Reads exactly the given number of bytes.
+     *
+     * @param bytes      the destination
+     * @param length     the number of bytes
+     * @param frameStart whether the client may close the connection before the first byte
+     * @return false if the client closed the connection before the first byte
+     * @throws IOException if reading fails or the connection ends part way
+     */
+    private boolean readFully(byte[] bytes, int length, boolean frameStart) throws IOException {
+        int read = 0;
+        while (read < length) {
+            int count = in.read(bytes, read, length - read);
+            if (count < 0) {
+                if (frameStart && read == 0) {
+                    return false;
+                }
+                throw new EOFException("Connection closed in the middle of a frame");
+            }
+            read += count;
+        }
+        return true;
+    }
+
+    /**
+     * Reads a big-endian 32-bit integer.
+     *
+     * @param bytes  the array
+     * @param offset the first byte
+     * @return the integer
+     */
+    private static int readInt(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xff) << 24) | ((bytes[offset + 1] & 0xff) << 16)
+                | ((bytes[offset + 2] & 0xff) << 8) | (bytes[offset + 3] & 0xff);
+    }
+
+    /**
+     * Writes a big-endian 32-bit integer.
+     *
+     * @param bytes  the array
+     * @param offset the first byte
+     * @param value  the integer
+     */
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    /**
+     * State of one stream. The receiving side is only touched by the
+     * connection thread; send windows are guarded by the flow lock, and the
+     * two halves' end flags by the stream itself.
+     */
+    private static class Stream {
+        private final int id;
+        private HttpRequest request;
+        private FramedBody requestBody;
+        private long started;
+        private long parseNanos;
+        private byte[] body = new byte[0];
+        private int bodyLength;
+        private int receiveWindow = DEFAULT_WINDOW;
+        private int unacknowledged;
+        private long sendWindow;
+        private boolean discarding;
+        private boolean requestEnded;
+        private boolean responseEnded;
+        private volatile boolean dispatched;
+        private volatile boolean reset;
+
+        /**
+         * Creates a stream.
+         *
+         * @param id         the stream identifier
+         * @param sendWindow the peer's initial window size
+         */
+        Stream(int id, int sendWindow) {
+            this.id = id;
+            this.sendWindow = sendWindow;
+        }
+
+        /**
+         * Appends received request body bytes.
+         *
+         * @param bytes  the data
+         * @param offset the first byte
+         * @param length the number of bytes
+         */
+        void append(byte[] bytes, int offset, int length) {
+            if (bodyLength + length > body.length) {
+                body = Arrays.copyOf(body, Math.max(Math.max(body.length * 2, 1024), bodyLength + length));
+            }
+            System.arraycopy(bytes, offset, body, bodyLength, length);
+            bodyLength += length;
+        }
+    }
+
+    /**
+     * Stream a streaming body writes into. Output is gathered into frames
+     * of the default size; flushing sends what is gathered.
+     */
+    private class DataOutput extends OutputStream {
+        private final Stream stream;
+        private final byte[] buffer = new byte[DEFAULT_FRAME_SIZE];
+        private int count;
+
+        /**
+         * Creates the output of a stream's body.
+         *
+         * @param stream the stream
+         */
+        DataOutput(Stream stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                flush();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buffer.length) {
+                    flush();
+                }
+                int size = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, size);
+                count += size;
+                off += size;
+                len -= size;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (count > 0) {
+                writeData(stream, buffer, 0, count, false);
+                count = 0;
+            }
+        }
+
+        /**
+         * Sends what is left with the end of the stream.
+         *
+         * @throws IOException if the stream was reset or the connection failed
+         */
+        void finish() throws IOException {
+            writeData(stream, buffer, 0, count, true);
+            count = 0;
+        }
+    }
+}
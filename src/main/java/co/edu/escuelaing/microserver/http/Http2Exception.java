@@ -0,0 +1,68 @@
+package co.edu.escuelaing.microserver.http;
+
+import java.io.IOException;
+
+/**
+ * Signals an HTTP/2 protocol violation by the peer. A connection error
+ * ends the connection with GOAWAY; a stream error only resets the stream
+ * it names. Carries the error code the peer is sent.
+ */
+class Http2Exception extends IOException {
+
+    static final int NO_ERROR = 0x0;
+    static final int PROTOCOL_ERROR = 0x1;
+    static final int INTERNAL_ERROR = 0x2;
+    static final int FLOW_CONTROL_ERROR = 0x3;
+    static final int STREAM_CLOSED = 0x5;
+    static final int FRAME_SIZE_ERROR = 0x6;
+    static final int REFUSED_STREAM = 0x7;
+    static final int CANCEL = 0x8;
+    static final int COMPRESSION_ERROR = 0x9;
+    static final int ENHANCE_YOUR_CALM = 0xb;
+
+    private static final long serialVersionUID = 1L;
+
+    private final int errorCode;
+    private final int streamId;
+
+    /**
+     * Creates a connection error.
+     *
+     * @param errorCode the HTTP/2 error code
+     * @param message   the reason
+     */
+    Http2Exception(int errorCode, String message) {
+        this(errorCode, 0, message);
+    }
+
+    /**
+     * Creates a stream error, or a connection error for stream 0.
+     *
+     * @param errorCode the HTTP/2 error code
+     * @param streamId  the stream to reset, or 0 for the connection
+     * @param message   the reason
+     */
+    Http2Exception(int errorCode, int streamId, String message) {
+        super(message, null);
+        this.errorCode = errorCode;
+        this.streamId = streamId;
+    }
+
+    /**
+     * Gets the error code the peer is sent.
+     *
+     * @return the HTTP/2 error code
+     */
+    int getErrorCode() {
+        return errorCode;
+    }
+
+    /**
+     * Gets the stream the error is confined to.
+     *
+     * @return the stream id, or 0 for a connection error
+     */
+    int getStreamId() {
+        return streamId;
+    }
+}
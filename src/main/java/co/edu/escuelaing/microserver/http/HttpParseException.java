@@ -0,0 +1,32 @@
+package co.edu.escuelaing.microserver.http;
+
+/**
+ * Signals a request that cannot be parsed or exceeds the configured limits.
+ * Carries the status code the client should receive.
+ */
+class HttpParseException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+
+    /**
+     * Creates a new exception.
+     *
+     * @param statusCode the HTTP status code to answer with
+     * @param message    the reason the request was rejected
+     */
+    HttpParseException(int statusCode, String message) {
+        super(message, null, false, false);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * Gets the status code to answer with.
+     *
+     * @return the HTTP status code
+     */
+    int getStatusCode() {
+        return statusCode;
+    }
+}
@@ -0,0 +1,504 @@
+package co.edu.escuelaing.microserver.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Parsed HTTP request head: request line, headers and query string.
+ * Shared by every server engine so request handling does not depend on how
+ * the bytes were read from the network.
+ * <p>
+ * The request is a flyweight view over the connection's receive buffer
+ * filled by {@link HttpRequestParser}: it stores offsets only and decodes a
+ * value into a {@code String} the first time it is asked for. Instances are
+ * reused for every request of a connection, so they must not be kept after
+ * the response has been produced.
+ * <p>
+ * The body, if the request has one, is not part of the view: it is read
+ * from the connection as a stream while the handler runs.
+ */
+public class HttpRequest {
+
+    /**
+     * Body length of a request sent with chunked transfer coding.
+     */
+    static final long CHUNKED = -1;
+
+    private static final String[] KNOWN_METHODS = {
+        "GET", "HEAD", "POST", "PUT", "DELETE", "OPTIONS", "PATCH", "TRACE", "CONNECT"
+    };
+
+    private byte[] buffer;
+    private int methodStart;
+    private int methodEnd;
+    private int targetStart;
+    private int targetEnd;
+    private int queryStart;
+    private boolean http11;
+    private int[] headerOffsets = new int[64];
+    private int headerCount;
+    private final QueryString query = new QueryString();
+
+    private String method;
+    private String uri;
+    private String path;
+    private Map<String, String> queryParameters;
+    private String route;
+    private String remoteAddress;
+    private long bodyLength;
+    private RequestBody body;
+
+    /**
+     * Clears the view before a new request is parsed into it.
+     *
+     * @param buffer the buffer holding the request bytes
+     */
+    void reset(byte[] buffer) {
+        this.buffer = buffer;
+        this.headerCount = 0;
+        this.method = null;
+        this.uri = null;
+        this.path = null;
+        this.queryParameters = null;
+        this.route = null;
+        this.bodyLength = 0;
+        this.body = null;
+    }
+
+    /**
+     * Records the position of the request line parts.
+     *
+     * @param methodStart the first byte of the method
+     * @param methodEnd   the end of the method
+     * @param targetStart the first byte of the request target
+     * @param targetEnd   the end of the request target
+     * @param queryStart  the first byte of the query string, or -1 if none
+     * @param http11      whether the protocol version is HTTP/1.1
+     */
+    void setRequestLine(int methodStart, int methodEnd, int targetStart, int targetEnd, int queryStart,
+            boolean http11) {
+        this.methodStart = methodStart;
+        this.methodEnd = methodEnd;
+        this.targetStart = targetStart;
+        this.targetEnd = targetEnd;
+        this.queryStart = queryStart;
+        this.http11 = http11;
+        if (queryStart < 0) {
+            query.reset(buffer, targetEnd, targetEnd);
+        } else {
+            query.reset(buffer, queryStart, targetEnd);
+        }
+    }
+
+    /**
+     * Records the position of a header field.
+     *
+     * @param nameStart  the first byte of the name
+     * @param nameEnd    the end of the name
+     * @param valueStart the first byte of the value
+     * @param valueEnd   the end of the value
+     */
+    void addHeader(int nameStart, int nameEnd, int valueStart, int valueEnd) {
+        int offset = headerCount * 4;
+        if (offset + 4 > headerOffsets.length) {
+            headerOffsets = Arrays.copyOf(headerOffsets, headerOffsets.length * 2);
+        }
+        headerOffsets[offset] = nameStart;
+        headerOffsets[offset + 1] = nameEnd;
+        headerOffsets[offset + 2] = valueStart;
+        headerOffsets[offset + 3] = valueEnd;
+        headerCount++;
+    }
+
+    /**
+     * Gets the request method. Standard methods are returned as shared
+     * constants, so no string is created for them.
+     *
+     * @return the method
+     */
+    public String getMethod() {
+        if (method == null) {
+            for (String known : KNOWN_METHODS) {
+                if (regionEquals(methodStart, methodEnd, known, false)) {
+                    method = known;
+                    return method;
+                }
+            }
+            method = decode(methodStart, methodEnd);
+        }
+        return method;
+    }
+
+    /**
+     * Checks the request method without creating a string.
+     *
+     * @param expected the method to compare with, e.g. "GET"
+     * @return true if the request uses that method
+     */
+    public boolean isMethod(String expected) {
+        return regionEquals(methodStart, methodEnd, expected, false);
+    }
+
+    /**
+     * Gets the full request target, including the query string.
+     *
+     * @return the request URI
+     */
+    public String getUri() {
+        if (uri == null) {
+            uri = decode(targetStart, targetEnd);
+        }
+        return uri;
+    }
+
+    /**
+     * Gets the request path without the query string.
+     *
+     * @return the path
+     */
+    public String getPath() {
+        if (path == null) {
+            path = decode(targetStart, queryStart < 0 ? targetEnd : queryStart - 1);
+        }
+        return path;
+    }
+
+    /**
+     * Gets the protocol version.
+     *
+     * @return the version, e.g. "HTTP/1.1"
+     */
+    public String getVersion() {
+        return http11 ? "HTTP/1.1" : "HTTP/1.0";
+    }
+
+    /**
+     * Gets a header value by case-insensitive name.
+     *
+     * @param name the header name
+     * @return the header value, or null if absent
+     */
+    public String getHeader(String name) {
+        int index = findHeader(name);
+        if (index < 0) {
+            return null;
+        }
+        return decode(headerOffsets[index + 2], headerOffsets[index + 3]);
+    }
+
+    /**
+     * Checks whether a header lists a token, e.g. "close" in the Connection
+     * header. Compares bytes in place, ignoring case.
+     *
+     * @param name  the header name
+     * @param token the token to look for
+     * @return true if the header is present and contains the token
+     */
+    public boolean headerContainsToken(String name, String token) {
+        int index = findHeader(name);
+        if (index < 0) {
+            return false;
+        }
+        int position = headerOffsets[index + 2];
+        int end = headerOffsets[index + 3];
+        while (position < end) {
+            int tokenEnd = position;
+            while (tokenEnd < end && buffer[tokenEnd] != ',') {
+                tokenEnd++;
+            }
+            int trimmedStart = position;
+            int trimmedEnd = tokenEnd;
+            while (trimmedStart < trimmedEnd && buffer[trimmedStart] == ' ') {
+                trimmedStart++;
+            }
+            while (trimmedEnd > trimmedStart && buffer[trimmedEnd - 1] == ' ') {
+                trimmedEnd--;
+            }
+            if (regionEquals(trimmedStart, trimmedEnd, token, true)) {
+                return true;
+            }
+            position = tokenEnd + 1;
+        }
+        return false;
+    }
+
+    /**
+     * Gets the number of header fields.
+     *
+     * @return the header count
+     */
+    public int getHeaderCount() {
+        return headerCount;
+    }
+
+    /**
+     * Gets the query string view, which reads parameters straight from the
+     * request bytes.
+     *
+     * @return the query string
+     */
+    public QueryString getQuery() {
+        return query;
+    }
+
+    /**
+     * Gets the percent-decoded query parameters, parsed on first use.
+     *
+     * @return a map of parameter names to values
+     */
+    public Map<String, String> getQueryParameters() {
+        if (queryParameters == null) {
+            queryParameters = query.toMap();
+        }
+        return queryParameters;
+    }
+
+    /**
+     * Gets the route pattern that handled the request, used to label its
+     * metrics.
+     *
+     * @return the pattern, or null if no route has been set
+     */
+    public String getRoute() {
+        return route;
+    }
+
+    /**
+     * Sets the route pattern that handled the request.
+     *
+     * @param route the route pattern, e.g. {@code /users/{id}}
+     */
+    public void setRoute(String route) {
+        this.route = route;
+    }
+
+    /**
+     * Gets the address of the client that sent the request.
+     *
+     * @return the client IP address, or null if unknown
+     */
+    public String getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    /**
+     * Sets the address of the client. Kept across {@link #reset} since it
+     * belongs to the connection.
+     *
+     * @param remoteAddress the client IP address
+     */
+    void setRemoteAddress(String remoteAddress) {
+        this.remoteAddress = remoteAddress;
+    }
+
+    /**
+     * Gets the length of the body, as declared by the head.
+     *
+     * @return the Content-Length, 0 without a body, or {@link #CHUNKED}
+     */
+    long getBodyLength() {
+        return bodyLength;
+    }
+
+    /**
+     * Records the body framing the head declared.
+     *
+     * @param bodyLength the Content-Length, 0 without a body, or {@link #CHUNKED}
+     */
+    void setBodyLength(long bodyLength) {
+        this.bodyLength = bodyLength;
+    }
+
+    /**
+     * Checks whether the request carries a body.
+     *
+     * @return true if the head declared a non-empty or chunked body
+     */
+    public boolean hasBody() {
+        return bodyLength != 0;
+    }
+
+    /**
+     * Gets the body as a stream read from the connection on demand. The
+     * stream may only be read while the handler runs and fails with 413
+     * Content Too Large once more than the limit arrives; a body declaring
+     * a larger Content-Length is refused before anything is read, so the
+     * client is not even asked to send it. The stream is never buffered,
+     * so its limit may be above the server's.
+     *
+     * @param maxSize the largest body the caller accepts in bytes, or a
+     *                negative value for the server's limit
+     * @return the body stream, empty if the request has none
+     * @throws HttpStatusException with 413 if the declared length is too large
+     */
+    public InputStream getBody(long maxSize) {
+        if (body == null) {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+        body.limit(maxSize, false);
+        return body;
+    }
+
+    /**
+     * Reads the whole body into memory, within the smaller of the given
+     * limit and the server's, answering 413 like {@link #getBody(long)}.
+     *
+     * @param maxSize the largest body the caller accepts in bytes, or a
+     *                negative value for the server's limit
+     * @return the body bytes, empty if the request has none
+     * @throws IOException         if the connection fails
+     * @throws HttpStatusException with 413 if the body is too large
+     */
+    public byte[] readBody(long maxSize) throws IOException {
+        if (body == null) {
+            return new byte[0];
+        }
+        body.limit(maxSize, true);
+        return body.readAllBytes();
+    }
+
+    /**
+     * Attaches the stream the engine reads the body from.
+     *
+     * @param body the body stream
+     */
+    void setBody(RequestBody body) {
+        this.body = body;
+    }
+
+    /**
+     * Checks whether the client waits for 100 Continue before sending the
+     * body.
+     *
+     * @return true for HTTP/1.1 requests with "Expect: 100-continue"
+     */
+    boolean expectsContinue() {
+        return http11 && bodyLength != 0 && headerContainsToken("Expect", "100-continue");
+    }
+
+    /**
+     * Copies the request head out of the receive buffer, for a request
+     * handled on another thread while the buffer is reused for what the
+     * connection receives next.
+     *
+     * @param start the first byte of the head
+     * @param end   the index just past the head
+     * @return a request holding its own copy of the head
+     */
+    HttpRequest detach(int start, int end) {
+        HttpRequest copy = new HttpRequest();
+        copy.buffer = Arrays.copyOfRange(buffer, start, end);
+        copy.methodStart = methodStart - start;
+        copy.methodEnd = methodEnd - start;
+        copy.targetStart = targetStart - start;
+        copy.targetEnd = targetEnd - start;
+        copy.queryStart = queryStart < 0 ? -1 : queryStart - start;
+        copy.http11 = http11;
+        copy.headerOffsets = Arrays.copyOf(headerOffsets, Math.max(4, headerCount * 4));
+        for (int i = 0; i < headerCount * 4; i++) {
+            copy.headerOffsets[i] -= start;
+        }
+        copy.headerCount = headerCount;
+        copy.query.reset(copy.buffer, copy.queryStart < 0 ? copy.targetEnd : copy.queryStart, copy.targetEnd);
+        copy.remoteAddress = remoteAddress;
+        copy.bodyLength = bodyLength;
+        return copy;
+    }
+
+    /**
+     * Decides whether the client wants the connection to persist.
+     * HTTP/1.1 connections persist unless the client sends "Connection: close";
+     * HTTP/1.0 connections only persist with "Connection: keep-alive".
+     *
+     * @return true if the connection should be kept open
+     */
+    public boolean isKeepAliveRequested() {
+        if (http11) {
+            return !headerContainsToken("Connection", "close");
+        }
+        return headerContainsToken("Connection", "keep-alive");
+    }
+
+    /**
+     * Counts the fields of a header, and whether they all carry the same
+     * value. Framing headers are only trusted when they are unambiguous.
+     *
+     * @param name the header name
+     * @return the number of fields with the name, or -1 if there are
+     *         several and their values differ
+     */
+    int countHeader(String name) {
+        int first = findHeader(name);
+        if (first < 0) {
+            return 0;
+        }
+        int count = 1;
+        for (int i = first + 4; i < headerCount * 4; i += 4) {
+            if (!regionEquals(headerOffsets[i], headerOffsets[i + 1], name, true)) {
+                continue;
+            }
+            count++;
+            if (!Arrays.equals(buffer, headerOffsets[i + 2], headerOffsets[i + 3],
+                    buffer, headerOffsets[first + 2], headerOffsets[first + 3])) {
+                return -1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Finds a header by case-insensitive name.
+     *
+     * @param name the header name
+     * @return the index of its offsets, or -1 if absent
+     */
+    private int findHeader(String name) {
+        for (int i = 0; i < headerCount * 4; i += 4) {
+            if (regionEquals(headerOffsets[i], headerOffsets[i + 1], name, true)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compares a buffer region with an ASCII string.
+     *
+     * @param start      the first byte of the region
+     * @param end        the end of the region
+     * @param value      the string to compare with
+     * @param ignoreCase whether ASCII letters match regardless of case
+     * @return true if they are equal
+     */
+    private boolean regionEquals(int start, int end, String value, boolean ignoreCase) {
+        if (end - start != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            int actual = buffer[start + i];
+            int expected = value.charAt(i);
+            if (actual != expected) {
+                if (!ignoreCase || (actual | 0x20) != (expected | 0x20) || (actual | 0x20) < 'a'
+                        || (actual | 0x20) > 'z') {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes a buffer region. Request heads are ISO-8859-1 on the wire.
+     *
+     * @param start the first byte
+     * @param end   the end of the region
+     * @return the decoded string
+     */
+    private String decode(int start, int end) {
+        return new String(buffer, start, end - start, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,324 @@
+package co.edu.escuelaing.microserver.http;
+
+/**
+ * Byte-level HTTP/1.x request head parser.
+ * Works directly on the connection's receive buffer: nothing is decoded to
+ * characters and no regular expressions are involved. The parsed request
+ * only records offsets into the buffer, so parsing allocates nothing.
+ * The parser holds no per-request state and may be shared by every
+ * connection served by one thread.
+ */
+class HttpRequestParser {
+
+    private static final boolean[] TOKEN_CHARS = new boolean[128];
+
+    static {
+        for (char c = '0'; c <= '9'; c++) {
+            TOKEN_CHARS[c] = true;
+        }
+        for (char c = 'a'; c <= 'z'; c++) {
+            TOKEN_CHARS[c] = true;
+            TOKEN_CHARS[c - 'a' + 'A'] = true;
+        }
+        for (char c : "!#$%&'*+-.^_`|~".toCharArray()) {
+            TOKEN_CHARS[c] = true;
+        }
+    }
+
+    private final int maxRequestLineLength;
+    private final int maxHeaderSize;
+    private final int maxHeaderCount;
+
+    /**
+     * Creates a parser enforcing the limits of the given configuration.
+     *
+     * @param config the server configuration
+     */
+    HttpRequestParser(ServerConfig config) {
+        this(config.getMaxRequestLineLength(), config.getMaxHeaderSize(), config.getMaxHeaderCount());
+    }
+
+    /**
+     * Creates a parser with explicit limits.
+     *
+     * @param maxRequestLineLength the longest accepted request line, in bytes
+     * @param maxHeaderSize        the largest accepted header block, in bytes
+     * @param maxHeaderCount       the largest accepted number of header fields
+     */
+    HttpRequestParser(int maxRequestLineLength, int maxHeaderSize, int maxHeaderCount) {
+        this.maxRequestLineLength = maxRequestLineLength;
+        this.maxHeaderSize = maxHeaderSize;
+        this.maxHeaderCount = maxHeaderCount;
+    }
+
+    /**
+     * Gets the number of bytes a buffer needs to hold any head this parser accepts.
+     *
+     * @return the maximum head size, including line terminators
+     */
+    int getMaxHeadSize() {
+        return maxRequestLineLength + maxHeaderSize + 4;
+    }
+
+    /**
+     * Skips the empty lines a client may send before a request.
+     *
+     * @param buffer the receive buffer
+     * @param start  the first unread byte
+     * @param end    the end of the received bytes
+     * @return the index of the first byte that is not a line break
+     */
+    int skipEmptyLines(byte[] buffer, int start, int end) {
+        while (start < end && (buffer[start] == '\r' || buffer[start] == '\n')) {
+            start++;
+        }
+        return start;
+    }
+
+    /**
+     * Looks for the empty line that terminates the request head.
+     * Callers keep the index where the previous unsuccessful scan stopped and
+     * pass it back as {@code from}, so a head arriving in many small pieces
+     * is scanned only once.
+     *
+     * @param buffer the receive buffer
+     * @param start  the first byte of the request
+     * @param from   where to resume scanning
+     * @param end    the end of the received bytes
+     * @return the index just past the head, or -1 if the head is incomplete
+     * @throws HttpParseException if the incomplete head already exceeds the limits
+     */
+    int findHeadEnd(byte[] buffer, int start, int from, int end) throws HttpParseException {
+        for (int i = Math.max(start, from); i < end; i++) {
+            if (buffer[i] == '\n' && i > start
+                    && (buffer[i - 1] == '\n' || (buffer[i - 1] == '\r' && i - 1 > start && buffer[i - 2] == '\n'))) {
+                return i + 1;
+            }
+        }
+
+        int lineFeed = indexOf(buffer, start, end, (byte) '\n');
+        if (lineFeed < 0 ? end - start > maxRequestLineLength : lineFeed - start > maxRequestLineLength + 1) {
+            throw new HttpParseException(414, "Request line too long");
+        }
+        if (lineFeed >= 0 && end - lineFeed - 1 > maxHeaderSize) {
+            throw new HttpParseException(431, "Request header fields too large");
+        }
+        return -1;
+    }
+
+    /**
+     * Parses a complete request head into the given request view.
+     *
+     * @param buffer  the receive buffer
+     * @param start   the first byte of the request
+     * @param headEnd the index just past the head, as returned by {@link #findHeadEnd}
+     * @param request the view to fill
+     * @throws HttpParseException if the head is malformed or exceeds the limits
+     */
+    void parseHead(byte[] buffer, int start, int headEnd, HttpRequest request) throws HttpParseException {
+        request.reset(buffer);
+
+        int lineFeed = indexOf(buffer, start, headEnd, (byte) '\n');
+        int lineEnd = trimCarriageReturn(buffer, start, lineFeed);
+        if (lineEnd - start > maxRequestLineLength) {
+            throw new HttpParseException(414, "Request line too long");
+        }
+        parseRequestLine(buffer, start, lineEnd, request);
+
+        int position = lineFeed + 1;
+        if (headEnd - position > maxHeaderSize) {
+            throw new HttpParseException(431, "Request header fields too large");
+        }
+
+        int count = 0;
+        while (position < headEnd) {
+            lineFeed = indexOf(buffer, position, headEnd, (byte) '\n');
+            lineEnd = trimCarriageReturn(buffer, position, lineFeed);
+            if (lineEnd == position) {
+                break;
+            }
+            if (++count > maxHeaderCount) {
+                throw new HttpParseException(431, "Too many request header fields");
+            }
+            parseHeaderLine(buffer, position, lineEnd, request);
+            position = lineFeed + 1;
+        }
+        request.setBodyLength(bodyLength(request));
+    }
+
+    /**
+     * Works out how the body of a request is framed. A request with both a
+     * Content-Length and a Transfer-Encoding, with Content-Length fields
+     * that disagree or with more than one Transfer-Encoding field is
+     * refused rather than guessed at, since a proxy in front may have read
+     * it the other way.
+     *
+     * @param request the parsed head
+     * @return the Content-Length, 0 without a body, or {@link HttpRequest#CHUNKED}
+     * @throws HttpParseException with 400 if the framing is invalid, or with
+     *                            501 for a transfer coding other than chunked
+     */
+    private static long bodyLength(HttpRequest request) throws HttpParseException {
+        if (request.countHeader("Content-Length") < 0) {
+            throw new HttpParseException(400, "Conflicting Content-Length fields");
+        }
+        int transferEncodings = request.countHeader("Transfer-Encoding");
+        if (transferEncodings > 1 || transferEncodings < 0) {
+            throw new HttpParseException(400, "Repeated Transfer-Encoding");
+        }
+        String transferEncoding = request.getHeader("Transfer-Encoding");
+        String contentLength = request.getHeader("Content-Length");
+        if (transferEncoding != null) {
+            if (contentLength != null) {
+                throw new HttpParseException(400, "Both Content-Length and Transfer-Encoding present");
+            }
+            if (!transferEncoding.equalsIgnoreCase("chunked")) {
+                throw new HttpParseException(501, "Unsupported transfer coding");
+            }
+            return HttpRequest.CHUNKED;
+        }
+        if (contentLength == null) {
+            return 0;
+        }
+        if (contentLength.isEmpty() || contentLength.length() > 18) {
+            throw new HttpParseException(400, "Invalid Content-Length");
+        }
+        long length = 0;
+        for (int i = 0; i < contentLength.length(); i++) {
+            char c = contentLength.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new HttpParseException(400, "Invalid Content-Length");
+            }
+            length = length * 10 + (c - '0');
+        }
+        return length;
+    }
+
+    /**
+     * Parses "METHOD SP request-target SP HTTP-version".
+     *
+     * @param buffer  the receive buffer
+     * @param start   the first byte of the line
+     * @param end     the end of the line, without the line terminator
+     * @param request the view to fill
+     * @throws HttpParseException if the line is malformed
+     */
+    private void parseRequestLine(byte[] buffer, int start, int end, HttpRequest request) throws HttpParseException {
+        int methodEnd = start;
+        while (methodEnd < end && isTokenChar(buffer[methodEnd])) {
+            methodEnd++;
+        }
+        if (methodEnd == start || methodEnd >= end || buffer[methodEnd] != ' ') {
+            throw new HttpParseException(400, "Malformed request method");
+        }
+
+        int targetStart = methodEnd + 1;
+        int targetEnd = targetStart;
+        int queryStart = -1;
+        while (targetEnd < end && buffer[targetEnd] != ' ') {
+            byte b = buffer[targetEnd];
+            if (b <= 0x20 || b == 0x7f) {
+                throw new HttpParseException(400, "Malformed request target");
+            }
+            if (b == '?' && queryStart < 0) {
+                queryStart = targetEnd + 1;
+            }
+            targetEnd++;
+        }
+        if (targetEnd == targetStart || targetEnd >= end || buffer[targetStart] != '/') {
+            throw new HttpParseException(400, "Malformed request target");
+        }
+
+        int versionStart = targetEnd + 1;
+        if (end - versionStart != 8
+                || buffer[versionStart] != 'H' || buffer[versionStart + 1] != 'T'
+                || buffer[versionStart + 2] != 'T' || buffer[versionStart + 3] != 'P'
+                || buffer[versionStart + 4] != '/' || buffer[versionStart + 5] != '1'
+                || buffer[versionStart + 6] != '.'
+                || (buffer[versionStart + 7] != '0' && buffer[versionStart + 7] != '1')) {
+            throw new HttpParseException(400, "Unsupported protocol version");
+        }
+
+        request.setRequestLine(start, methodEnd, targetStart, targetEnd, queryStart, buffer[versionStart + 7] == '1');
+    }
+
+    /**
+     * Parses "field-name: OWS field-value OWS".
+     *
+     * @param buffer  the receive buffer
+     * @param start   the first byte of the line
+     * @param end     the end of the line, without the line terminator
+     * @param request the view to fill
+     * @throws HttpParseException if the line is malformed
+     */
+    private void parseHeaderLine(byte[] buffer, int start, int end, HttpRequest request) throws HttpParseException {
+        int nameEnd = start;
+        while (nameEnd < end && isTokenChar(buffer[nameEnd])) {
+            nameEnd++;
+        }
+        if (nameEnd == start || nameEnd >= end || buffer[nameEnd] != ':') {
+            throw new HttpParseException(400, "Malformed header field");
+        }
+
+        int valueStart = nameEnd + 1;
+        while (valueStart < end && isWhitespace(buffer[valueStart])) {
+            valueStart++;
+        }
+        int valueEnd = end;
+        while (valueEnd > valueStart && isWhitespace(buffer[valueEnd - 1])) {
+            valueEnd--;
+        }
+
+        request.addHeader(start, nameEnd, valueStart, valueEnd);
+    }
+
+    /**
+     * Finds the first occurrence of a byte.
+     *
+     * @param buffer the buffer
+     * @param start  the first index to check
+     * @param end    the end of the range
+     * @param value  the byte to find
+     * @return the index, or -1 if absent
+     */
+    private static int indexOf(byte[] buffer, int start, int end, byte value) {
+        for (int i = start; i < end; i++) {
+            if (buffer[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Drops the carriage return preceding a line feed, if any.
+     *
+     * @param buffer    the buffer
+     * @param lineStart the first byte of the line
+     * @param lineFeed  the index of the line feed
+     * @return the end of the line content
+     */
+    private static int trimCarriageReturn(byte[] buffer, int lineStart, int lineFeed) {
+        return lineFeed > lineStart && buffer[lineFeed - 1] == '\r' ? lineFeed - 1 : lineFeed;
+    }
+
+    /**
+     * Checks whether a byte may appear in a method or header name.
+     *
+     * @param b the byte
+     * @return true for RFC 9110 token characters
+     */
+    private static boolean isTokenChar(byte b) {
+        return b > 0 && TOKEN_CHARS[b];
+    }
+
+    /**
+     * Checks whether a byte is optional whitespace.
+     *
+     * @param b the byte
+     * @return true for space and horizontal tab
+     */
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t';
+    }
+}
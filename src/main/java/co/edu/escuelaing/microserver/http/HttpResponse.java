@@ -0,0 +1,474 @@
+package co.edu.escuelaing.microserver.http;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Response produced for a request, independent of the engine that writes it.
+ * Entity headers are either derived from the content type and body length or
+ * supplied pre-encoded, which lets cached resources skip header formatting.
+ * The head is assembled from pre-encoded status lines and header names
+ * straight into a byte array, so encoding it allocates nothing when the
+ * array comes from a pool.
+ * Streaming bodies have no known length and are sent chunked, or for
+ * HTTP/1.0 clients delimited by closing the connection.
+ * A deferred response only stands in for the one an asynchronous handler
+ * will produce; engines wait for it without holding a thread.
+ */
+class HttpResponse {
+
+    /**
+     * Interim response telling a client that waits with
+     * "Expect: 100-continue" to send its request body.
+     */
+    static final byte[] CONTINUE = ascii("HTTP/1.1 100 Continue\r\n\r\n");
+
+    private static final byte[] EMPTY = new byte[0];
+    private static final byte[] CRLF = ascii("\r\n");
+    private static final byte[] CONTENT_TYPE = ascii("Content-Type: ");
+    private static final byte[] CONTENT_LENGTH = ascii("Content-Length: ");
+    private static final byte[] CHUNKED = ascii("Transfer-Encoding: chunked\r\n");
+    private static final byte[] KEEP_ALIVE = ascii("Connection: keep-alive\r\nKeep-Alive: timeout=");
+    private static final byte[] CLOSE = ascii("Connection: close\r\n");
+    private static final int[] KNOWN_STATUS_CODES = {
+        200, 206, 304, 400, 404, 405, 408, 413, 414, 416, 429, 431, 500, 501, 503, 504
+    };
+    private static final byte[][] STATUS_LINES = new byte[500][];
+
+    static {
+        for (int statusCode : KNOWN_STATUS_CODES) {
+            STATUS_LINES[statusCode - 100] = encodeStatusLine(statusCode);
+        }
+    }
+
+    private final int statusCode;
+    private final String contentType;
+    private final String extraHeaders;
+    private final byte[] headerBlock;
+    private final byte[] body;
+    private final FileRegion fileBody;
+    private final StreamingBody streamingBody;
+    private final boolean chunked;
+    private final CompletableFuture<HttpResponse> deferred;
+
+    /**
+     * Creates a new response.
+     *
+     * @param statusCode  the HTTP status code
+     * @param contentType the content type
+     * @param body        the response body
+     */
+    HttpResponse(int statusCode, String contentType, byte[] body) {
+        this(statusCode, contentType, null, null, body, null, null, false, null);
+    }
+
+    /**
+     * Creates a new response with additional header lines, such as the
+     * content coding of the body.
+     *
+     * @param statusCode   the HTTP status code
+     * @param contentType  the content type
+     * @param body         the response body
+     * @param extraHeaders encoded header lines, each terminated by CRLF, or null
+     */
+    HttpResponse(int statusCode, String contentType, byte[] body, String extraHeaders) {
+        this(statusCode, contentType, extraHeaders, null, body, null, null, false, null);
+    }
+
+    /**
+     * Creates a response whose entity headers are already encoded.
+     *
+     * @param statusCode  the HTTP status code
+     * @param headerBlock the encoded header lines, each terminated by CRLF,
+     *                    including Content-Length when the status has a body
+     * @param body        the response body, or null for none
+     */
+    HttpResponse(int statusCode, byte[] headerBlock, byte[] body) {
+        this(statusCode, null, null, headerBlock, body != null ? body : EMPTY, null, null, false, null);
+    }
+
+    /**
+     * Creates a response whose body is streamed from a file.
+     *
+     * @param statusCode  the HTTP status code
+     * @param headerBlock the encoded header lines, including Content-Length
+     * @param fileBody    the file region to send after the head
+     */
+    HttpResponse(int statusCode, byte[] headerBlock, FileRegion fileBody) {
+        this(statusCode, null, null, headerBlock, EMPTY, fileBody, null, false, null);
+    }
+
+    /**
+     * Creates a response whose body is produced while it is being sent.
+     * Without chunked transfer coding the end of the body is marked by
+     * closing the connection, so it is sent with "Connection: close".
+     *
+     * @param statusCode    the HTTP status code
+     * @param streamingBody the body writer
+     * @param extraHeaders  encoded header lines, each terminated by CRLF, or null
+     * @param chunked       whether to use chunked transfer coding
+     */
+    HttpResponse(int statusCode, StreamingBody streamingBody, String extraHeaders, boolean chunked) {
+        this(statusCode, streamingBody.getContentType(), extraHeaders, null, EMPTY, null, streamingBody, chunked,
+                null);
+    }
+
+    /**
+     * Creates a placeholder for a response that is produced later.
+     *
+     * @param deferred completes with the actual response
+     */
+    HttpResponse(CompletableFuture<HttpResponse> deferred) {
+        this(0, null, null, null, EMPTY, null, null, false, deferred);
+    }
+
+    /**
+     * Creates a response from all of its parts.
+     *
+     * @param statusCode    the HTTP status code
+     * @param contentType   the content type, or null with a header block
+     * @param extraHeaders  additional header lines, or null
+     * @param headerBlock   pre-encoded entity headers, or null
+     * @param body          the in-memory body
+     * @param fileBody      the file body, or null
+     * @param streamingBody the streaming body, or null
+     * @param chunked       whether the streaming body is sent chunked
+     * @param deferred      the future actual response, or null
+     */
+    private HttpResponse(int statusCode, String contentType, String extraHeaders, byte[] headerBlock, byte[] body,
+            FileRegion fileBody, StreamingBody streamingBody, boolean chunked,
+            CompletableFuture<HttpResponse> deferred) {
+        this.statusCode = statusCode;
+        this.contentType = contentType;
+        this.extraHeaders = extraHeaders;
+        this.headerBlock = headerBlock;
+        this.body = body;
+        this.fileBody = fileBody;
+        this.streamingBody = streamingBody;
+        this.chunked = chunked;
+        this.deferred = deferred;
+    }
+
+    /**
+     * Creates an HTML error response.
+     *
+     * @param statusCode the HTTP status code
+     * @return the response
+     */
+    static HttpResponse error(int statusCode) {
+        return error(statusCode, null);
+    }
+
+    /**
+     * Creates an HTML error response with additional header lines, such
+     * as Retry-After.
+     *
+     * @param statusCode   the HTTP status code
+     * @param extraHeaders encoded header lines, each terminated by CRLF, or null
+     * @return the response
+     */
+    static HttpResponse error(int statusCode, String extraHeaders) {
+        String content = "<html><body><h1>" + statusCode + " " + reasonPhrase(statusCode) + "</h1></body></html>";
+        return new HttpResponse(statusCode, "text/html", content.getBytes(StandardCharsets.UTF_8), extraHeaders);
+    }
+
+    /**
+     * Creates an error response for an {@link HttpStatusException}, with a
+     * Retry-After header when it carries a delay.
+     *
+     * @param e the exception
+     * @return the response
+     */
+    static HttpResponse error(HttpStatusException e) {
+        if (e.getRetryAfterSeconds() < 0) {
+            return error(e.getStatusCode());
+        }
+        return error(e.getStatusCode(), "Retry-After: " + e.getRetryAfterSeconds() + "\r\n");
+    }
+
+    /**
+     * Gets the status code.
+     *
+     * @return the status code
+     */
+    int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * Gets the number of body bytes the response sends.
+     *
+     * @return the body length, or -1 for a streaming body
+     */
+    long getContentLength() {
+        if (streamingBody != null) {
+            return -1;
+        }
+        return body.length + (fileBody != null ? fileBody.getLength() : 0);
+    }
+
+    /**
+     * Gets the response body.
+     *
+     * @return the body bytes
+     */
+    byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * Gets the file body sent after the in-memory body.
+     *
+     * @return the file region, or null if the body is in memory
+     */
+    FileRegion getFileBody() {
+        return fileBody;
+    }
+
+    /**
+     * Gets the streaming body sent with chunked transfer coding or ended
+     * by closing the connection.
+     *
+     * @return the body writer, or null if the length is known up front
+     */
+    StreamingBody getStreamingBody() {
+        return streamingBody;
+    }
+
+    /**
+     * Checks whether the body ends only when the connection closes: a
+     * streaming body sent to a client that does not understand chunks.
+     * Engines must close the connection after such a response.
+     *
+     * @return true if the connection cannot be kept alive
+     */
+    boolean isCloseDelimited() {
+        return streamingBody != null && !chunked;
+    }
+
+    /**
+     * Gets the future actual response of a placeholder.
+     *
+     * @return the future, or null if this is the actual response
+     */
+    CompletableFuture<HttpResponse> getDeferred() {
+        return deferred;
+    }
+
+    /**
+     * Encodes the status line and headers into a new array.
+     *
+     * @param keepAlive        whether the connection stays open after the response
+     * @param keepAliveSeconds the idle timeout advertised to the client
+     * @return the encoded head, terminated by an empty line
+     */
+    byte[] encodeHead(boolean keepAlive, int keepAliveSeconds) {
+        byte[] head = new byte[headLength(keepAlive, keepAliveSeconds)];
+        encodeHead(head, keepAlive, keepAliveSeconds);
+        return head;
+    }
+
+    /**
+     * Encodes the status line and headers into a buffer from a pool, or
+     * into an array of its own if the head does not fit one. Either way
+     * the array goes back with {@link BufferPool#release}, which ignores
+     * arrays that are not the pool's.
+     *
+     * @param pool             the pool of head buffers
+     * @param keepAlive        whether the connection stays open after the response
+     * @param keepAliveSeconds the idle timeout advertised to the client
+     * @return the encoded head, wrapping the array from its start
+     */
+    ByteBuffer encodeHead(BufferPool pool, boolean keepAlive, int keepAliveSeconds) {
+        int length = headLength(keepAlive, keepAliveSeconds);
+        byte[] head = length <= pool.getBufferSize() ? pool.acquire() : new byte[length];
+        return ByteBuffer.wrap(head, 0, encodeHead(head, keepAlive, keepAliveSeconds));
+    }
+
+    /**
+     * Computes the length of the encoded head.
+     *
+     * @param keepAlive        whether the connection stays open after the response
+     * @param keepAliveSeconds the idle timeout advertised to the client
+     * @return the number of bytes
+     */
+    private int headLength(boolean keepAlive, int keepAliveSeconds) {
+        int length = statusLine(statusCode).length;
+        if (headerBlock == null) {
+            length += CONTENT_TYPE.length + contentType.length() + CRLF.length;
+            if (streamingBody == null) {
+                length += CONTENT_LENGTH.length + digits(body.length) + CRLF.length;
+            } else if (chunked) {
+                length += CHUNKED.length;
+            }
+            if (extraHeaders != null) {
+                length += extraHeaders.length();
+            }
+        } else {
+            length += headerBlock.length;
+        }
+        length += keepAlive ? KEEP_ALIVE.length + digits(keepAliveSeconds) + CRLF.length : CLOSE.length;
+        return length + CRLF.length;
+    }
+
+    /**
+     * Encodes the head from pre-encoded parts, without allocating.
+     *
+     * @param target           the array to encode into, large enough for the head
+     * @param keepAlive        whether the connection stays open after the response
+     * @param keepAliveSeconds the idle timeout advertised to the client
+     * @return the length of the head
+     */
+    private int encodeHead(byte[] target, boolean keepAlive, int keepAliveSeconds) {
+        int position = put(target, 0, statusLine(statusCode));
+        if (headerBlock == null) {
+            position = put(target, position, CONTENT_TYPE);
+            position = put(target, position, contentType);
+            position = put(target, position, CRLF);
+            if (streamingBody == null) {
+                position = put(target, position, CONTENT_LENGTH);
+                position = putNumber(target, position, body.length);
+                position = put(target, position, CRLF);
+            } else if (chunked) {
+                position = put(target, position, CHUNKED);
+            }
+            if (extraHeaders != null) {
+                position = put(target, position, extraHeaders);
+            }
+        } else {
+            position = put(target, position, headerBlock);
+        }
+        if (keepAlive) {
+            position = put(target, position, KEEP_ALIVE);
+            position = putNumber(target, position, keepAliveSeconds);
+            position = put(target, position, CRLF);
+        } else {
+            position = put(target, position, CLOSE);
+        }
+        return put(target, position, CRLF);
+    }
+
+    /**
+     * Gets the encoded status line for a status code.
+     *
+     * @param statusCode the HTTP status code
+     * @return the status line, terminated by CRLF
+     */
+    private static byte[] statusLine(int statusCode) {
+        if (statusCode >= 100 && statusCode < 100 + STATUS_LINES.length && STATUS_LINES[statusCode - 100] != null) {
+            return STATUS_LINES[statusCode - 100];
+        }
+        return encodeStatusLine(statusCode);
+    }
+
+    /**
+     * Encodes a status line.
+     *
+     * @param statusCode the HTTP status code
+     * @return the status line, terminated by CRLF
+     */
+    private static byte[] encodeStatusLine(int statusCode) {
+        return ("HTTP/1.1 " + statusCode + " " + reasonPhrase(statusCode) + "\r\n")
+                .getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Copies encoded bytes into a head.
+     *
+     * @param target   the head
+     * @param position where to copy to
+     * @param bytes    the bytes
+     * @return the position after them
+     */
+    private static int put(byte[] target, int position, byte[] bytes) {
+        System.arraycopy(bytes, 0, target, position, bytes.length);
+        return position + bytes.length;
+    }
+
+    /**
+     * Encodes header text into a head as ISO-8859-1.
+     *
+     * @param target   the head
+     * @param position where to encode to
+     * @param text     the text
+     * @return the position after it
+     */
+    private static int put(byte[] target, int position, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            target[position++] = c <= 0xff ? (byte) c : (byte) '?';
+        }
+        return position;
+    }
+
+    /**
+     * Encodes a non-negative number into a head in decimal.
+     *
+     * @param target   the head
+     * @param position where to encode to
+     * @param value    the number
+     * @return the position after it
+     */
+    private static int putNumber(byte[] target, int position, long value) {
+        int end = position + digits(value);
+        for (int i = end - 1; i >= position; i--) {
+            target[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return end;
+    }
+
+    /**
+     * Counts the decimal digits of a non-negative number.
+     *
+     * @param value the number
+     * @return the number of digits, at least one
+     */
+    private static int digits(long value) {
+        int digits = 1;
+        while (value >= 10) {
+            value /= 10;
+            digits++;
+        }
+        return digits;
+    }
+
+    /**
+     * Gets the standard reason phrase for a status code.
+     *
+     * @param statusCode the HTTP status code
+     * @return the reason phrase
+     */
+    static String reasonPhrase(int statusCode) {
+        switch (statusCode) {
+            case 200: return "OK";
+            case 206: return "Partial Content";
+            case 304: return "Not Modified";
+            case 400: return "Bad Request";
+            case 404: return "Not Found";
+            case 405: return "Method Not Allowed";
+            case 408: return "Request Timeout";
+            case 413: return "Content Too Large";
+            case 414: return "URI Too Long";
+            case 416: return "Range Not Satisfiable";
+            case 429: return "Too Many Requests";
+            case 431: return "Request Header Fields Too Large";
+            case 500: return "Internal Server Error";
+            case 501: return "Not Implemented";
+            case 503: return "Service Unavailable";
+            case 504: return "Gateway Timeout";
+            default: return "Unknown";
+        }
+    }
+
+    /**
+     * Encodes a protocol constant.
+     *
+     * @param text the ASCII text
+     * @return the bytes
+     */
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -1,28 +1,67 @@
 package co.edu.escuelaing.microserver.http;
 
-import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.PrintWriter;
+import java.lang.reflect.Method;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Simple HTTP server that handles GET requests and serves static files.
  * Supports HTML and PNG file types.
+ * Accepted connections are handed to a worker pool (or virtual threads) so
+ * a slow client never blocks the accept loop, and are kept alive across
+ * requests following HTTP/1.1 persistent connection rules.
+ * With the {@link ServerEngine#NIO} engine the connections are multiplexed
+ * by selector event loops instead.
+ * Both engines record request counts, latencies and traffic in the
+ * server's {@link ServerMetrics}, and log requests and errors through an
+ * asynchronous {@link ServerLog} so no request waits on console or file I/O.
+ * Neither engine holds a thread while an asynchronous handler's future is
+ * pending.
+ * Idle, header and request deadlines are kept on a {@link TimerWheel}, so
+ * a client trickling bytes or refusing to read cannot hold a connection
+ * indefinitely.
+ * The blocking engine also speaks HTTP/2 over cleartext (h2c) to clients
+ * that open with the HTTP/2 preface or ask to upgrade a bodyless request;
+ * the streams of such a connection are served concurrently by an
+ * {@link Http2Connection} on a second pool of workers.
+ * Several acceptors can listen on the same port with {@code SO_REUSEPORT},
+ * each with a socket and workers of its own, so the kernel spreads the
+ * accept load across cores and across server processes sharing the port.
  */
 public class HttpServer {
-    
-    private final int port;
-    private final RequestDispatcher requestDispatcher;
-    private ServerSocket serverSocket;
-    
+
+    private static final int HEAD_BUFFER_SIZE = 1024;
+    private static final int MAX_FREE_HEAD_BUFFERS = 256;
+
+    private final ServerConfig config;
+    private final ServerMetrics metrics = new ServerMetrics();
+    private final ServerLog log;
+    private final RequestProcessor processor;
+    private final Semaphore connectionPermits;
+    private volatile Acceptor[] acceptors;
+    private ScheduledExecutorService timerThread;
+    private final TimerWheel timers = new TimerWheel();
+    private final BufferPool headBuffers = new BufferPool(HEAD_BUFFER_SIZE, MAX_FREE_HEAD_BUFFERS);
+    private NioServerEngine nioEngine;
+
     /**
      * Creates a new HTTP server on the specified port.
      *
@@ -30,199 +69,696 @@ public class HttpServer {
      * @param requestDispatcher the dispatcher to handle dynamic requests
      */
     public HttpServer(int port, RequestDispatcher requestDispatcher) {
-        this.port = port;
-        this.requestDispatcher = requestDispatcher;
+        this(new ServerConfig(port), requestDispatcher);
+    }
+
+    /**
+     * Creates a new HTTP server with the given configuration.
+     *
+     * @param config the server configuration
+     * @param requestDispatcher the dispatcher to handle dynamic requests
+     */
+    public HttpServer(ServerConfig config, RequestDispatcher requestDispatcher) {
+        this.config = config;
+        this.log = new ServerLog(config, metrics);
+        this.processor = new RequestProcessor(config, requestDispatcher, metrics);
+        this.connectionPermits = new Semaphore(config.getMaxConnections());
+    }
+
+    /**
+     * Gets the metrics recorded by the server.
+     *
+     * @return the server metrics
+     */
+    public ServerMetrics getMetrics() {
+        return metrics;
     }
-    
+
+    /**
+     * Gets the log the server writes requests and errors to. Applications
+     * can report their own errors through it so they are printed off the
+     * request thread as well.
+     *
+     * @return the server log
+     */
+    public ServerLog getLog() {
+        return log;
+    }
+
     /**
      * Starts the HTTP server and begins listening for requests.
      *
      * @throws IOException
      */
     public void start() throws IOException {
-        serverSocket = new ServerSocket(port);
-        System.out.println("Server started on http://localhost:" + port);
-        
-        while (!serverSocket.isClosed()) {
-            try (Socket clientSocket = serverSocket.accept()) {
-                handleRequest(clientSocket);
-            } catch (IOException e) {
-                if (!serverSocket.isClosed()) {
-                    System.err.println("Error handling request: " + e.getMessage());
-                }
-            }
+        log.start();
+        if (config.getEngine() == ServerEngine.NIO) {
+            nioEngine = new NioServerEngine(config, processor, metrics, log, connectionPermits);
+            System.out.println("Server started on http://localhost:" + config.getPort() + " (nio"
+                    + (config.getAcceptorThreads() > 1 ? ", " + config.getAcceptorThreads() + " acceptors)" : ")"));
+            nioEngine.start();
+            return;
+        }
+
+        // Opened through channels so accepted sockets expose one for zero-copy file transfers.
+        ServerSocketChannel[] channels = ListeningSockets.open(config, log);
+        Acceptor[] created = new Acceptor[channels.length];
+        for (int i = 0; i < created.length; i++) {
+            created[i] = new Acceptor(channels[i].socket(), created.length == 1 ? "" : (i + 1) + "-", created.length);
+        }
+        acceptors = created;
+        timerThread = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "http-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timerThread.scheduleAtFixedRate(() -> timers.advance(TimerWheel.currentMillis()),
+                timers.getTickMillis(), timers.getTickMillis(), TimeUnit.MILLISECONDS);
+        System.out.println("Server started on http://localhost:" + config.getPort()
+                + (created.length > 1 ? " (" + created.length + " acceptors)" : ""));
+
+        for (int i = 1; i < created.length; i++) {
+            Thread thread = new Thread(created[i], "http-acceptor-" + (i + 1));
+            thread.setDaemon(true);
+            thread.start();
         }
+        created[0].run();
     }
-    
+
     /**
      * Stops the HTTP server.
      *
      * @throws IOException
      */
     public void stop() throws IOException {
-        if (serverSocket != null) {
-            serverSocket.close();
+        if (nioEngine != null) {
+            nioEngine.stop();
+        }
+        Acceptor[] running = acceptors;
+        if (running != null) {
+            for (Acceptor acceptor : running) {
+                acceptor.stop();
+            }
+        }
+        if (timerThread != null) {
+            timerThread.shutdownNow();
         }
+        log.stop();
     }
-    
+
     /**
-     * Handles an individual HTTP request.
+     * Turns away a connection that arrived while the server was saturated.
      *
-     * @param clientSocket
-     * @throws IOException
+     * @param clientSocket the accepted socket
      */
-    private void handleRequest(Socket clientSocket) throws IOException {
-        BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-        OutputStream out = clientSocket.getOutputStream();
-        PrintWriter writer = new PrintWriter(out);
-        
-        String requestLine = in.readLine();
-        if (requestLine == null) {
-            return;
-        }
-        
-        System.out.println("Request: " + requestLine);
-        
-        String[] parts = requestLine.split(" ");
-        if (parts.length != 3) {
-            sendErrorResponse(writer, out, 400, "Bad Request");
-            return;
+    private void reject(Socket clientSocket) {
+        try (Socket socket = clientSocket) {
+            if (config.getRejectionPolicy() == RejectionPolicy.SERVICE_UNAVAILABLE) {
+                metrics.requestRejected(ServerMetrics.ROUTE_OVERLOADED, 503);
+                log.access(socket.getInetAddress().getHostAddress(), null, null, null, ServerMetrics.ROUTE_OVERLOADED,
+                        503, -1, 0);
+                writeResponse(new CountingOutputStream(socket.getOutputStream()), socket, HttpResponse.error(503),
+                        false);
+            }
+        } catch (IOException e) {
+            // The client is being turned away; nothing else to do.
         }
-        
-        String method = parts[0];
-        String uri = parts[1];
-        
-        Map<String, String> queryParams = parseQueryParameters(uri);
-        String path = uri.split("\\?")[0];
-        
-        if (!"GET".equals(method)) {
-            sendErrorResponse(writer, out, 405, "Method Not Allowed");
-            return;
+    }
+
+    /**
+     * Creates an executor that runs accepted connections, or the streams of
+     * HTTP/2 connections, according to the configured execution model.
+     *
+     * @param threadPrefix the name prefix of platform worker threads
+     * @param threads      the number of platform worker threads
+     * @return the worker executor
+     */
+    private ExecutorService createWorkers(String threadPrefix, int threads) {
+        if (config.getExecutionModel() == ExecutionModel.VIRTUAL_THREADS) {
+            ExecutorService virtualThreads = newVirtualThreadExecutor();
+            if (virtualThreads != null) {
+                return virtualThreads;
+            }
+            log.error("Virtual threads are not available on this JDK, using a platform thread pool");
         }
-        
-        String line;
-        while ((line = in.readLine()) != null && !line.isEmpty()) {
+
+        return new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(config.getMaxConnections()), new WorkerThreadFactory(threadPrefix));
+    }
+
+    /**
+     * Creates a virtual-thread-per-task executor when the JDK supports it.
+     * Looked up reflectively so the server still compiles for Java 11.
+     *
+     * @return the executor, or null if virtual threads are unavailable
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return null;
         }
-        
-        String response = requestDispatcher.dispatch(path, queryParams);
-        if (response != null) {
-            sendResponse(writer, out, 200, "text/html", response.getBytes());
-            return;
+    }
+
+    /**
+     * Writes a response and flushes it to the client. The head is encoded
+     * into a pooled buffer and sent together with an in-memory body in one
+     * gathering write; file bodies follow from the page cache, and
+     * streaming bodies are written through the connection's buffered stream,
+     * as chunks or up to the close of the connection.
+     *
+     * @param out the output stream
+     * @param socket the client socket
+     * @param response the response to send
+     * @param keepAlive whether the connection stays open after the response
+     * @throws IOException if an I/O error occurs
+     */
+    private void writeResponse(OutputStream out, Socket socket, HttpResponse response, boolean keepAlive)
+            throws IOException {
+        ByteBuffer head = response.encodeHead(headBuffers, keepAlive, config.getKeepAliveTimeoutSeconds());
+        try {
+            if (response.getStreamingBody() != null) {
+                out.write(head.array(), 0, head.limit());
+                writeStreaming(out, response);
+                out.flush();
+                return;
+            }
+            out.flush();
+            ByteBuffer[] buffers = {head, ByteBuffer.wrap(response.getBody())};
+            while (buffers[0].hasRemaining() || buffers[1].hasRemaining()) {
+                metrics.addBytesOut(socket.getChannel().write(buffers));
+            }
+        } finally {
+            headBuffers.release(head.array());
         }
-        
-        if (serveStaticFile(writer, out, path)) {
-            return;
+        if (response.getFileBody() != null) {
+            response.getFileBody().transferTo(socket.getChannel());
+            metrics.addBytesOut(response.getFileBody().getLength());
         }
-        
-        sendErrorResponse(writer, out, 404, "Not Found");
     }
-    
+
     /**
-     * Parses query parameters from the URI.
+     * Runs a streaming body on the connection thread, framing its output as
+     * chunks, or for a close-delimited response writing it as it is. A
+     * failure halfway through cannot be reported with a status code any
+     * more, so it ends the connection instead.
      *
-     * @param uri the request URI
-     * @return a map of parameter names to values
+     * @param out      the output stream
+     * @param response the response with the body writer
+     * @throws IOException if the body or the connection fails
      */
-    private Map<String, String> parseQueryParameters(String uri) {
-        Map<String, String> params = new HashMap<>();
-        
-        if (!uri.contains("?")) {
-            return params;
+    private static void writeStreaming(OutputStream out, HttpResponse response) throws IOException {
+        ChunkedOutputStream chunked = response.isCloseDelimited() ? null : new ChunkedOutputStream(out);
+        try {
+            response.getStreamingBody().writeTo(chunked != null ? chunked : new UnclosedOutputStream(out));
+        } catch (RuntimeException e) {
+            throw new IOException("Streaming body failed", e);
         }
-        
-        String query = uri.substring(uri.indexOf("?") + 1);
-        String[] pairs = query.split("&");
-        
-        for (String pair : pairs) {
-            String[] keyValue = pair.split("=", 2);
-            if (keyValue.length == 2) {
-                params.put(keyValue[0], keyValue[1]);
+        if (chunked != null) {
+            chunked.finish();
+        }
+    }
+
+    /**
+     * Accept loop of one listening socket, with the workers that serve the
+     * connections it accepts. With several acceptors on a shared port the
+     * configured worker threads are split between them, so each accept
+     * thread only ever hands work to its own pool.
+     */
+    private class Acceptor implements Runnable {
+        private final ServerSocket serverSocket;
+        private final ExecutorService workers;
+        private final ExecutorService streamWorkers;
+
+        /**
+         * Creates the workers of a listening socket.
+         *
+         * @param serverSocket the bound socket
+         * @param threadTag    inserted into worker thread names to tell acceptors apart
+         * @param acceptors    how many acceptors share the worker threads
+         */
+        Acceptor(ServerSocket serverSocket, String threadTag, int acceptors) {
+            this.serverSocket = serverSocket;
+            int threads = (config.getWorkerThreads() + acceptors - 1) / acceptors;
+            this.workers = createWorkers("http-worker-" + threadTag, threads);
+            this.streamWorkers = config.isHttp2Enabled() ? createWorkers("http2-stream-" + threadTag, threads) : null;
+        }
+
+        /**
+         * Accepts connections until the socket is closed.
+         */
+        @Override
+        public void run() {
+            while (!serverSocket.isClosed()) {
+                Socket clientSocket;
+                try {
+                    clientSocket = serverSocket.accept();
+                } catch (IOException e) {
+                    if (!serverSocket.isClosed()) {
+                        log.error("Error accepting connection: " + e.getMessage());
+                    }
+                    continue;
+                }
+
+                if (!connectionPermits.tryAcquire()) {
+                    reject(clientSocket);
+                    continue;
+                }
+
+                try {
+                    workers.execute(new BlockingConnection(clientSocket, this));
+                } catch (RejectedExecutionException e) {
+                    connectionPermits.release();
+                    reject(clientSocket);
+                }
+            }
+        }
+
+        /**
+         * Closes the socket and lets the workers finish their connections.
+         *
+         * @throws IOException if the socket cannot be closed
+         */
+        void stop() throws IOException {
+            serverSocket.close();
+            workers.shutdown();
+            if (streamWorkers != null) {
+                streamWorkers.shutdown();
             }
         }
-        
-        return params;
     }
-    
+
     /**
-     * Attempts to serve a static file.
-     *
-     * @param writer the response writer
-     * @param out the output stream
-     * @param path the file path
-     * @return true if the file was served, false otherwise
-     * @throws IOException if an I/O error occurs
+     * Connection served by the blocking engine, run on a worker until it
+     * releases its permit. Requests are served one after another on the
+     * same socket until the client asks to close, the idle timeout expires
+     * or the per-connection request limit is reached. Pipelined requests are
+     * read from the same receive buffer, so their responses are written in
+     * arrival order.
+     * When a handler answers asynchronously the worker is released: the
+     * connection is parked with its socket open and nothing to read, and the
+     * completion of the future submits it again to write the response and
+     * carry on with the next request.
+     * The connection is its own timer on the server's wheel. A worker
+     * blocked reading cannot be interrupted, so a missed idle or header
+     * deadline shuts the input down: the read sees the end of the stream,
+     * and the worker answers 408 if a head had started to arrive. A missed
+     * request deadline closes the socket outright.
+     * A request body is read by the handler straight from the socket, with
+     * the body deadline armed whenever a read has to wait for the client.
      */
-    private boolean serveStaticFile(PrintWriter writer, OutputStream out, String path) throws IOException {
-        if (path.equals("/")) {
-            path = "/index.html";
+    private class BlockingConnection extends TimerWheel.Timer implements Runnable, FramedBody.Source {
+        private final Socket socket;
+        private final Acceptor acceptor;
+        private final HttpRequest request = new HttpRequest();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private String remoteAddress;
+        private RequestReader in;
+        private OutputStream out;
+        private int served;
+        private boolean keepAlive;
+        private long started;
+        private long requestDeadline;
+        private HttpResponse completed;
+        private volatile Deadline watched;
+        private volatile Deadline missed;
+
+        /**
+         * Creates the state for an accepted socket.
+         *
+         * @param socket   the accepted socket
+         * @param acceptor the acceptor whose workers serve the connection
+         */
+        BlockingConnection(Socket socket, Acceptor acceptor) {
+            this.socket = socket;
+            this.acceptor = acceptor;
         }
-        
-        Path filePath = Paths.get("src/main/resources/static" + path);
-        
-        if (!Files.exists(filePath)) {
-            return false;
+
+        /**
+         * Serves the connection until it closes or parks. On the first run
+         * the streams are set up; after parking, the completed response is
+         * written first.
+         */
+        @Override
+        public void run() {
+            boolean parked = false;
+            try {
+                if (in == null) {
+                    metrics.connectionOpened();
+                    remoteAddress = socket.getInetAddress().getHostAddress();
+                    request.setRemoteAddress(remoteAddress);
+                    in = new RequestReader(socket.getInputStream(), new HttpRequestParser(config), metrics);
+                    out = new BufferedOutputStream(new CountingOutputStream(socket.getOutputStream()));
+                }
+                if (completed != null) {
+                    HttpResponse response = completed;
+                    completed = null;
+                    if (!respond(response)) {
+                        return;
+                    }
+                }
+                parked = serve();
+            } catch (IOException e) {
+                if (missed == null && !acceptor.serverSocket.isClosed()) {
+                    log.error("Error handling request: " + e.getMessage());
+                }
+            } finally {
+                if (!parked) {
+                    close();
+                }
+            }
+        }
+
+        /**
+         * Reads and answers requests until the connection should close or a
+         * response is deferred.
+         *
+         * @return true if the connection parked waiting for a response
+         * @throws IOException if the connection fails
+         */
+        private boolean serve() throws IOException {
+            while (true) {
+                watch(Deadline.IDLE, TimerWheel.currentMillis() + config.getKeepAliveTimeoutMillis());
+                if (!in.awaitRequest()) {
+                    return false;
+                }
+                long arrived = TimerWheel.currentMillis();
+                requestDeadline = arrived + config.getRequestTimeoutMillis();
+                watch(Deadline.HEADER, Math.min(arrived + config.getHeaderTimeoutMillis(), requestDeadline));
+                if (served == 0 && config.isHttp2Enabled() && in.startsWith(Http2Connection.PREFACE)) {
+                    newHttp2Connection().serve(null, null);
+                    return false;
+                }
+                try {
+                    if (!in.readHead(request)) {
+                        timedOut();
+                        return false;
+                    }
+                } catch (HttpParseException e) {
+                    metrics.requestRejected(ServerMetrics.ROUTE_INVALID, e.getStatusCode());
+                    log.access(remoteAddress, null, null, null, ServerMetrics.ROUTE_INVALID, e.getStatusCode(), -1, 0);
+                    writeResponse(out, socket, HttpResponse.error(e.getStatusCode()), false);
+                    return false;
+                }
+                watch(Deadline.REQUEST, requestDeadline);
+                byte[] http2Settings = config.isHttp2Enabled() ? Http2Connection.upgradeSettings(request) : null;
+                if (http2Settings != null) {
+                    newHttp2Connection().serve(in.detachHead(request), http2Settings);
+                    return false;
+                }
+
+                served++;
+                keepAlive = served < config.getMaxRequestsPerConnection() && request.isKeepAliveRequested();
+                started = System.nanoTime();
+                FramedBody body = null;
+                if (request.hasBody()) {
+                    body = new FramedBody(request, config.getMaxRequestBodySize(), this);
+                    request.setBody(body);
+                }
+                HttpResponse response;
+                try {
+                    response = processor.process(request);
+                } catch (IOException | RuntimeException e) {
+                    record(500, -1, false, started);
+                    throw e;
+                }
+                if (body != null) {
+                    body.detach();
+                    // Whatever the handler left unread cannot be told apart from the next request.
+                    keepAlive &= body.isComplete();
+                }
+
+                CompletableFuture<HttpResponse> deferred = response.getDeferred();
+                if (deferred != null) {
+                    if (!deferred.isDone()) {
+                        park(deferred);
+                        return true;
+                    }
+                    response = deferred.join();
+                }
+                if (!respond(response)) {
+                    return false;
+                }
+            }
+        }
+
+        /**
+         * Hands the connection over to HTTP/2. It keeps this worker to read
+         * frames and this connection's deadline; its streams run on the
+         * stream workers, so connections waiting for frames can never hold
+         * every thread their streams need.
+         *
+         * @return the HTTP/2 state of the connection
+         */
+        private Http2Connection newHttp2Connection() {
+            return new Http2Connection(config, processor, metrics, log, acceptor.streamWorkers, in, out, remoteAddress,
+                    this::watch);
+        }
+
+        /**
+         * Answers a request head that stopped arriving because its deadline
+         * shut the input down. Only the input is shut, so the client still
+         * learns why it is being disconnected.
+         *
+         * @throws IOException if the connection fails
+         */
+        private void timedOut() throws IOException {
+            if (missed != Deadline.HEADER) {
+                return;
+            }
+            metrics.requestRejected(ServerMetrics.ROUTE_TIMEOUT, 408);
+            log.access(remoteAddress, null, null, null, ServerMetrics.ROUTE_TIMEOUT, 408, -1, 0);
+            writeResponse(out, socket, HttpResponse.error(408), false);
+        }
+
+        /**
+         * Reads request body bytes for the handler. The body deadline only
+         * runs while the read waits for the client, so a handler that takes
+         * its time between reads is bounded by the request deadline alone.
+         *
+         * @param b   the destination
+         * @param off the first index to fill
+         * @param len the most bytes to read
+         * @return the number of bytes read, or -1 if the client closed the connection
+         * @throws IOException if reading fails
+         * @throws HttpStatusException with 408 if the body deadline passed
+         */
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            boolean waits = !in.hasBuffered();
+            if (waits) {
+                watch(Deadline.BODY, Math.min(TimerWheel.currentMillis() + config.getBodyTimeoutMillis(),
+                        requestDeadline));
+            }
+            int read = in.read(b, off, len);
+            if (waits) {
+                watch(Deadline.REQUEST, requestDeadline);
+            }
+            if (read < 0 && missed == Deadline.BODY) {
+                throw new HttpStatusException(408, "Request body timed out");
+            }
+            return read;
+        }
+
+        /**
+         * Tells the client to go ahead with the body it is holding back.
+         *
+         * @throws IOException if writing fails
+         */
+        @Override
+        public void sendContinue() throws IOException {
+            out.write(HttpResponse.CONTINUE);
+            out.flush();
+        }
+
+        /**
+         * Moves the connection's deadline.
+         *
+         * @param deadline the kind of deadline
+         * @param at       when it passes, in {@link TimerWheel#currentMillis()} time
+         */
+        private void watch(Deadline deadline, long at) {
+            watched = deadline;
+            timers.arm(this, at);
+        }
+
+        /**
+         * Enforces a missed deadline. Runs on the timer thread.
+         */
+        @Override
+        void expire() {
+            Deadline deadline = watched;
+            if (closed.get() || TimerWheel.currentMillis() < getDeadline()) {
+                return;
+            }
+            missed = deadline;
+            metrics.deadlineExceeded(deadline);
+            if (deadline == Deadline.REQUEST) {
+                close();
+                return;
+            }
+            try {
+                socket.shutdownInput();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        /**
+         * Writes a response and records it.
+         *
+         * @param response the response
+         * @return true if the connection stays open for another request
+         * @throws IOException if the connection fails
+         */
+        private boolean respond(HttpResponse response) throws IOException {
+            keepAlive &= !response.isCloseDelimited();
+            long writeStarted = System.nanoTime();
+            boolean written = false;
+            try {
+                writeResponse(out, socket, response, keepAlive);
+                written = true;
+            } finally {
+                record(response.getStatusCode(), response.getContentLength(), written, writeStarted);
+            }
+            return keepAlive;
+        }
+
+        /**
+         * Waits for a deferred response without holding the worker. The
+         * thread completing the future only resubmits the connection. The
+         * request deadline stays armed meanwhile.
+         *
+         * @param deferred completes with the response
+         */
+        private void park(CompletableFuture<HttpResponse> deferred) {
+            deferred.whenComplete((response, error) -> {
+                completed = response != null ? response : HttpResponse.error(500);
+                try {
+                    acceptor.workers.execute(this);
+                } catch (RejectedExecutionException e) {
+                    record(completed.getStatusCode(), completed.getContentLength(), false, System.nanoTime());
+                    close();
+                }
+            });
+        }
+
+        /**
+         * Records the outcome of the current request in the metrics and the
+         * access log.
+         *
+         * @param statusCode    the status code
+         * @param contentLength the body length, or -1 if unknown
+         * @param written       whether the response reached the client
+         * @param writeStarted  when writing started, from {@link System#nanoTime()}
+         */
+        private void record(int statusCode, long contentLength, boolean written, long writeStarted) {
+            long finished = System.nanoTime();
+            if (written) {
+                metrics.responseWritten(request.getRoute(), statusCode, finished - writeStarted);
+            } else {
+                metrics.responseAborted(request.getRoute(), statusCode);
+            }
+            log.access(remoteAddress, request, statusCode, contentLength, finished - started);
+        }
+
+        /**
+         * Closes the socket and releases the connection permit. Called by
+         * the worker and, for a missed request deadline, by the timer
+         * thread; only the first call has an effect.
+         */
+        private void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            timers.disarm(this);
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Nothing left to release.
+            }
+            metrics.connectionClosed();
+            connectionPermits.release();
         }
-        
-        String contentType = getContentType(path);
-        byte[] content = Files.readAllBytes(filePath);
-        
-        sendResponse(writer, out, 200, contentType, content);
-        return true;
     }
-    
+
     /**
-     * Gets the content type for a file based on its extension.
-     *
-     * @param path the file path
-     * @return the content type
-     */
-    private String getContentType(String path) {
-        if (path.endsWith(".html")) {
-            return "text/html";
-        } else if (path.endsWith(".css")) {
-            return "text/css";
-        } else if (path.endsWith(".js")) {
-            return "application/javascript";
-        } else if (path.endsWith(".png")) {
-            return "image/png";
-        } else if (path.endsWith(".jpg") || path.endsWith(".jpeg")) {
-            return "image/jpeg";
-        }
-        return "text/plain";
-    }
-    
-    /**
-     * Sends an HTTP response.
-     *
-     * @param writer the response writer
-     * @param out the output stream
-     * @param statusCode the HTTP status code
-     * @param contentType the content type
-     * @param content the response content
-     * @throws IOException if an I/O error occurs
+     * Socket output stream that counts the bytes written to the client.
+     * Wrapped below the buffer, so it only sees bulk writes.
+     */
+    private class CountingOutputStream extends FilterOutputStream {
+
+        /**
+         * Creates a counting stream.
+         *
+         * @param out the socket output stream
+         */
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            metrics.addBytesOut(1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+            metrics.addBytesOut(length);
+        }
+    }
+
+    /**
+     * Connection stream handed to a close-delimited body. Closing it only
+     * flushes, so the response is still recorded before the connection
+     * is closed.
      */
-    private void sendResponse(PrintWriter writer, OutputStream out, int statusCode, String contentType, byte[] content) throws IOException {
-        writer.println("HTTP/1.1 " + statusCode + " OK");
-        writer.println("Content-Type: " + contentType);
-        writer.println("Content-Length: " + content.length);
-        writer.println();
-        writer.flush();
-        
-        out.write(content);
-        out.flush();
+    private static class UnclosedOutputStream extends FilterOutputStream {
+
+        /**
+         * Creates a stream whose close is a flush.
+         *
+         * @param out the connection stream
+         */
+        UnclosedOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
     }
-    
+
     /**
-     * Sends an HTTP error response.
-     *
-     * @param writer the response writer
-     * @param out the output stream
-     * @param statusCode the HTTP status code
-     * @param message the error message
-     * @throws IOException if an I/O error occurs
+     * Thread factory that names worker threads after the server.
      */
-    private void sendErrorResponse(PrintWriter writer, OutputStream out, int statusCode, String message) throws IOException {
-        String content = "<html><body><h1>" + statusCode + " " + message + "</h1></body></html>";
-        sendResponse(writer, out, statusCode, "text/html", content.getBytes());
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+        private final String prefix;
+
+        /**
+         * Creates a factory.
+         *
+         * @param prefix the thread name prefix, followed by a counter
+         */
+        WorkerThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
     }
 }
@@ -0,0 +1,70 @@
+package co.edu.escuelaing.microserver.http;
+
+/**
+ * Thrown while handling a request to answer it with an error status, for
+ * example 400 when a parameter cannot be converted to the expected type.
+ */
+public class HttpStatusException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+    private final long retryAfterSeconds;
+
+    /**
+     * Creates a new exception.
+     *
+     * @param statusCode the HTTP status code to answer with
+     * @param message    the reason
+     */
+    public HttpStatusException(int statusCode, String message) {
+        super(message);
+        this.statusCode = statusCode;
+        this.retryAfterSeconds = -1;
+    }
+
+    /**
+     * Creates a new exception that tells the client when to retry, for
+     * 429 Too Many Requests and 503 Service Unavailable.
+     *
+     * @param statusCode        the HTTP status code to answer with
+     * @param message           the reason
+     * @param retryAfterSeconds the delay sent in the Retry-After header
+     */
+    public HttpStatusException(int statusCode, String message, long retryAfterSeconds) {
+        super(message);
+        this.statusCode = statusCode;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * Creates a new exception caused by another one.
+     *
+     * @param statusCode the HTTP status code to answer with
+     * @param message    the reason
+     * @param cause      the underlying failure
+     */
+    public HttpStatusException(int statusCode, String message, Throwable cause) {
+        super(message, cause);
+        this.statusCode = statusCode;
+        this.retryAfterSeconds = -1;
+    }
+
+    /**
+     * Gets the status code to answer with.
+     *
+     * @return the HTTP status code
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * Gets the delay the client should wait before retrying.
+     *
+     * @return the delay in seconds, or -1 if none was given
+     */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
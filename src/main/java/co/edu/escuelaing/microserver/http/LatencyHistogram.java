@@ -0,0 +1,122 @@
+package co.edu.escuelaing.microserver.http;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrent log-linear histogram of durations in nanoseconds, laid out
+ * like an HdrHistogram with two significant binary digits of precision:
+ * every power of two is split into 32 equal buckets, so any recorded value
+ * is reported within about 3% of its true value while the whole range from
+ * 1 ns to about 18 minutes fits in a fixed array of counters. Recording is
+ * one index computation and one atomic increment.
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = MAX_EXPONENT - SUB_BUCKET_BITS + 2;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS * SUB_BUCKETS);
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+
+    /**
+     * Records one duration.
+     *
+     * @param nanos the duration in nanoseconds; negative values count as zero
+     */
+    void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(indexOf(value));
+        totalCount.increment();
+        totalNanos.add(value);
+    }
+
+    /**
+     * Gets the number of recorded durations.
+     *
+     * @return the count
+     */
+    long getCount() {
+        return totalCount.sum();
+    }
+
+    /**
+     * Gets the sum of the recorded durations.
+     *
+     * @return the sum in nanoseconds
+     */
+    long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    /**
+     * Computes several quantiles from one consistent snapshot of the counts.
+     *
+     * @param quantiles the quantiles, each between 0 and 1, in ascending order
+     * @return the estimated value of each quantile in nanoseconds, all zero
+     *         if nothing was recorded
+     */
+    long[] quantiles(double... quantiles) {
+        long[] snapshot = new long[counts.length()];
+        long total = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+
+        long[] values = new long[quantiles.length];
+        if (total == 0) {
+            return values;
+        }
+        int index = 0;
+        long seen = snapshot[0];
+        for (int q = 0; q < quantiles.length; q++) {
+            long rank = Math.max(1, (long) Math.ceil(quantiles[q] * total));
+            while (seen < rank && index < snapshot.length - 1) {
+                index++;
+                seen += snapshot[index];
+            }
+            values[q] = valueOf(index);
+        }
+        return values;
+    }
+
+    /**
+     * Maps a value to its counter. Values below 32 are counted exactly;
+     * larger ones keep their five most significant bits after the leading one.
+     *
+     * @param value the non-negative value
+     * @return the counter index
+     */
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS * SUB_BUCKETS - 1;
+        }
+        int bucket = exponent - SUB_BUCKET_BITS + 1;
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKETS;
+        return bucket * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Gets the value a counter stands for: the middle of its range.
+     *
+     * @param index the counter index
+     * @return the representative value
+     */
+    static long valueOf(int index) {
+        int bucket = index / SUB_BUCKETS;
+        if (bucket == 0) {
+            return index;
+        }
+        int shift = bucket - 1;
+        long low = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return low + ((1L << shift) >> 1);
+    }
+}
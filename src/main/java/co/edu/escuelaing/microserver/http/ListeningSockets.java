@@ -0,0 +1,98 @@
+package co.edu.escuelaing.microserver.http;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+
+/**
+ * Opens the listening sockets of a server. By default that is a single
+ * socket. With {@code SO_REUSEPORT} each acceptor gets a socket of its own
+ * bound to the same port, and the kernel hashes incoming connections
+ * across them, and across any other process listening on the port with
+ * the option set, so no accept queue or lock is shared.
+ * Where the option is unavailable the acceptors share one socket, which
+ * still spreads the accept calls over several threads.
+ */
+final class ListeningSockets {
+
+    /**
+     * Not instantiable.
+     */
+    private ListeningSockets() {
+    }
+
+    /**
+     * Binds one socket per configured acceptor.
+     *
+     * @param config the server configuration
+     * @param log    the log to report a missing {@code SO_REUSEPORT} to
+     * @return the sockets, one per acceptor; the same socket repeated if
+     *         the port cannot be shared
+     * @throws IOException if a socket cannot be bound
+     */
+    static ServerSocketChannel[] open(ServerConfig config, ServerLog log) throws IOException {
+        ServerSocketChannel[] channels = new ServerSocketChannel[config.getAcceptorThreads()];
+        ServerSocketChannel first = ServerSocketChannel.open();
+        boolean reusePort = config.isReusePort();
+        if (reusePort && !first.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)) {
+            log.error("SO_REUSEPORT is not supported on this platform, acceptors share one listening socket");
+            reusePort = false;
+        }
+        try {
+            channels[0] = bind(first, config.getPort(), reusePort, config.getAcceptBacklog());
+            // Port 0 picks an ephemeral port once; the other sockets must join that one.
+            int port = ((InetSocketAddress) first.getLocalAddress()).getPort();
+            for (int i = 1; i < channels.length; i++) {
+                channels[i] = reusePort ? bind(ServerSocketChannel.open(), port, true, config.getAcceptBacklog())
+                        : first;
+            }
+        } catch (IOException | RuntimeException e) {
+            close(channels);
+            first.close();
+            throw e;
+        }
+        return channels;
+    }
+
+    /**
+     * Closes the sockets opened so far.
+     *
+     * @param channels the sockets, possibly with gaps or repeats
+     */
+    static void close(ServerSocketChannel[] channels) {
+        for (ServerSocketChannel channel : channels) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    // Shutting down; nothing else to do.
+                }
+            }
+        }
+    }
+
+    /**
+     * Binds a socket to all addresses on a port.
+     *
+     * @param channel   the unbound socket
+     * @param port      the port
+     * @param reusePort whether to set {@code SO_REUSEPORT} first
+     * @param backlog   the accept backlog
+     * @return the bound socket
+     * @throws IOException if it cannot be bound
+     */
+    private static ServerSocketChannel bind(ServerSocketChannel channel, int port, boolean reusePort, int backlog)
+            throws IOException {
+        try {
+            if (reusePort) {
+                channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+            }
+            channel.bind(new InetSocketAddress(port), backlog);
+            return channel;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package co.edu.escuelaing.microserver.http;
+
+/**
+ * Slot of the {@link ServerLog} ring buffer. Slots are allocated once and
+ * overwritten for every event, so logging a request allocates nothing
+ * beyond the strings the request already holds. The fields are plain; a
+ * slot becomes visible to the writer thread when its sequence is set,
+ * which is a volatile write made after all other fields.
+ */
+final class LogEvent {
+
+    volatile long sequence = -1;
+
+    String message;
+    long timeMillis;
+    String remoteAddress;
+    String method;
+    String uri;
+    String version;
+    String route;
+    int statusCode;
+    long bytes;
+    long durationNanos;
+
+    /**
+     * Fills the slot with an access event.
+     *
+     * @param remoteAddress the client address
+     * @param method        the request method, or null if the request could not be parsed
+     * @param uri           the request target, or null
+     * @param version       the protocol version, or null
+     * @param route         the route label
+     * @param statusCode    the response status code
+     * @param bytes         the body length, or -1 if unknown
+     * @param durationNanos the time from parsing the request to writing the response
+     */
+    void setAccess(String remoteAddress, String method, String uri, String version, String route,
+            int statusCode, long bytes, long durationNanos) {
+        this.message = null;
+        this.timeMillis = System.currentTimeMillis();
+        this.remoteAddress = remoteAddress;
+        this.method = method;
+        this.uri = uri;
+        this.version = version;
+        this.route = route;
+        this.statusCode = statusCode;
+        this.bytes = bytes;
+        this.durationNanos = durationNanos;
+    }
+
+    /**
+     * Fills the slot with an error message.
+     *
+     * @param message the message
+     */
+    void setMessage(String message) {
+        this.message = message;
+        this.timeMillis = System.currentTimeMillis();
+        this.remoteAddress = null;
+        this.method = null;
+        this.uri = null;
+        this.version = null;
+        this.route = null;
+    }
+
+    /**
+     * Checks whether the slot holds an error message rather than an access
+     * event.
+     *
+     * @return true for a message
+     */
+    boolean isMessage() {
+        return message != null;
+    }
+}
@@ -0,0 +1,1339 @@
+package co.edu.escuelaing.microserver.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking server engine built on {@link ServerSocketChannel} and
+ * {@link Selector}. An acceptor hands new connections to a few event loops
+ * that read, parse and write without ever blocking, so a connection only
+ * costs memory while it is idle. With several acceptors sharing the port
+ * through {@code SO_REUSEPORT}, each listens on a socket of its own and
+ * hands connections to its own subset of the event loops.
+ * Streaming bodies run application code that may block, so they are
+ * produced on a separate bounded pool and handed back to the event loop
+ * chunk by chunk. Responses of asynchronous handlers wait in the output
+ * queue and are picked up by the event loop when their future completes.
+ * Requests with a body that has not fully arrived run on the same pool,
+ * reading the body from a {@link BodyPipe} the event loop fills as it
+ * receives it; a body that is already complete is read in place.
+ * Each event loop keeps the deadlines of its connections on its own
+ * {@link TimerWheel}, advanced between selects, so enforcing them needs no
+ * extra thread and no synchronization.
+ */
+class NioServerEngine {
+
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+    private static final int STREAM_BUFFER_LIMIT = 64 * 1024;
+    private static final int MAX_FREE_BODY_BUFFERS = 256;
+    private static final int HEAD_BUFFER_SIZE = 1024;
+    private static final int MAX_FREE_HEAD_BUFFERS = 1024;
+
+    private final ServerConfig config;
+    private final RequestProcessor processor;
+    private final ServerMetrics metrics;
+    private final ServerLog log;
+    private final Semaphore connectionPermits;
+    private final BufferPool bodyBuffers = new BufferPool(BodyPipe.BUFFER_SIZE, MAX_FREE_BODY_BUFFERS);
+    private final BufferPool headBuffers = new BufferPool(HEAD_BUFFER_SIZE, MAX_FREE_HEAD_BUFFERS);
+    private volatile ServerSocketChannel[] serverChannels;
+    private EventLoop[] eventLoops;
+    private ExecutorService streamWorkers;
+    private volatile boolean running;
+
+    /**
+     * Creates a new engine.
+     *
+     * @param config            the server configuration
+     * @param processor         the request processor
+     * @param metrics           the metrics to record traffic and latencies in
+     * @param log               the log to write requests and errors to
+     * @param connectionPermits permits bounding the number of open connections
+     */
+    NioServerEngine(ServerConfig config, RequestProcessor processor, ServerMetrics metrics, ServerLog log,
+            Semaphore connectionPermits) {
+        this.config = config;
+        this.processor = processor;
+        this.metrics = metrics;
+        this.log = log;
+        this.connectionPermits = connectionPermits;
+    }
+
+    /**
+     * Starts the event loops and the acceptors, running the first accept
+     * loop on the calling thread until the engine is stopped.
+     *
+     * @throws IOException if a listening socket cannot be opened
+     */
+    void start() throws IOException {
+        ServerSocketChannel[] channels = ListeningSockets.open(config, log);
+        serverChannels = channels;
+
+        running = true;
+        AtomicInteger streamThreads = new AtomicInteger();
+        ThreadPoolExecutor streamPool = new ThreadPoolExecutor(config.getWorkerThreads(), config.getWorkerThreads(),
+                60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>(config.getMaxConnections()), task -> {
+                    Thread thread = new Thread(task, "nio-stream-" + streamThreads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        streamPool.allowCoreThreadTimeOut(true);
+        streamWorkers = streamPool;
+        eventLoops = new EventLoop[config.getEventLoopThreads()];
+        for (int i = 0; i < eventLoops.length; i++) {
+            eventLoops[i] = new EventLoop();
+            Thread thread = new Thread(eventLoops[i], "nio-event-loop-" + (i + 1));
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        for (int i = 1; i < channels.length; i++) {
+            ServerSocketChannel channel = channels[i];
+            EventLoop[] own = ownEventLoops(i, channels.length);
+            Thread thread = new Thread(() -> accept(channel, own), "nio-acceptor-" + (i + 1));
+            thread.setDaemon(true);
+            thread.start();
+        }
+        accept(channels[0], ownEventLoops(0, channels.length));
+    }
+
+    /**
+     * Picks the event loops an acceptor hands its connections to: every
+     * loop whose index matches the acceptor's modulo the acceptor count,
+     * or a single shared loop if there are fewer loops than acceptors.
+     *
+     * @param acceptor  the index of the acceptor
+     * @param acceptors the number of acceptors
+     * @return the loops, at least one
+     */
+    private EventLoop[] ownEventLoops(int acceptor, int acceptors) {
+        int first = acceptor % eventLoops.length;
+        EventLoop[] own = new EventLoop[(eventLoops.length - first + acceptors - 1) / acceptors];
+        for (int i = 0; i < own.length; i++) {
+            own[i] = eventLoops[first + i * acceptors];
+        }
+        return own;
+    }
+
+    /**
+     * Accepts connections on a listening socket until it is closed,
+     * spreading them round-robin over the given event loops.
+     *
+     * @param serverChannel the listening socket
+     * @param loops         the event loops to register connections with
+     */
+    private void accept(ServerSocketChannel serverChannel, EventLoop[] loops) {
+        int next = 0;
+        while (serverChannel.isOpen()) {
+            SocketChannel channel;
+            try {
+                channel = serverChannel.accept();
+            } catch (IOException e) {
+                if (serverChannel.isOpen()) {
+                    log.error("Error accepting connection: " + e.getMessage());
+                }
+                continue;
+            }
+
+            if (!connectionPermits.tryAcquire()) {
+                reject(channel);
+                continue;
+            }
+
+            loops[next].register(channel);
+            next = (next + 1) % loops.length;
+        }
+    }
+
+    /**
+     * Stops accepting connections and shuts the event loops down.
+     *
+     * @throws IOException if the listening socket cannot be closed
+     */
+    void stop() throws IOException {
+        running = false;
+        ServerSocketChannel[] channels = serverChannels;
+        if (channels != null) {
+            for (ServerSocketChannel channel : channels) {
+                channel.close();
+            }
+        }
+        if (eventLoops != null) {
+            for (EventLoop eventLoop : eventLoops) {
+                eventLoop.selector.wakeup();
+            }
+        }
+        if (streamWorkers != null) {
+            streamWorkers.shutdownNow();
+        }
+    }
+
+    /**
+     * Turns away a connection that arrived while the server was saturated.
+     * The channel is still in blocking mode, so the short response is written
+     * in one go.
+     *
+     * @param channel the accepted channel
+     */
+    private void reject(SocketChannel channel) {
+        try (SocketChannel rejected = channel) {
+            if (config.getRejectionPolicy() == RejectionPolicy.SERVICE_UNAVAILABLE) {
+                HttpResponse response = HttpResponse.error(503);
+                metrics.requestRejected(ServerMetrics.ROUTE_OVERLOADED, 503);
+                log.access(rejected.socket().getInetAddress().getHostAddress(), null, null, null,
+                        ServerMetrics.ROUTE_OVERLOADED, 503, -1, 0);
+                metrics.addBytesOut(rejected.write(new ByteBuffer[] {
+                    ByteBuffer.wrap(response.encodeHead(false, 0)),
+                    ByteBuffer.wrap(response.getBody())
+                }));
+            }
+        } catch (IOException e) {
+            // The client is being turned away; nothing else to do.
+        }
+    }
+
+    /**
+     * Selector thread serving a share of the connections.
+     */
+    private class EventLoop implements Runnable {
+        private final Selector selector;
+        private final Queue<SocketChannel> pendingRegistrations = new ConcurrentLinkedQueue<>();
+        private final Queue<Connection> pendingFlushes = new ConcurrentLinkedQueue<>();
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private final HttpRequestParser parser = new HttpRequestParser(config);
+        private final HttpRequest request = new HttpRequest();
+        private final TimerWheel timers = new TimerWheel();
+
+        /**
+         * Creates a new event loop with its own selector.
+         *
+         * @throws IOException if the selector cannot be opened
+         */
+        EventLoop() throws IOException {
+            this.selector = Selector.open();
+        }
+
+        /**
+         * Queues a freshly accepted channel to be registered by the loop thread.
+         *
+         * @param channel the accepted channel
+         */
+        void register(SocketChannel channel) {
+            pendingRegistrations.add(channel);
+            selector.wakeup();
+        }
+
+        /**
+         * Asks the loop thread to flush a connection whose streaming body
+         * produced more output.
+         *
+         * @param connection the connection to flush
+         */
+        void scheduleFlush(Connection connection) {
+            pendingFlushes.add(connection);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select(timers.getTickMillis());
+                    registerPending();
+                    flushPending();
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            if (key.isValid() && key.isWritable()) {
+                                connection.onWritable();
+                            }
+                            if (key.isValid() && key.isReadable()) {
+                                connection.onReadable();
+                            }
+                        } catch (IOException e) {
+                            connection.close();
+                        }
+                    }
+
+                    timers.advance(TimerWheel.currentMillis());
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                if (running) {
+                    log.error("Event loop failed: " + e.getMessage());
+                }
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    ((Connection) key.attachment()).close();
+                }
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    // Shutting down anyway.
+                }
+            }
+        }
+
+        /**
+         * Registers the channels handed over by the acceptor.
+         */
+        private void registerPending() {
+            SocketChannel channel;
+            while ((channel = pendingRegistrations.poll()) != null) {
+                try {
+                    channel.configureBlocking(false);
+                    Connection connection = new Connection(channel, this);
+                    connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                    metrics.connectionOpened();
+                    connection.updateDeadline();
+                } catch (IOException e) {
+                    connectionPermits.release();
+                    try {
+                        channel.close();
+                    } catch (IOException ignored) {
+                        // Already broken.
+                    }
+                }
+            }
+        }
+
+        /**
+         * Flushes connections whose streaming bodies produced output since
+         * the last iteration, and feeds request bodies whose handlers made
+         * room for more.
+         */
+        private void flushPending() {
+            Connection connection;
+            while ((connection = pendingFlushes.poll()) != null) {
+                if (connection.closed) {
+                    continue;
+                }
+                try {
+                    connection.resume();
+                } catch (IOException e) {
+                    connection.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * State of one client connection: partially received input, queued
+     * output and keep-alive bookkeeping. Only touched by its event loop.
+     * The connection is its own timer on the loop's wheel, armed with the
+     * idle deadline while it waits for a request, the header deadline while
+     * a head is partially received, the body deadline while a request body
+     * keeps arriving and the request deadline while a response is pending.
+     */
+    private class Connection extends TimerWheel.Timer {
+        private final SocketChannel channel;
+        private final EventLoop eventLoop;
+        private final String remoteAddress;
+        private final ArrayDeque<PendingWrite> output = new ArrayDeque<>();
+        private SelectionKey key;
+        private ByteBuffer pendingInput;
+        private int headScanOffset;
+        private long requestStarted;
+        private BodyPipe body;
+        private long bodyProgress;
+        private Deadline watched;
+        private int served;
+        private boolean closeAfterWrite;
+        private boolean closed;
+
+        /**
+         * Creates the state for a new connection.
+         *
+         * @param channel   the client channel
+         * @param eventLoop the event loop serving the connection
+         */
+        Connection(SocketChannel channel, EventLoop eventLoop) {
+            this.channel = channel;
+            this.eventLoop = eventLoop;
+            this.remoteAddress = channel.socket().getInetAddress().getHostAddress();
+        }
+
+        /**
+         * Reads what is available and handles every complete request in it.
+         * Input is read into the loop's shared buffer; only an incomplete
+         * trailing request is copied into a buffer owned by the connection.
+         *
+         * @throws IOException if the channel fails
+         */
+        void onReadable() throws IOException {
+            ByteBuffer readBuffer = eventLoop.readBuffer;
+            readBuffer.clear();
+            int read = channel.read(readBuffer);
+            if (read < 0) {
+                close();
+                return;
+            }
+            if (pendingInput == null && body == null) {
+                requestStarted = TimerWheel.currentMillis();
+            }
+            metrics.addBytesIn(read);
+            readBuffer.flip();
+
+            ByteBuffer input = readBuffer;
+            if (pendingInput != null) {
+                pendingInput = ensureCapacity(pendingInput, readBuffer.remaining());
+                pendingInput.put(readBuffer);
+                pendingInput.flip();
+                input = pendingInput;
+            }
+            consume(input);
+        }
+
+        /**
+         * Feeds body input held back while a handler's pipe was full, then
+         * writes what is queued.
+         *
+         * @throws IOException if the channel fails
+         */
+        void resume() throws IOException {
+            if (body == null || pendingInput == null) {
+                flush();
+                return;
+            }
+            pendingInput.flip();
+            consume(pendingInput);
+        }
+
+        /**
+         * Handles received input and keeps what could not be handled yet,
+         * an incomplete head or body bytes the pipe had no room for, in a
+         * buffer owned by the connection.
+         *
+         * @param input the received bytes, in read mode
+         * @throws IOException if the channel fails
+         */
+        private void consume(ByteBuffer input) throws IOException {
+            processInput(input);
+            if (closed) {
+                return;
+            }
+
+            if (!input.hasRemaining() || (closeAfterWrite && body == null)) {
+                pendingInput = null;
+                headScanOffset = 0;
+            } else if (input != pendingInput) {
+                pendingInput = ByteBuffer.allocate(Math.max(1024, input.remaining() * 2));
+                pendingInput.put(input);
+            } else {
+                pendingInput.compact();
+            }
+
+            flush();
+        }
+
+        /**
+         * Continues writing queued output once the socket accepts more data.
+         *
+         * @throws IOException if the channel fails
+         */
+        void onWritable() throws IOException {
+            flush();
+        }
+
+        /**
+         * Handles every complete request in the input, in order. Heads are
+         * parsed in place by the loop's shared parser; body bytes go to the
+         * pipe of the request they belong to.
+         *
+         * @param input the received bytes, in read mode
+         */
+        private void processInput(ByteBuffer input) {
+            byte[] bytes = input.array();
+            int base = input.arrayOffset();
+            HttpRequestParser parser = eventLoop.parser;
+            HttpRequest request = eventLoop.request;
+
+            while (input.hasRemaining()) {
+                if (body != null) {
+                    if (!feedBody(input)) {
+                        return;
+                    }
+                    continue;
+                }
+                if (closeAfterWrite) {
+                    return;
+                }
+                int start = parser.skipEmptyLines(bytes, base + input.position(), base + input.limit());
+                input.position(start - base);
+                int headEnd;
+                try {
+                    headEnd = parser.findHeadEnd(bytes, start, start + headScanOffset, base + input.limit());
+                    if (headEnd < 0) {
+                        headScanOffset = input.remaining();
+                        return;
+                    }
+                    long started = System.nanoTime();
+                    parser.parseHead(bytes, start, headEnd, request);
+                    metrics.requestParsed(System.nanoTime() - started);
+                    input.position(headEnd - base);
+                    headScanOffset = 0;
+                } catch (HttpParseException e) {
+                    metrics.requestRejected(ServerMetrics.ROUTE_INVALID, e.getStatusCode());
+                    log.access(remoteAddress, null, null, null, ServerMetrics.ROUTE_INVALID, e.getStatusCode(), -1, 0);
+                    enqueue(HttpResponse.error(e.getStatusCode()), false, output);
+                    return;
+                }
+                long length = request.getBodyLength();
+                if (length == 0) {
+                    handleRequest(request);
+                } else if (length > 0 && length <= input.remaining()) {
+                    int bodyStart = base + input.position();
+                    input.position(input.position() + (int) length);
+                    FramedBody received = new FramedBody(request, config.getMaxRequestBodySize(),
+                            new FramedBody.ArraySource(bytes, bodyStart, (int) length));
+                    request.setBody(received);
+                    handleRequest(request);
+                    received.detach();
+                } else {
+                    handleOnWorker(request.detach(start, headEnd));
+                }
+            }
+        }
+
+        /**
+         * Passes body bytes to the pipe of the request being received.
+         *
+         * @param input the received bytes, in read mode
+         * @return true once the body has ended and the input may hold the
+         *         next request, false if more input is needed or the pipe
+         *         is full
+         */
+        private boolean feedBody(ByteBuffer input) {
+            int consumed;
+            try {
+                consumed = body.feed(input.array(), input.arrayOffset() + input.position(), input.remaining());
+            } catch (HttpStatusException e) {
+                // Without valid framing the end of the body cannot be found.
+                body.fail(e.getStatusCode());
+                body = null;
+                closeAfterWrite = true;
+                input.position(input.limit());
+                return false;
+            }
+            if (consumed > 0) {
+                input.position(input.position() + consumed);
+                bodyProgress = TimerWheel.currentMillis();
+            }
+            if (body.isComplete()) {
+                body = null;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Runs a request whose body is still arriving on a worker thread,
+         * since its handler blocks while it reads. The response holds its
+         * place in the queue like an asynchronous one. The request is a
+         * copy, as the loop goes on parsing into its shared view.
+         *
+         * @param request the request, detached from the receive buffer
+         */
+        private void handleOnWorker(HttpRequest request) {
+            served++;
+            boolean keepAlive = served < config.getMaxRequestsPerConnection() && request.isKeepAliveRequested();
+            long started = System.nanoTime();
+            request.setRemoteAddress(remoteAddress);
+            CompletionMarker marker = new CompletionMarker(this, request, started);
+            marker.setRoute(ServerMetrics.ROUTE_UNMATCHED);
+            DeferredWrite deferred = new DeferredWrite(this, marker, keepAlive);
+            BodyPipe pipe = new BodyPipe(request, config.getMaxRequestBodySize(), bodyBuffers,
+                    () -> eventLoop.scheduleFlush(this), deferred::requestContinue);
+            deferred.body = pipe;
+            request.setBody(pipe);
+            output.add(deferred);
+            output.add(marker);
+            if (!keepAlive) {
+                closeAfterWrite = true;
+            }
+            body = pipe;
+            bodyProgress = TimerWheel.currentMillis();
+            try {
+                streamWorkers.execute(() -> process(request, pipe, deferred, marker));
+            } catch (RejectedExecutionException e) {
+                pipe.detach();
+                marker.setRoute(ServerMetrics.ROUTE_OVERLOADED);
+                deferred.complete(HttpResponse.error(503));
+            }
+        }
+
+        /**
+         * Produces the response to a request on a worker thread and hands
+         * it to the loop. Whatever body the handler left unread is
+         * discarded from then on.
+         *
+         * @param request  the request
+         * @param pipe     the pipe its body arrives through
+         * @param deferred the queued placeholder for the response
+         * @param marker   the marker recording the response
+         */
+        private void process(HttpRequest request, BodyPipe pipe, DeferredWrite deferred, CompletionMarker marker) {
+            HttpResponse response;
+            try {
+                response = processor.process(request);
+            } catch (IOException | RuntimeException e) {
+                response = HttpResponse.error(500);
+            }
+            pipe.detach();
+            marker.setRoute(request.getRoute());
+            if (response.getDeferred() != null) {
+                response.getDeferred().whenComplete((actual, error) ->
+                        deferred.complete(actual != null ? actual : HttpResponse.error(500)));
+            } else {
+                deferred.complete(response);
+            }
+        }
+
+        /**
+         * Produces the response for a parsed request and queues it, followed
+         * by a marker that records the request in the metrics and the access
+         * log once the response has left the queue. A deferred response
+         * holds its place in the queue until its future completes, so later
+         * pipelined responses still go out in order.
+         *
+         * @param request the parsed request
+         */
+        private void handleRequest(HttpRequest request) {
+            served++;
+            boolean keepAlive = served < config.getMaxRequestsPerConnection() && request.isKeepAliveRequested();
+            long started = System.nanoTime();
+            request.setRemoteAddress(remoteAddress);
+            HttpResponse response;
+            try {
+                response = processor.process(request);
+            } catch (IOException | RuntimeException e) {
+                response = HttpResponse.error(500);
+            }
+            CompletionMarker marker = new CompletionMarker(this, request, started);
+            if (response.getDeferred() != null) {
+                DeferredWrite deferred = new DeferredWrite(this, marker, keepAlive);
+                output.add(deferred);
+                if (!keepAlive) {
+                    closeAfterWrite = true;
+                }
+                response.getDeferred().whenComplete((actual, error) ->
+                        deferred.complete(actual != null ? actual : HttpResponse.error(500)));
+            } else {
+                marker.setResponse(enqueue(response, keepAlive, output));
+            }
+            output.add(marker);
+        }
+
+        /**
+         * Queues a response behind any earlier ones.
+         *
+         * @param response  the response
+         * @param keepAlive whether the connection stays open afterwards
+         * @param target    the queue to add the writes to
+         * @return the queued response, which is a 503 error when no worker
+         *         could take a streaming body
+         */
+        private HttpResponse enqueue(HttpResponse response, boolean keepAlive, Queue<PendingWrite> target) {
+            if (response.getStreamingBody() != null) {
+                keepAlive &= !response.isCloseDelimited();
+                StreamWrite stream = new StreamWrite(this);
+                try {
+                    streamWorkers.execute(() -> stream.produce(response));
+                } catch (RejectedExecutionException e) {
+                    return enqueue(HttpResponse.error(503), false, target);
+                }
+                target.add(new ResponseWrite(response.encodeHead(headBuffers, keepAlive,
+                        config.getKeepAliveTimeoutSeconds()), response.getBody(), headBuffers));
+                target.add(stream);
+                if (!keepAlive) {
+                    closeAfterWrite = true;
+                }
+                return response;
+            }
+
+            target.add(new ResponseWrite(response.encodeHead(headBuffers, keepAlive,
+                    config.getKeepAliveTimeoutSeconds()), response.getBody(), headBuffers));
+            if (response.getFileBody() != null) {
+                target.add(new FileWrite(response.getFileBody()));
+            }
+            if (!keepAlive) {
+                closeAfterWrite = true;
+            }
+            return response;
+        }
+
+        /**
+         * Drops the output queued behind the response that ends the
+         * connection, which only requests pipelined after it can have added.
+         *
+         * @param last the marker recording that response
+         */
+        private void discardAfter(CompletionMarker last) {
+            if (!output.contains(last)) {
+                return;
+            }
+            while (output.peekLast() != last) {
+                output.pollLast().release();
+            }
+        }
+
+        /**
+         * Writes as much queued output as the socket accepts. While output is
+         * pending the connection stops reading, which pushes back on clients
+         * that pipeline faster than they read, unless a handler is waiting
+         * for the rest of its request body.
+         *
+         * @throws IOException if the channel fails
+         */
+        private void flush() throws IOException {
+            while (!output.isEmpty()) {
+                if (!output.peek().writeTo(channel, metrics)) {
+                    break;
+                }
+                output.poll();
+            }
+
+            int interest;
+            if (!output.isEmpty()) {
+                interest = output.peek().awaitsProducer() ? 0 : SelectionKey.OP_WRITE;
+            } else if (closeAfterWrite) {
+                close();
+                return;
+            } else {
+                interest = SelectionKey.OP_READ;
+            }
+            if (body != null && pendingInput == null) {
+                interest |= SelectionKey.OP_READ;
+            }
+            key.interestOps(interest);
+            updateDeadline();
+        }
+
+        /**
+         * Arms the deadline that applies in the connection's current state.
+         * A head left partially received while earlier responses were
+         * written gets its header deadline from when reading resumed.
+         */
+        void updateDeadline() {
+            long now = TimerWheel.currentMillis();
+            if (body != null && !body.isStalled()) {
+                watch(Deadline.BODY, Math.min(bodyProgress + config.getBodyTimeoutMillis(),
+                        requestStarted + config.getRequestTimeoutMillis()));
+            } else if (!output.isEmpty()) {
+                watch(Deadline.REQUEST, requestStarted + config.getRequestTimeoutMillis());
+            } else if (pendingInput != null) {
+                if (watched == Deadline.REQUEST) {
+                    requestStarted = now;
+                }
+                watch(Deadline.HEADER, requestStarted
+                        + Math.min(config.getHeaderTimeoutMillis(), config.getRequestTimeoutMillis()));
+            } else {
+                watch(Deadline.IDLE, now + config.getKeepAliveTimeoutMillis());
+            }
+        }
+
+        /**
+         * Moves the connection's deadline.
+         *
+         * @param deadline the kind of deadline
+         * @param at       when it passes, in {@link TimerWheel#currentMillis()} time
+         */
+        private void watch(Deadline deadline, long at) {
+            watched = deadline;
+            eventLoop.timers.arm(this, at);
+        }
+
+        /**
+         * Enforces a missed deadline. A slow request head or body is
+         * answered with 408 before the connection closes; the response gets
+         * a request timeout of its own to be written in.
+         */
+        @Override
+        void expire() {
+            if (closed) {
+                return;
+            }
+            metrics.deadlineExceeded(watched);
+            if (watched == Deadline.BODY) {
+                // The reading handler fails with 408, which becomes its response.
+                body.fail(408);
+                body = null;
+                pendingInput = null;
+                closeAfterWrite = true;
+                requestStarted = TimerWheel.currentMillis();
+                try {
+                    flush();
+                } catch (IOException e) {
+                    close();
+                }
+                return;
+            }
+            if (watched != Deadline.HEADER) {
+                close();
+                return;
+            }
+            metrics.requestRejected(ServerMetrics.ROUTE_TIMEOUT, 408);
+            log.access(remoteAddress, null, null, null, ServerMetrics.ROUTE_TIMEOUT, 408, -1, 0);
+            pendingInput = null;
+            headScanOffset = 0;
+            requestStarted = TimerWheel.currentMillis();
+            enqueue(HttpResponse.error(408), false, output);
+            try {
+                flush();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        /**
+         * Grows the pending input buffer if it cannot take more bytes.
+         *
+         * @param buffer the buffer, in write mode
+         * @param extra  the number of bytes about to be added
+         * @return a buffer with enough room
+         */
+        private ByteBuffer ensureCapacity(ByteBuffer buffer, int extra) {
+            if (buffer.remaining() >= extra) {
+                return buffer;
+            }
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + extra));
+            buffer.flip();
+            grown.put(buffer);
+            return grown;
+        }
+
+        /**
+         * Closes the channel and returns its connection permit.
+         */
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            eventLoop.timers.disarm(this);
+            if (body != null) {
+                body.fail(400);
+            }
+            for (PendingWrite pending : output) {
+                pending.release();
+            }
+            output.clear();
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Nothing left to release.
+            }
+            if (key != null) {
+                metrics.connectionClosed();
+            }
+            connectionPermits.release();
+        }
+    }
+
+    /**
+     * Piece of queued output that may take several writable events to send.
+     */
+    private interface PendingWrite {
+
+        /**
+         * Writes as much as the channel accepts.
+         *
+         * @param channel the non-blocking client channel
+         * @param metrics the metrics to count written bytes in
+         * @return true once everything has been written
+         * @throws IOException if the channel or source fails
+         */
+        boolean writeTo(SocketChannel channel, ServerMetrics metrics) throws IOException;
+
+        /**
+         * Releases resources held by output that will never be written.
+         */
+        void release();
+
+        /**
+         * Checks whether the write is waiting for data rather than for the
+         * socket, in which case the connection need not watch OP_WRITE.
+         *
+         * @return true if nothing is ready to be written yet
+         */
+        default boolean awaitsProducer() {
+            return false;
+        }
+    }
+
+    /**
+     * Queued head and in-memory body of a response, sent with one gathering
+     * write so that a small response costs a single system call. The head
+     * buffer goes back to its pool once it has been sent.
+     */
+    private static class ResponseWrite implements PendingWrite {
+        private final ByteBuffer[] buffers;
+        private final BufferPool pool;
+        private byte[] head;
+
+        /**
+         * Creates a write for a response.
+         *
+         * @param head the encoded head, in an array from the pool or of its own
+         * @param body the body bytes, possibly empty
+         * @param pool the pool the head is returned to
+         */
+        ResponseWrite(ByteBuffer head, byte[] body, BufferPool pool) {
+            this.buffers = new ByteBuffer[] {head, ByteBuffer.wrap(body)};
+            this.pool = pool;
+            this.head = head.array();
+        }
+
+        @Override
+        public boolean writeTo(SocketChannel channel, ServerMetrics metrics) throws IOException {
+            metrics.addBytesOut(channel.write(buffers));
+            if (buffers[0].hasRemaining() || buffers[1].hasRemaining()) {
+                return false;
+            }
+            release();
+            return true;
+        }
+
+        @Override
+        public void release() {
+            if (head != null) {
+                pool.release(head);
+                head = null;
+            }
+        }
+    }
+
+    /**
+     * Queued file region sent with {@link FileChannel#transferTo}. The file
+     * is opened when the region reaches the head of the queue and each
+     * writable event transfers what the socket send buffer can take.
+     */
+    private static class FileWrite implements PendingWrite {
+        private final FileRegion region;
+        private FileChannel file;
+        private long position;
+        private long end;
+
+        /**
+         * Creates a write for a file region.
+         *
+         * @param region the region to send
+         */
+        FileWrite(FileRegion region) {
+            this.region = region;
+        }
+
+        @Override
+        public boolean writeTo(SocketChannel channel, ServerMetrics metrics) throws IOException {
+            if (file == null) {
+                file = region.open();
+                position = region.getOffset();
+                end = position + region.getLength();
+            }
+            while (position < end) {
+                long sent = file.transferTo(position, end - position, channel);
+                if (sent <= 0) {
+                    if (position >= file.size()) {
+                        throw new IOException("File shrank while being sent");
+                    }
+                    return false;
+                }
+                position += sent;
+                metrics.addBytesOut(sent);
+            }
+            release();
+            return true;
+        }
+
+        @Override
+        public void release() {
+            if (file != null) {
+                try {
+                    file.close();
+                } catch (IOException e) {
+                    // Only reading.
+                }
+                file = null;
+            }
+        }
+    }
+
+    /**
+     * Empty write queued after a response. Reaching the head of the queue
+     * means the response was written completely; the write time is measured
+     * from when the response was queued, so it includes waiting behind
+     * earlier pipelined responses and for a slow client. The request line is
+     * captured up front because the event loop reuses the request view.
+     * A response that never arrived, because the connection closed while it
+     * was deferred, is recorded as a 500.
+     */
+    private class CompletionMarker implements PendingWrite {
+        private final String remoteAddress;
+        private final String method;
+        private final String uri;
+        private final String version;
+        private final long startedAt;
+        private volatile String route;
+        private int statusCode = 500;
+        private long contentLength = -1;
+        private long queuedAt = System.nanoTime();
+
+        /**
+         * Creates a marker for a request.
+         *
+         * @param connection the connection the response is sent on
+         * @param request    the request
+         * @param startedAt  when the request started being processed
+         */
+        CompletionMarker(Connection connection, HttpRequest request, long startedAt) {
+            this.remoteAddress = connection.remoteAddress;
+            boolean logged = config.isAccessLogEnabled();
+            this.method = logged ? request.getMethod() : null;
+            this.uri = logged ? request.getUri() : null;
+            this.version = logged ? request.getVersion() : null;
+            this.route = request.getRoute();
+            this.startedAt = startedAt;
+        }
+
+        /**
+         * Sets the route the request is recorded under, once a handler
+         * running on another thread has claimed it.
+         *
+         * @param route the route pattern or label
+         */
+        void setRoute(String route) {
+            this.route = route;
+        }
+
+        /**
+         * Records the response once it is queued.
+         *
+         * @param response the queued response
+         */
+        void setResponse(HttpResponse response) {
+            this.statusCode = response.getStatusCode();
+            this.contentLength = response.getContentLength();
+            this.queuedAt = System.nanoTime();
+        }
+
+        @Override
+        public boolean writeTo(SocketChannel channel, ServerMetrics recorder) {
+            long now = System.nanoTime();
+            recorder.responseWritten(route, statusCode, now - queuedAt);
+            log.access(remoteAddress, method, uri, version, route, statusCode, contentLength, now - startedAt);
+            return true;
+        }
+
+        @Override
+        public void release() {
+            metrics.responseAborted(route, statusCode);
+            log.access(remoteAddress, method, uri, version, route, statusCode, contentLength,
+                    System.nanoTime() - startedAt);
+        }
+    }
+
+    /**
+     * Queued placeholder for a response that an asynchronous handler has
+     * not produced yet. The connection stops watching the socket while it
+     * waits; the thread completing the future only hands the response over
+     * and asks the event loop to flush, which then queues the actual writes
+     * in place of the placeholder. A handler reading its request body may
+     * ask for 100 Continue first, which goes out as soon as the responses
+     * ahead of it have.
+     */
+    private static class DeferredWrite implements PendingWrite {
+        private final Connection connection;
+        private final CompletionMarker marker;
+        private final boolean keepAlive;
+        private final ArrayDeque<PendingWrite> writes = new ArrayDeque<>();
+        private BodyPipe body;
+        private ByteBuffer interim;
+        private volatile boolean continueRequested;
+        private volatile HttpResponse response;
+        private boolean expanded;
+
+        /**
+         * Creates a placeholder on a connection.
+         *
+         * @param connection the connection the response is sent on
+         * @param marker     the marker that records the response
+         * @param keepAlive  whether the connection stays open afterwards
+         */
+        DeferredWrite(Connection connection, CompletionMarker marker, boolean keepAlive) {
+            this.connection = connection;
+            this.marker = marker;
+            this.keepAlive = keepAlive;
+        }
+
+        /**
+         * Hands over the actual response. Called on whichever thread
+         * completed the future.
+         *
+         * @param actual the response
+         */
+        void complete(HttpResponse actual) {
+            response = actual;
+            connection.eventLoop.scheduleFlush(connection);
+        }
+
+        /**
+         * Asks for 100 Continue to be sent ahead of the response. Called by
+         * the handler's thread when it starts reading the body.
+         */
+        void requestContinue() {
+            continueRequested = true;
+            connection.eventLoop.scheduleFlush(connection);
+        }
+
+        /**
+         * Checks whether a requested 100 Continue has yet to be written.
+         *
+         * @return true while the interim response is pending
+         */
+        private boolean continuePending() {
+            return continueRequested && (interim == null || interim.hasRemaining());
+        }
+
+        /**
+         * Queues the writes of the actual response. A request body that has
+         * not been received completely cannot be told apart from what the
+         * client sends next, so the connection closes after the response.
+         * So it does after a close-delimited body, and the responses to any
+         * requests pipelined behind it are never sent.
+         *
+         * @param actual the response
+         */
+        private void expand(HttpResponse actual) {
+            boolean reusable = keepAlive;
+            if (body != null && !body.isComplete()) {
+                reusable = false;
+                connection.closeAfterWrite = true;
+            }
+            if (actual.isCloseDelimited()) {
+                connection.discardAfter(marker);
+            }
+            marker.setResponse(connection.enqueue(actual, reusable, writes));
+            expanded = true;
+        }
+
+        @Override
+        public boolean writeTo(SocketChannel channel, ServerMetrics metrics) throws IOException {
+            if (!expanded) {
+                if (continuePending()) {
+                    if (interim == null) {
+                        interim = ByteBuffer.wrap(HttpResponse.CONTINUE);
+                    }
+                    metrics.addBytesOut(channel.write(interim));
+                    if (interim.hasRemaining()) {
+                        return false;
+                    }
+                }
+                HttpResponse actual = response;
+                if (actual == null) {
+                    return false;
+                }
+                expand(actual);
+            }
+            while (!writes.isEmpty()) {
+                if (!writes.peek().writeTo(channel, metrics)) {
+                    return false;
+                }
+                writes.poll();
+            }
+            return true;
+        }
+
+        @Override
+        public boolean awaitsProducer() {
+            if (!expanded) {
+                return response == null && !continuePending();
+            }
+            return !writes.isEmpty() && writes.peek().awaitsProducer();
+        }
+
+        @Override
+        public void release() {
+            for (PendingWrite pending : writes) {
+                pending.release();
+            }
+            writes.clear();
+        }
+    }
+
+    /**
+     * Queued streaming body. A worker thread runs the body writer and hands
+     * its output over through a queue, chunk-framed unless the response is
+     * delimited by closing the connection; the event loop writes it
+     * whenever the socket accepts more. The worker blocks while too much
+     * output is waiting, so a slow client slows the producer down instead of
+     * filling the heap.
+     */
+    private static class StreamWrite implements PendingWrite {
+        private final Connection connection;
+        private final Queue<ByteBuffer> chunks = new ConcurrentLinkedQueue<>();
+        private ByteBuffer current;
+        private int bufferedBytes;
+        private volatile boolean finished;
+        private volatile IOException failure;
+        private volatile boolean cancelled;
+
+        /**
+         * Creates a streaming write for a connection.
+         *
+         * @param connection the connection the output belongs to
+         */
+        StreamWrite(Connection connection) {
+            this.connection = connection;
+        }
+
+        /**
+         * Runs the body writer on the calling worker thread.
+         *
+         * @param response the response with the body writer
+         */
+        void produce(HttpResponse response) {
+            Sink sink = new Sink();
+            ChunkedOutputStream chunked = response.isCloseDelimited() ? null : new ChunkedOutputStream(sink);
+            try {
+                response.getStreamingBody().writeTo(chunked != null ? chunked : sink);
+                if (chunked != null) {
+                    chunked.finish();
+                } else {
+                    sink.flush();
+                }
+            } catch (IOException e) {
+                failure = e;
+            } catch (RuntimeException e) {
+                failure = new IOException("Streaming body failed", e);
+            }
+            finished = true;
+            connection.eventLoop.scheduleFlush(connection);
+        }
+
+        /**
+         * Hands a piece of output to the event loop, waiting while the
+         * connection already has too much unsent output.
+         *
+         * @param chunk the bytes to send
+         * @throws IOException if the connection closed or the wait was interrupted
+         */
+        private void offer(ByteBuffer chunk) throws IOException {
+            synchronized (this) {
+                try {
+                    while (bufferedBytes >= STREAM_BUFFER_LIMIT && !cancelled) {
+                        wait();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while streaming");
+                }
+                if (cancelled) {
+                    throw new IOException("Connection closed");
+                }
+                bufferedBytes += chunk.remaining();
+            }
+            chunks.add(chunk);
+            connection.eventLoop.scheduleFlush(connection);
+        }
+
+        @Override
+        public boolean writeTo(SocketChannel channel, ServerMetrics metrics) throws IOException {
+            while (true) {
+                if (current == null) {
+                    boolean done = finished;
+                    current = chunks.poll();
+                    if (current == null) {
+                        if (done && failure != null) {
+                            throw failure;
+                        }
+                        return done;
+                    }
+                }
+                int written = channel.write(current);
+                if (written > 0) {
+                    metrics.addBytesOut(written);
+                    synchronized (this) {
+                        bufferedBytes -= written;
+                        notifyAll();
+                    }
+                }
+                if (current.hasRemaining()) {
+                    return false;
+                }
+                current = null;
+            }
+        }
+
+        @Override
+        public boolean awaitsProducer() {
+            return current == null && chunks.isEmpty() && !finished;
+        }
+
+        @Override
+        public void release() {
+            synchronized (this) {
+                cancelled = true;
+                notifyAll();
+            }
+        }
+
+        /**
+         * Stream the chunked encoder, or a close-delimited body, writes
+         * into. Small writes are gathered and handed over at chunk
+         * boundaries.
+         */
+        private class Sink extends OutputStream {
+            private final ByteArrayOutputStream pending = new ByteArrayOutputStream(ChunkedOutputStream.CHUNK_SIZE + 16);
+
+            @Override
+            public void write(int b) throws IOException {
+                pending.write(b);
+                if (pending.size() >= ChunkedOutputStream.CHUNK_SIZE) {
+                    flush();
+                }
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                pending.write(bytes, offset, length);
+                if (pending.size() >= ChunkedOutputStream.CHUNK_SIZE) {
+                    flush();
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                if (pending.size() > 0) {
+                    ByteBuffer chunk = ByteBuffer.wrap(pending.toByteArray());
+                    pending.reset();
+                    offer(chunk);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,436 @@
+package co.edu.escuelaing.microserver.http;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Read-only view of a URL query string that looks parameters up in the raw
+ * request bytes. Values are percent-decoded as UTF-8, with '+' standing for
+ * a space. Numeric values are parsed straight from the bytes, so reading an
+ * {@code int} parameter creates no {@code String}.
+ * <p>
+ * Like {@link HttpRequest}, the view belongs to a connection and is reused
+ * for every request; it must not be kept after the response is produced.
+ * When a parameter occurs several times, the single-value getters return
+ * the first occurrence.
+ */
+public final class QueryString {
+
+    private static final QueryString EMPTY = new QueryString();
+
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private byte[] buffer = new byte[0];
+    private int start;
+    private int end;
+    private int valueStart;
+    private int valueEnd;
+
+    /**
+     * Creates an empty view.
+     */
+    QueryString() {
+    }
+
+    /**
+     * Creates a query string from already decoded parameters, for callers
+     * that have a map rather than a request.
+     *
+     * @param parameters the parameters
+     * @return the query string
+     */
+    public static QueryString of(Map<String, String> parameters) {
+        if (parameters.isEmpty()) {
+            return EMPTY;
+        }
+        StringBuilder encoded = new StringBuilder();
+        for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+            if (encoded.length() > 0) {
+                encoded.append('&');
+            }
+            encode(parameter.getKey(), encoded);
+            encoded.append('=');
+            encode(parameter.getValue(), encoded);
+        }
+        QueryString query = new QueryString();
+        byte[] bytes = encoded.toString().getBytes(StandardCharsets.ISO_8859_1);
+        query.reset(bytes, 0, bytes.length);
+        return query;
+    }
+
+    /**
+     * Points the view at a query string.
+     *
+     * @param buffer the bytes holding the query string
+     * @param start  the first byte after '?'
+     * @param end    the end of the query string
+     */
+    void reset(byte[] buffer, int start, int end) {
+        this.buffer = buffer;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Checks whether a parameter is present, with or without a value.
+     *
+     * @param name the parameter name
+     * @return true if present
+     */
+    public boolean contains(String name) {
+        return find(name, start) >= 0;
+    }
+
+    /**
+     * Gets the decoded value of a parameter.
+     *
+     * @param name the parameter name
+     * @return the value, "" for a name without '=', or null if absent
+     */
+    public String get(String name) {
+        if (find(name, start) < 0) {
+            return null;
+        }
+        return decode(valueStart, valueEnd);
+    }
+
+    /**
+     * Gets every value of a repeated parameter, in order.
+     *
+     * @param name the parameter name
+     * @return the values, empty if absent
+     */
+    public List<String> getAll(String name) {
+        int next = find(name, start);
+        if (next < 0) {
+            return Collections.emptyList();
+        }
+        List<String> values = new ArrayList<>(2);
+        while (next >= 0) {
+            values.add(decode(valueStart, valueEnd));
+            next = find(name, next);
+        }
+        return values;
+    }
+
+    /**
+     * Gets a parameter as a long.
+     *
+     * @param name         the parameter name
+     * @param defaultValue the value to return if the parameter is absent
+     * @return the value
+     * @throws NumberFormatException if the value is not a valid long
+     */
+    public long getLong(String name, long defaultValue) {
+        if (find(name, start) < 0) {
+            return defaultValue;
+        }
+        if (isEncoded(valueStart, valueEnd)) {
+            return Long.parseLong(decode(valueStart, valueEnd));
+        }
+        return parseLong(buffer, valueStart, valueEnd);
+    }
+
+    /**
+     * Gets a parameter as an int.
+     *
+     * @param name         the parameter name
+     * @param defaultValue the value to return if the parameter is absent
+     * @return the value
+     * @throws NumberFormatException if the value is not a valid int
+     */
+    public int getInt(String name, int defaultValue) {
+        long value = getLong(name, defaultValue);
+        if (value != (int) value) {
+            throw new NumberFormatException("Value out of int range: " + value);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Gets a parameter as a double. Plain decimals with up to 15 significant
+     * digits are converted exactly without creating a string; anything else
+     * goes through {@link Double#parseDouble}.
+     *
+     * @param name         the parameter name
+     * @param defaultValue the value to return if the parameter is absent
+     * @return the value
+     * @throws NumberFormatException if the value is not a valid number
+     */
+    public double getDouble(String name, double defaultValue) {
+        if (find(name, start) < 0) {
+            return defaultValue;
+        }
+        if (!isEncoded(valueStart, valueEnd)) {
+            double fast = parseSimpleDecimal(buffer, valueStart, valueEnd);
+            if (!Double.isNaN(fast)) {
+                return fast;
+            }
+        }
+        return Double.parseDouble(decode(valueStart, valueEnd));
+    }
+
+    /**
+     * Gets a parameter as a boolean. Accepts true/false, 1/0, on/off and
+     * yes/no in any case; a name without a value counts as true.
+     *
+     * @param name         the parameter name
+     * @param defaultValue the value to return if the parameter is absent
+     * @return the value
+     * @throws IllegalArgumentException if the value is not a boolean
+     */
+    public boolean getBoolean(String name, boolean defaultValue) {
+        if (find(name, start) < 0) {
+            return defaultValue;
+        }
+        if (valueStart == valueEnd) {
+            return true;
+        }
+        return parseBoolean(decode(valueStart, valueEnd));
+    }
+
+    /**
+     * Converts every parameter to a map; the first occurrence of a name wins.
+     *
+     * @return a map of decoded names to decoded values
+     */
+    public Map<String, String> toMap() {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        int position = start;
+        while (position < end) {
+            int pairEnd = indexOf('&', position, end);
+            int equals = indexOf('=', position, pairEnd);
+            if (pairEnd > position) {
+                String name = decode(position, equals);
+                String value = equals < pairEnd ? decode(equals + 1, pairEnd) : "";
+                parameters.putIfAbsent(name, value);
+            }
+            position = pairEnd + 1;
+        }
+        return parameters;
+    }
+
+    /**
+     * Parses a boolean in the formats accepted by {@link #getBoolean}.
+     *
+     * @param value the text
+     * @return the boolean
+     * @throws IllegalArgumentException if the text is not a boolean
+     */
+    public static boolean parseBoolean(String value) {
+        switch (value.toLowerCase(Locale.ROOT)) {
+            case "true":
+            case "1":
+            case "on":
+            case "yes":
+                return true;
+            case "false":
+            case "0":
+            case "off":
+            case "no":
+                return false;
+            default:
+                throw new IllegalArgumentException("Not a boolean: " + value);
+        }
+    }
+
+    /**
+     * Finds the next occurrence of a parameter and records its value range.
+     *
+     * @param name the parameter name
+     * @param from where to start looking
+     * @return the position after the parameter, or -1 if not found
+     */
+    private int find(String name, int from) {
+        int position = from;
+        while (position < end) {
+            int pairEnd = indexOf('&', position, end);
+            int equals = indexOf('=', position, pairEnd);
+            if (nameEquals(position, equals, name)) {
+                valueStart = equals < pairEnd ? equals + 1 : pairEnd;
+                valueEnd = pairEnd;
+                return pairEnd + 1;
+            }
+            position = pairEnd + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Compares an encoded name in the buffer with a decoded name.
+     *
+     * @param from the first byte of the name
+     * @param to   the end of the name
+     * @param name the name to compare with
+     * @return true if they are equal
+     */
+    private boolean nameEquals(int from, int to, String name) {
+        if (isEncoded(from, to)) {
+            return decode(from, to).equals(name);
+        }
+        if (to - from != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if ((buffer[from + i] & 0xff) != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether a region needs decoding.
+     *
+     * @param from the first byte
+     * @param to   the end of the region
+     * @return true if it contains '%' or '+'
+     */
+    private boolean isEncoded(int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer[i] == '%' || buffer[i] == '+') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds a byte in a range.
+     *
+     * @param value the byte to look for
+     * @param from  the first position
+     * @param to    the end of the range
+     * @return its position, or {@code to} if absent
+     */
+    private int indexOf(char value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer[i] == value) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * Percent-decodes a region as UTF-8. Malformed escapes are kept as is.
+     *
+     * @param from the first byte
+     * @param to   the end of the region
+     * @return the decoded string
+     */
+    private String decode(int from, int to) {
+        if (!isEncoded(from, to)) {
+            return new String(buffer, from, to - from, StandardCharsets.ISO_8859_1);
+        }
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream(to - from);
+        for (int i = from; i < to; i++) {
+            byte b = buffer[i];
+            int high = b == '%' && i + 2 < to ? Character.digit(buffer[i + 1], 16) : -1;
+            int low = high >= 0 ? Character.digit(buffer[i + 2], 16) : -1;
+            if (b == '+') {
+                decoded.write(' ');
+            } else if (low >= 0) {
+                decoded.write(high << 4 | low);
+                i += 2;
+            } else {
+                decoded.write(b);
+            }
+        }
+        return new String(decoded.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Percent-encodes text as UTF-8, keeping unreserved characters.
+     *
+     * @param text    the text
+     * @param encoded the builder to append to
+     */
+    private static void encode(String text, StringBuilder encoded) {
+        for (byte b : text.getBytes(StandardCharsets.UTF_8)) {
+            if ((b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9')
+                    || b == '-' || b == '.' || b == '_' || b == '~') {
+                encoded.append((char) b);
+            } else {
+                encoded.append('%').append(Character.forDigit((b >> 4) & 0xf, 16))
+                        .append(Character.forDigit(b & 0xf, 16));
+            }
+        }
+    }
+
+    /**
+     * Parses a decimal long from ASCII bytes.
+     *
+     * @param bytes the bytes
+     * @param from  the first byte
+     * @param to    the end of the number
+     * @return the value
+     * @throws NumberFormatException if the bytes are not a valid long
+     */
+    static long parseLong(byte[] bytes, int from, int to) {
+        boolean negative = from < to && bytes[from] == '-';
+        int position = negative || (from < to && bytes[from] == '+') ? from + 1 : from;
+        if (position == to) {
+            throw new NumberFormatException("Not a number: " + new String(bytes, from, to - from,
+                    StandardCharsets.ISO_8859_1));
+        }
+        // Accumulate negatively, like Long.parseLong, so Long.MIN_VALUE fits.
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multiplyLimit = limit / 10;
+        long result = 0;
+        for (; position < to; position++) {
+            int digit = bytes[position] - '0';
+            if (digit < 0 || digit > 9 || result < multiplyLimit || result * 10 < limit + digit) {
+                throw new NumberFormatException("Not a long: " + new String(bytes, from, to - from,
+                        StandardCharsets.ISO_8859_1));
+            }
+            result = result * 10 - digit;
+        }
+        return negative ? result : -result;
+    }
+
+    /**
+     * Converts a plain decimal such as "-12.5" exactly when both the digits
+     * and the power of ten are representable as doubles.
+     *
+     * @param bytes the bytes
+     * @param from  the first byte
+     * @param to    the end of the number
+     * @return the value, or NaN if the fast path does not apply
+     */
+    private static double parseSimpleDecimal(byte[] bytes, int from, int to) {
+        boolean negative = from < to && bytes[from] == '-';
+        int position = negative ? from + 1 : from;
+        long digits = 0;
+        int digitCount = 0;
+        int fractionDigits = -1;
+        for (; position < to; position++) {
+            byte b = bytes[position];
+            if (b == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else if (b >= '0' && b <= '9' && digitCount < 15) {
+                digits = digits * 10 + (b - '0');
+                digitCount++;
+                if (fractionDigits >= 0) {
+                    fractionDigits++;
+                }
+            } else {
+                return Double.NaN;
+            }
+        }
+        if (digitCount == 0) {
+            return Double.NaN;
+        }
+        double value = fractionDigits > 0 ? digits / POWERS_OF_TEN[fractionDigits] : digits;
+        return negative ? -value : value;
+    }
+}
@@ -0,0 +1,132 @@
+package co.edu.escuelaing.microserver.http;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket rate limiter keyed by client or route, implemented with the
+ * generic cell rate algorithm. Each key keeps a single timestamp, the
+ * theoretical arrival time of its next request; admitting a request moves
+ * it forward by one emission interval with a compare-and-set, so the
+ * limiter takes no locks and a bucket costs one {@link AtomicLong}.
+ * <p>
+ * A key whose timestamp is in the past has a full bucket and carries no
+ * information, so such keys are swept once the map grows past its bound.
+ * If it is still full after a sweep, new keys share one overflow bucket
+ * rather than letting a flood of addresses grow the map without limit.
+ */
+public final class RateLimiter {
+
+    /**
+     * Number of keys kept before stale ones are swept.
+     */
+    public static final int DEFAULT_MAX_KEYS = 100_000;
+
+    private static final String OVERFLOW_KEY = "\u0000overflow";
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final long emissionIntervalNanos;
+    private final long burstWindowNanos;
+    private final int maxKeys;
+    private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweep = new AtomicLong(System.nanoTime());
+
+    /**
+     * Creates a limiter.
+     *
+     * @param permitsPerSecond the sustained rate per key
+     * @param burst            how many requests a key may send at once,
+     *                         or 0 for one second's worth
+     * @param maxKeys          the number of keys kept before sweeping
+     * @throws IllegalArgumentException if the rate is not positive, the
+     *                                  burst is negative or maxKeys is not positive
+     */
+    public RateLimiter(double permitsPerSecond, int burst, int maxKeys) {
+        if (!(permitsPerSecond > 0) || burst < 0 || maxKeys <= 0) {
+            throw new IllegalArgumentException("Rate limit needs a positive rate and key bound and a burst >= 0");
+        }
+        this.emissionIntervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        int permits = burst > 0 ? burst : (int) Math.max(1, Math.ceil(permitsPerSecond));
+        this.burstWindowNanos = emissionIntervalNanos * permits;
+        this.maxKeys = maxKeys;
+    }
+
+    /**
+     * Tries to admit one request.
+     *
+     * @param key the bucket key, such as the client address
+     * @return 0 if the request is admitted, otherwise how many nanoseconds
+     *         the key has to wait for its next permit
+     */
+    public long tryAcquire(String key) {
+        long now = System.nanoTime();
+        AtomicLong bucket = bucket(key, now);
+        while (true) {
+            long arrival = bucket.get();
+            long next = (arrival - now > 0 ? arrival : now) + emissionIntervalNanos;
+            long ahead = next - now;
+            if (ahead > burstWindowNanos) {
+                return ahead - burstWindowNanos;
+            }
+            if (bucket.compareAndSet(arrival, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Converts a wait into the whole seconds of a Retry-After header.
+     *
+     * @param waitNanos the wait returned by {@link #tryAcquire}
+     * @return the wait rounded up to seconds, at least one
+     */
+    public static long retryAfterSeconds(long waitNanos) {
+        return Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+    }
+
+    /**
+     * Gets the number of buckets currently kept.
+     *
+     * @return the number of keys
+     */
+    int size() {
+        return buckets.size();
+    }
+
+    /**
+     * Finds or creates the bucket of a key, sweeping full buckets when the
+     * map has reached its bound.
+     *
+     * @param key the bucket key
+     * @param now the current time, from {@link System#nanoTime()}
+     * @return the bucket
+     */
+    private AtomicLong bucket(String key, long now) {
+        AtomicLong bucket = buckets.get(key);
+        if (bucket != null) {
+            return bucket;
+        }
+        if (buckets.size() >= maxKeys) {
+            sweep(now);
+            if (buckets.size() >= maxKeys) {
+                return buckets.computeIfAbsent(OVERFLOW_KEY, ignored -> new AtomicLong(now));
+            }
+        }
+        return buckets.computeIfAbsent(key, ignored -> new AtomicLong(now));
+    }
+
+    /**
+     * Removes the buckets that have refilled completely. Runs at most once
+     * per sweep interval, on whichever thread gets there first.
+     *
+     * @param now the current time, from {@link System#nanoTime()}
+     */
+    private void sweep(long now) {
+        long due = nextSweep.get();
+        if (now - due < 0 || !nextSweep.compareAndSet(due, now + SWEEP_INTERVAL_NANOS)) {
+            return;
+        }
+        buckets.values().removeIf(bucket -> bucket.get() - now <= 0);
+    }
+}
@@ -0,0 +1,18 @@
+package co.edu.escuelaing.microserver.http;
+
+/**
+ * Behavior of the server when a connection arrives and it is already
+ * handling the maximum number of concurrent connections.
+ */
+public enum RejectionPolicy {
+
+    /**
+     * Answers with 503 Service Unavailable and closes the connection.
+     */
+    SERVICE_UNAVAILABLE,
+
+    /**
+     * Closes the connection without writing a response.
+     */
+    CLOSE
+}
@@ -0,0 +1,136 @@
+package co.edu.escuelaing.microserver.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Request body handed to a handler as a stream. The engines supply the
+ * bytes; this class enforces what every body has in common: the size
+ * limit, the 100 Continue a waiting client is sent on the first read, and
+ * that nothing is read once the handler has returned. Errors the client
+ * should hear about are thrown as {@link HttpStatusException}, so they
+ * become the response whether the handler or an argument binder was
+ * reading.
+ */
+abstract class RequestBody extends InputStream {
+
+    private final long length;
+    private final boolean expectContinue;
+    private final long serverLimit;
+    private long limit;
+    private long received;
+    private boolean started;
+    private volatile boolean detached;
+
+    /**
+     * Creates a body.
+     *
+     * @param length         the Content-Length, or {@link HttpRequest#CHUNKED}
+     * @param limit          the server's body size limit in bytes
+     * @param expectContinue whether the client waits for 100 Continue
+     */
+    RequestBody(long length, long limit, boolean expectContinue) {
+        this.length = length;
+        this.serverLimit = limit;
+        this.limit = limit;
+        this.expectContinue = expectContinue;
+    }
+
+    /**
+     * Applies the size limit of the route reading the body. A body read as
+     * a stream never sits in memory, so the route's limit replaces the
+     * server's; a body read whole into memory stays within the server's.
+     *
+     * @param maxSize  the limit in bytes, or a negative value to keep the
+     *                 server's
+     * @param buffered whether the body is read whole into memory
+     * @throws HttpStatusException with 413 if the declared length is too large
+     */
+    void limit(long maxSize, boolean buffered) {
+        if (maxSize < 0) {
+            limit = serverLimit;
+        } else {
+            limit = buffered ? Math.min(maxSize, serverLimit) : maxSize;
+        }
+        if (length > limit) {
+            throw tooLarge();
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int read = read(single, 0, 1);
+        return read < 0 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (detached) {
+            throw new IOException("Request body read after the handler returned");
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (!started) {
+            if (length > limit) {
+                throw tooLarge();
+            }
+            started = true;
+            if (expectContinue) {
+                sendContinue();
+            }
+        }
+        int read = readContent(b, off, len);
+        if (read > 0) {
+            received += read;
+            if (received > limit) {
+                throw tooLarge();
+            }
+        }
+        return read;
+    }
+
+    /**
+     * Ends the handler's access to the body. What it left unread is the
+     * engine's to discard.
+     */
+    void detach() {
+        detached = true;
+    }
+
+    /**
+     * Checks whether the body has been received up to its end, so the
+     * connection may carry another request.
+     *
+     * @return true once the end of the body has been reached
+     */
+    abstract boolean isComplete();
+
+    /**
+     * Reads decoded body bytes, blocking until at least one is available.
+     *
+     * @param b   the destination
+     * @param off the first index to fill
+     * @param len the most bytes to read, at least one
+     * @return the number of bytes read, or -1 at the end of the body
+     * @throws IOException if the connection fails
+     */
+    abstract int readContent(byte[] b, int off, int len) throws IOException;
+
+    /**
+     * Tells a client waiting with "Expect: 100-continue" to send the body.
+     *
+     * @throws IOException if the interim response cannot be written
+     */
+    abstract void sendContinue() throws IOException;
+
+    /**
+     * Creates the error for a body over the limit.
+     *
+     * @return the exception to throw
+     */
+    private static HttpStatusException tooLarge() {
+        return new HttpStatusException(413, "Request body too large");
+    }
+}
@@ -15,4 +15,35 @@ public interface RequestDispatcher {
      * @return the response content, or null if no handler found
      */
     String dispatch(String path, Map<String, String> queryParams);
+
+    /**
+     * Dispatches a parsed request of any method. Unlike {@link #dispatch},
+     * the result may be a {@link StreamingBody} that the server sends
+     * incrementally, a byte array holding an already encoded UTF-8 body, or
+     * a {@link java.util.concurrent.CompletionStage} that completes with
+     * one of those later without holding a server thread in the meantime.
+     * The request body, if any, may be read while this method runs.
+     * By default only GET requests are dispatched, through {@link #dispatch}.
+     *
+     * @param request the request
+     * @return a String, byte array, StreamingBody or CompletionStage, or
+     *         null if no handler found
+     * @throws HttpStatusException to answer with an error status, such as
+     *                             405 for a path mapped for other methods
+     */
+    default Object dispatchRequest(HttpRequest request) {
+        if (!request.isMethod("GET")) {
+            return null;
+        }
+        return dispatch(request.getPath(), request.getQueryParameters());
+    }
+
+    /**
+     * Appends application metrics, such as cache statistics, to the
+     * Prometheus text served on the metrics endpoint.
+     *
+     * @param out the exposition text being built
+     */
+    default void writeMetrics(StringBuilder out) {
+    }
 }
@@ -0,0 +1,353 @@
+package co.edu.escuelaing.microserver.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Turns parsed requests into responses: dispatches to controllers, falls back
+ * to static files and answers everything else with an error page.
+ * Engine-agnostic so blocking and non-blocking servers behave the same.
+ * Dynamic text bodies are compressed when the client accepts it.
+ * The time spent producing each response is recorded under the route that
+ * handled it, and the metrics themselves are served on the metrics path.
+ * Asynchronous handler results become deferred responses that complete
+ * when the handler's future does, or with 504 once the wait times out.
+ * Before dispatching, requests pass admission control: an optional rate
+ * limit per client address answers 429, and an optional adaptive
+ * concurrency limit sheds the excess with 503 as soon as latency rises.
+ */
+class RequestProcessor {
+
+    private final ServerConfig config;
+    private final RequestDispatcher requestDispatcher;
+    private final StaticFileHandler staticFiles;
+    private final ServerMetrics metrics;
+    private final RateLimiter clientRateLimiter;
+    private final ConcurrencyLimiter concurrencyLimiter;
+
+    /**
+     * Creates a new processor.
+     *
+     * @param config            the server configuration
+     * @param requestDispatcher the dispatcher to handle dynamic requests
+     * @param metrics           the metrics to record dispatch times in
+     */
+    RequestProcessor(ServerConfig config, RequestDispatcher requestDispatcher, ServerMetrics metrics) {
+        this.config = config;
+        this.requestDispatcher = requestDispatcher;
+        this.staticFiles = new StaticFileHandler(config);
+        this.metrics = metrics;
+        this.clientRateLimiter = config.getRateLimitPerSecond() > 0
+                ? new RateLimiter(config.getRateLimitPerSecond(), config.getRateLimitBurst(),
+                        RateLimiter.DEFAULT_MAX_KEYS)
+                : null;
+        this.concurrencyLimiter = config.isAdaptiveConcurrencyEnabled()
+                ? new ConcurrencyLimiter(config.getConcurrencyLimitMin(),
+                        Math.max(config.getConcurrencyLimitMin(), config.getConcurrencyLimitMax()))
+                : null;
+        metrics.setConcurrencyLimiter(concurrencyLimiter);
+    }
+
+    /**
+     * Produces the response for a request and records how long it took.
+     * Requests no route claimed are labelled as unmatched. The dispatch
+     * time of a deferred response is recorded when it completes.
+     *
+     * @param request the parsed request
+     * @return the response to send, possibly deferred
+     * @throws IOException if a static file cannot be read
+     */
+    HttpResponse process(HttpRequest request) throws IOException {
+        long started = System.nanoTime();
+        HttpResponse response = null;
+        try {
+            response = respond(request, started);
+            return response;
+        } finally {
+            if (request.getRoute() == null) {
+                request.setRoute(ServerMetrics.ROUTE_UNMATCHED);
+            }
+            if (response == null || response.getDeferred() == null) {
+                metrics.recordDispatch(request.getRoute(), System.nanoTime() - started);
+            }
+        }
+    }
+
+    /**
+     * Produces the response for a request.
+     *
+     * @param request the parsed request
+     * @param started when processing started, from {@link System#nanoTime()}
+     * @return the response to send
+     * @throws IOException if a static file cannot be read
+     */
+    private HttpResponse respond(HttpRequest request, long started) throws IOException {
+        if (config.isMetricsEnabled() && request.isMethod("GET") && request.getPath().equals(config.getMetricsPath())) {
+            request.setRoute(config.getMetricsPath());
+            return dynamicResponse(request.getHeader("Accept-Encoding"), ServerMetrics.CONTENT_TYPE,
+                    metrics.render(requestDispatcher).getBytes(StandardCharsets.UTF_8));
+        }
+
+        HttpResponse rejection = admit(request);
+        if (rejection != null) {
+            return rejection;
+        }
+        HttpResponse response = null;
+        try {
+            response = dispatch(request, started);
+            return response;
+        } finally {
+            if (concurrencyLimiter != null) {
+                release(response, started);
+            }
+        }
+    }
+
+    /**
+     * Applies the client rate limit and the adaptive concurrency limit.
+     * Turned away requests are labelled so they can be told apart from the
+     * routes they were meant for.
+     *
+     * @param request the request
+     * @return the rejection, or null if the request may be dispatched
+     */
+    private HttpResponse admit(HttpRequest request) {
+        if (clientRateLimiter != null && request.getRemoteAddress() != null) {
+            long wait = clientRateLimiter.tryAcquire(request.getRemoteAddress());
+            if (wait > 0) {
+                request.setRoute(ServerMetrics.ROUTE_RATE_LIMITED);
+                return HttpResponse.error(429, "Retry-After: " + RateLimiter.retryAfterSeconds(wait) + "\r\n");
+            }
+        }
+        if (concurrencyLimiter != null && !concurrencyLimiter.tryAcquire()) {
+            request.setRoute(ServerMetrics.ROUTE_OVERLOADED);
+            return HttpResponse.error(503, "Retry-After: 1\r\n");
+        }
+        return null;
+    }
+
+    /**
+     * Returns an admitted request's slot to the concurrency limiter with
+     * its latency, once a deferred response has completed.
+     *
+     * @param response the response, or null if dispatching failed
+     * @param started  when processing started, from {@link System#nanoTime()}
+     */
+    private void release(HttpResponse response, long started) {
+        if (response != null && response.getDeferred() != null) {
+            response.getDeferred().whenComplete((actual, error) ->
+                    concurrencyLimiter.release(System.nanoTime() - started));
+        } else {
+            concurrencyLimiter.release(System.nanoTime() - started);
+        }
+    }
+
+    /**
+     * Dispatches an admitted request to a controller, falling back to
+     * static files for GET requests. Other methods only reach controllers.
+     *
+     * @param request the parsed request
+     * @param started when processing started, from {@link System#nanoTime()}
+     * @return the response to send
+     * @throws IOException if a static file cannot be read
+     */
+    private HttpResponse dispatch(HttpRequest request, long started) throws IOException {
+        Object response;
+        try {
+            response = requestDispatcher.dispatchRequest(request);
+        } catch (HttpStatusException e) {
+            return HttpResponse.error(e);
+        }
+        if (response instanceof CompletionStage) {
+            return deferredResponse(request, (CompletionStage<?>) response, started);
+        }
+        if (response != null) {
+            return resultResponse(request.getHeader("Accept-Encoding"), !request.getVersion().equals("HTTP/1.0"),
+                    response);
+        }
+
+        if (!request.isMethod("GET")) {
+            return HttpResponse.error(405);
+        }
+        HttpResponse staticFile = staticFiles.serve(request);
+        if (staticFile != null) {
+            request.setRoute(ServerMetrics.ROUTE_STATIC);
+            return staticFile;
+        }
+
+        return HttpResponse.error(404);
+    }
+
+    /**
+     * Builds the placeholder for the response to a handler's future. The
+     * request view may be reused before the future completes, so what the
+     * response depends on is captured now. The wait is bounded by the
+     * server's asynchronous timeout, applied to a copy of the future.
+     *
+     * @param request the request
+     * @param result  the handler's future
+     * @param started when processing started, from {@link System#nanoTime()}
+     * @return the deferred response
+     */
+    private HttpResponse deferredResponse(HttpRequest request, CompletionStage<?> result, long started) {
+        String route = request.getRoute();
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        boolean chunked = !request.getVersion().equals("HTTP/1.0");
+        CompletableFuture<HttpResponse> response = result.toCompletableFuture().copy()
+                .orTimeout(config.getAsyncTimeoutMillis(), TimeUnit.MILLISECONDS)
+                .handle((value, error) -> {
+                    metrics.recordDispatch(route, System.nanoTime() - started);
+                    if (error != null) {
+                        return errorResponse(error);
+                    }
+                    if (value == null) {
+                        return HttpResponse.error(404);
+                    }
+                    try {
+                        return resultResponse(acceptEncoding, chunked, value);
+                    } catch (RuntimeException e) {
+                        return HttpResponse.error(500);
+                    }
+                });
+        return new HttpResponse(response);
+    }
+
+    /**
+     * Maps the error a handler's future completed with to a response.
+     *
+     * @param error the error
+     * @return 504 for a timeout, the status of an {@link HttpStatusException}
+     *         and 500 for anything else
+     */
+    private static HttpResponse errorResponse(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof TimeoutException) {
+            return HttpResponse.error(504);
+        }
+        if (cause instanceof HttpStatusException) {
+            return HttpResponse.error((HttpStatusException) cause);
+        }
+        return HttpResponse.error(500);
+    }
+
+    /**
+     * Builds the response for a handler result.
+     *
+     * @param acceptEncoding the Accept-Encoding header of the request, or null
+     * @param chunked        whether the client understands chunked transfer coding
+     * @param result         a String, byte array or StreamingBody
+     * @return the response
+     */
+    private HttpResponse resultResponse(String acceptEncoding, boolean chunked, Object result) {
+        if (result instanceof StreamingBody) {
+            return streamingResponse(acceptEncoding, chunked, (StreamingBody) result);
+        }
+        if (result instanceof byte[]) {
+            return dynamicResponse(acceptEncoding, "text/html", (byte[]) result);
+        }
+        return dynamicResponse(acceptEncoding, "text/html", result.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Wraps a streaming body. HTTP/1.0 clients do not understand chunked
+     * transfer coding, so their body is ended by closing the connection
+     * instead; it is still streamed and never held in memory.
+     *
+     * @param acceptEncoding the Accept-Encoding header of the request, or null
+     * @param chunked        whether the client understands chunked transfer coding
+     * @param body           the body writer
+     * @return the response
+     */
+    private HttpResponse streamingResponse(String acceptEncoding, boolean chunked, StreamingBody body) {
+        String coding = negotiateCoding(acceptEncoding, body.getContentType());
+        if (coding == null) {
+            return new HttpResponse(200, body, isVaried(body.getContentType()) ? ContentCoding.VARY : null, chunked);
+        }
+        return new HttpResponse(200, new CompressedBody(body, coding), ContentCoding.headers(coding), chunked);
+    }
+
+    /**
+     * Builds the response for a rendered body, compressing it when the
+     * client accepts a coding and the body is large enough to benefit.
+     *
+     * @param acceptEncoding the Accept-Encoding header of the request, or null
+     * @param contentType    the content type
+     * @param content        the rendered body
+     * @return the response
+     */
+    private HttpResponse dynamicResponse(String acceptEncoding, String contentType, byte[] content) {
+        if (!isVaried(contentType)) {
+            return new HttpResponse(200, contentType, content);
+        }
+        String coding = negotiateCoding(acceptEncoding, contentType);
+        if (coding == null || content.length < config.getCompressionMinSize()) {
+            return new HttpResponse(200, contentType, content, ContentCoding.VARY);
+        }
+        return new HttpResponse(200, contentType, ContentCoding.compress(content, coding),
+                ContentCoding.headers(coding));
+    }
+
+    /**
+     * Checks whether responses of a type depend on Accept-Encoding.
+     *
+     * @param contentType the content type
+     * @return true if such bodies may be compressed
+     */
+    private boolean isVaried(String contentType) {
+        return config.isCompressionEnabled() && ContentCoding.isCompressible(contentType);
+    }
+
+    /**
+     * Negotiates the coding for a compressible body.
+     *
+     * @param acceptEncoding the Accept-Encoding header of the request, or null
+     * @param contentType    the content type
+     * @return the coding, or null to send the body as is
+     */
+    private String negotiateCoding(String acceptEncoding, String contentType) {
+        if (!isVaried(contentType)) {
+            return null;
+        }
+        return ContentCoding.negotiate(acceptEncoding);
+    }
+
+    /**
+     * Streaming body that compresses the output of another one. The
+     * compressor is sync-flushed whenever the inner body flushes.
+     */
+    private static class CompressedBody implements StreamingBody {
+        private final StreamingBody body;
+        private final String coding;
+
+        /**
+         * Creates a compressing wrapper.
+         *
+         * @param body   the body to compress
+         * @param coding the content coding
+         */
+        CompressedBody(StreamingBody body, String coding) {
+            this.body = body;
+            this.coding = coding;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            DeflaterOutputStream compressed = ContentCoding.wrap(out, coding);
+            body.writeTo(compressed);
+            // Only closed on success: closing ends a chunked body, which must not happen after a failure.
+            compressed.close();
+        }
+
+        @Override
+        public String getContentType() {
+            return body.getContentType();
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package co.edu.escuelaing.microserver.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads request heads from a blocking connection into one reusable buffer.
+ * Bytes that belong to the next pipelined request stay in the buffer and
+ * are parsed on the following call. Request bodies are read through the
+ * same buffer, or straight into the caller's array when it asks for a
+ * large piece.
+ */
+class RequestReader {
+
+    private static final int DIRECT_READ_SIZE = 8 * 1024;
+
+    private final InputStream in;
+    private final HttpRequestParser parser;
+    private final ServerMetrics metrics;
+    private final byte[] buffer;
+    private int start;
+    private int end;
+    private int headStart;
+    private int headEnd;
+
+    /**
+     * Creates a reader for a connection.
+     *
+     * @param in      the connection input stream
+     * @param parser  the request parser
+     * @param metrics the metrics to record received bytes and parse times in
+     */
+    RequestReader(InputStream in, HttpRequestParser parser, ServerMetrics metrics) {
+        this.in = in;
+        this.parser = parser;
+        this.metrics = metrics;
+        this.buffer = new byte[parser.getMaxHeadSize()];
+    }
+
+    /**
+     * Waits until the next request starts to arrive, so that its deadline
+     * can be counted from its first byte rather than from the end of the
+     * previous response.
+     *
+     * @return true once part of a request is buffered, false if the client
+     *         closed the connection
+     * @throws IOException if reading fails
+     */
+    boolean awaitRequest() throws IOException {
+        if (start < end) {
+            return true;
+        }
+        int read = in.read(buffer, 0, buffer.length);
+        if (read < 0) {
+            return false;
+        }
+        start = 0;
+        end = read;
+        metrics.addBytesIn(read);
+        return true;
+    }
+
+    /**
+     * Reads and parses the next request head.
+     *
+     * @param request the view to fill
+     * @return true if a request was read, false if the client closed the connection
+     * @throws IOException        if reading fails
+     * @throws HttpParseException if the request is malformed or too large
+     */
+    boolean readHead(HttpRequest request) throws IOException, HttpParseException {
+        int scanned = start;
+        int headEnd;
+        while (true) {
+            start = parser.skipEmptyLines(buffer, start, end);
+            headEnd = parser.findHeadEnd(buffer, start, Math.max(scanned, start), end);
+            if (headEnd >= 0) {
+                break;
+            }
+            scanned = end;
+            if (end == buffer.length) {
+                scanned -= start;
+                compact();
+            }
+            int read = in.read(buffer, end, buffer.length - end);
+            if (read < 0) {
+                return false;
+            }
+            end += read;
+            metrics.addBytesIn(read);
+        }
+
+        long started = System.nanoTime();
+        parser.parseHead(buffer, start, headEnd, request);
+        metrics.requestParsed(System.nanoTime() - started);
+        this.headStart = start;
+        this.headEnd = headEnd;
+        start = headEnd;
+        if (start == end) {
+            start = 0;
+            end = 0;
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the connection starts with the given bytes, reading
+     * only as long as the bytes received so far match. Nothing is consumed.
+     *
+     * @param prefix the expected bytes, no longer than the buffer
+     * @return true if the buffered bytes start with the prefix
+     * @throws IOException if reading fails
+     */
+    boolean startsWith(byte[] prefix) throws IOException {
+        while (true) {
+            int available = Math.min(end - start, prefix.length);
+            for (int i = 0; i < available; i++) {
+                if (buffer[start + i] != prefix[i]) {
+                    return false;
+                }
+            }
+            if (available == prefix.length) {
+                return true;
+            }
+            if (end == buffer.length) {
+                compact();
+            }
+            int read = in.read(buffer, end, buffer.length - end);
+            if (read < 0) {
+                return false;
+            }
+            end += read;
+            metrics.addBytesIn(read);
+        }
+    }
+
+    /**
+     * Copies the last head read out of the buffer, for a request that is
+     * answered after the buffer has been reused.
+     *
+     * @param request the view filled by the last {@link #readHead} call
+     * @return a request holding its own copy of the head
+     */
+    HttpRequest detachHead(HttpRequest request) {
+        return request.detach(headStart, headEnd);
+    }
+
+    /**
+     * Checks whether received bytes are waiting in the buffer, in which
+     * case the next {@link #read} does not block.
+     *
+     * @return true if the buffer holds unread bytes
+     */
+    boolean hasBuffered() {
+        return start < end;
+    }
+
+    /**
+     * Reads bytes following the last head, such as its body. Callers must
+     * not ask for more than belongs to the request, since a large read
+     * bypasses the buffer and would take the next request with it.
+     *
+     * @param b   the destination
+     * @param off the first index to fill
+     * @param len the most bytes to read
+     * @return the number of bytes read, or -1 if the client closed the connection
+     * @throws IOException if reading fails
+     */
+    int read(byte[] b, int off, int len) throws IOException {
+        if (start == end) {
+            start = 0;
+            end = 0;
+            if (len >= DIRECT_READ_SIZE) {
+                int read = in.read(b, off, len);
+                if (read > 0) {
+                    metrics.addBytesIn(read);
+                }
+                return read;
+            }
+            int read = in.read(buffer, 0, buffer.length);
+            if (read < 0) {
+                return -1;
+            }
+            end = read;
+            metrics.addBytesIn(read);
+        }
+        int count = Math.min(len, end - start);
+        System.arraycopy(buffer, start, b, off, count);
+        start += count;
+        return count;
+    }
+
+    /**
+     * Moves the unread bytes to the beginning of the buffer.
+     */
+    private void compact() {
+        System.arraycopy(buffer, start, buffer, 0, end - start);
+        end -= start;
+        start = 0;
+    }
+}
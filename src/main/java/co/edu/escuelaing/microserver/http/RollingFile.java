@@ -0,0 +1,109 @@
+package co.edu.escuelaing.microserver.http;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only log file that rolls over by size: once the file would grow
+ * past the limit it is renamed to {@code name.1}, older files move up one
+ * number and the oldest beyond the kept count is deleted. Callers write
+ * whole lines, so a line never straddles two files.
+ */
+class RollingFile extends OutputStream {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path file;
+    private final long maxSize;
+    private final int maxFiles;
+    private OutputStream out;
+    private long size;
+
+    /**
+     * Opens a log file for appending, creating its directory if needed.
+     *
+     * @param file     the current log file
+     * @param maxSize  the size at which the file is rolled over
+     * @param maxFiles the number of rolled-over files kept
+     * @throws IOException if the file cannot be opened
+     */
+    RollingFile(Path file, long maxSize, int maxFiles) throws IOException {
+        this.file = file.toAbsolutePath();
+        this.maxSize = maxSize;
+        this.maxFiles = maxFiles;
+        Files.createDirectories(this.file.getParent());
+        open();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        if (size > 0 && size + length > maxSize) {
+            roll();
+        }
+        out.write(bytes, offset, length);
+        size += length;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * Opens the current file, continuing its size when it already exists.
+     *
+     * @throws IOException if the file cannot be opened
+     */
+    private void open() throws IOException {
+        out = new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND), BUFFER_SIZE);
+        size = Files.size(file);
+    }
+
+    /**
+     * Closes the current file, shifts the old ones and starts a new file.
+     *
+     * @throws IOException if the files cannot be renamed or opened
+     */
+    private void roll() throws IOException {
+        out.close();
+        if (maxFiles == 0) {
+            Files.delete(file);
+        } else {
+            Files.deleteIfExists(sibling(maxFiles));
+            for (int i = maxFiles - 1; i >= 1; i--) {
+                Path older = sibling(i);
+                if (Files.exists(older)) {
+                    Files.move(older, sibling(i + 1), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Files.move(file, sibling(1), StandardCopyOption.REPLACE_EXISTING);
+        }
+        open();
+    }
+
+    /**
+     * Gets the path of a rolled-over file.
+     *
+     * @param index the generation, 1 being the most recent
+     * @return the path
+     */
+    Path sibling(int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+}
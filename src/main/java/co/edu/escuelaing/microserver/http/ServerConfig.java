@@ -0,0 +1,926 @@
+package co.edu.escuelaing.microserver.http;
+
+/**
+ * Tuning options for the {@link HttpServer}.
+ * Every option has a sensible default so only the values that differ
+ * need to be set.
+ */
+public class ServerConfig {
+
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+
+    private int port = 8080;
+    private ServerEngine engine = ServerEngine.BLOCKING;
+    private boolean http2Enabled = true;
+    private int eventLoopThreads = CORES;
+    private int acceptBacklog = 128;
+    private int acceptorThreads = 1;
+    private boolean reusePort;
+    private ExecutionModel executionModel = ExecutionModel.PLATFORM_THREADS;
+    private int workerThreads = Math.max(8, CORES * 4);
+    private int maxConnections = 1024;
+    private RejectionPolicy rejectionPolicy = RejectionPolicy.SERVICE_UNAVAILABLE;
+    private int keepAliveTimeoutMillis = 5000;
+    private int headerTimeoutMillis = 10000;
+    private int requestTimeoutMillis = 60000;
+    private int bodyTimeoutMillis = 30000;
+    private int maxRequestsPerConnection = 1000;
+    private int asyncTimeoutMillis = 30000;
+    private double rateLimitPerSecond;
+    private int rateLimitBurst;
+    private boolean adaptiveConcurrencyEnabled;
+    private int concurrencyLimitMin = 8;
+    private int concurrencyLimitMax = 1024;
+    private int maxRequestLineLength = 8 * 1024;
+    private int maxHeaderSize = 16 * 1024;
+    private int maxHeaderCount = 100;
+    private long maxRequestBodySize = 1024 * 1024;
+    private String staticRoot = "src/main/resources/static";
+    private long staticCacheMaxBytes = 32L * 1024 * 1024;
+    private long staticCacheRevalidateMillis = 1000;
+    private long zeroCopyThreshold = 256 * 1024;
+    private boolean compressionEnabled = true;
+    private int compressionMinSize = 1024;
+    private boolean metricsEnabled = true;
+    private String metricsPath = "/metrics";
+    private boolean accessLogEnabled = true;
+    private String accessLogFile;
+    private String accessLogFormat = AccessLogFormat.COMMON;
+    private long accessLogMaxFileSize = 64L * 1024 * 1024;
+    private int accessLogMaxFiles = 5;
+    private long accessLogFlushMillis = 1000;
+    private int accessLogBufferSize = 8192;
+
+    /**
+     * Creates a configuration with the default values.
+     */
+    public ServerConfig() {
+    }
+
+    /**
+     * Creates a configuration with the default values listening on the given port.
+     *
+     * @param port the port to listen on
+     */
+    public ServerConfig(int port) {
+        this.port = port;
+    }
+
+    /**
+     * Gets the port to listen on.
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Sets the port to listen on.
+     *
+     * @param port the port
+     */
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    /**
+     * Gets the I/O engine used to serve connections.
+     *
+     * @return the engine
+     */
+    public ServerEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Sets the I/O engine used to serve connections.
+     *
+     * @param engine the engine
+     */
+    public void setEngine(ServerEngine engine) {
+        if (engine == null) {
+            throw new IllegalArgumentException("engine must not be null");
+        }
+        this.engine = engine;
+    }
+
+    /**
+     * Checks whether the blocking engine speaks HTTP/2 over cleartext
+     * (h2c) with clients that open with the HTTP/2 preface or ask for an
+     * upgrade.
+     *
+     * @return true if h2c is enabled
+     */
+    public boolean isHttp2Enabled() {
+        return http2Enabled;
+    }
+
+    /**
+     * Enables or disables h2c on the blocking engine. The NIO engine only
+     * speaks HTTP/1.
+     *
+     * @param http2Enabled true to accept HTTP/2 connections
+     */
+    public void setHttp2Enabled(boolean http2Enabled) {
+        this.http2Enabled = http2Enabled;
+    }
+
+    /**
+     * Gets the number of selector threads used by the NIO engine.
+     *
+     * @return the number of event loops
+     */
+    public int getEventLoopThreads() {
+        return eventLoopThreads;
+    }
+
+    /**
+     * Sets the number of selector threads used by the NIO engine.
+     *
+     * @param eventLoopThreads the number of event loops
+     */
+    public void setEventLoopThreads(int eventLoopThreads) {
+        this.eventLoopThreads = requirePositive(eventLoopThreads, "eventLoopThreads");
+    }
+
+    /**
+     * Gets the maximum length of the queue of pending connections kept by the OS.
+     *
+     * @return the accept backlog
+     */
+    public int getAcceptBacklog() {
+        return acceptBacklog;
+    }
+
+    /**
+     * Sets the maximum length of the queue of pending connections kept by the OS.
+     *
+     * @param acceptBacklog the accept backlog
+     */
+    public void setAcceptBacklog(int acceptBacklog) {
+        this.acceptBacklog = requirePositive(acceptBacklog, "acceptBacklog");
+    }
+
+    /**
+     * Gets the number of listening sockets opened on the port, each with
+     * its own accept thread and its own share of the workers or event loops.
+     *
+     * @return the number of acceptors
+     */
+    public int getAcceptorThreads() {
+        return acceptorThreads;
+    }
+
+    /**
+     * Sets the number of listening sockets opened on the port. More than
+     * one implies {@code SO_REUSEPORT}, so that the kernel spreads incoming
+     * connections across the sockets.
+     *
+     * @param acceptorThreads the number of acceptors
+     */
+    public void setAcceptorThreads(int acceptorThreads) {
+        this.acceptorThreads = requirePositive(acceptorThreads, "acceptorThreads");
+    }
+
+    /**
+     * Checks whether the listening sockets are bound with
+     * {@code SO_REUSEPORT}, either because several acceptors were asked for
+     * or so that other processes can listen on the same port.
+     *
+     * @return true if the port is shared
+     */
+    public boolean isReusePort() {
+        return reusePort || acceptorThreads > 1;
+    }
+
+    /**
+     * Binds the listening sockets with {@code SO_REUSEPORT}, so that several
+     * server processes can listen on the same port and have the kernel
+     * balance connections between them.
+     *
+     * @param reusePort whether to share the port
+     */
+    public void setReusePort(boolean reusePort) {
+        this.reusePort = reusePort;
+    }
+
+    /**
+     * Gets the strategy used to run connections.
+     *
+     * @return the execution model
+     */
+    public ExecutionModel getExecutionModel() {
+        return executionModel;
+    }
+
+    /**
+     * Sets the strategy used to run connections.
+     *
+     * @param executionModel the execution model
+     */
+    public void setExecutionModel(ExecutionModel executionModel) {
+        if (executionModel == null) {
+            throw new IllegalArgumentException("executionModel must not be null");
+        }
+        this.executionModel = executionModel;
+    }
+
+    /**
+     * Gets the size of the platform thread pool.
+     *
+     * @return the number of worker threads
+     */
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    /**
+     * Sets the size of the platform thread pool.
+     * Ignored when running on virtual threads.
+     *
+     * @param workerThreads the number of worker threads
+     */
+    public void setWorkerThreads(int workerThreads) {
+        this.workerThreads = requirePositive(workerThreads, "workerThreads");
+    }
+
+    /**
+     * Gets the maximum number of connections handled at the same time.
+     *
+     * @return the connection limit
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Sets the maximum number of connections handled at the same time.
+     *
+     * @param maxConnections the connection limit
+     */
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = requirePositive(maxConnections, "maxConnections");
+    }
+
+    /**
+     * Gets what happens to connections that arrive when the server is saturated.
+     *
+     * @return the rejection policy
+     */
+    public RejectionPolicy getRejectionPolicy() {
+        return rejectionPolicy;
+    }
+
+    /**
+     * Sets what happens to connections that arrive when the server is saturated.
+     *
+     * @param rejectionPolicy the rejection policy
+     */
+    public void setRejectionPolicy(RejectionPolicy rejectionPolicy) {
+        if (rejectionPolicy == null) {
+            throw new IllegalArgumentException("rejectionPolicy must not be null");
+        }
+        this.rejectionPolicy = rejectionPolicy;
+    }
+
+    /**
+     * Gets how long an idle persistent connection is kept open.
+     *
+     * @return the idle timeout in milliseconds
+     */
+    public int getKeepAliveTimeoutMillis() {
+        return keepAliveTimeoutMillis;
+    }
+
+    /**
+     * Sets how long an idle persistent connection is kept open.
+     *
+     * @param keepAliveTimeoutMillis the idle timeout in milliseconds
+     */
+    public void setKeepAliveTimeoutMillis(int keepAliveTimeoutMillis) {
+        this.keepAliveTimeoutMillis = requirePositive(keepAliveTimeoutMillis, "keepAliveTimeoutMillis");
+    }
+
+    /**
+     * Gets the idle timeout rounded to whole seconds, as advertised in the
+     * Keep-Alive response header.
+     *
+     * @return the idle timeout in seconds, at least one
+     */
+    public int getKeepAliveTimeoutSeconds() {
+        return Math.max(1, keepAliveTimeoutMillis / 1000);
+    }
+
+    /**
+     * Gets how long a client may take to send a request head.
+     *
+     * @return the header timeout in milliseconds
+     */
+    public int getHeaderTimeoutMillis() {
+        return headerTimeoutMillis;
+    }
+
+    /**
+     * Sets how long a client may take to send a request head, counted from
+     * its first byte. A client that trickles its headers slower than this
+     * is answered with 408 Request Timeout and disconnected, so it cannot
+     * hold a connection open one byte at a time.
+     *
+     * @param headerTimeoutMillis the header timeout in milliseconds
+     */
+    public void setHeaderTimeoutMillis(int headerTimeoutMillis) {
+        this.headerTimeoutMillis = requirePositive(headerTimeoutMillis, "headerTimeoutMillis");
+    }
+
+    /**
+     * Gets how long a request may take from its first byte until its
+     * response is completely written.
+     *
+     * @return the request timeout in milliseconds
+     */
+    public int getRequestTimeoutMillis() {
+        return requestTimeoutMillis;
+    }
+
+    /**
+     * Sets how long a request may take from its first byte until its
+     * response is completely written. A connection still busy with a
+     * request past this deadline, for example because the client stopped
+     * reading its response, is closed. Pipelined requests share the
+     * deadline of the first one sent while the connection was idle.
+     *
+     * @param requestTimeoutMillis the request timeout in milliseconds
+     */
+    public void setRequestTimeoutMillis(int requestTimeoutMillis) {
+        this.requestTimeoutMillis = requirePositive(requestTimeoutMillis, "requestTimeoutMillis");
+    }
+
+    /**
+     * Gets how long a client may pause while sending a request body.
+     *
+     * @return the body timeout in milliseconds
+     */
+    public int getBodyTimeoutMillis() {
+        return bodyTimeoutMillis;
+    }
+
+    /**
+     * Sets how long a client may pause while sending a request body. The
+     * clock restarts whenever body bytes arrive, so a large upload only has
+     * to keep moving; a client that stalls for longer is disconnected.
+     *
+     * @param bodyTimeoutMillis the body timeout in milliseconds
+     */
+    public void setBodyTimeoutMillis(int bodyTimeoutMillis) {
+        this.bodyTimeoutMillis = requirePositive(bodyTimeoutMillis, "bodyTimeoutMillis");
+    }
+
+    /**
+     * Gets the maximum number of requests served on a single connection.
+     *
+     * @return the per-connection request limit
+     */
+    public int getMaxRequestsPerConnection() {
+        return maxRequestsPerConnection;
+    }
+
+    /**
+     * Sets the maximum number of requests served on a single connection.
+     * A value of 1 disables persistent connections.
+     *
+     * @param maxRequestsPerConnection the per-connection request limit
+     */
+    public void setMaxRequestsPerConnection(int maxRequestsPerConnection) {
+        this.maxRequestsPerConnection = requirePositive(maxRequestsPerConnection, "maxRequestsPerConnection");
+    }
+
+    /**
+     * Gets how long the server waits for an asynchronous handler result.
+     *
+     * @return the timeout in milliseconds
+     */
+    public int getAsyncTimeoutMillis() {
+        return asyncTimeoutMillis;
+    }
+
+    /**
+     * Sets how long the server waits for an asynchronous handler result
+     * before answering 504 Gateway Timeout. Routes with their own @Timeout
+     * may wait less, but never longer.
+     *
+     * @param asyncTimeoutMillis the timeout in milliseconds
+     */
+    public void setAsyncTimeoutMillis(int asyncTimeoutMillis) {
+        this.asyncTimeoutMillis = requirePositive(asyncTimeoutMillis, "asyncTimeoutMillis");
+    }
+
+    /**
+     * Gets the sustained request rate allowed per client address.
+     *
+     * @return the rate in requests per second, or 0 if clients are not limited
+     */
+    public double getRateLimitPerSecond() {
+        return rateLimitPerSecond;
+    }
+
+    /**
+     * Sets the sustained request rate allowed per client address. Requests
+     * over the limit are answered with 429 Too Many Requests and a
+     * Retry-After header. Routes can add their own limits with @RateLimit.
+     *
+     * @param rateLimitPerSecond the rate in requests per second, or 0 to disable
+     */
+    public void setRateLimitPerSecond(double rateLimitPerSecond) {
+        if (!(rateLimitPerSecond >= 0)) {
+            throw new IllegalArgumentException("rateLimitPerSecond must not be negative");
+        }
+        this.rateLimitPerSecond = rateLimitPerSecond;
+    }
+
+    /**
+     * Gets how many requests a client may send at once before the rate
+     * limit applies.
+     *
+     * @return the burst, or 0 for one second's worth of requests
+     */
+    public int getRateLimitBurst() {
+        return rateLimitBurst;
+    }
+
+    /**
+     * Sets how many requests a client may send at once before the rate
+     * limit applies.
+     *
+     * @param rateLimitBurst the burst, or 0 for one second's worth of requests
+     */
+    public void setRateLimitBurst(int rateLimitBurst) {
+        if (rateLimitBurst < 0) {
+            throw new IllegalArgumentException("rateLimitBurst must not be negative");
+        }
+        this.rateLimitBurst = rateLimitBurst;
+    }
+
+    /**
+     * Checks whether the number of requests dispatched at once is limited
+     * adaptively.
+     *
+     * @return true if the adaptive limit is enabled
+     */
+    public boolean isAdaptiveConcurrencyEnabled() {
+        return adaptiveConcurrencyEnabled;
+    }
+
+    /**
+     * Enables or disables the adaptive concurrency limit, which lowers the
+     * number of requests dispatched at once when latency rises and answers
+     * the excess with 503 Service Unavailable right away.
+     *
+     * @param adaptiveConcurrencyEnabled true to enable the limit
+     */
+    public void setAdaptiveConcurrencyEnabled(boolean adaptiveConcurrencyEnabled) {
+        this.adaptiveConcurrencyEnabled = adaptiveConcurrencyEnabled;
+    }
+
+    /**
+     * Gets the lowest value of the adaptive concurrency limit, which is also
+     * where it starts.
+     *
+     * @return the minimum number of concurrent requests
+     */
+    public int getConcurrencyLimitMin() {
+        return concurrencyLimitMin;
+    }
+
+    /**
+     * Sets the lowest value of the adaptive concurrency limit.
+     *
+     * @param concurrencyLimitMin the minimum number of concurrent requests
+     */
+    public void setConcurrencyLimitMin(int concurrencyLimitMin) {
+        this.concurrencyLimitMin = requirePositive(concurrencyLimitMin, "concurrencyLimitMin");
+    }
+
+    /**
+     * Gets the highest value of the adaptive concurrency limit.
+     *
+     * @return the maximum number of concurrent requests
+     */
+    public int getConcurrencyLimitMax() {
+        return concurrencyLimitMax;
+    }
+
+    /**
+     * Sets the highest value of the adaptive concurrency limit.
+     *
+     * @param concurrencyLimitMax the maximum number of concurrent requests
+     */
+    public void setConcurrencyLimitMax(int concurrencyLimitMax) {
+        this.concurrencyLimitMax = requirePositive(concurrencyLimitMax, "concurrencyLimitMax");
+    }
+
+    /**
+     * Gets the longest request line accepted before answering 414.
+     *
+     * @return the limit in bytes
+     */
+    public int getMaxRequestLineLength() {
+        return maxRequestLineLength;
+    }
+
+    /**
+     * Sets the longest request line accepted before answering 414.
+     *
+     * @param maxRequestLineLength the limit in bytes
+     */
+    public void setMaxRequestLineLength(int maxRequestLineLength) {
+        this.maxRequestLineLength = requirePositive(maxRequestLineLength, "maxRequestLineLength");
+    }
+
+    /**
+     * Gets the largest header block accepted before answering 431.
+     *
+     * @return the limit in bytes
+     */
+    public int getMaxHeaderSize() {
+        return maxHeaderSize;
+    }
+
+    /**
+     * Sets the largest header block accepted before answering 431.
+     *
+     * @param maxHeaderSize the limit in bytes
+     */
+    public void setMaxHeaderSize(int maxHeaderSize) {
+        this.maxHeaderSize = requirePositive(maxHeaderSize, "maxHeaderSize");
+    }
+
+    /**
+     * Gets the largest number of header fields accepted before answering 431.
+     *
+     * @return the header count limit
+     */
+    public int getMaxHeaderCount() {
+        return maxHeaderCount;
+    }
+
+    /**
+     * Sets the largest number of header fields accepted before answering 431.
+     *
+     * @param maxHeaderCount the header count limit
+     */
+    public void setMaxHeaderCount(int maxHeaderCount) {
+        this.maxHeaderCount = requirePositive(maxHeaderCount, "maxHeaderCount");
+    }
+
+    /**
+     * Gets the largest request body accepted before answering 413.
+     *
+     * @return the limit in bytes
+     */
+    public long getMaxRequestBodySize() {
+        return maxRequestBodySize;
+    }
+
+    /**
+     * Sets the largest request body accepted before answering 413. Routes
+     * may lower it with {@code @RequestBody(maxSize)}, and raise it for
+     * bodies they read as a stream over HTTP/1. A body declaring a
+     * larger Content-Length is turned away before any of it is read.
+     *
+     * @param maxRequestBodySize the limit in bytes
+     */
+    public void setMaxRequestBodySize(long maxRequestBodySize) {
+        if (maxRequestBodySize < 0) {
+            throw new IllegalArgumentException("maxRequestBodySize must not be negative");
+        }
+        this.maxRequestBodySize = maxRequestBodySize;
+    }
+
+    /**
+     * Gets the directory static files are served from.
+     *
+     * @return the static root directory
+     */
+    public String getStaticRoot() {
+        return staticRoot;
+    }
+
+    /**
+     * Sets the directory static files are served from.
+     *
+     * @param staticRoot the static root directory
+     */
+    public void setStaticRoot(String staticRoot) {
+        if (staticRoot == null) {
+            throw new IllegalArgumentException("staticRoot must not be null");
+        }
+        this.staticRoot = staticRoot;
+    }
+
+    /**
+     * Gets the total size of static file content kept in memory.
+     *
+     * @return the cache size limit in bytes
+     */
+    public long getStaticCacheMaxBytes() {
+        return staticCacheMaxBytes;
+    }
+
+    /**
+     * Sets the total size of static file content kept in memory.
+     * The least recently used files are evicted beyond this limit.
+     *
+     * @param staticCacheMaxBytes the cache size limit in bytes
+     */
+    public void setStaticCacheMaxBytes(long staticCacheMaxBytes) {
+        if (staticCacheMaxBytes < 0) {
+            throw new IllegalArgumentException("staticCacheMaxBytes must not be negative");
+        }
+        this.staticCacheMaxBytes = staticCacheMaxBytes;
+    }
+
+    /**
+     * Gets how long a cached static file is served before checking the disk again.
+     *
+     * @return the revalidation interval in milliseconds
+     */
+    public long getStaticCacheRevalidateMillis() {
+        return staticCacheRevalidateMillis;
+    }
+
+    /**
+     * Sets how long a cached static file is served before checking the disk again.
+     * Zero checks the modification time on every request.
+     *
+     * @param staticCacheRevalidateMillis the revalidation interval in milliseconds
+     */
+    public void setStaticCacheRevalidateMillis(long staticCacheRevalidateMillis) {
+        if (staticCacheRevalidateMillis < 0) {
+            throw new IllegalArgumentException("staticCacheRevalidateMillis must not be negative");
+        }
+        this.staticCacheRevalidateMillis = staticCacheRevalidateMillis;
+    }
+
+    /**
+     * Gets the file size from which static files are streamed from disk
+     * instead of being loaded into memory.
+     *
+     * @return the threshold in bytes
+     */
+    public long getZeroCopyThreshold() {
+        return zeroCopyThreshold;
+    }
+
+    /**
+     * Sets the file size from which static files are streamed from disk
+     * with {@code FileChannel.transferTo} instead of being loaded into memory.
+     *
+     * @param zeroCopyThreshold the threshold in bytes
+     */
+    public void setZeroCopyThreshold(long zeroCopyThreshold) {
+        if (zeroCopyThreshold < 0) {
+            throw new IllegalArgumentException("zeroCopyThreshold must not be negative");
+        }
+        this.zeroCopyThreshold = zeroCopyThreshold;
+    }
+
+    /**
+     * Checks whether responses are compressed for clients that accept it.
+     *
+     * @return true if gzip and deflate content coding is enabled
+     */
+    public boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+
+    /**
+     * Enables or disables gzip and deflate content coding.
+     *
+     * @param compressionEnabled true to compress text responses
+     */
+    public void setCompressionEnabled(boolean compressionEnabled) {
+        this.compressionEnabled = compressionEnabled;
+    }
+
+    /**
+     * Gets the body size below which responses are sent uncompressed.
+     *
+     * @return the minimum size in bytes
+     */
+    public int getCompressionMinSize() {
+        return compressionMinSize;
+    }
+
+    /**
+     * Sets the body size below which responses are sent uncompressed,
+     * since compressing tiny bodies costs more than it saves.
+     *
+     * @param compressionMinSize the minimum size in bytes
+     */
+    public void setCompressionMinSize(int compressionMinSize) {
+        if (compressionMinSize < 0) {
+            throw new IllegalArgumentException("compressionMinSize must not be negative");
+        }
+        this.compressionMinSize = compressionMinSize;
+    }
+
+    /**
+     * Checks whether request metrics are served on the metrics path.
+     *
+     * @return true if the metrics endpoint is enabled
+     */
+    public boolean isMetricsEnabled() {
+        return metricsEnabled;
+    }
+
+    /**
+     * Enables or disables the metrics endpoint. Metrics are recorded either
+     * way; this only controls whether they are exposed over HTTP.
+     *
+     * @param metricsEnabled true to serve metrics
+     */
+    public void setMetricsEnabled(boolean metricsEnabled) {
+        this.metricsEnabled = metricsEnabled;
+    }
+
+    /**
+     * Gets the path metrics are served on.
+     *
+     * @return the metrics path
+     */
+    public String getMetricsPath() {
+        return metricsPath;
+    }
+
+    /**
+     * Sets the path metrics are served on. It takes precedence over
+     * controllers and static files.
+     *
+     * @param metricsPath the path, starting with '/'
+     */
+    public void setMetricsPath(String metricsPath) {
+        if (metricsPath == null || !metricsPath.startsWith("/")) {
+            throw new IllegalArgumentException("metricsPath must start with '/'");
+        }
+        this.metricsPath = metricsPath;
+    }
+
+    /**
+     * Checks whether requests are written to the access log.
+     *
+     * @return true if access logging is enabled
+     */
+    public boolean isAccessLogEnabled() {
+        return accessLogEnabled;
+    }
+
+    /**
+     * Enables or disables the access log. Error messages are still logged.
+     *
+     * @param accessLogEnabled true to log every request
+     */
+    public void setAccessLogEnabled(boolean accessLogEnabled) {
+        this.accessLogEnabled = accessLogEnabled;
+    }
+
+    /**
+     * Gets the file the access log is written to.
+     *
+     * @return the file path, or null to log to standard output
+     */
+    public String getAccessLogFile() {
+        return accessLogFile;
+    }
+
+    /**
+     * Sets the file the access log is written to. The file is rolled over
+     * once it reaches the maximum size.
+     *
+     * @param accessLogFile the file path, or null to log to standard output
+     */
+    public void setAccessLogFile(String accessLogFile) {
+        this.accessLogFile = accessLogFile;
+    }
+
+    /**
+     * Gets the access log line format.
+     *
+     * @return the format pattern
+     */
+    public String getAccessLogFormat() {
+        return accessLogFormat;
+    }
+
+    /**
+     * Sets the access log line format, using the directives described in
+     * {@link AccessLogFormat}.
+     *
+     * @param accessLogFormat the format pattern
+     */
+    public void setAccessLogFormat(String accessLogFormat) {
+        AccessLogFormat.compile(accessLogFormat);
+        this.accessLogFormat = accessLogFormat;
+    }
+
+    /**
+     * Gets the size at which the access log file is rolled over.
+     *
+     * @return the maximum file size in bytes
+     */
+    public long getAccessLogMaxFileSize() {
+        return accessLogMaxFileSize;
+    }
+
+    /**
+     * Sets the size at which the access log file is rolled over.
+     *
+     * @param accessLogMaxFileSize the maximum file size in bytes
+     */
+    public void setAccessLogMaxFileSize(long accessLogMaxFileSize) {
+        if (accessLogMaxFileSize <= 0) {
+            throw new IllegalArgumentException("accessLogMaxFileSize must be greater than zero");
+        }
+        this.accessLogMaxFileSize = accessLogMaxFileSize;
+    }
+
+    /**
+     * Gets the number of rolled-over access log files kept.
+     *
+     * @return the number of old files
+     */
+    public int getAccessLogMaxFiles() {
+        return accessLogMaxFiles;
+    }
+
+    /**
+     * Sets the number of rolled-over access log files kept next to the
+     * current one; older files are deleted.
+     *
+     * @param accessLogMaxFiles the number of old files
+     */
+    public void setAccessLogMaxFiles(int accessLogMaxFiles) {
+        if (accessLogMaxFiles < 0) {
+            throw new IllegalArgumentException("accessLogMaxFiles must not be negative");
+        }
+        this.accessLogMaxFiles = accessLogMaxFiles;
+    }
+
+    /**
+     * Gets how often buffered log output is flushed.
+     *
+     * @return the flush interval in milliseconds
+     */
+    public long getAccessLogFlushMillis() {
+        return accessLogFlushMillis;
+    }
+
+    /**
+     * Sets how often buffered log output is flushed. Zero flushes after
+     * every batch, which keeps the file current at the cost of more writes.
+     *
+     * @param accessLogFlushMillis the flush interval in milliseconds
+     */
+    public void setAccessLogFlushMillis(long accessLogFlushMillis) {
+        if (accessLogFlushMillis < 0) {
+            throw new IllegalArgumentException("accessLogFlushMillis must not be negative");
+        }
+        this.accessLogFlushMillis = accessLogFlushMillis;
+    }
+
+    /**
+     * Gets the number of log events that can wait to be written.
+     *
+     * @return the ring buffer size
+     */
+    public int getAccessLogBufferSize() {
+        return accessLogBufferSize;
+    }
+
+    /**
+     * Sets the number of log events that can wait to be written. Events
+     * logged while the buffer is full are dropped and counted.
+     *
+     * @param accessLogBufferSize the ring buffer size, a power of two
+     */
+    public void setAccessLogBufferSize(int accessLogBufferSize) {
+        if (accessLogBufferSize <= 0 || Integer.bitCount(accessLogBufferSize) != 1) {
+            throw new IllegalArgumentException("accessLogBufferSize must be a power of two");
+        }
+        this.accessLogBufferSize = accessLogBufferSize;
+    }
+
+    /**
+     * Validates that a numeric option is greater than zero.
+     *
+     * @param value the value to check
+     * @param name  the option name used in the error message
+     * @return the value
+     */
+    private static int requirePositive(int value, String name) {
+        if (value <= 0) {
+            throw new IllegalArgumentException(name + " must be greater than zero");
+        }
+        return value;
+    }
+}
@@ -0,0 +1,18 @@
+package co.edu.escuelaing.microserver.http;
+
+/**
+ * I/O engines available to the {@link HttpServer}.
+ */
+public enum ServerEngine {
+
+    /**
+     * Blocking sockets, one worker per in-flight connection.
+     */
+    BLOCKING,
+
+    /**
+     * Non-blocking channels multiplexed by a few selector event loops, so idle
+     * keep-alive connections do not hold a thread.
+     */
+    NIO
+}
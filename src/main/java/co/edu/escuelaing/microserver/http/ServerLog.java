@@ -0,0 +1,270 @@
+package co.edu.escuelaing.microserver.http;
+
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous server log. Request threads claim a preallocated slot of a
+ * lock-free ring buffer with one compare-and-set, fill it and publish it;
+ * a single background thread drains the ring in batches, formats access
+ * events into the access log and prints error messages to standard error.
+ * No request thread ever waits on I/O or on a lock: when the ring is full
+ * the event is dropped and counted in the server metrics instead.
+ */
+public final class ServerLog {
+
+    private static final int BATCH_SIZE = 512;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long STOP_TIMEOUT_MILLIS = 2000;
+
+    private final ServerConfig config;
+    private final ServerMetrics metrics;
+    private final LogEvent[] ring;
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong();
+    private volatile long consumed;
+    private volatile boolean running;
+    private volatile Thread writer;
+
+    /**
+     * Creates a log with an empty ring buffer. Nothing is written until the
+     * log is started.
+     *
+     * @param config  the server configuration
+     * @param metrics the metrics to count dropped events in
+     */
+    ServerLog(ServerConfig config, ServerMetrics metrics) {
+        this.config = config;
+        this.metrics = metrics;
+        this.ring = new LogEvent[config.getAccessLogBufferSize()];
+        this.mask = ring.length - 1;
+        for (int i = 0; i < ring.length; i++) {
+            ring[i] = new LogEvent();
+        }
+    }
+
+    /**
+     * Opens the access log and starts the writer thread.
+     *
+     * @throws IOException if the access log file cannot be opened
+     */
+    synchronized void start() throws IOException {
+        if (writer != null) {
+            return;
+        }
+        OutputStream sink = openSink();
+        AccessLogFormat format = AccessLogFormat.compile(config.getAccessLogFormat());
+        running = true;
+        writer = new Thread(() -> drain(sink, format), "server-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Stops the writer thread once everything logged so far is written.
+     */
+    synchronized void stop() {
+        if (writer == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(STOP_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Logs a served request. The strings are read from the request now,
+     * since the request view is reused for the next request.
+     *
+     * @param remoteAddress the client address
+     * @param request       the request
+     * @param statusCode    the response status code
+     * @param bytes         the body length, or -1 if unknown
+     * @param durationNanos the time from parsing the request to writing the response
+     */
+    void access(String remoteAddress, HttpRequest request, int statusCode, long bytes, long durationNanos) {
+        if (config.isAccessLogEnabled()) {
+            access(remoteAddress, request.getMethod(), request.getUri(), request.getVersion(), request.getRoute(),
+                    statusCode, bytes, durationNanos);
+        }
+    }
+
+    /**
+     * Logs a served request from values captured earlier.
+     *
+     * @param remoteAddress the client address
+     * @param method        the request method, or null if the request could not be parsed
+     * @param uri           the request target, or null
+     * @param version       the protocol version, or null
+     * @param route         the route label
+     * @param statusCode    the response status code
+     * @param bytes         the body length, or -1 if unknown
+     * @param durationNanos the time from parsing the request to writing the response
+     */
+    void access(String remoteAddress, String method, String uri, String version, String route, int statusCode,
+            long bytes, long durationNanos) {
+        if (!config.isAccessLogEnabled()) {
+            return;
+        }
+        long sequence = claim();
+        if (sequence >= 0) {
+            LogEvent event = ring[(int) sequence & mask];
+            event.setAccess(remoteAddress, method, uri, version, route, statusCode, bytes, durationNanos);
+            event.sequence = sequence;
+        }
+    }
+
+    /**
+     * Logs an error message, which the writer prints to standard error.
+     * Before the log is started the message is printed right away.
+     *
+     * @param message the message
+     */
+    public void error(String message) {
+        if (writer == null) {
+            System.err.println(message);
+            return;
+        }
+        long sequence = claim();
+        if (sequence >= 0) {
+            LogEvent event = ring[(int) sequence & mask];
+            event.setMessage(message);
+            event.sequence = sequence;
+        }
+    }
+
+    /**
+     * Claims the next free slot.
+     *
+     * @return the sequence of the slot, or -1 if the ring is full and the
+     *         event was dropped
+     */
+    private long claim() {
+        while (true) {
+            long sequence = claimed.get();
+            if (sequence - consumed >= ring.length) {
+                metrics.logEventDropped();
+                return -1;
+            }
+            if (claimed.compareAndSet(sequence, sequence + 1)) {
+                return sequence;
+            }
+        }
+    }
+
+    /**
+     * Writer loop: drains published events in batches, flushes according to
+     * the flush interval and parks briefly whenever the ring is empty.
+     *
+     * @param sink   the access log output
+     * @param format the access log format
+     */
+    private void drain(OutputStream sink, AccessLogFormat format) {
+        long flushNanos = TimeUnit.MILLISECONDS.toNanos(config.getAccessLogFlushMillis());
+        long lastFlush = System.nanoTime();
+        boolean unflushed = false;
+        StringBuilder line = new StringBuilder(256);
+        OutputStream out = sink;
+
+        while (true) {
+            boolean stopping = !running;
+            int written = 0;
+            try {
+                written = drainBatch(out, format, line);
+                unflushed |= written > 0;
+                long now = System.nanoTime();
+                if (unflushed && (stopping || now - lastFlush >= flushNanos)) {
+                    out.flush();
+                    unflushed = false;
+                    lastFlush = now;
+                }
+            } catch (IOException e) {
+                System.err.println("Access log failed, discarding further entries: " + e.getMessage());
+                out = OutputStream.nullOutputStream();
+            }
+            if (written == 0) {
+                if (stopping) {
+                    break;
+                }
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        }
+        closeSink(out);
+    }
+
+    /**
+     * Writes up to one batch of published events.
+     *
+     * @param out    the access log output
+     * @param format the access log format
+     * @param line   a reusable line buffer
+     * @return the number of events consumed
+     * @throws IOException if writing the access log fails
+     */
+    private int drainBatch(OutputStream out, AccessLogFormat format, StringBuilder line) throws IOException {
+        int count = 0;
+        long next = consumed;
+        while (count < BATCH_SIZE) {
+            LogEvent event = ring[(int) next & mask];
+            if (event.sequence != next) {
+                break;
+            }
+            if (event.isMessage()) {
+                System.err.println(event.message);
+            } else {
+                line.setLength(0);
+                format.format(event, line);
+                line.append('\n');
+                out.write(line.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            next++;
+            count++;
+            consumed = next;
+        }
+        return count;
+    }
+
+    /**
+     * Opens the access log output: the rolling file when one is configured,
+     * otherwise standard output.
+     *
+     * @return the output
+     * @throws IOException if the file cannot be opened
+     */
+    private OutputStream openSink() throws IOException {
+        if (config.getAccessLogFile() == null) {
+            return new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 16 * 1024);
+        }
+        return new RollingFile(Paths.get(config.getAccessLogFile()), config.getAccessLogMaxFileSize(),
+                config.getAccessLogMaxFiles());
+    }
+
+    /**
+     * Flushes the access log and closes it unless it is standard output.
+     *
+     * @param out the access log output
+     */
+    private void closeSink(OutputStream out) {
+        try {
+            if (out instanceof RollingFile) {
+                out.close();
+            } else {
+                out.flush();
+            }
+        } catch (IOException e) {
+            System.err.println("Error closing access log: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package co.edu.escuelaing.microserver.http;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Request metrics shared by the engines and the request processor. Every
+ * counter is a {@link LongAdder}, so recording from many threads costs an
+ * uncontended add on a striped cell rather than a shared atomic. Requests
+ * are labelled with the route pattern that handled them, which keeps the
+ * number of series bounded no matter which paths clients send.
+ * <p>
+ * Each request is timed in three phases: parsing the head, dispatching it
+ * (producing the response) and writing the response to the client. The
+ * metrics are rendered in the Prometheus text exposition format.
+ */
+public final class ServerMetrics {
+
+    static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    static final String ROUTE_STATIC = "static";
+    static final String ROUTE_UNMATCHED = "unmatched";
+    static final String ROUTE_INVALID = "invalid";
+    static final String ROUTE_OVERLOADED = "overloaded";
+    static final String ROUTE_RATE_LIMITED = "rate_limited";
+    static final String ROUTE_TIMEOUT = "timeout";
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final String[] QUANTILE_LABELS = {"0.5", "0.9", "0.99", "0.999"};
+
+    private final LatencyHistogram parse = new LatencyHistogram();
+    private final ConcurrentHashMap<String, RouteMetrics> routes = new ConcurrentHashMap<>();
+    private final LongAdder inFlight = new LongAdder();
+    private final LongAdder openConnections = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder logEventsDropped = new LongAdder();
+    private final LongAdder[] deadlinesExceeded = new LongAdder[Deadline.values().length];
+    private volatile ConcurrencyLimiter concurrencyLimiter;
+
+    /**
+     * Creates empty metrics.
+     */
+    public ServerMetrics() {
+        for (int i = 0; i < deadlinesExceeded.length; i++) {
+            deadlinesExceeded[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records a connection being accepted.
+     */
+    void connectionOpened() {
+        openConnections.increment();
+    }
+
+    /**
+     * Records a connection being closed.
+     */
+    void connectionClosed() {
+        openConnections.decrement();
+    }
+
+    /**
+     * Records bytes read from clients.
+     *
+     * @param bytes the number of bytes
+     */
+    void addBytesIn(long bytes) {
+        bytesIn.add(bytes);
+    }
+
+    /**
+     * Records bytes written to clients.
+     *
+     * @param bytes the number of bytes
+     */
+    void addBytesOut(long bytes) {
+        bytesOut.add(bytes);
+    }
+
+    /**
+     * Records a parsed request head; the request is in flight until its
+     * response has been written.
+     *
+     * @param nanos the time spent parsing the head
+     */
+    void requestParsed(long nanos) {
+        parse.record(nanos);
+        inFlight.increment();
+    }
+
+    /**
+     * Records the time spent producing a response.
+     *
+     * @param route the route label
+     * @param nanos the dispatch time
+     */
+    void recordDispatch(String route, long nanos) {
+        route(route).dispatch.record(nanos);
+    }
+
+    /**
+     * Records a response that was written completely.
+     *
+     * @param route      the route label
+     * @param statusCode the status code
+     * @param nanos      the time spent writing the response
+     */
+    void responseWritten(String route, int statusCode, long nanos) {
+        RouteMetrics metrics = route(route);
+        metrics.write.record(nanos);
+        metrics.status(statusCode).increment();
+        inFlight.decrement();
+    }
+
+    /**
+     * Records a response that was not written because the connection failed
+     * or closed first.
+     *
+     * @param route      the route label
+     * @param statusCode the status code
+     */
+    void responseAborted(String route, int statusCode) {
+        route(route).status(statusCode).increment();
+        inFlight.decrement();
+    }
+
+    /**
+     * Records a response sent without dispatching a request, either because
+     * it could not be parsed, arrived too slowly or because the server was
+     * saturated.
+     *
+     * @param route      {@link #ROUTE_INVALID}, {@link #ROUTE_TIMEOUT} or {@link #ROUTE_OVERLOADED}
+     * @param statusCode the status code
+     */
+    void requestRejected(String route, int statusCode) {
+        route(route).status(statusCode).increment();
+    }
+
+    /**
+     * Records a connection that missed one of its deadlines.
+     *
+     * @param deadline the deadline that passed
+     */
+    void deadlineExceeded(Deadline deadline) {
+        deadlinesExceeded[deadline.ordinal()].increment();
+    }
+
+    /**
+     * Gets the number of connections that missed a deadline.
+     *
+     * @param deadline the deadline
+     * @return the count
+     */
+    long getDeadlinesExceeded(Deadline deadline) {
+        return deadlinesExceeded[deadline.ordinal()].sum();
+    }
+
+    /**
+     * Sets the adaptive concurrency limiter whose limit is reported.
+     *
+     * @param concurrencyLimiter the limiter
+     */
+    void setConcurrencyLimiter(ConcurrencyLimiter concurrencyLimiter) {
+        this.concurrencyLimiter = concurrencyLimiter;
+    }
+
+    /**
+     * Records a log event dropped because the log buffer was full.
+     */
+    void logEventDropped() {
+        logEventsDropped.increment();
+    }
+
+    /**
+     * Gets the number of log events dropped because the log buffer was full.
+     *
+     * @return the count
+     */
+    public long getLogEventsDropped() {
+        return logEventsDropped.sum();
+    }
+
+    /**
+     * Gets the number of requests in flight.
+     *
+     * @return the gauge value
+     */
+    public long getInFlight() {
+        return inFlight.sum();
+    }
+
+    /**
+     * Gets the number of requests answered for a route and status code.
+     *
+     * @param route      the route pattern or label
+     * @param statusCode the status code
+     * @return the count
+     */
+    public long getRequestCount(String route, int statusCode) {
+        RouteMetrics metrics = routes.get(route);
+        if (metrics == null) {
+            return 0;
+        }
+        LongAdder counter = metrics.statuses.get(statusCode);
+        return counter != null ? counter.sum() : 0;
+    }
+
+    /**
+     * Renders every metric in the Prometheus text format.
+     *
+     * @param dispatcher contributes application metrics, such as cache statistics
+     * @return the exposition text
+     */
+    String render(RequestDispatcher dispatcher) {
+        StringBuilder out = new StringBuilder(4096);
+        Map<String, RouteMetrics> sorted = new TreeMap<>(routes);
+
+        header(out, "http_requests_total", "counter", "Requests answered, by route and status code.");
+        for (Map.Entry<String, RouteMetrics> route : sorted.entrySet()) {
+            for (Map.Entry<Integer, LongAdder> status : new TreeMap<>(route.getValue().statuses).entrySet()) {
+                out.append("http_requests_total{route=\"").append(escape(route.getKey()))
+                        .append("\",status=\"").append(status.getKey()).append("\"} ")
+                        .append(status.getValue().sum()).append('\n');
+            }
+        }
+
+        gauge(out, "http_requests_in_flight", "Requests parsed whose response is not fully written.",
+                inFlight.sum());
+        gauge(out, "http_connections_open", "Open client connections.", openConnections.sum());
+        ConcurrencyLimiter limiter = concurrencyLimiter;
+        if (limiter != null) {
+            gauge(out, "http_concurrency_limit", "Requests the adaptive limit admits at once.", limiter.getLimit());
+        }
+        header(out, "http_received_bytes_total", "counter", "Bytes read from clients.");
+        out.append("http_received_bytes_total ").append(bytesIn.sum()).append('\n');
+        header(out, "http_sent_bytes_total", "counter", "Bytes written to clients.");
+        out.append("http_sent_bytes_total ").append(bytesOut.sum()).append('\n');
+        header(out, "http_deadlines_exceeded_total", "counter",
+                "Connections closed for missing a deadline, by deadline.");
+        for (Deadline deadline : Deadline.values()) {
+            out.append("http_deadlines_exceeded_total{deadline=\"").append(deadline.getLabel()).append("\"} ")
+                    .append(deadlinesExceeded[deadline.ordinal()].sum()).append('\n');
+        }
+        header(out, "http_log_events_dropped_total", "counter", "Log events dropped because the log buffer was full.");
+        out.append("http_log_events_dropped_total ").append(logEventsDropped.sum()).append('\n');
+
+        header(out, "http_request_phase_seconds", "summary",
+                "Time spent parsing requests, dispatching them and writing responses.");
+        summary(out, "phase=\"parse\"", parse);
+        for (Map.Entry<String, RouteMetrics> route : sorted.entrySet()) {
+            String routeLabel = "route=\"" + escape(route.getKey()) + "\",";
+            summary(out, routeLabel + "phase=\"dispatch\"", route.getValue().dispatch);
+            summary(out, routeLabel + "phase=\"write\"", route.getValue().write);
+        }
+
+        dispatcher.writeMetrics(out);
+        return out.toString();
+    }
+
+    /**
+     * Gets the metrics of a route, creating them on first use.
+     *
+     * @param route the route label
+     * @return the route metrics
+     */
+    private RouteMetrics route(String route) {
+        RouteMetrics metrics = routes.get(route);
+        return metrics != null ? metrics : routes.computeIfAbsent(route, key -> new RouteMetrics());
+    }
+
+    /**
+     * Writes the HELP and TYPE lines of a metric.
+     *
+     * @param out  the output
+     * @param name the metric name
+     * @param type the metric type
+     * @param help the description
+     */
+    static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    /**
+     * Writes a gauge without labels.
+     *
+     * @param out   the output
+     * @param name  the metric name
+     * @param help  the description
+     * @param value the value
+     */
+    static void gauge(StringBuilder out, String name, String help, long value) {
+        header(out, name, "gauge", help);
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    /**
+     * Writes the quantiles, sum and count of a histogram in seconds.
+     *
+     * @param out       the output
+     * @param labels    the labels of the series, without braces
+     * @param histogram the histogram
+     */
+    private static void summary(StringBuilder out, String labels, LatencyHistogram histogram) {
+        long count = histogram.getCount();
+        if (count == 0) {
+            return;
+        }
+        long[] values = histogram.quantiles(QUANTILES);
+        for (int i = 0; i < values.length; i++) {
+            out.append("http_request_phase_seconds{").append(labels).append(",quantile=\"")
+                    .append(QUANTILE_LABELS[i]).append("\"} ").append(values[i] / 1e9).append('\n');
+        }
+        out.append("http_request_phase_seconds_sum{").append(labels).append("} ")
+                .append(histogram.getTotalNanos() / 1e9).append('\n');
+        out.append("http_request_phase_seconds_count{").append(labels).append("} ").append(count).append('\n');
+    }
+
+    /**
+     * Escapes a label value.
+     *
+     * @param value the raw value
+     * @return the value with backslashes, quotes and newlines escaped
+     */
+    static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Counters and histograms of one route.
+     */
+    private static final class RouteMetrics {
+        private final LatencyHistogram dispatch = new LatencyHistogram();
+        private final LatencyHistogram write = new LatencyHistogram();
+        private final ConcurrentHashMap<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+
+        /**
+         * Gets the counter of a status code.
+         *
+         * @param statusCode the status code
+         * @return the counter
+         */
+        LongAdder status(int statusCode) {
+            LongAdder counter = statuses.get(statusCode);
+            return counter != null ? counter : statuses.computeIfAbsent(statusCode, key -> new LongAdder());
+        }
+    }
+}
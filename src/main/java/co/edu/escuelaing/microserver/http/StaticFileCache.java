@@ -0,0 +1,245 @@
+package co.edu.escuelaing.microserver.http;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Size-bounded LRU cache of static files.
+ * Files at or above the zero-copy threshold are cached as metadata only and
+ * streamed from disk, so heap use does not grow with file size.
+ * A cached file is trusted for a configurable interval; after that its
+ * modification time and size are checked again and the entry is reloaded
+ * when the file changed on disk.
+ * Precompressed {@code .gz} siblings are cached under their own key, and
+ * their absence is cached too so clients accepting gzip do not cost a file
+ * lookup per request.
+ */
+class StaticFileCache {
+
+    private final Path root;
+    private final long maxBytes;
+    private final long zeroCopyThreshold;
+    private final long revalidateNanos;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long cachedBytes;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param root                    the directory static files are served from
+     * @param maxBytes                the total content size the cache may hold
+     * @param revalidateIntervalMillis how long a cached file is trusted without checking the disk
+     * @param zeroCopyThreshold        the size from which files are streamed instead of loaded
+     */
+    StaticFileCache(Path root, long maxBytes, long revalidateIntervalMillis, long zeroCopyThreshold) {
+        this.root = root.toAbsolutePath().normalize();
+        this.maxBytes = maxBytes;
+        this.zeroCopyThreshold = zeroCopyThreshold;
+        this.revalidateNanos = revalidateIntervalMillis * 1_000_000L;
+    }
+
+    /**
+     * Gets the resource for a request path, loading it from disk if needed.
+     *
+     * @param path        the request path, starting with '/'
+     * @param contentType the content type to serve the file with
+     * @return the resource, or null if no such file exists under the root
+     * @throws IOException if the file cannot be read
+     */
+    StaticResource get(String path, String contentType) throws IOException {
+        return get(path, path, contentType, null);
+    }
+
+    /**
+     * Gets the precompressed gzip sibling of a file, e.g. {@code styles.css.gz}
+     * for {@code /styles.css}.
+     *
+     * @param path        the request path of the uncompressed file
+     * @param contentType the content type of the uncompressed file
+     * @return the gzip-encoded resource, or null if there is no sibling
+     * @throws IOException if the file cannot be read
+     */
+    StaticResource getPrecompressed(String path, String contentType) throws IOException {
+        return get(ContentCoding.GZIP + ":" + path, path + ".gz", contentType, ContentCoding.GZIP);
+    }
+
+    /**
+     * Gets a compressed variant of a cached resource and accounts for the
+     * memory it adds.
+     *
+     * @param path     the request path the resource was cached under
+     * @param resource the resource
+     * @param coding   the content coding
+     * @return the variant, or the resource itself if compression does not pay off
+     */
+    StaticResource getVariant(String path, StaticResource resource, String coding) {
+        long before = resource.getMemorySize();
+        StaticResource variant = resource.getVariant(coding);
+        if (resource.getMemorySize() != before) {
+            resize(path, resource);
+        }
+        return variant;
+    }
+
+    /**
+     * Looks up a cache entry, revalidating it against the disk when its
+     * interval has passed.
+     *
+     * @param key             the cache key
+     * @param path            the request path of the file to serve
+     * @param contentType     the content type to serve the file with
+     * @param contentEncoding the coding the file is stored with, or null
+     * @return the resource, or null if no such file exists under the root
+     * @throws IOException if the file cannot be read
+     */
+    private StaticResource get(String key, String path, String contentType, String contentEncoding)
+            throws IOException {
+        long now = System.nanoTime();
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        if (entry != null && now - entry.checkedAt < revalidateNanos) {
+            return entry.resource;
+        }
+
+        Path file = resolve(path);
+        if (file == null) {
+            return null;
+        }
+
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            attributes = null;
+        }
+        if (attributes == null || !attributes.isRegularFile()) {
+            if (contentEncoding != null) {
+                put(key, new Entry(null, now));
+            } else {
+                remove(key);
+            }
+            return null;
+        }
+
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        if (entry != null && entry.resource != null && entry.resource.getLastModifiedMillis() == lastModified
+                && entry.resource.getLength() == attributes.size()) {
+            entry.checkedAt = now;
+            return entry.resource;
+        }
+
+        StaticResource resource = attributes.size() >= zeroCopyThreshold
+                ? new StaticResource(file, attributes.size(), contentType, contentEncoding, lastModified)
+                : new StaticResource(Files.readAllBytes(file), contentType, contentEncoding, lastModified);
+        put(key, new Entry(resource, now));
+        return resource;
+    }
+
+    /**
+     * Maps a request path to a file under the root, refusing paths that
+     * escape it.
+     *
+     * @param path the request path
+     * @return the file, or null if the path leaves the root
+     */
+    Path resolve(String path) {
+        Path file = root.resolve(path.substring(1)).normalize();
+        return file.startsWith(root) ? file : null;
+    }
+
+    /**
+     * Stores an entry and evicts the least recently used ones while the
+     * cache is over its size limit. Files larger than the whole cache are
+     * served but not kept.
+     *
+     * @param key   the cache key
+     * @param entry the entry to store
+     */
+    private synchronized void put(String key, Entry entry) {
+        Entry previous = entries.remove(key);
+        if (previous != null) {
+            cachedBytes -= previous.size;
+        }
+        if (entry.size > maxBytes) {
+            return;
+        }
+
+        entries.put(key, entry);
+        cachedBytes += entry.size;
+        evict();
+    }
+
+    /**
+     * Updates the accounted size of an entry after a compressed variant was
+     * added to its resource.
+     *
+     * @param key      the cache key
+     * @param resource the resource that grew
+     */
+    private synchronized void resize(String key, StaticResource resource) {
+        Entry entry = entries.get(key);
+        if (entry == null || entry.resource != resource) {
+            return;
+        }
+        long size = resource.getMemorySize();
+        cachedBytes += size - entry.size;
+        entry.size = size;
+        evict();
+    }
+
+    /**
+     * Evicts the least recently used entries while the cache is over its
+     * size limit.
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (cachedBytes > maxBytes && eldest.hasNext()) {
+            Entry evicted = eldest.next().getValue();
+            eldest.remove();
+            cachedBytes -= evicted.size;
+        }
+    }
+
+    /**
+     * Drops the entry for a file that no longer exists.
+     *
+     * @param key the cache key
+     */
+    private synchronized void remove(String key) {
+        Entry previous = entries.remove(key);
+        if (previous != null) {
+            cachedBytes -= previous.size;
+        }
+    }
+
+    /**
+     * Cached resource with the time it was last checked against the disk.
+     * The size is the heap memory the entry accounts for; streamed files
+     * and known-missing files only hold metadata and count as empty.
+     */
+    private static class Entry {
+        private final StaticResource resource;
+        private volatile long checkedAt;
+        private long size;
+
+        /**
+         * Creates a new entry.
+         *
+         * @param resource  the cached resource, or null for a file known to be missing
+         * @param checkedAt when the file was last checked, from {@link System#nanoTime()}
+         */
+        Entry(StaticResource resource, long checkedAt) {
+            this.resource = resource;
+            this.checkedAt = checkedAt;
+            this.size = resource != null ? resource.getMemorySize() : 0;
+        }
+    }
+}
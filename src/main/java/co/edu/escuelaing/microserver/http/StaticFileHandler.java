@@ -0,0 +1,277 @@
+package co.edu.escuelaing.microserver.http;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+
+/**
+ * Serves files from the static directory through a {@link StaticFileCache}
+ * and answers conditional requests with 304 Not Modified and single byte
+ * range requests with 206 Partial Content. Text files are sent gzip or
+ * deflate encoded when the client accepts it, preferring a precompressed
+ * {@code .gz} sibling over compressing on the fly.
+ */
+class StaticFileHandler {
+
+    private final StaticFileCache cache;
+    private final boolean compressionEnabled;
+    private final int compressionMinSize;
+
+    /**
+     * Creates a handler for the static directory of the configuration.
+     *
+     * @param config the server configuration
+     */
+    StaticFileHandler(ServerConfig config) {
+        this.cache = new StaticFileCache(Paths.get(config.getStaticRoot()), config.getStaticCacheMaxBytes(),
+                config.getStaticCacheRevalidateMillis(), config.getZeroCopyThreshold());
+        this.compressionEnabled = config.isCompressionEnabled();
+        this.compressionMinSize = config.getCompressionMinSize();
+    }
+
+    /**
+     * Attempts to serve a static file.
+     *
+     * @param request the request
+     * @return the response, or null if there is no such file
+     * @throws IOException if an I/O error occurs
+     */
+    HttpResponse serve(HttpRequest request) throws IOException {
+        String path = request.getPath();
+        if (path.equals("/")) {
+            path = "/index.html";
+        }
+
+        StaticResource resource = cache.get(path, getContentType(path));
+        if (resource == null) {
+            return null;
+        }
+
+        String range = request.getHeader("Range");
+        if (range == null) {
+            resource = selectEncoding(request, path, resource);
+        }
+
+        if (isNotModified(request, resource)) {
+            return new HttpResponse(304, resource.getNotModifiedHeaders(), (byte[]) null);
+        }
+
+        if (range != null && isRangeCurrent(request, resource)) {
+            HttpResponse partial = servePartial(range, resource);
+            if (partial != null) {
+                return partial;
+            }
+        }
+        if (!resource.isInMemory()) {
+            return new HttpResponse(200, resource.getOkHeaders(), resource.getFileRegion());
+        }
+        return new HttpResponse(200, resource.getOkHeaders(), resource.getContent());
+    }
+
+    /**
+     * Picks the representation to send based on Accept-Encoding. Ranges are
+     * always served from the identity representation, so this is skipped
+     * for range requests.
+     *
+     * @param request  the request
+     * @param path     the request path
+     * @param resource the identity resource
+     * @return the resource or one of its encoded variants
+     * @throws IOException if a precompressed sibling cannot be read
+     */
+    private StaticResource selectEncoding(HttpRequest request, String path, StaticResource resource)
+            throws IOException {
+        if (!compressionEnabled || !ContentCoding.isCompressible(resource.getContentType())) {
+            return resource;
+        }
+        String coding = ContentCoding.negotiate(request.getHeader("Accept-Encoding"));
+        if (coding == null) {
+            return resource;
+        }
+
+        if (coding.equals(ContentCoding.GZIP)) {
+            StaticResource precompressed = cache.getPrecompressed(path, resource.getContentType());
+            if (precompressed != null) {
+                return precompressed;
+            }
+        }
+        if (!resource.isInMemory() || resource.getLength() < compressionMinSize) {
+            return resource;
+        }
+        return cache.getVariant(path, resource, coding);
+    }
+
+    /**
+     * Answers a Range header. Only a single range is supported; multiple
+     * ranges and malformed headers are ignored, which tells the client to
+     * use the full 200 response instead.
+     *
+     * @param range    the Range header value
+     * @param resource the resource being requested
+     * @return the 206 or 416 response, or null to serve the whole file
+     */
+    private static HttpResponse servePartial(String range, StaticResource resource) {
+        long[] bounds = parseRange(range, resource.getLength());
+        if (bounds == null) {
+            return null;
+        }
+        if (bounds.length == 0) {
+            return new HttpResponse(416, resource.getUnsatisfiableRangeHeaders(), (byte[]) null);
+        }
+
+        long first = bounds[0];
+        long last = bounds[1];
+        byte[] headers = resource.getPartialHeaders(first, last);
+        if (!resource.isInMemory()) {
+            return new HttpResponse(206, headers, resource.getFileRegion(first, last));
+        }
+        return new HttpResponse(206, headers, Arrays.copyOfRange(resource.getContent(), (int) first, (int) last + 1));
+    }
+
+    /**
+     * Parses a single byte range ("bytes=0-99", "bytes=100-" or "bytes=-100")
+     * and clamps it to the representation length.
+     *
+     * @param header the Range header value
+     * @param length the representation length
+     * @return the first and last byte, an empty array if the range cannot be
+     *         satisfied, or null if the header is malformed or has several ranges
+     */
+    static long[] parseRange(String header, long length) {
+        if (!header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+            return null;
+        }
+        String spec = header.substring(6).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+
+        try {
+            String start = spec.substring(0, dash).trim();
+            String end = spec.substring(dash + 1).trim();
+            if (start.isEmpty()) {
+                long suffix = Long.parseLong(end);
+                if (suffix < 0) {
+                    return null;
+                }
+                if (suffix == 0 || length == 0) {
+                    return new long[0];
+                }
+                return new long[] {Math.max(0, length - suffix), length - 1};
+            }
+
+            long first = Long.parseLong(start);
+            long last = end.isEmpty() ? Long.MAX_VALUE : Long.parseLong(end);
+            if (first < 0 || last < first) {
+                return null;
+            }
+            if (first >= length) {
+                return new long[0];
+            }
+            return new long[] {first, Math.min(last, length - 1)};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Evaluates If-Range: the range only applies while the client's copy is
+     * still the current one.
+     *
+     * @param request  the request
+     * @param resource the resource being requested
+     * @return true if the range should be served
+     */
+    private static boolean isRangeCurrent(HttpRequest request, StaticResource resource) {
+        String ifRange = request.getHeader("If-Range");
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"")) {
+            return ifRange.equals(resource.getEtag());
+        }
+        if (ifRange.startsWith("W/")) {
+            return false;
+        }
+        try {
+            long date = ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            return resource.getLastModifiedMillis() / 1000 == date / 1000;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Evaluates If-None-Match and, when it is absent, If-Modified-Since.
+     *
+     * @param request  the request
+     * @param resource the resource being requested
+     * @return true if the client's copy is current
+     */
+    private boolean isNotModified(HttpRequest request, StaticResource resource) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            return matchesEtag(ifNoneMatch, resource.getEtag());
+        }
+
+        String ifModifiedSince = request.getHeader("If-Modified-Since");
+        if (ifModifiedSince != null) {
+            try {
+                long since = ZonedDateTime.parse(ifModifiedSince, DateTimeFormatter.RFC_1123_DATE_TIME)
+                        .toInstant().toEpochMilli();
+                return resource.getLastModifiedMillis() / 1000 <= since / 1000;
+            } catch (DateTimeParseException e) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks an If-None-Match list against an entity tag using weak comparison.
+     *
+     * @param header the If-None-Match value
+     * @param etag   the current entity tag
+     * @return true if any listed tag matches
+     */
+    private static boolean matchesEtag(String header, String etag) {
+        for (String candidate : header.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*")) {
+                return true;
+            }
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the content type for a file based on its extension.
+     *
+     * @param path the file path
+     * @return the content type
+     */
+    static String getContentType(String path) {
+        if (path.endsWith(".html")) {
+            return "text/html";
+        } else if (path.endsWith(".css")) {
+            return "text/css";
+        } else if (path.endsWith(".js")) {
+            return "application/javascript";
+        } else if (path.endsWith(".png")) {
+            return "image/png";
+        } else if (path.endsWith(".jpg") || path.endsWith(".jpeg")) {
+            return "image/jpeg";
+        }
+        return "text/plain";
+    }
+}
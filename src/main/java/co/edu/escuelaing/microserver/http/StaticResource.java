@@ -0,0 +1,312 @@
+package co.edu.escuelaing.microserver.http;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+/**
+ * A static file together with everything needed to answer for it:
+ * validators and the encoded entity headers of the 200, 206 and 304 responses.
+ * Small files keep their content in memory; large files only keep their
+ * metadata and are streamed from disk for every request. Compressed
+ * variants of in-memory text files are created on first use and kept with
+ * the resource, so each file is compressed once per coding.
+ */
+class StaticResource {
+
+    private static final DateTimeFormatter HTTP_DATE =
+            DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US).withZone(ZoneOffset.UTC);
+
+    private final byte[] content;
+    private final Path file;
+    private final long length;
+    private final long lastModifiedMillis;
+    private final String contentType;
+    private final String contentEncoding;
+    private final String etag;
+    private final String validators;
+    private final byte[] okHeaders;
+    private final byte[] notModifiedHeaders;
+    private volatile StaticResource gzipVariant;
+    private volatile StaticResource deflateVariant;
+
+    /**
+     * Creates a resource and precomputes its validators and headers.
+     *
+     * @param content            the file content
+     * @param contentType        the content type
+     * @param lastModifiedMillis the file modification time
+     */
+    StaticResource(byte[] content, String contentType, long lastModifiedMillis) {
+        this(content, contentType, null, lastModifiedMillis);
+    }
+
+    /**
+     * Creates a resource whose content is stored with a content coding,
+     * such as a precompressed {@code .gz} sibling.
+     *
+     * @param content            the encoded file content
+     * @param contentType        the content type of the decoded content
+     * @param contentEncoding    the content coding, or null for identity
+     * @param lastModifiedMillis the file modification time
+     */
+    StaticResource(byte[] content, String contentType, String contentEncoding, long lastModifiedMillis) {
+        this(content, null, content.length, contentType, contentEncoding, lastModifiedMillis, contentEtag(content));
+    }
+
+    /**
+     * Creates a resource for a file that is streamed from disk. The entity
+     * tag is derived from size and modification time so the file does not
+     * have to be read to compute it.
+     *
+     * @param file               the file
+     * @param length             the file size
+     * @param contentType        the content type
+     * @param contentEncoding    the content coding of the file, or null for identity
+     * @param lastModifiedMillis the file modification time
+     */
+    StaticResource(Path file, long length, String contentType, String contentEncoding, long lastModifiedMillis) {
+        this(null, file, length, contentType, contentEncoding, lastModifiedMillis,
+                "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModifiedMillis) + "\"");
+    }
+
+    /**
+     * Creates a resource and precomputes its headers.
+     *
+     * @param content            the file content, or null if streamed
+     * @param file               the file, or null if held in memory
+     * @param length             the content length
+     * @param contentType        the content type
+     * @param contentEncoding    the content coding, or null for identity
+     * @param lastModifiedMillis the file modification time
+     * @param etag               the quoted entity tag
+     */
+    private StaticResource(byte[] content, Path file, long length, String contentType, String contentEncoding,
+            long lastModifiedMillis, String etag) {
+        this.content = content;
+        this.file = file;
+        this.length = length;
+        this.lastModifiedMillis = lastModifiedMillis;
+        this.contentType = contentType;
+        this.contentEncoding = contentEncoding;
+        this.etag = etag;
+
+        String vary = ContentCoding.isCompressible(contentType) ? ContentCoding.VARY : "";
+        this.validators = "ETag: " + etag + "\r\n"
+                + "Last-Modified: " + formatHttpDate(lastModifiedMillis) + "\r\n"
+                + vary;
+        this.okHeaders = ("Content-Type: " + contentType + "\r\n"
+                + (contentEncoding != null ? "Content-Encoding: " + contentEncoding + "\r\n" : "")
+                + "Content-Length: " + length + "\r\n"
+                + (contentEncoding == null ? "Accept-Ranges: bytes\r\n" : "")
+                + validators).getBytes(StandardCharsets.ISO_8859_1);
+        this.notModifiedHeaders = validators.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Gets the file content.
+     *
+     * @return the content bytes, or null if the file is streamed from disk
+     */
+    byte[] getContent() {
+        return content;
+    }
+
+    /**
+     * Checks whether the content is held in memory.
+     *
+     * @return true for cached content, false for streamed files
+     */
+    boolean isInMemory() {
+        return content != null;
+    }
+
+    /**
+     * Gets the file region to stream for a file that is not held in memory.
+     *
+     * @return the whole file as a region
+     */
+    FileRegion getFileRegion() {
+        return new FileRegion(file, 0, length);
+    }
+
+    /**
+     * Gets part of a file that is not held in memory.
+     *
+     * @param first the first byte
+     * @param last  the last byte, inclusive
+     * @return the region
+     */
+    FileRegion getFileRegion(long first, long last) {
+        return new FileRegion(file, first, last - first + 1);
+    }
+
+    /**
+     * Gets the content type of the decoded content.
+     *
+     * @return the content type
+     */
+    String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Gets the compressed variant of an in-memory resource, compressing it
+     * on first use. A variant that would not be smaller is not used.
+     *
+     * @param coding {@link ContentCoding#GZIP} or {@link ContentCoding#DEFLATE}
+     * @return the variant, or this resource if compression does not pay off
+     */
+    StaticResource getVariant(String coding) {
+        boolean gzip = ContentCoding.GZIP.equals(coding);
+        StaticResource variant = gzip ? gzipVariant : deflateVariant;
+        if (variant != null) {
+            return variant;
+        }
+        synchronized (this) {
+            variant = gzip ? gzipVariant : deflateVariant;
+            if (variant != null) {
+                return variant;
+            }
+            byte[] compressed = ContentCoding.compress(content, coding);
+            variant = compressed.length < content.length
+                    ? new StaticResource(compressed, null, compressed.length, contentType, coding,
+                            lastModifiedMillis, etag.substring(0, etag.length() - 1) + "-" + coding + "\"")
+                    : this;
+            if (gzip) {
+                gzipVariant = variant;
+            } else {
+                deflateVariant = variant;
+            }
+            return variant;
+        }
+    }
+
+    /**
+     * Gets the size of the in-memory content including compressed variants
+     * created so far.
+     *
+     * @return the number of bytes held
+     */
+    long getMemorySize() {
+        if (content == null) {
+            return 0;
+        }
+        long size = content.length;
+        StaticResource gzip = gzipVariant;
+        StaticResource deflate = deflateVariant;
+        if (gzip != null && gzip != this) {
+            size += gzip.length;
+        }
+        if (deflate != null && deflate != this) {
+            size += deflate.length;
+        }
+        return size;
+    }
+
+    /**
+     * Gets the content length.
+     *
+     * @return the length in bytes
+     */
+    long getLength() {
+        return length;
+    }
+
+    /**
+     * Gets the modification time the resource was loaded with.
+     *
+     * @return the modification time in milliseconds
+     */
+    long getLastModifiedMillis() {
+        return lastModifiedMillis;
+    }
+
+    /**
+     * Gets the strong entity tag, including quotes.
+     *
+     * @return the ETag
+     */
+    String getEtag() {
+        return etag;
+    }
+
+    /**
+     * Gets the encoded entity headers of a 200 response.
+     *
+     * @return the header lines
+     */
+    byte[] getOkHeaders() {
+        return okHeaders;
+    }
+
+    /**
+     * Gets the encoded headers of a 304 response.
+     *
+     * @return the header lines
+     */
+    byte[] getNotModifiedHeaders() {
+        return notModifiedHeaders;
+    }
+
+    /**
+     * Encodes the entity headers of a 206 response for one byte range.
+     * Ranges vary per request, so these are built on demand.
+     *
+     * @param first the first byte
+     * @param last  the last byte, inclusive
+     * @return the header lines
+     */
+    byte[] getPartialHeaders(long first, long last) {
+        return ("Content-Type: " + contentType + "\r\n"
+                + "Content-Length: " + (last - first + 1) + "\r\n"
+                + "Content-Range: bytes " + first + "-" + last + "/" + length + "\r\n"
+                + validators).getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Encodes the headers of a 416 response, which report the current length.
+     *
+     * @return the header lines
+     */
+    byte[] getUnsatisfiableRangeHeaders() {
+        return ("Content-Type: text/plain\r\n"
+                + "Content-Length: 0\r\n"
+                + "Content-Range: bytes */" + length + "\r\n").getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Formats a timestamp as an HTTP date, e.g. "Tue, 15 Nov 1994 08:12:31 GMT".
+     *
+     * @param millis the timestamp in milliseconds
+     * @return the formatted date
+     */
+    static String formatHttpDate(long millis) {
+        return HTTP_DATE.format(Instant.ofEpochMilli(millis));
+    }
+
+    /**
+     * Computes a strong entity tag from the content hash.
+     *
+     * @param content the file content
+     * @return the quoted ETag
+     */
+    private static String contentEtag(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            StringBuilder etag = new StringBuilder(34).append('"');
+            for (int i = 0; i < 16; i++) {
+                etag.append(Character.forDigit((digest[i] >> 4) & 0xf, 16));
+                etag.append(Character.forDigit(digest[i] & 0xf, 16));
+            }
+            return etag.append('"').toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required by every Java platform", e);
+        }
+    }
+}
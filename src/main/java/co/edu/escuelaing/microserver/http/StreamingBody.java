@@ -0,0 +1,32 @@
+package co.edu.escuelaing.microserver.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Response body that is written incrementally instead of being built in
+ * memory. Controllers return one to start sending output right away; the
+ * server frames it with {@code Transfer-Encoding: chunked}, or for HTTP/1.0
+ * clients ends it by closing the connection, and every flush of the stream
+ * sends what has been written so far.
+ */
+@FunctionalInterface
+public interface StreamingBody {
+
+    /**
+     * Writes the body. The stream must not be closed by the caller.
+     *
+     * @param out the stream to write the body to
+     * @throws IOException if writing fails or the client went away
+     */
+    void writeTo(OutputStream out) throws IOException;
+
+    /**
+     * Gets the content type of the body.
+     *
+     * @return the content type
+     */
+    default String getContentType() {
+        return "text/html; charset=UTF-8";
+    }
+}
@@ -0,0 +1,214 @@
+package co.edu.escuelaing.microserver.http;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Hashed timer wheel for connection deadlines. Time is cut into ticks and
+ * each timer sits in the slot of the tick its deadline falls in, so
+ * scheduling is O(1) and advancing the wheel only looks at the slots whose
+ * ticks have passed.
+ * <p>
+ * Timers are meant to be owned by connections and reused. Moving a
+ * deadline later only writes a volatile field: the wheel finds out when it
+ * reaches the slot the timer is filed under and files it again further on.
+ * Only a deadline earlier than that slot queues the timer to be filed
+ * anew, leaving the old entry behind to be skipped as stale. A connection
+ * therefore keeps about one entry in the wheel however many requests it
+ * serves. Timers may be armed from any thread; the wheel itself is
+ * advanced by a single thread, which is also where timers expire.
+ */
+class TimerWheel {
+
+    /**
+     * Resolution of the wheels the engines use for connection deadlines.
+     */
+    static final long DEFAULT_TICK_MILLIS = 100;
+
+    /**
+     * Slot count of the wheels the engines use, about a minute per turn.
+     */
+    static final int DEFAULT_SLOT_COUNT = 512;
+
+    private static final long ORIGIN = System.nanoTime();
+    private static final long UNFILED = Long.MAX_VALUE;
+
+    private final long tickMillis;
+    private final int mask;
+    private final List<List<Timer>> slots;
+    private final Queue<Timer> pending = new ConcurrentLinkedQueue<>();
+    private List<Timer> spare = new ArrayList<>();
+    private long currentTick;
+
+    /**
+     * Creates a wheel with the default resolution and size.
+     */
+    TimerWheel() {
+        this(DEFAULT_TICK_MILLIS, DEFAULT_SLOT_COUNT);
+    }
+
+    /**
+     * Creates a wheel.
+     *
+     * @param tickMillis the resolution in milliseconds
+     * @param slotCount  the number of slots, a power of two; deadlines
+     *                   further away than one turn are re-filed on the way
+     */
+    TimerWheel(long tickMillis, int slotCount) {
+        if (tickMillis <= 0 || slotCount <= 0 || Integer.bitCount(slotCount) != 1) {
+            throw new IllegalArgumentException("Timer wheel needs a positive tick and a power-of-two slot count");
+        }
+        this.tickMillis = tickMillis;
+        this.mask = slotCount - 1;
+        this.slots = new ArrayList<>(slotCount);
+        for (int i = 0; i < slotCount; i++) {
+            slots.add(new ArrayList<>());
+        }
+        this.currentTick = currentMillis() / tickMillis;
+    }
+
+    /**
+     * Gets the clock deadlines are expressed in: milliseconds from a
+     * monotonic origin, always positive.
+     *
+     * @return the current time in milliseconds
+     */
+    static long currentMillis() {
+        return (System.nanoTime() - ORIGIN) / 1_000_000 + 1;
+    }
+
+    /**
+     * Gets the resolution of the wheel.
+     *
+     * @return the tick in milliseconds
+     */
+    long getTickMillis() {
+        return tickMillis;
+    }
+
+    /**
+     * Sets or moves the deadline of a timer. Safe to call from any thread.
+     *
+     * @param timer    the timer
+     * @param deadline when it expires, in {@link #currentMillis()} time
+     */
+    void arm(Timer timer, long deadline) {
+        timer.deadline = deadline;
+        if (deadline / tickMillis < timer.filedTick) {
+            pending.add(timer);
+        }
+    }
+
+    /**
+     * Clears the deadline of a timer. The wheel drops it when it next
+     * reaches its slot.
+     *
+     * @param timer the timer
+     */
+    void disarm(Timer timer) {
+        timer.deadline = 0;
+    }
+
+    /**
+     * Expires every timer whose deadline has passed. Must always be called
+     * from the same thread. Every tick since the last call is visited, so
+     * the cost after a long pause grows with its length, not with the
+     * number of timers.
+     *
+     * @param now the current time, in {@link #currentMillis()} time
+     */
+    void advance(long now) {
+        Timer timer;
+        while ((timer = pending.poll()) != null) {
+            long deadline = timer.deadline;
+            if (deadline != 0 && Math.max(deadline / tickMillis, currentTick) < timer.filedTick) {
+                file(timer, currentTick);
+            }
+        }
+
+        long target = now / tickMillis;
+        for (; currentTick <= target; currentTick++) {
+            int index = (int) (currentTick & mask);
+            List<Timer> slot = slots.get(index);
+            if (slot.isEmpty()) {
+                continue;
+            }
+            slots.set(index, spare);
+            for (Timer due : slot) {
+                visit(due, now);
+            }
+            slot.clear();
+            spare = slot;
+        }
+    }
+
+    /**
+     * Expires a timer whose slot was reached, files it again if its
+     * deadline moved later, or drops it if it was disarmed. Entries left
+     * behind by an earlier deadline are skipped. The timer is marked
+     * unfiled before its deadline is read, so an arm racing with the visit
+     * either sees the mark and queues the timer, or has its deadline seen
+     * here.
+     *
+     * @param timer the timer
+     * @param now   the current time
+     */
+    private void visit(Timer timer, long now) {
+        if (timer.filedTick != currentTick) {
+            return;
+        }
+        timer.filedTick = UNFILED;
+        long deadline = timer.deadline;
+        if (deadline == 0) {
+            return;
+        }
+        if (deadline - now > 0) {
+            file(timer, currentTick + 1);
+            return;
+        }
+        timer.expire();
+    }
+
+    /**
+     * Puts a timer in the slot of its deadline, or at most one turn ahead,
+     * where it is filed again on the way.
+     *
+     * @param timer   the timer
+     * @param minTick the earliest tick it may be filed under
+     */
+    private void file(Timer timer, long minTick) {
+        long tick = Math.max(Math.min(timer.deadline / tickMillis, currentTick + mask), minTick);
+        timer.filedTick = tick;
+        slots.get((int) (tick & mask)).add(timer);
+    }
+
+    /**
+     * Deadline owned by a connection, armed and re-armed as the connection
+     * moves between reading, processing and idling.
+     */
+    abstract static class Timer {
+        private volatile long deadline;
+        private volatile long filedTick = UNFILED;
+
+        /**
+         * Gets the deadline the timer is armed with. An owner re-arming
+         * from another thread can use it to tell whether an expiry is
+         * stale.
+         *
+         * @return the deadline, or 0 if disarmed
+         */
+        long getDeadline() {
+            return deadline;
+        }
+
+        /**
+         * Called on the wheel's thread once the deadline has passed. The
+         * timer is no longer in the wheel and has to be armed again to
+         * expire again. An owner that re-arms from another thread may race
+         * with this call, so it should check {@link #getDeadline()} first.
+         */
+        abstract void expire();
+    }
+}
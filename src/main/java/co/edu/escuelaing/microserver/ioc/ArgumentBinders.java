@@ -0,0 +1,442 @@
+package co.edu.escuelaing.microserver.ioc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Parameter;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+
+import co.edu.escuelaing.microserver.annotations.PathVariable;
+import co.edu.escuelaing.microserver.annotations.RequestBody;
+import co.edu.escuelaing.microserver.annotations.RequestParam;
+import co.edu.escuelaing.microserver.http.HttpStatusException;
+import co.edu.escuelaing.microserver.http.QueryString;
+
+/**
+ * Builds the {@code (InvocationContext)T} method handles that compute
+ * handler arguments. Everything that depends on the parameter declaration
+ * is resolved once: the source of the value, the converter for its type
+ * and the converted default value. Primitive query parameters are parsed
+ * straight from the request bytes without boxing. Values that cannot be
+ * converted, and missing primitives without a default, are answered with
+ * 400 Bad Request.
+ * <p>
+ * Supported types are String, int, long, double, boolean and their
+ * wrappers, enums, UUID, and Lists of those for repeated query parameters.
+ * A {@code @RequestBody} is bound as an InputStream, a byte array or a
+ * UTF-8 String.
+ */
+final class ArgumentBinders {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final MethodHandle PATH_VARIABLE = find("pathVariable",
+            MethodType.methodType(Object.class, int.class, Function.class, String.class, InvocationContext.class));
+    private static final MethodHandle QUERY_OBJECT = find("queryObject",
+            MethodType.methodType(Object.class, String.class, Function.class, Object.class, InvocationContext.class));
+    private static final MethodHandle QUERY_LIST = find("queryList",
+            MethodType.methodType(List.class, String.class, Function.class, List.class, InvocationContext.class));
+    private static final MethodHandle QUERY_INT = find("queryInt",
+            MethodType.methodType(int.class, String.class, boolean.class, int.class, InvocationContext.class));
+    private static final MethodHandle QUERY_LONG = find("queryLong",
+            MethodType.methodType(long.class, String.class, boolean.class, long.class, InvocationContext.class));
+    private static final MethodHandle QUERY_DOUBLE = find("queryDouble",
+            MethodType.methodType(double.class, String.class, boolean.class, double.class, InvocationContext.class));
+    private static final MethodHandle QUERY_BOOLEAN = find("queryBoolean",
+            MethodType.methodType(boolean.class, String.class, boolean.class, boolean.class,
+                    InvocationContext.class));
+    private static final MethodHandle BODY_STREAM = find("bodyStream",
+            MethodType.methodType(InputStream.class, long.class, InvocationContext.class));
+    private static final MethodHandle BODY_BYTES = find("bodyBytes",
+            MethodType.methodType(byte[].class, long.class, InvocationContext.class));
+    private static final MethodHandle BODY_STRING = find("bodyString",
+            MethodType.methodType(String.class, long.class, InvocationContext.class));
+
+    private ArgumentBinders() {
+    }
+
+    /**
+     * Creates the handle that computes one argument. {@code @PathVariable}
+     * parameters read the route match, {@code @RequestParam} parameters read
+     * the query string, {@code @RequestBody} parameters read the body and
+     * anything else receives null, or zero for primitives.
+     *
+     * @param parameter     the method parameter
+     * @param pathVariables the variable names of the mapped route
+     * @return a {@code (InvocationContext)T} handle for the parameter type
+     * @throws IllegalArgumentException if the parameter cannot be bound
+     */
+    static MethodHandle forParameter(Parameter parameter, List<String> pathVariables) {
+        Class<?> type = parameter.getType();
+        MethodType binderType = MethodType.methodType(type, InvocationContext.class);
+
+        PathVariable pathVariable = parameter.getAnnotation(PathVariable.class);
+        if (pathVariable != null) {
+            String name = pathVariable.value();
+            int index = pathVariables.indexOf(name);
+            if (index < 0) {
+                throw new IllegalArgumentException("No path variable '" + name + "' in route");
+            }
+            return MethodHandles.insertArguments(PATH_VARIABLE, 0, index, converter(type, name), name)
+                    .asType(binderType);
+        }
+
+        RequestBody requestBody = parameter.getAnnotation(RequestBody.class);
+        if (requestBody != null) {
+            return MethodHandles.insertArguments(bodyBinder(type), 0, requestBody.maxSize()).asType(binderType);
+        }
+
+        RequestParam requestParam = parameter.getAnnotation(RequestParam.class);
+        if (requestParam == null) {
+            return MethodHandles.empty(binderType);
+        }
+
+        String name = requestParam.value();
+        String defaultText = requestParam.defaultValue();
+        boolean required = defaultText.isEmpty();
+        if (type == List.class) {
+            Function<String, Object> elements = converter(elementType(parameter), name);
+            List<Object> defaults = new ArrayList<>();
+            if (!required) {
+                for (String value : defaultText.split(",")) {
+                    defaults.add(elements.apply(value.trim()));
+                }
+            }
+            return MethodHandles.insertArguments(QUERY_LIST, 0, name, elements,
+                    Collections.unmodifiableList(defaults)).asType(binderType);
+        }
+        if (type == int.class) {
+            return MethodHandles.insertArguments(QUERY_INT, 0, name, required,
+                    required ? 0 : Integer.parseInt(defaultText));
+        }
+        if (type == long.class) {
+            return MethodHandles.insertArguments(QUERY_LONG, 0, name, required,
+                    required ? 0L : Long.parseLong(defaultText));
+        }
+        if (type == double.class) {
+            return MethodHandles.insertArguments(QUERY_DOUBLE, 0, name, required,
+                    required ? 0.0 : Double.parseDouble(defaultText));
+        }
+        if (type == boolean.class) {
+            return MethodHandles.insertArguments(QUERY_BOOLEAN, 0, name, required,
+                    !required && QueryString.parseBoolean(defaultText));
+        }
+
+        Function<String, Object> converter = converter(type, name);
+        Object defaultValue = required ? null : converter.apply(defaultText);
+        return MethodHandles.insertArguments(QUERY_OBJECT, 0, name, converter, defaultValue).asType(binderType);
+    }
+
+    /**
+     * Resolves the binder of a request body parameter.
+     *
+     * @param type the parameter type
+     * @return a {@code (long, InvocationContext)T} handle
+     * @throws IllegalArgumentException if the type is not supported
+     */
+    private static MethodHandle bodyBinder(Class<?> type) {
+        if (type == InputStream.class) {
+            return BODY_STREAM;
+        }
+        if (type == byte[].class) {
+            return BODY_BYTES;
+        }
+        if (type == String.class) {
+            return BODY_STRING;
+        }
+        throw new IllegalArgumentException("Request body has unsupported type " + type.getName());
+    }
+
+    /**
+     * Resolves the converter from text to a parameter type.
+     *
+     * @param type the parameter type
+     * @param name the parameter name, for error messages
+     * @return the converter
+     * @throws IllegalArgumentException if the type is not supported
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static Function<String, Object> converter(Class<?> type, String name) {
+        if (type == String.class || type == Object.class || type == CharSequence.class) {
+            return value -> value;
+        }
+        if (type == int.class || type == Integer.class) {
+            return Integer::valueOf;
+        }
+        if (type == long.class || type == Long.class) {
+            return Long::valueOf;
+        }
+        if (type == double.class || type == Double.class) {
+            return Double::valueOf;
+        }
+        if (type == boolean.class || type == Boolean.class) {
+            return QueryString::parseBoolean;
+        }
+        if (type == UUID.class) {
+            return UUID::fromString;
+        }
+        if (type.isEnum()) {
+            Map<String, Object> constants = new HashMap<>();
+            for (Object constant : type.getEnumConstants()) {
+                constants.put(((Enum) constant).name().toUpperCase(Locale.ROOT), constant);
+            }
+            return value -> {
+                Object constant = constants.get(value.toUpperCase(Locale.ROOT));
+                if (constant == null) {
+                    throw new IllegalArgumentException("No constant " + value + " in " + type.getSimpleName());
+                }
+                return constant;
+            };
+        }
+        throw new IllegalArgumentException("Parameter '" + name + "' has unsupported type " + type.getName());
+    }
+
+    /**
+     * Gets the element class of a {@code List<E>} parameter.
+     *
+     * @param parameter the parameter
+     * @return the element class, String for a raw List
+     */
+    private static Class<?> elementType(Parameter parameter) {
+        Type type = parameter.getParameterizedType();
+        if (type instanceof ParameterizedType) {
+            Type element = ((ParameterizedType) type).getActualTypeArguments()[0];
+            if (element instanceof Class) {
+                return (Class<?>) element;
+            }
+        }
+        return String.class;
+    }
+
+    /**
+     * Reads and converts a path variable.
+     *
+     * @param index     the position of the variable in the route
+     * @param converter the converter for the parameter type
+     * @param name      the variable name
+     * @param context   the invocation context
+     * @return the converted value
+     */
+    private static Object pathVariable(int index, Function<String, Object> converter, String name,
+            InvocationContext context) {
+        return convert(converter, name, context.getPathVariable(index));
+    }
+
+    /**
+     * Reads and converts a query parameter of a reference type.
+     *
+     * @param name         the parameter name
+     * @param converter    the converter for the parameter type
+     * @param defaultValue the converted default value, or null
+     * @param context      the invocation context
+     * @return the converted value
+     */
+    private static Object queryObject(String name, Function<String, Object> converter, Object defaultValue,
+            InvocationContext context) {
+        String value = context.getQuery().get(name);
+        return value != null ? convert(converter, name, value) : defaultValue;
+    }
+
+    /**
+     * Reads and converts every value of a repeated query parameter.
+     *
+     * @param name      the parameter name
+     * @param converter the converter for the element type
+     * @param defaults  the converted default values
+     * @param context   the invocation context
+     * @return the converted values
+     */
+    private static List<?> queryList(String name, Function<String, Object> converter, List<?> defaults,
+            InvocationContext context) {
+        List<String> values = context.getQuery().getAll(name);
+        if (values.isEmpty()) {
+            return defaults;
+        }
+        List<Object> converted = new ArrayList<>(values.size());
+        for (String value : values) {
+            converted.add(convert(converter, name, value));
+        }
+        return converted;
+    }
+
+    /**
+     * Reads an int query parameter from the raw query bytes.
+     *
+     * @param name         the parameter name
+     * @param required     whether a missing parameter is an error
+     * @param defaultValue the value of a missing optional parameter
+     * @param context      the invocation context
+     * @return the value
+     */
+    private static int queryInt(String name, boolean required, int defaultValue, InvocationContext context) {
+        QueryString query = requirePresent(name, required, context);
+        try {
+            return query.getInt(name, defaultValue);
+        } catch (NumberFormatException e) {
+            throw invalid(name, e);
+        }
+    }
+
+    /**
+     * Reads a long query parameter from the raw query bytes.
+     *
+     * @param name         the parameter name
+     * @param required     whether a missing parameter is an error
+     * @param defaultValue the value of a missing optional parameter
+     * @param context      the invocation context
+     * @return the value
+     */
+    private static long queryLong(String name, boolean required, long defaultValue, InvocationContext context) {
+        QueryString query = requirePresent(name, required, context);
+        try {
+            return query.getLong(name, defaultValue);
+        } catch (NumberFormatException e) {
+            throw invalid(name, e);
+        }
+    }
+
+    /**
+     * Reads a double query parameter from the raw query bytes.
+     *
+     * @param name         the parameter name
+     * @param required     whether a missing parameter is an error
+     * @param defaultValue the value of a missing optional parameter
+     * @param context      the invocation context
+     * @return the value
+     */
+    private static double queryDouble(String name, boolean required, double defaultValue,
+            InvocationContext context) {
+        QueryString query = requirePresent(name, required, context);
+        try {
+            return query.getDouble(name, defaultValue);
+        } catch (NumberFormatException e) {
+            throw invalid(name, e);
+        }
+    }
+
+    /**
+     * Reads a boolean query parameter.
+     *
+     * @param name         the parameter name
+     * @param required     whether a missing parameter is an error
+     * @param defaultValue the value of a missing optional parameter
+     * @param context      the invocation context
+     * @return the value
+     */
+    private static boolean queryBoolean(String name, boolean required, boolean defaultValue,
+            InvocationContext context) {
+        QueryString query = requirePresent(name, required, context);
+        try {
+            return query.getBoolean(name, defaultValue);
+        } catch (IllegalArgumentException e) {
+            throw invalid(name, e);
+        }
+    }
+
+    /**
+     * Passes the request body as a stream the handler reads as it arrives.
+     *
+     * @param maxSize the largest body accepted, or -1 for the server's limit
+     * @param context the invocation context
+     * @return the body stream
+     */
+    private static InputStream bodyStream(long maxSize, InvocationContext context) {
+        return context.getBody(maxSize);
+    }
+
+    /**
+     * Reads the whole request body. It is held in memory, so the server's
+     * limit applies even when the route allows more.
+     *
+     * @param maxSize the largest body accepted, or -1 for the server's limit
+     * @param context the invocation context
+     * @return the body bytes
+     */
+    private static byte[] bodyBytes(long maxSize, InvocationContext context) {
+        try {
+            return context.readBody(maxSize);
+        } catch (IOException e) {
+            throw new HttpStatusException(400, "Request body could not be read", e);
+        }
+    }
+
+    /**
+     * Reads the whole request body as UTF-8 text.
+     *
+     * @param maxSize the largest body accepted, or -1 for the server's limit
+     * @param context the invocation context
+     * @return the body text
+     */
+    private static String bodyString(long maxSize, InvocationContext context) {
+        return new String(bodyBytes(maxSize, context), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Fails with 400 when a required primitive parameter is missing.
+     *
+     * @param name     the parameter name
+     * @param required whether the parameter is required
+     * @param context  the invocation context
+     * @return the query string
+     */
+    private static QueryString requirePresent(String name, boolean required, InvocationContext context) {
+        QueryString query = context.getQuery();
+        if (required && !query.contains(name)) {
+            throw new HttpStatusException(400, "Missing required parameter '" + name + "'");
+        }
+        return query;
+    }
+
+    /**
+     * Applies a converter, turning conversion failures into 400.
+     *
+     * @param converter the converter
+     * @param name      the parameter name
+     * @param value     the text
+     * @return the converted value
+     */
+    private static Object convert(Function<String, Object> converter, String name, String value) {
+        try {
+            return converter.apply(value);
+        } catch (IllegalArgumentException e) {
+            throw invalid(name, e);
+        }
+    }
+
+    /**
+     * Creates the 400 error for a value that cannot be converted.
+     *
+     * @param name  the parameter name
+     * @param cause the conversion failure
+     * @return the exception to throw
+     */
+    private static HttpStatusException invalid(String name, IllegalArgumentException cause) {
+        return new HttpStatusException(400, "Invalid value for parameter '" + name + "'", cause);
+    }
+
+    /**
+     * Looks up one of the binder methods of this class.
+     *
+     * @param name the method name
+     * @param type the method type
+     * @return the method handle
+     */
+    private static MethodHandle find(String name, MethodType type) {
+        try {
+            return LOOKUP.findStatic(ArgumentBinders.class, name, type);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+}
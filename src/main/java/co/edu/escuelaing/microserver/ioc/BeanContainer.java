@@ -0,0 +1,302 @@
+package co.edu.escuelaing.microserver.ioc;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import co.edu.escuelaing.microserver.annotations.Component;
+import co.edu.escuelaing.microserver.annotations.ScopeType;
+import co.edu.escuelaing.microserver.ioc.BeanDefinition.Dependency;
+
+/**
+ * Creates and wires components. Definitions are registered at startup and
+ * their dependency graph is resolved once: every injection point is matched
+ * to exactly one definition by type, cycles are reported with the path
+ * that forms them, and a component may not capture a narrower-scoped one
+ * except through a {@code Supplier<T>}. A dependency on an unregistered
+ * @Component class registers it on the fly.
+ * <p>
+ * Singletons are created once, either in parallel by {@link #initialize()}
+ * or on first use when they are @Lazy; prototypes are created for every
+ * lookup and request-scoped components once per request on the thread
+ * that dispatches it.
+ */
+final class BeanContainer {
+
+    private final Map<Class<?>, BeanDefinition> definitions = new LinkedHashMap<>();
+    private final ThreadLocal<Map<BeanDefinition, Object>> requestBeans = new ThreadLocal<>();
+    private volatile boolean hasRequestScope;
+
+    /**
+     * Registers a component class. Registering a class twice returns the
+     * existing definition.
+     *
+     * @param type the component class
+     * @return the definition
+     * @throws IllegalArgumentException if the class cannot be a component
+     */
+    synchronized BeanDefinition register(Class<?> type) {
+        BeanDefinition definition = definitions.get(type);
+        if (definition == null) {
+            definition = new BeanDefinition(type);
+            definitions.put(type, definition);
+            if (definition.getScope() == ScopeType.REQUEST) {
+                hasRequestScope = true;
+            }
+        }
+        return definition;
+    }
+
+    /**
+     * Resolves the whole graph and creates the singletons that are not
+     * @Lazy. Independent singletons are created in parallel; a singleton
+     * waits for the ones it depends on.
+     *
+     * @throws IllegalStateException if the graph cannot be resolved or a
+     *                               component cannot be created
+     */
+    void initialize() {
+        List<BeanDefinition> eager;
+        synchronized (this) {
+            for (BeanDefinition definition : new ArrayList<>(definitions.values())) {
+                resolve(definition);
+            }
+            eager = definitions.values().stream()
+                    .filter(definition -> definition.getScope() == ScopeType.SINGLETON && !definition.isLazy())
+                    .collect(Collectors.toList());
+        }
+        eager.parallelStream().forEach(this::getBean);
+    }
+
+    /**
+     * Gets the instance of a component for the current scope.
+     *
+     * @param type the type to look up
+     * @param <T>  the type
+     * @return the instance
+     * @throws IllegalStateException if no single component has the type
+     */
+    <T> T getBean(Class<T> type) {
+        BeanDefinition definition;
+        synchronized (this) {
+            definition = find(type, "lookup");
+            resolve(definition);
+        }
+        return type.cast(getBean(definition));
+    }
+
+    /**
+     * Gets the instance of a definition for the current scope, creating it
+     * if needed.
+     *
+     * @param definition the definition
+     * @return the instance
+     * @throws IllegalStateException if the instance cannot be created, or a
+     *                               request-scoped component is used outside a request
+     */
+    Object getBean(BeanDefinition definition) {
+        if (!definition.isResolved()) {
+            synchronized (this) {
+                resolve(definition);
+            }
+        }
+        switch (definition.getScope()) {
+            case PROTOTYPE:
+                return create(definition);
+            case REQUEST:
+                Map<BeanDefinition, Object> beans = requestBeans.get();
+                if (beans == null) {
+                    throw new IllegalStateException("No request in progress for request-scoped " + definition);
+                }
+                Object bean = beans.get(definition);
+                if (bean == null) {
+                    bean = create(definition);
+                    beans.put(definition, bean);
+                }
+                return bean;
+            default:
+                Object instance = definition.getInstance();
+                if (instance == null) {
+                    synchronized (definition) {
+                        instance = definition.getInstance();
+                        if (instance == null) {
+                            instance = create(definition);
+                            definition.setInstance(instance);
+                        }
+                    }
+                }
+                return instance;
+        }
+    }
+
+    /**
+     * Starts the request scope on the current thread.
+     *
+     * @return true if a scope was started and must be ended, false if there
+     *         are no request-scoped components or a scope is already active
+     */
+    boolean beginRequest() {
+        if (!hasRequestScope || requestBeans.get() != null) {
+            return false;
+        }
+        requestBeans.set(new HashMap<>());
+        return true;
+    }
+
+    /**
+     * Ends the request scope on the current thread, dropping its instances.
+     */
+    void endRequest() {
+        requestBeans.remove();
+    }
+
+    /**
+     * Matches the dependencies of a definition and of everything it depends
+     * on, depth first.
+     *
+     * @param definition the definition
+     * @throws IllegalStateException if a dependency is missing, ambiguous,
+     *                               of a narrower scope or part of a cycle
+     */
+    private void resolve(BeanDefinition definition) {
+        resolve(definition, new ArrayDeque<>());
+    }
+
+    /**
+     * Resolves a definition while tracking the path that led to it.
+     *
+     * @param definition the definition
+     * @param path       the definitions being resolved, innermost first
+     */
+    private void resolve(BeanDefinition definition, Deque<BeanDefinition> path) {
+        if (definition.isResolved()) {
+            return;
+        }
+        if (path.contains(definition)) {
+            List<BeanDefinition> steps = new ArrayList<>(path);
+            Collections.reverse(steps);
+            StringBuilder cycle = new StringBuilder();
+            for (BeanDefinition step : steps.subList(steps.indexOf(definition), steps.size())) {
+                cycle.append(step).append(" -> ");
+            }
+            throw new IllegalStateException("Dependency cycle: " + cycle.append(definition));
+        }
+
+        path.push(definition);
+        List<BeanDefinition> providers = new ArrayList<>();
+        resolveAll(definition, definition.getConstructorDependencies(), path, providers);
+        resolveAll(definition, definition.getFieldDependencies(), path, providers);
+        path.pop();
+        definition.markResolved();
+
+        for (BeanDefinition provided : providers) {
+            resolve(provided, new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * Matches a group of dependencies. Providers are resolved after their
+     * owner, because a provider does not create its target up front and so
+     * may legitimately point back into the current path.
+     *
+     * @param owner        the definition declaring the dependencies
+     * @param dependencies the dependencies
+     * @param path         the definitions being resolved
+     * @param providers    collects the targets of provider dependencies
+     */
+    private void resolveAll(BeanDefinition owner, Dependency[] dependencies, Deque<BeanDefinition> path,
+            List<BeanDefinition> providers) {
+        for (Dependency dependency : dependencies) {
+            BeanDefinition target = find(dependency.getType(), owner + " " + dependency.getDescription());
+            dependency.setTarget(target, () -> getBean(target));
+            if (dependency.isProvider()) {
+                providers.add(target);
+                continue;
+            }
+            if (target.getScope() == ScopeType.REQUEST && owner.getScope() != ScopeType.REQUEST) {
+                throw new IllegalStateException(owner + " " + dependency.getDescription()
+                        + " captures request-scoped " + target + "; inject Supplier<"
+                        + target.getType().getSimpleName() + "> instead");
+            }
+            resolve(target, path);
+        }
+    }
+
+    /**
+     * Finds the single definition assignable to a type, registering an
+     * unknown @Component class on the fly.
+     *
+     * @param type       the type
+     * @param requiredBy who needs it, for error messages
+     * @return the definition
+     * @throws IllegalStateException if there is no single match
+     */
+    private BeanDefinition find(Class<?> type, String requiredBy) {
+        BeanDefinition exact = definitions.get(type);
+        if (exact != null) {
+            return exact;
+        }
+        BeanDefinition match = null;
+        for (BeanDefinition candidate : definitions.values()) {
+            if (type.isAssignableFrom(candidate.getType())) {
+                if (match != null) {
+                    throw new IllegalStateException("Several components of type " + type.getName() + " for "
+                            + requiredBy + ": " + match + ", " + candidate);
+                }
+                match = candidate;
+            }
+        }
+        if (match != null) {
+            return match;
+        }
+        if (type.isAnnotationPresent(Component.class)) {
+            return register(type);
+        }
+        throw new IllegalStateException("No component of type " + type.getName() + " for " + requiredBy);
+    }
+
+    /**
+     * Creates an instance by calling its constructor and setting its
+     * injected fields.
+     *
+     * @param definition the definition
+     * @return the new instance
+     * @throws IllegalStateException if the constructor fails
+     */
+    private Object create(BeanDefinition definition) {
+        Dependency[] parameters = definition.getConstructorDependencies();
+        Object[] arguments = new Object[parameters.length];
+        for (int i = 0; i < parameters.length; i++) {
+            arguments[i] = valueOf(parameters[i]);
+        }
+        try {
+            Object instance = definition.getConstructor().newInstance(arguments);
+            Dependency[] fieldDependencies = definition.getFieldDependencies();
+            for (int i = 0; i < fieldDependencies.length; i++) {
+                definition.getFields()[i].set(instance, valueOf(fieldDependencies[i]));
+            }
+            return instance;
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("Cannot create " + definition + ": " + e.getCause(), e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot create " + definition + ": " + e, e);
+        }
+    }
+
+    /**
+     * Gets the value injected for a dependency.
+     *
+     * @param dependency the dependency
+     * @return the component, or a supplier of it for providers
+     */
+    private Object valueOf(Dependency dependency) {
+        return dependency.isProvider() ? dependency.getSupplier() : getBean(dependency.getTarget());
+    }
+}
@@ -0,0 +1,310 @@
+package co.edu.escuelaing.microserver.ioc;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import co.edu.escuelaing.microserver.annotations.Inject;
+import co.edu.escuelaing.microserver.annotations.Lazy;
+import co.edu.escuelaing.microserver.annotations.Scope;
+import co.edu.escuelaing.microserver.annotations.ScopeType;
+
+/**
+ * Everything the container needs to create a component: its scope, the
+ * constructor to call and the fields to inject, with the dependencies of
+ * both. The dependencies are matched to other definitions once, when the
+ * graph is resolved, and the singleton instance is kept here.
+ */
+final class BeanDefinition {
+
+    private final Class<?> type;
+    private final ScopeType scope;
+    private final boolean lazy;
+    private final Constructor<?> constructor;
+    private final Dependency[] constructorDependencies;
+    private final Field[] fields;
+    private final Dependency[] fieldDependencies;
+    private volatile boolean resolved;
+    private volatile Object instance;
+
+    /**
+     * Reads the definition of a component class.
+     *
+     * @param type the component class
+     * @throws IllegalArgumentException if the class cannot be instantiated
+     *                                  or its injection points are ambiguous
+     */
+    BeanDefinition(Class<?> type) {
+        if (type.isInterface() || Modifier.isAbstract(type.getModifiers())) {
+            throw new IllegalArgumentException("Component " + type.getName() + " must be a concrete class");
+        }
+        this.type = type;
+        Scope scopeAnnotation = type.getAnnotation(Scope.class);
+        this.scope = scopeAnnotation != null ? scopeAnnotation.value() : ScopeType.SINGLETON;
+        this.lazy = type.isAnnotationPresent(Lazy.class);
+
+        this.constructor = selectConstructor(type);
+        this.constructor.setAccessible(true);
+        Type[] parameterTypes = constructor.getGenericParameterTypes();
+        this.constructorDependencies = new Dependency[parameterTypes.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            constructorDependencies[i] = new Dependency(parameterTypes[i], "constructor parameter " + i);
+        }
+
+        List<Field> injected = new ArrayList<>();
+        for (Class<?> current = type; current != Object.class; current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                if (field.isAnnotationPresent(Inject.class)) {
+                    if (Modifier.isFinal(field.getModifiers()) || Modifier.isStatic(field.getModifiers())) {
+                        throw new IllegalArgumentException("Injected field " + field + " must not be final or static");
+                    }
+                    field.setAccessible(true);
+                    injected.add(field);
+                }
+            }
+        }
+        this.fields = injected.toArray(new Field[0]);
+        this.fieldDependencies = new Dependency[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            fieldDependencies[i] = new Dependency(fields[i].getGenericType(), "field " + fields[i].getName());
+        }
+    }
+
+    /**
+     * Picks the constructor annotated with @Inject, the only declared
+     * constructor, or the no-argument one.
+     *
+     * @param type the component class
+     * @return the constructor
+     * @throws IllegalArgumentException if there is no single candidate
+     */
+    private static Constructor<?> selectConstructor(Class<?> type) {
+        Constructor<?>[] constructors = type.getDeclaredConstructors();
+        Constructor<?> selected = null;
+        for (Constructor<?> candidate : constructors) {
+            if (candidate.isAnnotationPresent(Inject.class)) {
+                if (selected != null) {
+                    throw new IllegalArgumentException("Several @Inject constructors in " + type.getName());
+                }
+                selected = candidate;
+            }
+        }
+        if (selected != null) {
+            return selected;
+        }
+        if (constructors.length == 1) {
+            return constructors[0];
+        }
+        for (Constructor<?> candidate : constructors) {
+            if (candidate.getParameterCount() == 0) {
+                return candidate;
+            }
+        }
+        throw new IllegalArgumentException("Cannot choose a constructor for " + type.getName()
+                + ": annotate one with @Inject");
+    }
+
+    /**
+     * Gets the component class.
+     *
+     * @return the class
+     */
+    Class<?> getType() {
+        return type;
+    }
+
+    /**
+     * Gets the scope.
+     *
+     * @return the scope
+     */
+    ScopeType getScope() {
+        return scope;
+    }
+
+    /**
+     * Checks whether a singleton waits for its first use to be created.
+     *
+     * @return true for @Lazy components
+     */
+    boolean isLazy() {
+        return lazy;
+    }
+
+    /**
+     * Gets the constructor the component is created with.
+     *
+     * @return the constructor
+     */
+    Constructor<?> getConstructor() {
+        return constructor;
+    }
+
+    /**
+     * Gets the dependencies passed to the constructor, in parameter order.
+     *
+     * @return the dependencies
+     */
+    Dependency[] getConstructorDependencies() {
+        return constructorDependencies;
+    }
+
+    /**
+     * Gets the fields injected after construction.
+     *
+     * @return the fields
+     */
+    Field[] getFields() {
+        return fields;
+    }
+
+    /**
+     * Gets the dependencies of the injected fields, in field order.
+     *
+     * @return the dependencies
+     */
+    Dependency[] getFieldDependencies() {
+        return fieldDependencies;
+    }
+
+    /**
+     * Checks whether every dependency has been matched to a definition.
+     *
+     * @return true once the graph below this definition is resolved
+     */
+    boolean isResolved() {
+        return resolved;
+    }
+
+    /**
+     * Marks the dependencies as matched.
+     */
+    void markResolved() {
+        this.resolved = true;
+    }
+
+    /**
+     * Gets the singleton instance.
+     *
+     * @return the instance, or null if it has not been created
+     */
+    Object getInstance() {
+        return instance;
+    }
+
+    /**
+     * Publishes the singleton instance.
+     *
+     * @param instance the fully injected instance
+     */
+    void setInstance(Object instance) {
+        this.instance = instance;
+    }
+
+    @Override
+    public String toString() {
+        return type.getSimpleName();
+    }
+
+    /**
+     * One injection point. A {@code Supplier<T>} dependency is a provider:
+     * it receives a supplier that looks the component up on every call,
+     * which defers creation and lets singletons use request-scoped or
+     * prototype components.
+     */
+    static final class Dependency {
+        private final Class<?> type;
+        private final boolean provider;
+        private final String description;
+        private BeanDefinition target;
+        private Supplier<Object> supplier;
+
+        /**
+         * Creates an injection point.
+         *
+         * @param genericType the declared type of the parameter or field
+         * @param description where the dependency is declared
+         */
+        Dependency(Type genericType, String description) {
+            this.description = description;
+            if (genericType instanceof ParameterizedType
+                    && ((ParameterizedType) genericType).getRawType() == Supplier.class) {
+                Type element = ((ParameterizedType) genericType).getActualTypeArguments()[0];
+                if (!(element instanceof Class)) {
+                    throw new IllegalArgumentException("Unsupported provider type " + genericType);
+                }
+                this.type = (Class<?>) element;
+                this.provider = true;
+            } else if (genericType instanceof Class) {
+                this.type = (Class<?>) genericType;
+                this.provider = false;
+            } else if (genericType instanceof ParameterizedType) {
+                this.type = (Class<?>) ((ParameterizedType) genericType).getRawType();
+                this.provider = false;
+            } else {
+                throw new IllegalArgumentException("Unsupported dependency type " + genericType);
+            }
+        }
+
+        /**
+         * Gets the type the dependency is matched by.
+         *
+         * @return the type
+         */
+        Class<?> getType() {
+            return type;
+        }
+
+        /**
+         * Checks whether the dependency is a {@code Supplier<T>}.
+         *
+         * @return true for providers
+         */
+        boolean isProvider() {
+            return provider;
+        }
+
+        /**
+         * Gets where the dependency is declared.
+         *
+         * @return the description
+         */
+        String getDescription() {
+            return description;
+        }
+
+        /**
+         * Gets the matched definition.
+         *
+         * @return the definition
+         */
+        BeanDefinition getTarget() {
+            return target;
+        }
+
+        /**
+         * Matches the dependency to a definition.
+         *
+         * @param target   the definition
+         * @param supplier the lookup used for providers
+         */
+        void setTarget(BeanDefinition target, Supplier<Object> supplier) {
+            this.target = target;
+            this.supplier = supplier;
+        }
+
+        /**
+         * Gets the provider handed out for a {@code Supplier<T>} dependency.
+         *
+         * @return the supplier
+         */
+        Supplier<Object> getSupplier() {
+            return supplier;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package co.edu.escuelaing.microserver.ioc;
+
+/**
+ * Snapshot of the hit and miss counts of the response caches.
+ */
+public final class CacheStatistics {
+
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long size;
+
+    /**
+     * Creates a snapshot.
+     *
+     * @param hits      requests answered from the cache
+     * @param misses    requests that computed the response
+     * @param evictions entries dropped to stay within the size limit
+     * @param size      entries currently cached
+     */
+    CacheStatistics(long hits, long misses, long evictions, long size) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.size = size;
+    }
+
+    /**
+     * Combines two snapshots.
+     *
+     * @param other the other snapshot
+     * @return the sums of both
+     */
+    CacheStatistics plus(CacheStatistics other) {
+        return new CacheStatistics(hits + other.hits, misses + other.misses, evictions + other.evictions,
+                size + other.size);
+    }
+
+    /**
+     * Gets the number of requests answered from the cache, including those
+     * that waited for a computation already in progress.
+     *
+     * @return the hit count
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of requests that computed the response.
+     *
+     * @return the miss count
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Gets the number of entries evicted to stay within the size limit.
+     *
+     * @return the eviction count
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Gets the number of cached entries.
+     *
+     * @return the size
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Gets the fraction of requests answered from the cache.
+     *
+     * @return the hit rate, or 0 before the first request
+     */
+    public double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return "hits=" + hits + " misses=" + misses + " evictions=" + evictions + " size=" + size;
+    }
+}
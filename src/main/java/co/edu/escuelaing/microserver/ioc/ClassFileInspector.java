@@ -0,0 +1,254 @@
+package co.edu.escuelaing.microserver.ioc;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads just enough of a class file to tell whether the class carries one
+ * of a set of runtime-visible annotations, without defining or initializing
+ * the class. Most classes are rejected after the constant pool, because a
+ * class annotated with an annotation must hold its descriptor there.
+ */
+final class ClassFileInspector {
+
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final int ACC_INTERFACE = 0x0200;
+    private static final int ACC_ABSTRACT = 0x0400;
+    private static final byte[] RUNTIME_VISIBLE_ANNOTATIONS =
+            "RuntimeVisibleAnnotations".getBytes(StandardCharsets.US_ASCII);
+
+    private final byte[] bytes;
+    private int position;
+    private int[] utf8Offsets;
+
+    /**
+     * Creates an inspector over a class file.
+     *
+     * @param bytes the class file bytes
+     */
+    private ClassFileInspector(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * Checks whether a class file declares a concrete class annotated with
+     * any of the given annotations. Interfaces, annotations and abstract
+     * classes are rejected, as are malformed files.
+     *
+     * @param classFile   the class file bytes
+     * @param descriptors the annotation descriptors, e.g. {@code Lcom/example/Marker;}
+     * @return true if one of the annotations is present
+     */
+    static boolean isConcreteClassAnnotatedWith(byte[] classFile, String... descriptors) {
+        byte[][] encoded = new byte[descriptors.length][];
+        for (int i = 0; i < descriptors.length; i++) {
+            encoded[i] = descriptors[i].getBytes(StandardCharsets.US_ASCII);
+        }
+        try {
+            return new ClassFileInspector(classFile).inspect(encoded);
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Walks the class file up to its class-level annotations.
+     *
+     * @param descriptors the annotation descriptors as ASCII bytes
+     * @return true if one of the annotations is present
+     */
+    private boolean inspect(byte[][] descriptors) {
+        if (u4() != MAGIC) {
+            return false;
+        }
+        position += 4;
+        int[] descriptorIndexes = readConstantPool(descriptors);
+        if (descriptorIndexes == null) {
+            return false;
+        }
+
+        int access = u2();
+        if ((access & (ACC_INTERFACE | ACC_ABSTRACT)) != 0) {
+            return false;
+        }
+        position += 4;
+        int interfaces = u2();
+        position += 2 * interfaces;
+        skipMembers();
+        skipMembers();
+
+        int attributes = u2();
+        for (int i = 0; i < attributes; i++) {
+            int name = u2();
+            int length = u4();
+            int end = position + length;
+            if (utf8Equals(name, RUNTIME_VISIBLE_ANNOTATIONS)) {
+                int annotations = u2();
+                for (int j = 0; j < annotations; j++) {
+                    int type = u2();
+                    for (int descriptorIndex : descriptorIndexes) {
+                        if (type == descriptorIndex) {
+                            return true;
+                        }
+                    }
+                    skipElementValuePairs();
+                }
+            }
+            position = end;
+        }
+        return false;
+    }
+
+    /**
+     * Reads the constant pool, remembering where its UTF-8 entries are.
+     *
+     * @param descriptors the annotation descriptors as ASCII bytes
+     * @return the index of each descriptor entry, -1 for the missing ones,
+     *         or null if none of them is present
+     */
+    private int[] readConstantPool(byte[][] descriptors) {
+        int count = u2();
+        utf8Offsets = new int[count];
+        int[] descriptorIndexes = new int[descriptors.length];
+        Arrays.fill(descriptorIndexes, -1);
+        boolean found = false;
+        for (int i = 1; i < count; i++) {
+            int tag = bytes[position++];
+            switch (tag) {
+                case 1:
+                    utf8Offsets[i] = position;
+                    for (int d = 0; d < descriptors.length; d++) {
+                        if (descriptorIndexes[d] < 0 && utf8Equals(i, descriptors[d])) {
+                            descriptorIndexes[d] = i;
+                            found = true;
+                        }
+                    }
+                    position += 2 + u2At(position);
+                    break;
+                case 7: case 8: case 16: case 19: case 20:
+                    position += 2;
+                    break;
+                case 15:
+                    position += 3;
+                    break;
+                case 3: case 4: case 9: case 10: case 11: case 12: case 17: case 18:
+                    position += 4;
+                    break;
+                case 5: case 6:
+                    position += 8;
+                    i++;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown constant pool tag " + tag);
+            }
+        }
+        return found ? descriptorIndexes : null;
+    }
+
+    /**
+     * Skips the fields or the methods table.
+     */
+    private void skipMembers() {
+        int count = u2();
+        for (int i = 0; i < count; i++) {
+            position += 6;
+            int attributes = u2();
+            for (int j = 0; j < attributes; j++) {
+                position += 2;
+                int length = u4();
+                position += length;
+            }
+        }
+    }
+
+    /**
+     * Skips the element-value pairs of an annotation whose type was read.
+     */
+    private void skipElementValuePairs() {
+        int pairs = u2();
+        for (int i = 0; i < pairs; i++) {
+            position += 2;
+            skipElementValue();
+        }
+    }
+
+    /**
+     * Skips one element value.
+     */
+    private void skipElementValue() {
+        int tag = bytes[position++];
+        switch (tag) {
+            case 'e':
+                position += 4;
+                break;
+            case '@':
+                position += 2;
+                skipElementValuePairs();
+                break;
+            case '[':
+                int values = u2();
+                for (int i = 0; i < values; i++) {
+                    skipElementValue();
+                }
+                break;
+            default:
+                position += 2;
+                break;
+        }
+    }
+
+    /**
+     * Compares a UTF-8 constant with ASCII bytes.
+     *
+     * @param index    the constant pool index
+     * @param expected the expected bytes
+     * @return true if they are equal
+     */
+    private boolean utf8Equals(int index, byte[] expected) {
+        if (index <= 0 || index >= utf8Offsets.length || utf8Offsets[index] == 0) {
+            return false;
+        }
+        int offset = utf8Offsets[index];
+        if (u2At(offset) != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (bytes[offset + 2 + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads an unsigned 16-bit value and advances.
+     *
+     * @return the value
+     */
+    private int u2() {
+        int value = u2At(position);
+        position += 2;
+        return value;
+    }
+
+    /**
+     * Reads an unsigned 16-bit value at an offset.
+     *
+     * @param offset the offset
+     * @return the value
+     */
+    private int u2At(int offset) {
+        return (bytes[offset] & 0xFF) << 8 | bytes[offset + 1] & 0xFF;
+    }
+
+    /**
+     * Reads a 32-bit value and advances.
+     *
+     * @return the value
+     */
+    private int u4() {
+        int value = u2At(position) << 16 | u2At(position + 2);
+        position += 4;
+        return value;
+    }
+}
@@ -0,0 +1,86 @@
+package co.edu.escuelaing.microserver.ioc;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+
+/**
+ * Annotation processor that writes the component index at compile time.
+ * The index lists the binary names of all @Component and @RestController
+ * classes of the compilation, so {@link ComponentScanner} can register them
+ * at startup without reading any class files. The Maven build runs it in a
+ * separate {@code proc:only} pass after the classes are compiled.
+ */
+@SupportedAnnotationTypes({
+    "co.edu.escuelaing.microserver.annotations.Component",
+    "co.edu.escuelaing.microserver.annotations.RestController"
+})
+public class ComponentIndexProcessor extends AbstractProcessor {
+
+    private final Set<String> components = new TreeSet<>();
+
+    /**
+     * Gets the latest supported source version.
+     *
+     * @return the source version
+     */
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    /**
+     * Collects the components of a round and writes the index once the
+     * last round is over.
+     *
+     * @param annotations the annotations of the round
+     * @param roundEnv    the round environment
+     * @return false, so other processors may claim the annotation too
+     */
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() == ElementKind.CLASS && !element.getModifiers().contains(Modifier.ABSTRACT)) {
+                    components.add(processingEnv.getElementUtils().getBinaryName((TypeElement) element).toString());
+                }
+            }
+        }
+        if (roundEnv.processingOver()) {
+            writeIndex();
+        }
+        return false;
+    }
+
+    /**
+     * Writes the collected class names to the class output.
+     */
+    private void writeIndex() {
+        try {
+            FileObject index = processingEnv.getFiler()
+                    .createResource(StandardLocation.CLASS_OUTPUT, "", ComponentScanner.INDEX_RESOURCE);
+            try (Writer writer = index.openWriter()) {
+                for (String component : components) {
+                    writer.write(component);
+                    writer.write('\n');
+                }
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Cannot write component index: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package co.edu.escuelaing.microserver.ioc;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Finds the @Component and @RestController classes of a package without
+ * loading classes. Every classpath root that contains the package is handled
+ * on its own: roots with a component index written by
+ * {@link ComponentIndexProcessor}
+ * are answered from the index, the others are scanned. Scanning reads the
+ * class files of directories and jars in parallel and checks their
+ * annotations with {@link ClassFileInspector}, so only the components
+ * themselves are ever loaded and initialized.
+ */
+final class ComponentScanner {
+
+    /** Classpath resource listing the components of one root, one binary name per line. */
+    static final String INDEX_RESOURCE = "META-INF/microserver/components";
+
+    private static final String[] COMPONENT_DESCRIPTORS = {
+        "Lco/edu/escuelaing/microserver/annotations/Component;",
+        "Lco/edu/escuelaing/microserver/annotations/RestController;"
+    };
+
+    private final ClassLoader classLoader;
+
+    /**
+     * Creates a scanner over the roots of a class loader.
+     *
+     * @param classLoader the class loader whose classpath is scanned
+     */
+    ComponentScanner(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * Finds the components in a package and its subpackages.
+     *
+     * @param packageName the package name
+     * @return the binary class names, sorted
+     * @throws IOException if a classpath root cannot be read
+     */
+    List<String> findComponents(String packageName) throws IOException {
+        String packagePath = packageName.replace('.', '/');
+        String prefix = packageName.isEmpty() ? "" : packageName + ".";
+        TreeSet<String> components = new TreeSet<>();
+
+        Enumeration<URL> roots = classLoader.getResources(packagePath);
+        while (roots.hasMoreElements()) {
+            URL packageUrl = roots.nextElement();
+            List<String> indexed = readIndex(packageUrl, packagePath);
+            if (indexed != null) {
+                for (String name : indexed) {
+                    if (name.startsWith(prefix)) {
+                        components.add(name);
+                    }
+                }
+            } else if (packageUrl.getProtocol().equals("jar")) {
+                components.addAll(scanJar(packageUrl, packagePath));
+            } else if (packageUrl.getProtocol().equals("file")) {
+                components.addAll(scanDirectory(toPath(packageUrl), packageName));
+            }
+        }
+        return new ArrayList<>(components);
+    }
+
+    /**
+     * Reads the component index of the classpath root a package was found in.
+     *
+     * @param packageUrl  the URL of the package directory
+     * @param packagePath the package as a resource path
+     * @return the indexed class names, or null if the root has no index
+     * @throws IOException if the index cannot be read
+     */
+    private static List<String> readIndex(URL packageUrl, String packagePath) throws IOException {
+        String url = packageUrl.toString();
+        if (url.endsWith("/")) {
+            url = url.substring(0, url.length() - 1);
+        }
+        if (!url.endsWith(packagePath)) {
+            return null;
+        }
+
+        URL index = new URL(url.substring(0, url.length() - packagePath.length()) + INDEX_RESOURCE);
+        URLConnection connection = index.openConnection();
+        connection.setUseCaches(false);
+        List<String> names = new ArrayList<>();
+        try (InputStream in = connection.getInputStream();
+                BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    names.add(line);
+                }
+            }
+        } catch (FileNotFoundException | NoSuchFileException e) {
+            return null;
+        }
+        return names;
+    }
+
+    /**
+     * Scans a package directory and its subdirectories.
+     *
+     * @param directory   the package directory
+     * @param packageName the package name
+     * @return the components found
+     * @throws IOException if the directory cannot be listed
+     */
+    private static List<String> scanDirectory(Path directory, String packageName) throws IOException {
+        List<Path> classFiles;
+        try (Stream<Path> files = Files.walk(directory)) {
+            classFiles = files.filter(file -> isCandidate(file.getFileName().toString()))
+                    .collect(Collectors.toList());
+        }
+
+        try {
+            return classFiles.parallelStream()
+                    .filter(file -> isComponent(read(file)))
+                    .map(file -> className(packageName, directory.relativize(file).toString()
+                            .replace(file.getFileSystem().getSeparator(), "/")))
+                    .collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Scans the entries of a jar below a package.
+     *
+     * @param packageUrl  the jar URL of the package directory
+     * @param packagePath the package as a resource path
+     * @return the components found
+     * @throws IOException if the jar cannot be read
+     */
+    private static List<String> scanJar(URL packageUrl, String packagePath) throws IOException {
+        JarURLConnection connection = (JarURLConnection) packageUrl.openConnection();
+        connection.setUseCaches(false);
+        String prefix = packagePath.isEmpty() ? "" : packagePath + "/";
+        try (JarFile jar = connection.getJarFile()) {
+            List<JarEntry> entries = Collections.list(jar.entries()).stream()
+                    .filter(entry -> entry.getName().startsWith(prefix) && isCandidate(entry.getName()))
+                    .collect(Collectors.toList());
+            return entries.parallelStream()
+                    .filter(entry -> isComponent(read(jar, entry)))
+                    .map(entry -> className("", entry.getName()))
+                    .collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Checks whether a file name can be a component class.
+     *
+     * @param name the file or entry name
+     * @return true for class files other than module and package descriptors
+     */
+    private static boolean isCandidate(String name) {
+        return name.endsWith(".class") && !name.endsWith("module-info.class")
+                && !name.endsWith("package-info.class");
+    }
+
+    /**
+     * Checks whether a class file declares an instantiable component.
+     *
+     * @param classFile the class file bytes
+     * @return true if the class is annotated with @Component or @RestController
+     */
+    private static boolean isComponent(byte[] classFile) {
+        return ClassFileInspector.isConcreteClassAnnotatedWith(classFile, COMPONENT_DESCRIPTORS);
+    }
+
+    /**
+     * Converts a class file path to a binary class name.
+     *
+     * @param packageName  the package the path is relative to, or empty
+     * @param relativePath the path using '/' separators
+     * @return the binary class name
+     */
+    private static String className(String packageName, String relativePath) {
+        String name = relativePath.substring(0, relativePath.length() - ".class".length()).replace('/', '.');
+        return packageName.isEmpty() ? name : packageName + "." + name;
+    }
+
+    /**
+     * Converts a file URL to a path.
+     *
+     * @param url the URL
+     * @return the path
+     * @throws IOException if the URL is not a valid file URI
+     */
+    private static Path toPath(URL url) throws IOException {
+        try {
+            return Paths.get(url.toURI());
+        } catch (URISyntaxException e) {
+            throw new IOException("Invalid classpath URL: " + url, e);
+        }
+    }
+
+    /**
+     * Reads a class file from a directory.
+     *
+     * @param file the file
+     * @return the bytes
+     */
+    private static byte[] read(Path file) {
+        try {
+            return Files.readAllBytes(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads a class file from a jar.
+     *
+     * @param jar   the jar
+     * @param entry the entry
+     * @return the bytes
+     */
+    private static byte[] read(JarFile jar, JarEntry entry) {
+        try (InputStream in = jar.getInputStream(entry)) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
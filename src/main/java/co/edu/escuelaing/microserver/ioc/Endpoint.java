@@ -0,0 +1,91 @@
+package co.edu.escuelaing.microserver.ioc;
+
+import co.edu.escuelaing.microserver.http.HttpRequest;
+
+/**
+ * Handlers mapped to one route pattern, one per request method. The router
+ * finds the endpoint by path; the method is picked here by comparing the
+ * request bytes, so no method string is created.
+ */
+final class Endpoint {
+
+    /**
+     * Methods a handler can be mapped to, in lookup order.
+     */
+    static final String[] METHODS = {"GET", "POST", "PUT", "DELETE"};
+
+    private final String pattern;
+    private final HandlerInvoker[] invokers = new HandlerInvoker[METHODS.length];
+
+    /**
+     * Creates an endpoint without handlers.
+     *
+     * @param pattern the route pattern
+     */
+    Endpoint(String pattern) {
+        this.pattern = pattern;
+    }
+
+    /**
+     * Maps a handler to a method of the endpoint.
+     *
+     * @param method  the request method, one of {@link #METHODS}
+     * @param invoker the handler invoker
+     * @throws IllegalArgumentException if the method is not supported
+     * @throws IllegalStateException    if the method is already mapped
+     */
+    void add(String method, HandlerInvoker invoker) {
+        int index = indexOf(method);
+        if (invokers[index] != null) {
+            throw new IllegalStateException("Route " + method + " " + pattern + " is already mapped to "
+                    + invokers[index].getDescription());
+        }
+        invokers[index] = invoker;
+    }
+
+    /**
+     * Gets the handler for a method.
+     *
+     * @param method the request method
+     * @return the handler, or null if the method is not mapped
+     */
+    HandlerInvoker get(String method) {
+        for (int i = 0; i < METHODS.length; i++) {
+            if (METHODS[i].equals(method)) {
+                return invokers[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the handler for the method of a request.
+     *
+     * @param request the request
+     * @return the handler, or null if the method is not mapped
+     */
+    HandlerInvoker get(HttpRequest request) {
+        for (int i = 0; i < METHODS.length; i++) {
+            if (invokers[i] != null && request.isMethod(METHODS[i])) {
+                return invokers[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the position of a method in {@link #METHODS}.
+     *
+     * @param method the request method
+     * @return the index
+     * @throws IllegalArgumentException if the method is not supported
+     */
+    private static int indexOf(String method) {
+        for (int i = 0; i < METHODS.length; i++) {
+            if (METHODS[i].equals(method)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported request method " + method);
+    }
+}
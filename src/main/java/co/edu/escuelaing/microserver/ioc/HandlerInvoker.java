@@ -0,0 +1,272 @@
+package co.edu.escuelaing.microserver.ioc;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import co.edu.escuelaing.microserver.annotations.Cacheable;
+import co.edu.escuelaing.microserver.annotations.RateLimit;
+import co.edu.escuelaing.microserver.annotations.RequestParam;
+import co.edu.escuelaing.microserver.annotations.Timeout;
+import co.edu.escuelaing.microserver.http.RateLimiter;
+import co.edu.escuelaing.microserver.http.StreamingBody;
+
+/**
+ * Controller method compiled into a single {@link MethodHandle} when it is
+ * registered. Parameter binding is part of the handle: each argument is
+ * computed from the {@link InvocationContext} by a filter from
+ * {@link ArgumentBinders} that already knows its source, converter and
+ * default value. Dispatching is one {@code invokeExact} call, with no
+ * reflection, no annotation lookups, no argument array and no boxing of
+ * primitive arguments.
+ */
+class HandlerInvoker {
+
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, InvocationContext.class);
+    private static final MethodHandle SUPPLIER_GET;
+
+    static {
+        try {
+            SUPPLIER_GET = MethodHandles.publicLookup().findVirtual(Supplier.class, "get",
+                    MethodType.methodType(Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final MethodHandle invoker;
+    private final String description;
+    private final ResponseCache cache;
+    private final long timeoutMillis;
+    private final RateLimiter rateLimiter;
+    private final boolean rateLimitPerClient;
+
+    /**
+     * Compiles a controller method.
+     *
+     * @param instance      the controller instance
+     * @param method        the handler method
+     * @param pathVariables the variable names of the mapped route, in order
+     * @throws IllegalAccessException if the method cannot be accessed
+     */
+    HandlerInvoker(Object instance, Method method, List<String> pathVariables) throws IllegalAccessException {
+        this(method, pathVariables, instance, null);
+    }
+
+    /**
+     * Compiles a controller method whose instance is looked up on every
+     * call, for controllers that are not singletons.
+     *
+     * @param instances     supplies the controller instance for each call
+     * @param method        the handler method
+     * @param pathVariables the variable names of the mapped route, in order
+     * @throws IllegalAccessException if the method cannot be accessed
+     */
+    HandlerInvoker(Supplier<?> instances, Method method, List<String> pathVariables) throws IllegalAccessException {
+        this(method, pathVariables, null, instances);
+    }
+
+    /**
+     * Compiles a controller method with either a fixed instance or a
+     * supplier of instances.
+     *
+     * @param method        the handler method
+     * @param pathVariables the variable names of the mapped route, in order
+     * @param instance      the controller instance, or null
+     * @param instances     supplies the instance when there is no fixed one
+     * @throws IllegalAccessException if the method cannot be accessed
+     */
+    private HandlerInvoker(Method method, List<String> pathVariables, Object instance, Supplier<?> instances)
+            throws IllegalAccessException {
+        this.invoker = compile(instance, instances, method, pathVariables);
+        this.description = method.getDeclaringClass().getSimpleName() + "." + method.getName();
+        this.cache = createCache(method);
+        this.timeoutMillis = readTimeout(method);
+        RateLimit rateLimit = method.getAnnotation(RateLimit.class);
+        this.rateLimiter = rateLimit != null ? createRateLimiter(method, rateLimit) : null;
+        this.rateLimitPerClient = rateLimit != null && rateLimit.perClient();
+    }
+
+    /**
+     * Creates the response cache of a @Cacheable method, keyed by the names
+     * of its @RequestParam parameters.
+     *
+     * @param method the handler method
+     * @return the cache, or null if the method is not cacheable
+     * @throws IllegalArgumentException if the method streams its response,
+     *                                  answers asynchronously or the cache
+     *                                  settings are invalid
+     */
+    private static ResponseCache createCache(Method method) {
+        Cacheable cacheable = method.getAnnotation(Cacheable.class);
+        if (cacheable == null) {
+            return null;
+        }
+        if (StreamingBody.class.isAssignableFrom(method.getReturnType())) {
+            throw new IllegalArgumentException("Streaming handler " + method.getName() + " cannot be @Cacheable");
+        }
+        if (isAsynchronous(method.getReturnType())) {
+            throw new IllegalArgumentException("Asynchronous handler " + method.getName() + " cannot be @Cacheable");
+        }
+        if (cacheable.ttl() <= 0 || cacheable.maxEntries() <= 0) {
+            throw new IllegalArgumentException("@Cacheable on " + method.getName()
+                    + " needs a positive ttl and maxEntries");
+        }
+
+        List<String> keyParameters = new ArrayList<>();
+        for (Parameter parameter : method.getParameters()) {
+            RequestParam requestParam = parameter.getAnnotation(RequestParam.class);
+            if (requestParam != null) {
+                keyParameters.add(requestParam.value());
+            }
+        }
+        return new ResponseCache(keyParameters, TimeUnit.SECONDS.toNanos(cacheable.ttl()), cacheable.maxEntries());
+    }
+
+    /**
+     * Reads the @Timeout of a method.
+     *
+     * @param method the handler method
+     * @return the timeout in milliseconds, or 0 if the method has none
+     * @throws IllegalArgumentException if the timeout is not positive
+     */
+    private static long readTimeout(Method method) {
+        Timeout timeout = method.getAnnotation(Timeout.class);
+        if (timeout == null) {
+            return 0;
+        }
+        if (timeout.value() <= 0) {
+            throw new IllegalArgumentException("@Timeout on " + method.getName() + " must be positive");
+        }
+        return timeout.value();
+    }
+
+    /**
+     * Creates the limiter of a @RateLimit method.
+     *
+     * @param method    the handler method
+     * @param rateLimit the annotation
+     * @return the limiter
+     * @throws IllegalArgumentException if the rate or burst is invalid
+     */
+    private static RateLimiter createRateLimiter(Method method, RateLimit rateLimit) {
+        if (!(rateLimit.perSecond() > 0) || rateLimit.burst() < 0) {
+            throw new IllegalArgumentException("@RateLimit on " + method.getName()
+                    + " needs a positive rate and a burst >= 0");
+        }
+        return new RateLimiter(rateLimit.perSecond(), rateLimit.burst(), RateLimiter.DEFAULT_MAX_KEYS);
+    }
+
+    /**
+     * Checks whether a return type delivers its result after the handler
+     * returns.
+     *
+     * @param type the declared return type
+     * @return true for futures and publishers
+     */
+    private static boolean isAsynchronous(Class<?> type) {
+        return CompletionStage.class.isAssignableFrom(type) || Flow.Publisher.class.isAssignableFrom(type);
+    }
+
+    /**
+     * Invokes the handler.
+     *
+     * @param context the values the arguments are bound from
+     * @return the handler result
+     * @throws Throwable anything the handler throws
+     */
+    Object invoke(InvocationContext context) throws Throwable {
+        return (Object) invoker.invokeExact(context);
+    }
+
+    /**
+     * Gets the response cache of a @Cacheable handler.
+     *
+     * @return the cache, or null if responses are not cached
+     */
+    ResponseCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Gets the @Timeout of an asynchronous handler.
+     *
+     * @return the timeout in milliseconds, or 0 to use the server's
+     */
+    long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * Takes a permit from the @RateLimit of the handler.
+     *
+     * @param client the client address, or null if unknown
+     * @return 0 if the call may proceed, otherwise the nanoseconds to wait;
+     *         always 0 for handlers without a limit
+     */
+    long tryAcquire(String client) {
+        if (rateLimiter == null) {
+            return 0;
+        }
+        return rateLimiter.tryAcquire(rateLimitPerClient && client != null ? client : "");
+    }
+
+    /**
+     * Gets a printable name of the handler.
+     *
+     * @return the controller and method name
+     */
+    String getDescription() {
+        return description;
+    }
+
+    /**
+     * Builds a {@code (InvocationContext)Object} handle that binds every
+     * parameter and calls the method on the controller instance. A fixed
+     * instance is bound into the handle; otherwise the receiver is one more
+     * argument computed by calling the supplier.
+     *
+     * @param instance      the controller instance, or null
+     * @param instances     supplies the instance when there is no fixed one
+     * @param method        the handler method
+     * @param pathVariables the variable names of the mapped route
+     * @return the invoker handle
+     * @throws IllegalAccessException if the method cannot be accessed
+     */
+    private static MethodHandle compile(Object instance, Supplier<?> instances, Method method,
+            List<String> pathVariables) throws IllegalAccessException {
+        method.setAccessible(true);
+        MethodHandle target = MethodHandles.lookup().unreflect(method);
+        if (instance != null) {
+            target = target.bindTo(instance);
+        }
+
+        Parameter[] parameters = method.getParameters();
+        int receiverSlots = instance != null ? 0 : 1;
+        MethodHandle[] binders = new MethodHandle[parameters.length + receiverSlots];
+        if (instance == null) {
+            MethodHandle receiver = SUPPLIER_GET.bindTo(instances)
+                    .asType(MethodType.methodType(method.getDeclaringClass()));
+            binders[0] = MethodHandles.dropArguments(receiver, 0, InvocationContext.class);
+        }
+        for (int i = 0; i < parameters.length; i++) {
+            binders[receiverSlots + i] = ArgumentBinders.forParameter(parameters[i], pathVariables);
+        }
+        target = MethodHandles.filterArguments(target, 0, binders);
+
+        // Every binder reads the same context: collapse the arguments into one
+        // (for a method without parameters this just adds the unused context).
+        int[] sameContext = new int[binders.length];
+        target = MethodHandles.permuteArguments(target,
+                MethodType.methodType(target.type().returnType(), InvocationContext.class), sameContext);
+        return target.asType(INVOKER_TYPE);
+    }
+}
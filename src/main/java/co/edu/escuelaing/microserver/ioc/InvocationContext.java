@@ -0,0 +1,78 @@
+package co.edu.escuelaing.microserver.ioc;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import co.edu.escuelaing.microserver.http.HttpRequest;
+import co.edu.escuelaing.microserver.http.QueryString;
+
+/**
+ * Everything a compiled handler can bind its arguments from.
+ */
+final class InvocationContext {
+
+    private final QueryString query;
+    private final RouteMatch<?> route;
+    private final HttpRequest request;
+
+    /**
+     * Creates a context for one invocation.
+     *
+     * @param query   the query string of the request
+     * @param route   the route match holding the path variables
+     * @param request the request, or null when dispatched without one
+     */
+    InvocationContext(QueryString query, RouteMatch<?> route, HttpRequest request) {
+        this.query = query;
+        this.route = route;
+        this.request = request;
+    }
+
+    /**
+     * Gets the query string.
+     *
+     * @return the query string view
+     */
+    QueryString getQuery() {
+        return query;
+    }
+
+    /**
+     * Gets a path variable.
+     *
+     * @param index the position of the variable in the route pattern
+     * @return the decoded value
+     */
+    String getPathVariable(int index) {
+        return route.getVariable(index);
+    }
+
+    /**
+     * Gets the request body.
+     *
+     * @param maxSize the largest body accepted in bytes, or -1 for the server's limit
+     * @return the body stream, empty when there is no request
+     */
+    InputStream getBody(long maxSize) {
+        if (request == null) {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+        return request.getBody(maxSize);
+    }
+
+    /**
+     * Reads the whole request body into memory, within the server's limit
+     * even if the route allows more.
+     *
+     * @param maxSize the largest body accepted in bytes, or -1 for the server's limit
+     * @return the body bytes, empty when there is no request
+     * @throws IOException if the connection fails
+     */
+    byte[] readBody(long maxSize) throws IOException {
+        if (request == null) {
+            return new byte[0];
+        }
+        return request.readBody(maxSize);
+    }
+}
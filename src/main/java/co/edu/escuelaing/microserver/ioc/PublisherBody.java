@@ -0,0 +1,165 @@
+package co.edu.escuelaing.microserver.ioc;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import co.edu.escuelaing.microserver.http.StreamingBody;
+
+/**
+ * Streaming body fed by a {@link Flow.Publisher}. Items are requested one
+ * at a time and each one is written and flushed as soon as it arrives, so
+ * the publisher never gets ahead of the client. Byte arrays are sent as
+ * they are and any other item as the UTF-8 bytes of its String form.
+ * The body is subscribed before the response starts, so a publisher that
+ * stays silent up to its timeout is answered with 504 rather than with an
+ * empty stream; one that stalls later ends the connection.
+ */
+class PublisherBody implements StreamingBody {
+
+    private static final Object COMPLETE = new Object();
+
+    private final Flow.Publisher<?> publisher;
+    private final long idleTimeoutMillis;
+    private final BlockingQueue<Object> signals = new LinkedBlockingQueue<>();
+    private final CompletableFuture<StreamingBody> firstSignal = new CompletableFuture<>();
+    private volatile Flow.Subscription subscription;
+    private volatile boolean cancelled;
+
+    /**
+     * Creates a body for a publisher.
+     *
+     * @param publisher         the publisher of the items
+     * @param idleTimeoutMillis how long to wait for each item
+     * @throws IllegalArgumentException if the timeout is not positive
+     */
+    PublisherBody(Flow.Publisher<?> publisher, long idleTimeoutMillis) {
+        if (idleTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("idleTimeoutMillis must be positive");
+        }
+        this.publisher = publisher;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    /**
+     * Subscribes to the publisher and asks for the first item.
+     *
+     * @return a future completed with this body once the first item or the
+     *         completion arrives, or with the error the publisher fails with;
+     *         it is not bounded by the idle timeout
+     */
+    CompletableFuture<StreamingBody> start() {
+        publisher.subscribe(new Subscriber());
+        return firstSignal;
+    }
+
+    /**
+     * Cancels the subscription, for a body that will not be written.
+     */
+    void cancel() {
+        cancelled = true;
+        Flow.Subscription current = subscription;
+        if (current != null) {
+            current.cancel();
+        }
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        try {
+            while (true) {
+                Object signal = next();
+                if (signal == COMPLETE) {
+                    return;
+                } else if (signal instanceof Failure) {
+                    throw new IOException("Publisher failed", ((Failure) signal).cause);
+                } else {
+                    out.write(signal instanceof byte[]
+                            ? (byte[]) signal
+                            : signal.toString().getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                    subscription.request(1);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            cancel();
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for the next signal from the publisher.
+     *
+     * @return the signal
+     * @throws IOException if none arrives within the idle timeout or the
+     *                     wait is interrupted
+     */
+    private Object next() throws IOException {
+        try {
+            Object signal = signals.poll(idleTimeoutMillis, TimeUnit.MILLISECONDS);
+            if (signal == null) {
+                throw new IOException("Publisher emitted nothing for " + idleTimeoutMillis + " ms");
+            }
+            return signal;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while streaming");
+        }
+    }
+
+    /**
+     * Error signalled by the publisher.
+     */
+    private static final class Failure {
+        private final Throwable cause;
+
+        /**
+         * Wraps an error.
+         *
+         * @param cause the error
+         */
+        Failure(Throwable cause) {
+            this.cause = cause;
+        }
+    }
+
+    /**
+     * Subscriber that turns the publisher's callbacks into signals for the
+     * thread writing the body.
+     */
+    private class Subscriber implements Flow.Subscriber<Object> {
+
+        @Override
+        public void onSubscribe(Flow.Subscription newSubscription) {
+            subscription = newSubscription;
+            if (cancelled) {
+                newSubscription.cancel();
+            } else {
+                newSubscription.request(1);
+            }
+        }
+
+        @Override
+        public void onNext(Object item) {
+            signals.add(item != null ? item : "");
+            firstSignal.complete(PublisherBody.this);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            signals.add(new Failure(error));
+            firstSignal.completeExceptionally(error);
+        }
+
+        @Override
+        public void onComplete() {
+            signals.add(COMPLETE);
+            firstSignal.complete(PublisherBody.this);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package co.edu.escuelaing.microserver.ioc;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import co.edu.escuelaing.microserver.http.QueryString;
+
+/**
+ * Bounded cache of the encoded responses of one @Cacheable endpoint.
+ * Lookups do not lock: entries live in a ConcurrentHashMap and hold a
+ * future, so when several requests miss the same key only the first one
+ * runs the handler and the others wait for its result. Entries expire a
+ * fixed time after they were computed; when the cache grows past its limit
+ * the expired entries and then the least recently used ones are evicted
+ * by a single thread while the others carry on. Failed computations are
+ * not cached.
+ */
+final class ResponseCache {
+
+    private final String[] keyParameters;
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Creates a cache.
+     *
+     * @param keyParameters the query parameters the response depends on
+     * @param ttlNanos      how long a computed response stays valid
+     * @param maxEntries    the number of keys to keep
+     */
+    ResponseCache(List<String> keyParameters, long ttlNanos, int maxEntries) {
+        this.keyParameters = keyParameters.toArray(new String[0]);
+        this.ttlNanos = ttlNanos;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Gets the cached response for a request, computing it if it is missing
+     * or expired.
+     *
+     * @param path   the request path
+     * @param query  the query string
+     * @param loader computes the encoded response
+     * @return the encoded response
+     * @throws Throwable whatever the loader throws
+     */
+    byte[] get(String path, QueryString query, Loader loader) throws Throwable {
+        String key = key(path, query);
+        long now = System.nanoTime();
+        Entry entry = entries.get(key);
+        if (entry != null && !entry.isExpired(now, ttlNanos)) {
+            hits.increment();
+            entry.lastAccess = now;
+            return entry.join();
+        }
+
+        Entry fresh = new Entry(now);
+        Entry current = entry == null ? entries.putIfAbsent(key, fresh)
+                : entries.replace(key, entry, fresh) ? null : entries.get(key);
+        if (current != null && current != fresh) {
+            hits.increment();
+            return current.join();
+        }
+
+        misses.increment();
+        byte[] response;
+        try {
+            response = loader.load();
+        } catch (Throwable e) {
+            entries.remove(key, fresh);
+            fresh.future.completeExceptionally(e);
+            throw e;
+        }
+        fresh.loadedAt = System.nanoTime();
+        fresh.future.complete(response);
+        if (entries.size() > maxEntries) {
+            evict();
+        }
+        return response;
+    }
+
+    /**
+     * Gets the current statistics.
+     *
+     * @return the snapshot
+     */
+    CacheStatistics getStatistics() {
+        return new CacheStatistics(hits.sum(), misses.sum(), evictions.sum(), entries.size());
+    }
+
+    /**
+     * Builds the key from the path and the values of the bound parameters.
+     *
+     * @param path  the request path
+     * @param query the query string
+     * @return the key
+     */
+    private String key(String path, QueryString query) {
+        if (keyParameters.length == 0) {
+            return path;
+        }
+        StringBuilder key = new StringBuilder(path);
+        for (String name : keyParameters) {
+            key.append('\0');
+            for (String value : query.getAll(name)) {
+                key.append(value).append('\1');
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Evicts expired entries, then the least recently used ones, until the
+     * cache is back to 90% of its limit. Only one thread evicts at a time.
+     */
+    private void evict() {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long now = System.nanoTime();
+            List<Map.Entry<String, Entry>> candidates = new ArrayList<>();
+            for (Map.Entry<String, Entry> candidate : entries.entrySet()) {
+                if (candidate.getValue().isExpired(now, ttlNanos)) {
+                    remove(candidate.getKey(), candidate.getValue());
+                } else if (candidate.getValue().future.isDone()) {
+                    candidates.add(candidate);
+                }
+            }
+
+            int target = maxEntries - maxEntries / 10;
+            if (entries.size() > target) {
+                candidates.sort(Comparator.comparingLong(candidate -> candidate.getValue().lastAccess - now));
+                for (int i = 0; i < candidates.size() && entries.size() > target; i++) {
+                    remove(candidates.get(i).getKey(), candidates.get(i).getValue());
+                }
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    /**
+     * Removes an entry if it was not replaced meanwhile.
+     *
+     * @param key   the key
+     * @param entry the entry
+     */
+    private void remove(String key, Entry entry) {
+        if (entries.remove(key, entry)) {
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Computes an encoded response.
+     */
+    @FunctionalInterface
+    interface Loader {
+
+        /**
+         * Computes the response.
+         *
+         * @return the encoded response
+         * @throws Throwable anything the handler throws
+         */
+        byte[] load() throws Throwable;
+    }
+
+    /**
+     * Cached response, possibly still being computed.
+     */
+    private static final class Entry {
+        private final CompletableFuture<byte[]> future = new CompletableFuture<>();
+        private volatile long loadedAt;
+        private volatile long lastAccess;
+
+        /**
+         * Creates an entry whose computation is starting.
+         *
+         * @param now the current time, from {@link System#nanoTime()}
+         */
+        Entry(long now) {
+            this.lastAccess = now;
+        }
+
+        /**
+         * Checks whether a computed response is too old. Entries still being
+         * computed never expire.
+         *
+         * @param now      the current time
+         * @param ttlNanos the time to live
+         * @return true if the entry must be recomputed
+         */
+        boolean isExpired(long now, long ttlNanos) {
+            return future.isDone() && now - loadedAt >= ttlNanos;
+        }
+
+        /**
+         * Waits for the response.
+         *
+         * @return the response
+         * @throws Throwable the failure of the computation
+         */
+        byte[] join() throws Throwable {
+            try {
+                return future.join();
+            } catch (CompletionException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package co.edu.escuelaing.microserver.ioc;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Result of routing a request path: the handler and where its path
+ * variables are in the path. Variables are decoded only when asked for.
+ *
+ * @param <T> the handler type
+ */
+final class RouteMatch<T> {
+
+    private final T handler;
+    private final String pattern;
+    private final String path;
+    private final int[] bounds;
+
+    /**
+     * Creates a match.
+     *
+     * @param handler the matched handler
+     * @param pattern the pattern of the matched route
+     * @param path    the request path
+     * @param bounds  start and end offsets of each variable in the path
+     */
+    RouteMatch(T handler, String pattern, String path, int[] bounds) {
+        this.handler = handler;
+        this.pattern = pattern;
+        this.path = path;
+        this.bounds = bounds;
+    }
+
+    /**
+     * Gets the matched handler.
+     *
+     * @return the handler
+     */
+    T getHandler() {
+        return handler;
+    }
+
+    /**
+     * Gets the pattern of the matched route.
+     *
+     * @return the route pattern
+     */
+    String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * Gets a path variable by position, percent-decoded as UTF-8.
+     *
+     * @param index the position of the variable in the route pattern
+     * @return the value
+     */
+    String getVariable(int index) {
+        return decode(path, bounds[index * 2], bounds[index * 2 + 1]);
+    }
+
+    /**
+     * Percent-decodes part of a path. Malformed escapes are kept as is.
+     *
+     * @param path  the path
+     * @param start the first character
+     * @param end   the end of the range, exclusive
+     * @return the decoded text
+     */
+    static String decode(String path, int start, int end) {
+        if (path.indexOf('%', start) < 0 || path.indexOf('%', start) >= end) {
+            return path.substring(start, end);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(end - start);
+        for (int i = start; i < end; i++) {
+            char c = path.charAt(i);
+            int high = i + 2 < end && c == '%' ? Character.digit(path.charAt(i + 1), 16) : -1;
+            int low = high >= 0 ? Character.digit(path.charAt(i + 2), 16) : -1;
+            if (low >= 0) {
+                bytes.write(high << 4 | low);
+                i += 2;
+            } else {
+                bytes.write(c);
+            }
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,291 @@
+package co.edu.escuelaing.microserver.ioc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Radix tree mapping path patterns to handlers.
+ * <p>
+ * Patterns are made of literal text, {@code {name}} variables that match
+ * one whole path segment, and an optional final wildcard that matches the
+ * rest of the path: {@code {*name}} captures it, {@code *} ignores it.
+ * Literal prefixes shared by routes are stored once, so matching walks the
+ * request path once and its cost depends on the path length, not on the
+ * number of routes.
+ * <p>
+ * When several routes match, a literal segment beats a variable and a
+ * variable beats a wildcard, segment by segment from the left. Routes with
+ * the same shape, such as {@code /users/{id}} and {@code /users/{name}},
+ * conflict and are rejected when they are added.
+ *
+ * @param <T> the handler type
+ */
+final class Router<T> {
+
+    private final Node<T> root = new Node<>("");
+    private int maxVariables;
+
+    /**
+     * Adds a route.
+     *
+     * @param pattern the path pattern
+     * @param handler the handler for matching paths
+     * @throws IllegalArgumentException if the pattern is malformed
+     * @throws IllegalStateException    if an equivalent route already exists
+     */
+    void add(String pattern, T handler) {
+        List<String> variables = variableNames(pattern);
+        Node<T> node = root;
+        int position = 0;
+        while (position < pattern.length()) {
+            int brace = pattern.indexOf('{', position);
+            int star = pattern.indexOf('*', position);
+            int special = brace < 0 ? star : star < 0 ? brace : Math.min(brace, star);
+            if (special < 0) {
+                node = insertLiteral(node, pattern.substring(position));
+                break;
+            }
+
+            node = insertLiteral(node, pattern.substring(position, special));
+            if (pattern.charAt(special) == '*' || pattern.startsWith("{*", special)) {
+                if (node.wildcard == null) {
+                    node.wildcard = new Node<>("");
+                }
+                node = node.wildcard;
+                break;
+            }
+            if (node.variable == null) {
+                node.variable = new Node<>("");
+            }
+            node = node.variable;
+            position = pattern.indexOf('}', special) + 1;
+        }
+
+        if (node.handler != null) {
+            throw new IllegalStateException("Route " + pattern + " conflicts with " + node.pattern);
+        }
+        node.handler = handler;
+        node.pattern = pattern;
+        maxVariables = Math.max(maxVariables, variables.size());
+    }
+
+    /**
+     * Finds the handler for a request path.
+     *
+     * @param path the request path
+     * @return the match, or null if no route matches
+     */
+    RouteMatch<T> match(String path) {
+        int[] bounds = new int[maxVariables * 2];
+        Node<T> node = match(root, path, 0, bounds, 0);
+        if (node == null) {
+            return null;
+        }
+        return new RouteMatch<>(node.handler, node.pattern, path, bounds);
+    }
+
+    /**
+     * Lists the variable names of a pattern in order and validates it.
+     *
+     * @param pattern the path pattern
+     * @return the variable names; a named wildcard is the last one
+     * @throws IllegalArgumentException if the pattern is malformed
+     */
+    static List<String> variableNames(String pattern) {
+        if (!pattern.startsWith("/")) {
+            throw new IllegalArgumentException("Route must start with '/': " + pattern);
+        }
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '}') {
+                throw new IllegalArgumentException("Unbalanced '}' in route " + pattern);
+            }
+            if (c != '{' && c != '*') {
+                continue;
+            }
+            if (pattern.charAt(i - 1) != '/') {
+                throw new IllegalArgumentException("Variables must span a whole segment: " + pattern);
+            }
+
+            boolean wildcard = c == '*' || pattern.startsWith("{*", i);
+            int end = c == '*' ? i + 1 : pattern.indexOf('}', i) + 1;
+            if (end == 0) {
+                throw new IllegalArgumentException("Unterminated variable in route " + pattern);
+            }
+            if (wildcard ? end != pattern.length() : end < pattern.length() && pattern.charAt(end) != '/') {
+                throw new IllegalArgumentException(wildcard
+                        ? "Wildcard must end the route: " + pattern
+                        : "Variables must span a whole segment: " + pattern);
+            }
+            if (c == '{') {
+                String name = pattern.substring(wildcard ? i + 2 : i + 1, end - 1);
+                if (name.isEmpty() || name.indexOf('{') >= 0 || name.indexOf('/') >= 0) {
+                    throw new IllegalArgumentException("Invalid variable name in route " + pattern);
+                }
+                if (names.contains(name)) {
+                    throw new IllegalArgumentException("Duplicate variable " + name + " in route " + pattern);
+                }
+                names.add(name);
+            }
+            i = end - 1;
+        }
+        return names;
+    }
+
+    /**
+     * Walks the tree depth first in priority order: literal children, then
+     * the variable child, then the wildcard.
+     *
+     * @param node     the node whose label has been consumed
+     * @param path     the request path
+     * @param position the next character to match
+     * @param bounds   start and end offsets of the captured variables
+     * @param captured the number of variables captured so far
+     * @return the matching node, or null
+     */
+    private Node<T> match(Node<T> node, String path, int position, int[] bounds, int captured) {
+        if (position == path.length() && node.handler != null) {
+            return node;
+        }
+
+        if (position < path.length()) {
+            Node<T> child = node.literalChild(path.charAt(position));
+            if (child != null && path.startsWith(child.label, position)) {
+                Node<T> found = match(child, path, position + child.label.length(), bounds, captured);
+                if (found != null) {
+                    return found;
+                }
+            }
+
+            if (node.variable != null) {
+                int end = path.indexOf('/', position);
+                if (end < 0) {
+                    end = path.length();
+                }
+                if (end > position) {
+                    bounds[captured * 2] = position;
+                    bounds[captured * 2 + 1] = end;
+                    Node<T> found = match(node.variable, path, end, bounds, captured + 1);
+                    if (found != null) {
+                        return found;
+                    }
+                }
+            }
+        }
+
+        if (node.wildcard != null) {
+            if (captured * 2 < bounds.length) {
+                bounds[captured * 2] = position;
+                bounds[captured * 2 + 1] = path.length();
+            }
+            return node.wildcard;
+        }
+        return null;
+    }
+
+    /**
+     * Inserts literal text below a node, splitting edges where the text
+     * diverges from an existing label.
+     *
+     * @param parent the node to insert below
+     * @param text   the literal text
+     * @return the node at the end of the text
+     */
+    private Node<T> insertLiteral(Node<T> parent, String text) {
+        Node<T> node = parent;
+        while (!text.isEmpty()) {
+            Node<T> child = node.literalChild(text.charAt(0));
+            if (child == null) {
+                child = new Node<>(text);
+                node.addLiteralChild(child);
+                return child;
+            }
+
+            int common = 0;
+            int limit = Math.min(child.label.length(), text.length());
+            while (common < limit && child.label.charAt(common) == text.charAt(common)) {
+                common++;
+            }
+            if (common < child.label.length()) {
+                Node<T> split = new Node<>(child.label.substring(0, common));
+                child.label = child.label.substring(common);
+                split.addLiteralChild(child);
+                node.replaceLiteralChild(split);
+                child = split;
+            }
+            node = child;
+            text = text.substring(common);
+        }
+        return node;
+    }
+
+    /**
+     * Tree node. Literal children are indexed by the first character of
+     * their label, which is unique among siblings.
+     *
+     * @param <T> the handler type
+     */
+    private static final class Node<T> {
+        private String label;
+        private char[] indices = new char[0];
+        private List<Node<T>> literals = new ArrayList<>(0);
+        private Node<T> variable;
+        private Node<T> wildcard;
+        private T handler;
+        private String pattern;
+
+        /**
+         * Creates a node.
+         *
+         * @param label the literal text consumed by the edge into this node
+         */
+        Node(String label) {
+            this.label = label;
+        }
+
+        /**
+         * Finds the literal child whose label starts with a character.
+         *
+         * @param first the first character
+         * @return the child, or null
+         */
+        Node<T> literalChild(char first) {
+            char[] keys = indices;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == first) {
+                    return literals.get(i);
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Adds a literal child.
+         *
+         * @param child the child
+         */
+        void addLiteralChild(Node<T> child) {
+            char[] keys = new char[indices.length + 1];
+            System.arraycopy(indices, 0, keys, 0, indices.length);
+            keys[indices.length] = child.label.charAt(0);
+            indices = keys;
+            literals.add(child);
+        }
+
+        /**
+         * Replaces the literal child starting with the same character.
+         *
+         * @param child the new child
+         */
+        void replaceLiteralChild(Node<T> child) {
+            char first = child.label.charAt(0);
+            for (int i = 0; i < indices.length; i++) {
+                if (indices[i] == first) {
+                    literals.set(i, child);
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -1,66 +1,191 @@
 package co.edu.escuelaing.microserver.ioc;
 
-import java.io.File;
 import java.lang.reflect.Method;
-import java.lang.reflect.Parameter;
-import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+import co.edu.escuelaing.microserver.annotations.Cacheable;
+import co.edu.escuelaing.microserver.annotations.Component;
+import co.edu.escuelaing.microserver.annotations.DeleteMapping;
 import co.edu.escuelaing.microserver.annotations.GetMapping;
-import co.edu.escuelaing.microserver.annotations.RequestParam;
+import co.edu.escuelaing.microserver.annotations.PostMapping;
+import co.edu.escuelaing.microserver.annotations.PutMapping;
 import co.edu.escuelaing.microserver.annotations.RestController;
+import co.edu.escuelaing.microserver.annotations.ScopeType;
+import co.edu.escuelaing.microserver.http.HttpRequest;
+import co.edu.escuelaing.microserver.http.HttpStatusException;
+import co.edu.escuelaing.microserver.http.QueryString;
+import co.edu.escuelaing.microserver.http.RateLimiter;
 import co.edu.escuelaing.microserver.http.RequestDispatcher;
+import co.edu.escuelaing.microserver.http.StreamingBody;
+import co.edu.escuelaing.microserver.template.View;
 
 /**
  * Simple IoC container that manages REST controllers and handles method
  * invocation.
- * Uses Java reflection to discover and register components.
+ * Uses Java reflection to discover and register components; handler
+ * methods are compiled into method handle invokers at registration time so
+ * dispatching a request involves no reflection. Paths are routed through a
+ * radix tree that supports path variables and wildcard suffixes; each
+ * route holds one handler per request method, and a path mapped only for
+ * other methods is answered with 405.
+ * Controllers and @Component classes are created by a {@link BeanContainer},
+ * which injects their dependencies through constructors and fields.
+ * Handlers may answer asynchronously with a CompletableFuture, which the
+ * server completes the request from, stream a Flow.Publisher, or return a
+ * template {@link View} that is rendered straight to the response bytes.
  */
 public class SimpleIoCContainer implements RequestDispatcher {
 
-    private final Map<String, ControllerMethod> mappings;
-    private final Map<Class<?>, Object> instances;
+    private final Router<Endpoint> router;
+    private final Map<String, Endpoint> endpoints;
+    private final BeanContainer beans;
+    private final Map<String, ResponseCache> caches;
+    private volatile Consumer<String> errorLog = System.err::println;
+    private volatile long asyncTimeoutMillis = 30000;
 
     /**
      * Creates a new IoC container.
      */
     public SimpleIoCContainer() {
-        this.mappings = new HashMap<>();
-        this.instances = new HashMap<>();
+        this.router = new Router<>();
+        this.endpoints = new HashMap<>();
+        this.beans = new BeanContainer();
+        this.caches = new ConcurrentHashMap<>();
     }
 
     /**
-     * Registers a controller class by analyzing its annotations.
+     * Registers a controller class by analyzing its annotations. Singleton
+     * controllers are created with their dependencies right away, unless
+     * they are @Lazy; other scopes get a fresh instance per request or call.
      *
      * @param controllerClass the controller class to register
-     * @throws Exception if registration fails
+     * @throws Exception if registration fails, including when a mapping
+     *                   conflicts with one registered before, a non-GET
+     *                   handler is @Cacheable or a dependency cannot be
+     *                   resolved
      */
     public void registerController(Class<?> controllerClass) throws Exception {
         if (!controllerClass.isAnnotationPresent(RestController.class)) {
             throw new IllegalArgumentException("Class must be annotated with @RestController");
         }
 
-        Object instance = controllerClass.getDeclaredConstructor().newInstance();
-        instances.put(controllerClass, instance);
+        BeanDefinition definition = beans.register(controllerClass);
+        Object instance = null;
+        if (definition.getScope() == ScopeType.SINGLETON && !definition.isLazy()) {
+            instance = beans.getBean(definition);
+        }
 
         Method[] methods = controllerClass.getDeclaredMethods();
         for (Method method : methods) {
-            if (method.isAnnotationPresent(GetMapping.class)) {
-                GetMapping mapping = method.getAnnotation(GetMapping.class);
-                String path = mapping.value();
-
-                ControllerMethod controllerMethod = new ControllerMethod(instance, method);
-                mappings.put(path, controllerMethod);
+            for (String requestMethod : Endpoint.METHODS) {
+                String path = mappedPath(method, requestMethod);
+                if (path == null) {
+                    continue;
+                }
+                if (!requestMethod.equals("GET") && method.isAnnotationPresent(Cacheable.class)) {
+                    throw new IllegalArgumentException("Only GET handlers can be @Cacheable: " + method.getName());
+                }
 
-                System.out.println("Registered mapping: " + path + " -> " +
-                        controllerClass.getSimpleName() + "." + method.getName());
+                List<String> variables = Router.variableNames(path);
+                HandlerInvoker invoker = instance != null
+                        ? new HandlerInvoker(instance, method, variables)
+                        : new HandlerInvoker(() -> beans.getBean(definition), method, variables);
+                registerMapping(requestMethod, path, invoker);
+                System.out.println("Registered mapping: " + requestMethod + " " + path + " -> "
+                        + invoker.getDescription());
             }
         }
     }
 
+    /**
+     * Reads the path a method is mapped to for one request method.
+     *
+     * @param method        the handler method
+     * @param requestMethod the request method, one of {@link Endpoint#METHODS}
+     * @return the path pattern, or null if the method is not mapped for it
+     */
+    private static String mappedPath(Method method, String requestMethod) {
+        switch (requestMethod) {
+            case "GET":
+                GetMapping get = method.getAnnotation(GetMapping.class);
+                return get != null ? get.value() : null;
+            case "POST":
+                PostMapping post = method.getAnnotation(PostMapping.class);
+                return post != null ? post.value() : null;
+            case "PUT":
+                PutMapping put = method.getAnnotation(PutMapping.class);
+                return put != null ? put.value() : null;
+            case "DELETE":
+                DeleteMapping delete = method.getAnnotation(DeleteMapping.class);
+                return delete != null ? delete.value() : null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Adds a compiled handler to the router. Handlers for different methods
+     * of the same pattern share its route.
+     *
+     * @param requestMethod the request method
+     * @param path          the path pattern
+     * @param invoker       the handler invoker
+     * @throws IllegalStateException if the method is already mapped for the
+     *                               pattern, or an equivalent pattern is
+     *                               already registered
+     */
+    void registerMapping(String requestMethod, String path, HandlerInvoker invoker) {
+        Endpoint endpoint = endpoints.get(path);
+        if (endpoint == null) {
+            endpoint = new Endpoint(path);
+            router.add(path, endpoint);
+            endpoints.put(path, endpoint);
+        }
+        endpoint.add(requestMethod, invoker);
+        if (invoker.getCache() != null) {
+            caches.put(path, invoker.getCache());
+        }
+    }
+
+    /**
+     * Sets where errors thrown by handlers are reported, such as the
+     * asynchronous server log, so a failing endpoint does not block its
+     * request threads on console output.
+     *
+     * @param errorLog receives one message per failed invocation
+     */
+    public void setErrorLog(Consumer<String> errorLog) {
+        this.errorLog = errorLog;
+    }
+
+    /**
+     * Sets how long a streamed Flow.Publisher may go without emitting when
+     * its handler has no @Timeout, normally the server's asynchronous
+     * timeout.
+     *
+     * @param asyncTimeoutMillis the timeout in milliseconds
+     * @throws IllegalArgumentException if the timeout is not positive
+     */
+    public void setAsyncTimeoutMillis(long asyncTimeoutMillis) {
+        if (asyncTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("asyncTimeoutMillis must be positive");
+        }
+        this.asyncTimeoutMillis = asyncTimeoutMillis;
+    }
+
     /**
      * Registers a controller by class name.
      *
@@ -73,164 +198,320 @@ public class SimpleIoCContainer implements RequestDispatcher {
     }
 
     /**
-     * Scans the classpath for classes annotated with @RestController and registers
-     * them.
+     * Registers a component that controllers and other components can have
+     * injected.
+     *
+     * @param componentClass the component class
+     * @throws IllegalArgumentException if the class is not a @Component
+     */
+    public void registerComponent(Class<?> componentClass) {
+        if (!componentClass.isAnnotationPresent(Component.class)) {
+            throw new IllegalArgumentException("Class must be annotated with @Component");
+        }
+        beans.register(componentClass);
+    }
+
+    /**
+     * Gets a component or controller by type, creating it if its scope
+     * requires it.
+     *
+     * @param type the type to look up
+     * @param <T>  the type
+     * @return the instance
+     * @throws IllegalStateException if no single component has the type
+     */
+    public <T> T getBean(Class<T> type) {
+        return beans.getBean(type);
+    }
+
+    /**
+     * Scans the classpath for classes annotated with @Component and
+     * @RestController and registers them. Classpath roots with a compile-time
+     * component index are not scanned at all; in the others, class files are
+     * inspected without loading them, so only the components are loaded and
+     * initialized. The dependency graph is resolved and the eager singletons
+     * are created in parallel before the routes are registered.
      *
      * @param packageName the package to scan
      * @throws Exception if scanning fails
      */
     public void scanAndRegisterControllers(String packageName) throws Exception {
-        List<Class<?>> classes = findClassesInPackage(packageName);
-
-        for (Class<?> clazz : classes) {
-            if (clazz.isAnnotationPresent(RestController.class)) {
-                registerController(clazz);
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        List<Class<?>> controllers = new ArrayList<>();
+        for (String className : new ComponentScanner(classLoader).findComponents(packageName)) {
+            Class<?> type = Class.forName(className, true, classLoader);
+            beans.register(type);
+            if (type.isAnnotationPresent(RestController.class)) {
+                controllers.add(type);
             }
         }
+
+        beans.initialize();
+        for (Class<?> controller : controllers) {
+            registerController(controller);
+        }
     }
 
     /**
-     * Finds all classes in a package using reflection.
+     * Dispatches a GET request and renders the result as a String, waiting
+     * for asynchronous handlers to complete.
      *
-     * @param packageName the package name to scan
-     * @return list of classes found
-     * @throws Exception if scanning fails
+     * @param path        the request path
+     * @param queryParams the query parameters
+     * @return the response content, or null if no handler found
+     * @throws HttpStatusException if an argument is missing or malformed, or
+     *                             with 405 if the path has no GET handler
      */
-    private List<Class<?>> findClassesInPackage(String packageName) throws Exception {
-        List<Class<?>> classes = new ArrayList<>();
-        String path = packageName.replace('.', '/');
-
-        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
-        URL resource = classLoader.getResource(path);
-
-        if (resource != null) {
-            File directory = new File(resource.getFile());
-            if (directory.exists()) {
-                findClassesInDirectory(directory, packageName, classes);
+    @Override
+    public String dispatch(String path, Map<String, String> queryParams) {
+        Object result = invoke(path, QueryString.of(queryParams));
+        if (result instanceof CompletionStage) {
+            try {
+                result = ((CompletionStage<?>) result).toCompletableFuture().join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof HttpStatusException) {
+                    throw (HttpStatusException) e.getCause();
+                }
+                return "Internal Server Error";
             }
         }
+        if (result instanceof byte[]) {
+            return new String((byte[]) result, StandardCharsets.UTF_8);
+        }
+        return result != null ? result.toString() : null;
+    }
 
-        return classes;
+    /**
+     * Dispatches a request and labels it with the pattern of the route that
+     * matched, so its metrics are grouped per endpoint rather than per path.
+     *
+     * @param request the parsed request
+     * @return the response content, or null if no handler found
+     * @throws HttpStatusException if an argument is missing or malformed, or
+     *                             with 405 if the path is mapped for other
+     *                             methods only
+     */
+    @Override
+    public Object dispatchRequest(HttpRequest request) {
+        RouteMatch<Endpoint> route = router.match(request.getPath());
+        if (route == null) {
+            return null;
+        }
+        request.setRoute(route.getPattern());
+        HandlerInvoker invoker = route.getHandler().get(request);
+        if (invoker == null) {
+            throw new HttpStatusException(405, "Method not allowed");
+        }
+        return invoke(invoker, route, request.getPath(), request.getQuery(), request);
     }
 
     /**
-     * Recursively finds classes in a directory.
+     * Appends the statistics of every @Cacheable endpoint, labelled by its
+     * route pattern.
      *
-     * @param directory   the directory to search
-     * @param packageName the package name
-     * @param classes     the list to add found classes to
-     * @throws Exception if class loading fails
+     * @param out the exposition text being built
      */
-    private void findClassesInDirectory(File directory, String packageName, List<Class<?>> classes) throws Exception {
-        if (!directory.exists()) {
+    @Override
+    public void writeMetrics(StringBuilder out) {
+        if (caches.isEmpty()) {
             return;
         }
+        Map<String, CacheStatistics> statistics = new TreeMap<>();
+        for (Map.Entry<String, ResponseCache> cache : caches.entrySet()) {
+            statistics.put(cache.getKey(), cache.getValue().getStatistics());
+        }
 
-        File[] files = directory.listFiles();
-        if (files == null) {
-            return;
+        writeCacheMetric(out, "microserver_cache_hits_total", "counter", "Responses served from the cache.");
+        for (Map.Entry<String, CacheStatistics> entry : statistics.entrySet()) {
+            writeCacheSample(out, "microserver_cache_hits_total", entry.getKey(), entry.getValue().getHits());
+        }
+        writeCacheMetric(out, "microserver_cache_misses_total", "counter", "Responses the handler had to produce.");
+        for (Map.Entry<String, CacheStatistics> entry : statistics.entrySet()) {
+            writeCacheSample(out, "microserver_cache_misses_total", entry.getKey(), entry.getValue().getMisses());
         }
+        writeCacheMetric(out, "microserver_cache_evictions_total", "counter", "Entries evicted to stay in bounds.");
+        for (Map.Entry<String, CacheStatistics> entry : statistics.entrySet()) {
+            writeCacheSample(out, "microserver_cache_evictions_total", entry.getKey(),
+                    entry.getValue().getEvictions());
+        }
+        writeCacheMetric(out, "microserver_cache_entries", "gauge", "Responses currently cached.");
+        for (Map.Entry<String, CacheStatistics> entry : statistics.entrySet()) {
+            writeCacheSample(out, "microserver_cache_entries", entry.getKey(), entry.getValue().getSize());
+        }
+    }
 
-        for (File file : files) {
-            if (file.isDirectory()) {
-                findClassesInDirectory(file, packageName + "." + file.getName(), classes);
-            } else if (file.getName().endsWith(".class")) {
-                String className = packageName + "." + file.getName().substring(0, file.getName().length() - 6);
-                try {
-                    Class<?> clazz = Class.forName(className);
-                    classes.add(clazz);
-                } catch (ClassNotFoundException e) {
-                }
-            }
+    /**
+     * Gets the hit and miss counts of all @Cacheable endpoints.
+     *
+     * @return the combined statistics
+     */
+    public CacheStatistics getCacheStatistics() {
+        CacheStatistics total = new CacheStatistics(0, 0, 0, 0);
+        for (ResponseCache cache : caches.values()) {
+            total = total.plus(cache.getStatistics());
         }
+        return total;
     }
 
-    @Override
-    public String dispatch(String path, Map<String, String> queryParams) {
-        ControllerMethod controllerMethod = mappings.get(path);
-        if (controllerMethod == null) {
+    /**
+     * Invokes the controller mapped to a path. Streaming bodies and futures
+     * are passed through, publishers are adapted to streaming bodies and
+     * template views are rendered to UTF-8 bytes; responses of @Cacheable
+     * handlers are returned as cached UTF-8 bytes and any other result is
+     * converted to a String.
+     * Binding failures are rethrown so the server can answer with their
+     * status code.
+     *
+     * @param path  the request path
+     * @param query the query string
+     * @return the response content, or null if no handler found
+     * @throws HttpStatusException if an argument is missing or malformed, or
+     *                             with 405 if the path has no GET handler
+     */
+    private Object invoke(String path, QueryString query) {
+        RouteMatch<Endpoint> route = router.match(path);
+        if (route == null) {
             return null;
         }
+        HandlerInvoker invoker = route.getHandler().get("GET");
+        if (invoker == null) {
+            throw new HttpStatusException(405, "Method not allowed");
+        }
+        return invoke(invoker, route, path, query, null);
+    }
 
+    /**
+     * Invokes the controller of a matched route.
+     *
+     * @param invoker the handler for the request method
+     * @param route   the matched route
+     * @param path    the request path
+     * @param query   the query string
+     * @param request the request, or null when dispatched without one
+     * @return the response content
+     * @throws HttpStatusException if an argument is missing or malformed, or
+     *                             with 429 if the route's rate limit is exceeded
+     */
+    private Object invoke(HandlerInvoker invoker, RouteMatch<Endpoint> route, String path, QueryString query,
+            HttpRequest request) {
+        String client = request != null ? request.getRemoteAddress() : null;
+        long wait = invoker.tryAcquire(client);
+        if (wait > 0) {
+            throw new HttpStatusException(429, "Rate limit exceeded", RateLimiter.retryAfterSeconds(wait));
+        }
+        boolean requestScope = beans.beginRequest();
         try {
-            Object result = invokeMethod(controllerMethod, queryParams);
+            InvocationContext context = new InvocationContext(query, route, request);
+            ResponseCache cache = invoker.getCache();
+            if (cache != null) {
+                return cache.get(path, query, () -> encode(invoker.invoke(context)));
+            }
+            Object result = invoker.invoke(context);
+            if (result instanceof StreamingBody) {
+                return result;
+            }
+            if (result instanceof CompletionStage) {
+                return watch(invoker, (CompletionStage<?>) result);
+            }
+            if (result instanceof Flow.Publisher) {
+                return stream(invoker, (Flow.Publisher<?>) result);
+            }
+            if (result instanceof View) {
+                return ((View) result).render();
+            }
             return result != null ? result.toString() : "";
-        } catch (Exception e) {
-            System.err.println("Error invoking method: " + e.getMessage());
+        } catch (HttpStatusException e) {
+            throw e;
+        } catch (Throwable e) {
+            errorLog.accept("Error invoking method " + invoker.getDescription() + ": " + e);
             return "Internal Server Error";
+        } finally {
+            if (requestScope) {
+                beans.endRequest();
+            }
         }
     }
 
     /**
-     * Invokes a controller method with proper parameter binding.
+     * Subscribes to the publisher a handler returned. The response waits
+     * for its first item, up to the handler's @Timeout or else the
+     * asynchronous timeout, so a silent publisher is answered with 504;
+     * the same timeout then bounds the wait for each further item.
      *
-     * @param controllerMethod the method to invoke
-     * @param queryParams      the query parameters
-     * @return the method result
-     * @throws Exception if invocation fails
+     * @param invoker   the handler invoker
+     * @param publisher the publisher the handler returned
+     * @return the future of the streaming body
      */
-    private Object invokeMethod(ControllerMethod controllerMethod, Map<String, String> queryParams) throws Exception {
-        Method method = controllerMethod.getMethod();
-        Object instance = controllerMethod.getInstance();
-
-        Parameter[] parameters = method.getParameters();
-        Object[] args = new Object[parameters.length];
-
-        for (int i = 0; i < parameters.length; i++) {
-            Parameter param = parameters[i];
-            if (param.isAnnotationPresent(RequestParam.class)) {
-                RequestParam requestParam = param.getAnnotation(RequestParam.class);
-                String paramName = requestParam.value();
-                String defaultValue = requestParam.defaultValue();
-
-                String value = queryParams.get(paramName);
-                if (value == null && !defaultValue.isEmpty()) {
-                    value = defaultValue;
-                }
-
-                args[i] = value;
-            } else {
-                args[i] = null;
+    private CompletableFuture<?> stream(HandlerInvoker invoker, Flow.Publisher<?> publisher) {
+        long timeoutMillis = invoker.getTimeoutMillis() > 0 ? invoker.getTimeoutMillis() : asyncTimeoutMillis;
+        PublisherBody body = new PublisherBody(publisher, timeoutMillis);
+        CompletableFuture<StreamingBody> first = body.start().orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+        first.whenComplete((value, error) -> {
+            if (error != null) {
+                body.cancel();
             }
-        }
-
-        return method.invoke(instance, args);
+        });
+        return watch(invoker, first);
     }
 
     /**
-     * Inner class to hold controller method information.
+     * Applies the @Timeout of a handler to its future and reports the
+     * errors it completes with. The timeout is applied to a copy, so the
+     * handler's own future is left untouched.
+     *
+     * @param invoker the handler invoker
+     * @param result  the future the handler returned
+     * @return the future the server waits for
      */
-    private static class ControllerMethod {
-        private final Object instance;
-        private final Method method;
-
-        /**
-         * Creates a new controller method.
-         *
-         * @param instance the controller instance
-         * @param method   the method to invoke
-         */
-        public ControllerMethod(Object instance, Method method) {
-            this.instance = instance;
-            this.method = method;
+    private CompletableFuture<?> watch(HandlerInvoker invoker, CompletionStage<?> result) {
+        CompletableFuture<?> future = result.toCompletableFuture();
+        if (invoker.getTimeoutMillis() > 0) {
+            future = future.copy().orTimeout(invoker.getTimeoutMillis(), TimeUnit.MILLISECONDS);
         }
+        return future.whenComplete((value, error) -> {
+            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+            if (cause != null && !(cause instanceof HttpStatusException) && !(cause instanceof TimeoutException)) {
+                errorLog.accept("Error completing " + invoker.getDescription() + ": " + cause);
+            }
+        });
+    }
 
-        /**
-         * Gets the controller instance.
-         *
-         * @return the instance
-         */
-        public Object getInstance() {
-            return instance;
-        }
+    /**
+     * Writes the HELP and TYPE lines of a cache metric.
+     *
+     * @param out  the exposition text being built
+     * @param name the metric name
+     * @param type the metric type
+     * @param help the description
+     */
+    private static void writeCacheMetric(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    /**
+     * Writes one sample of a cache metric.
+     *
+     * @param out   the exposition text being built
+     * @param name  the metric name
+     * @param route the route pattern of the cached endpoint
+     * @param value the value
+     */
+    private static void writeCacheSample(StringBuilder out, String name, String route, long value) {
+        out.append(name).append("{route=\"").append(route.replace("\\", "\\\\").replace("\"", "\\\""))
+                .append("\"} ").append(value).append('\n');
+    }
 
-        /**
-         * Gets the method to invoke.
-         *
-         * @return the method
-         */
-        public Method getMethod() {
-            return method;
+    /**
+     * Encodes a handler result for the response cache.
+     *
+     * @param result the handler result
+     * @return the rendered view, or the UTF-8 bytes of its String form
+     */
+    private static byte[] encode(Object result) {
+        if (result instanceof View) {
+            return ((View) result).render();
         }
+        return (result != null ? result.toString() : "").getBytes(StandardCharsets.UTF_8);
     }
 }
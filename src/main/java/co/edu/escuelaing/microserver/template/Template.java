@@ -0,0 +1,277 @@
+package co.edu.escuelaing.microserver.template;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HTML template compiled once into the UTF-8 bytes of its static text and
+ * the names of the slots between them. A slot is written {@code {{name}}}
+ * and is replaced by the model value of that name, HTML-escaped so that it
+ * is safe in element text and in quoted attribute values alike.
+ * Rendering measures the output first and then fills a single array: the
+ * static segments are copied as they are and the values are escaped and
+ * encoded straight into it, so a page is never assembled as a String and
+ * its static text is never encoded again.
+ * Templates are immutable and can be rendered by any number of threads.
+ */
+public final class Template {
+
+    private final String name;
+    private final byte[][] segments;
+    private final String[] slots;
+    private final int staticLength;
+
+    /**
+     * Creates a compiled template.
+     *
+     * @param name     the name used in error messages
+     * @param segments the encoded static text, one more than there are slots
+     * @param slots    the slot names, in order
+     */
+    private Template(String name, byte[][] segments, String[] slots) {
+        this.name = name;
+        this.segments = segments;
+        this.slots = slots;
+        int length = 0;
+        for (byte[] segment : segments) {
+            length += segment.length;
+        }
+        this.staticLength = length;
+    }
+
+    /**
+     * Loads and compiles a template from the classpath, typically into a
+     * static field of the controller using it, so it is compiled when the
+     * controller is registered rather than on a request.
+     *
+     * @param resource the resource path, e.g. {@code templates/index.html}
+     * @return the compiled template
+     * @throws IllegalArgumentException if the resource does not exist or
+     *                                  the template is malformed
+     * @throws UncheckedIOException     if the resource cannot be read
+     */
+    public static Template load(String resource) {
+        try (InputStream in = Template.class.getClassLoader().getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IllegalArgumentException("Template not found: " + resource);
+            }
+            return compile(resource, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read template " + resource, e);
+        }
+    }
+
+    /**
+     * Compiles template source.
+     *
+     * @param name   the name used in error messages
+     * @param source the template text
+     * @return the compiled template
+     * @throws IllegalArgumentException if a slot is unclosed or its name is
+     *                                  not made of letters, digits, '_' and '.'
+     */
+    public static Template compile(String name, String source) {
+        List<byte[]> segments = new ArrayList<>();
+        List<String> slots = new ArrayList<>();
+        int position = 0;
+        int open;
+        while ((open = source.indexOf("{{", position)) >= 0) {
+            int close = source.indexOf("}}", open + 2);
+            if (close < 0) {
+                throw new IllegalArgumentException(name + ": unclosed slot at offset " + open);
+            }
+            String slot = source.substring(open + 2, close).trim();
+            if (!isSlotName(slot)) {
+                throw new IllegalArgumentException(name + ": invalid slot name '" + slot + "' at offset " + open);
+            }
+            segments.add(source.substring(position, open).getBytes(StandardCharsets.UTF_8));
+            slots.add(slot);
+            position = close + 2;
+        }
+        segments.add(source.substring(position).getBytes(StandardCharsets.UTF_8));
+        return new Template(name, segments.toArray(new byte[0][]), slots.toArray(new String[0]));
+    }
+
+    /**
+     * Gets the name of the template.
+     *
+     * @return the resource path or the name given when compiling
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Pairs the template with a model, for a handler to return. The model
+     * is read when the view is rendered.
+     *
+     * @param model the slot values by name
+     * @return the view
+     */
+    public View with(Map<String, ?> model) {
+        return new View(this, model);
+    }
+
+    /**
+     * Renders the template into a new array holding exactly the page.
+     *
+     * @param model the slot values by name; null values render as nothing
+     * @return the UTF-8 bytes of the page
+     * @throws IllegalArgumentException if the model has no entry for a slot
+     */
+    public byte[] render(Map<String, ?> model) {
+        String[] values = new String[slots.length];
+        int length = staticLength;
+        for (int i = 0; i < slots.length; i++) {
+            values[i] = value(model, slots[i]);
+            length += escapedLength(values[i]);
+        }
+
+        byte[] page = new byte[length];
+        int position = 0;
+        for (int i = 0; i < slots.length; i++) {
+            System.arraycopy(segments[i], 0, page, position, segments[i].length);
+            position = escape(values[i], page, position + segments[i].length);
+        }
+        byte[] last = segments[slots.length];
+        System.arraycopy(last, 0, page, position, last.length);
+        return page;
+    }
+
+    /**
+     * Looks the value of a slot up in the model.
+     *
+     * @param model the model
+     * @param slot  the slot name
+     * @return the text of the value
+     * @throws IllegalArgumentException if the model has no such entry
+     */
+    private String value(Map<String, ?> model, String slot) {
+        Object value = model.get(slot);
+        if (value == null) {
+            if (!model.containsKey(slot)) {
+                throw new IllegalArgumentException(name + ": no value for slot '" + slot + "'");
+            }
+            return "";
+        }
+        return value.toString();
+    }
+
+    /**
+     * Checks that a slot name is not empty and only has letters, digits,
+     * '_' and '.'.
+     *
+     * @param slot the trimmed text between the braces
+     * @return true if it is a valid name
+     */
+    private static boolean isSlotName(String slot) {
+        if (slot.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < slot.length(); i++) {
+            char c = slot.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '_' && c != '.') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Measures a value once escaped and encoded as UTF-8. A surrogate
+     * without its pair is encoded as '?', as {@link String#getBytes} does.
+     *
+     * @param text the value
+     * @return its length in bytes
+     */
+    private static int escapedLength(String text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            String entity = entity(c);
+            if (entity != null) {
+                length += entity.length();
+            } else if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Escapes a value and encodes it as UTF-8 into the page.
+     *
+     * @param text     the value
+     * @param page     the page being rendered, sized by {@link #escapedLength}
+     * @param position where the value starts
+     * @return where the value ends
+     */
+    private static int escape(String text, byte[] page, int position) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            String entity = entity(c);
+            if (entity != null) {
+                for (int j = 0; j < entity.length(); j++) {
+                    page[position++] = (byte) entity.charAt(j);
+                }
+            } else if (c < 0x80) {
+                page[position++] = (byte) c;
+            } else if (c < 0x800) {
+                page[position++] = (byte) (0xc0 | c >> 6);
+                page[position++] = (byte) (0x80 | c & 0x3f);
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                page[position++] = (byte) (0xf0 | codePoint >> 18);
+                page[position++] = (byte) (0x80 | codePoint >> 12 & 0x3f);
+                page[position++] = (byte) (0x80 | codePoint >> 6 & 0x3f);
+                page[position++] = (byte) (0x80 | codePoint & 0x3f);
+            } else if (Character.isSurrogate(c)) {
+                page[position++] = '?';
+            } else {
+                page[position++] = (byte) (0xe0 | c >> 12);
+                page[position++] = (byte) (0x80 | c >> 6 & 0x3f);
+                page[position++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Gets the HTML entity replacing a character.
+     *
+     * @param c the character
+     * @return the entity, or null if the character is written as it is
+     */
+    private static String entity(char c) {
+        switch (c) {
+            case '&':
+                return "&amp;";
+            case '<':
+                return "&lt;";
+            case '>':
+                return "&gt;";
+            case '"':
+                return "&quot;";
+            case '\'':
+                return "&#39;";
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package co.edu.escuelaing.microserver.template;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * A {@link Template} paired with the model to render it with. Handlers
+ * return one instead of building the page themselves; the container
+ * renders it straight into the bytes of the response body.
+ */
+public final class View {
+
+    private final Template template;
+    private final Map<String, ?> model;
+
+    /**
+     * Creates a view. Use {@link Template#with(Map)}.
+     *
+     * @param template the template
+     * @param model    the slot values by name
+     */
+    View(Template template, Map<String, ?> model) {
+        if (model == null) {
+            throw new IllegalArgumentException("model must not be null");
+        }
+        this.template = template;
+        this.model = model;
+    }
+
+    /**
+     * Gets the template.
+     *
+     * @return the template
+     */
+    public Template getTemplate() {
+        return template;
+    }
+
+    /**
+     * Gets the model.
+     *
+     * @return the slot values by name
+     */
+    public Map<String, ?> getModel() {
+        return model;
+    }
+
+    /**
+     * Renders the page.
+     *
+     * @return the UTF-8 bytes of the page
+     * @throws IllegalArgumentException if the model has no entry for a slot
+     */
+    public byte[] render() {
+        return template.render(model);
+    }
+
+    /**
+     * Renders the page as text, for callers that need a String.
+     *
+     * @return the page
+     */
+    @Override
+    public String toString() {
+        return new String(render(), StandardCharsets.UTF_8);
+    }
+}
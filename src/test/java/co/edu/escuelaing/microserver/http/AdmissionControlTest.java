@@ -0,0 +1,92 @@
+package co.edu.escuelaing.microserver.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Unit tests for the rate limiter and the adaptive concurrency limiter.
+ */
+public class AdmissionControlTest {
+
+    /**
+     * Tests that a key may send its burst at once, is then told how long to
+     * wait, and that keys do not share buckets.
+     */
+    @Test
+    public void testRateLimiterAllowsBurstPerKey() {
+        RateLimiter limiter = new RateLimiter(1, 3, 100);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, limiter.tryAcquire("10.0.0.1"));
+        }
+        long wait = limiter.tryAcquire("10.0.0.1");
+        assertTrue("expected a wait of about a second, got " + wait, wait > 900_000_000L && wait <= 1_000_000_000L);
+        assertEquals(1, RateLimiter.retryAfterSeconds(wait));
+        assertEquals(0, limiter.tryAcquire("10.0.0.2"));
+    }
+
+    /**
+     * Tests that the permits refill at the configured rate.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Test
+    public void testRateLimiterRefills() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(5, 1, 100);
+        assertEquals(0, limiter.tryAcquire("client"));
+        assertTrue(limiter.tryAcquire("client") > 0);
+        Thread.sleep(250);
+        assertEquals(0, limiter.tryAcquire("client"));
+    }
+
+    /**
+     * Tests that refilled buckets are swept once the key bound is reached
+     * and that new keys share an overflow bucket while it stays full.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Test
+    public void testRateLimiterBoundsKeys() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(1000, 1, 4);
+        for (int i = 0; i < 4; i++) {
+            limiter.tryAcquire("client-" + i);
+        }
+        assertEquals(4, limiter.size());
+        Thread.sleep(1100);
+        assertEquals(0, limiter.tryAcquire("client-4"));
+        assertEquals(1, limiter.size());
+    }
+
+    /**
+     * Tests that the concurrency limit admits up to its value, backs off
+     * when latency jumps and grows again while latency is steady.
+     */
+    @Test
+    public void testConcurrencyLimiterAdapts() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 16);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+        assertFalse(limiter.tryAcquire());
+        assertEquals(4, limiter.getInFlight());
+
+        for (int i = 0; i < 4; i++) {
+            limiter.release(1_000_000);
+        }
+        for (int round = 0; round < 200; round++) {
+            while (limiter.tryAcquire()) {
+                // Fill the limit so it is in use.
+            }
+            int admitted = limiter.getInFlight();
+            for (int i = 0; i < admitted; i++) {
+                limiter.release(1_000_000);
+            }
+        }
+        assertEquals(16, limiter.getLimit());
+
+        assertTrue(limiter.tryAcquire());
+        limiter.release(50_000_000);
+        assertEquals(14, limiter.getLimit());
+    }
+}
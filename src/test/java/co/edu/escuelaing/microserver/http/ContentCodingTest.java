@@ -0,0 +1,37 @@
+package co.edu.escuelaing.microserver.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Unit tests for Accept-Encoding negotiation.
+ */
+public class ContentCodingTest {
+
+    /**
+     * Tests that q-values decide the coding and gzip wins ties.
+     */
+    @Test
+    public void testNegotiatesByQuality() {
+        assertEquals("gzip", ContentCoding.negotiate("gzip, deflate, br"));
+        assertEquals("deflate", ContentCoding.negotiate("gzip;q=0.2, deflate;q=0.9"));
+        assertEquals("gzip", ContentCoding.negotiate("*"));
+        assertEquals("deflate", ContentCoding.negotiate("gzip;q=0, *;q=0.5"));
+        assertNull(ContentCoding.negotiate("br, identity"));
+        assertNull(ContentCoding.negotiate("gzip;q=0"));
+        assertNull(ContentCoding.negotiate(null));
+    }
+
+    /**
+     * Tests which content types are worth compressing.
+     */
+    @Test
+    public void testDetectsCompressibleTypes() {
+        assertTrue(ContentCoding.isCompressible("text/html; charset=UTF-8"));
+        assertTrue(ContentCoding.isCompressible("application/javascript"));
+        assertFalse(ContentCoding.isCompressible("image/png"));
+    }
+}
@@ -0,0 +1,139 @@
+package co.edu.escuelaing.microserver.http;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ * Unit tests for HPACK header compression, checked against the examples
+ * of RFC 7541, appendix C.
+ */
+public class HpackTest {
+
+    /**
+     * Tests that the Huffman-coded request examples decode in sequence,
+     * each block relying on the entries the previous ones added.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testDecodesRequestExamples() throws Exception {
+        HpackDecoder decoder = new HpackDecoder(4096, 8192);
+        assertEquals(List.of(":method", "GET", ":scheme", "http", ":path", "/", ":authority", "www.example.com"),
+                decode(decoder, "828684418cf1e3c2e5f23a6ba0ab90f4ff"));
+        assertEquals(List.of(":method", "GET", ":scheme", "http", ":path", "/", ":authority", "www.example.com",
+                "cache-control", "no-cache"), decode(decoder, "828684be5886a8eb10649cbf"));
+        assertEquals(List.of(":method", "GET", ":scheme", "https", ":path", "/index.html",
+                ":authority", "www.example.com", "custom-key", "custom-value"),
+                decode(decoder, "828785bf408825a849e95ba97d7f8925a849e95bb8e8b4bf"));
+    }
+
+    /**
+     * Tests that the response examples evict the oldest entries once the
+     * 256-byte table is full, so that later indexes resolve to the newer
+     * fields.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testEvictsOldestEntries() throws Exception {
+        HpackDecoder decoder = new HpackDecoder(256, 8192);
+        assertEquals(List.of(":status", "302", "cache-control", "private",
+                "date", "Mon, 21 Oct 2013 20:13:21 GMT", "location", "https://www.example.com"),
+                decode(decoder, "488264025885aec3771a4b6196d07abe941054d444a8200595040b8166e082a62d1bff"
+                        + "6e919d29ad171863c78f0b97c8e9ae82ae43d3"));
+        assertEquals(List.of(":status", "307", "cache-control", "private",
+                "date", "Mon, 21 Oct 2013 20:13:21 GMT", "location", "https://www.example.com"),
+                decode(decoder, "4883640effc1c0bf"));
+    }
+
+    /**
+     * Tests that encoded responses decode back to the same fields, and
+     * that a repeated response is shorter once the table holds its fields.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testEncodesResponses() throws Exception {
+        HpackEncoder encoder = new HpackEncoder();
+        HpackDecoder decoder = new HpackDecoder(4096, 8192);
+        List<String> fields = List.of("content-type", "text/html; charset=utf-8", "content-length", "1234",
+                "x-custom", "Value With Spaces");
+        List<String> expected = List.of(":status", "200", "content-type", "text/html; charset=utf-8",
+                "content-length", "1234", "x-custom", "Value With Spaces");
+
+        int first = encoder.encode(200, fields);
+        assertEquals(expected, decoder.decode(encoder.getBlock(), 0, first));
+        int second = encoder.encode(200, fields);
+        assertEquals(expected, decoder.decode(encoder.getBlock(), 0, second));
+        assertTrue(second < first);
+
+        encoder.setMaxTableSize(0);
+        int third = encoder.encode(404, fields);
+        assertEquals(":status", decoder.decode(encoder.getBlock(), 0, third).get(0));
+    }
+
+    /**
+     * Tests that Huffman coding round-trips every octet and that padding
+     * other than the end-of-string prefix is refused.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testHuffmanRoundTrip() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (char c = 0; c < 256; c++) {
+            text.append(c);
+        }
+        byte[] encoded = new byte[Huffman.encodedLength(text.toString())];
+        assertEquals(encoded.length, Huffman.encode(text.toString(), encoded, 0));
+        assertEquals(text.toString(), Huffman.decode(encoded, 0, encoded.length));
+
+        try {
+            Huffman.decode(new byte[] {(byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff}, 0, 4);
+            fail("Expected a compression error");
+        } catch (Http2Exception e) {
+            assertEquals(Http2Exception.COMPRESSION_ERROR, e.getErrorCode());
+        }
+    }
+
+    /**
+     * Tests that blocks over the header list limit are refused without
+     * failing, and malformed blocks fail with a compression error.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testRejectsOversizedAndMalformedBlocks() throws Exception {
+        HpackDecoder decoder = new HpackDecoder(4096, 100);
+        assertNull(decode(decoder, "828684418cf1e3c2e5f23a6ba0ab90f4ff"));
+        for (String block : new String[] {"ff", "c0", "4188f1e3", "3fe21f"}) {
+            try {
+                decode(new HpackDecoder(4096, 8192), block);
+                fail("Expected a compression error for " + block);
+            } catch (Http2Exception e) {
+                assertEquals(Http2Exception.COMPRESSION_ERROR, e.getErrorCode());
+            }
+        }
+    }
+
+    /**
+     * Decodes a header block given in hexadecimal.
+     *
+     * @param decoder the decoder
+     * @param hex     the block
+     * @return the decoded fields, or null if over the list limit
+     * @throws Http2Exception if the block is malformed
+     */
+    private static List<String> decode(HpackDecoder decoder, String hex) throws Http2Exception {
+        byte[] block = new byte[hex.length() / 2];
+        for (int i = 0; i < block.length; i++) {
+            block[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return decoder.decode(block, 0, block.length);
+    }
+}
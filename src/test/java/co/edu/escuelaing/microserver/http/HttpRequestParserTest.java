@@ -0,0 +1,172 @@
+package co.edu.escuelaing.microserver.http;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for the HttpRequestParser.
+ */
+public class HttpRequestParserTest {
+
+    private HttpRequestParser parser;
+    private HttpRequest request;
+
+    /**
+     * Sets up the test environment.
+     */
+    @Before
+    public void setUp() {
+        parser = new HttpRequestParser(64, 128, 4);
+        request = new HttpRequest();
+    }
+
+    /**
+     * Tests parsing of the request line, query string and headers.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testParsesRequestHead() throws Exception {
+        byte[] bytes = bytes("GET /greeting?name=Test&x=1 HTTP/1.1\r\nHost: localhost\r\nConnection:  close \r\n\r\n");
+
+        int headEnd = parser.findHeadEnd(bytes, 0, 0, bytes.length);
+        assertEquals(bytes.length, headEnd);
+
+        parser.parseHead(bytes, 0, headEnd, request);
+        assertEquals("GET", request.getMethod());
+        assertEquals("/greeting", request.getPath());
+        assertEquals("/greeting?name=Test&x=1", request.getUri());
+        assertEquals("HTTP/1.1", request.getVersion());
+        assertEquals("Test", request.getQueryParameters().get("name"));
+        assertEquals("localhost", request.getHeader("host"));
+        assertEquals("close", request.getHeader("Connection"));
+        assertNull(request.getHeader("Accept"));
+        assertFalse(request.isKeepAliveRequested());
+    }
+
+    /**
+     * Tests that an incomplete head is reported as such and that pipelined
+     * requests are found one after another.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testIncompleteAndPipelinedHeads() throws Exception {
+        byte[] bytes = bytes("GET /a HTTP/1.1\r\n\r\nGET /b HTTP/1.0\r\nConnection: keep-alive\r\n");
+
+        int first = parser.findHeadEnd(bytes, 0, 0, bytes.length);
+        parser.parseHead(bytes, 0, first, request);
+        assertEquals("/a", request.getPath());
+        assertTrue(request.isKeepAliveRequested());
+
+        assertEquals(-1, parser.findHeadEnd(bytes, first, first, bytes.length));
+    }
+
+    /**
+     * Tests that malformed requests and oversized heads are rejected with the
+     * proper status codes.
+     */
+    @Test
+    public void testRejectsInvalidRequests() {
+        assertStatus(400, "GET /a\r\n\r\n");
+        assertStatus(400, "GET a HTTP/1.1\r\n\r\n");
+        assertStatus(400, "GET /a HTTP/2.0\r\n\r\n");
+        assertStatus(400, "GET /a HTTP/1.1\r\nBad Header: x\r\n\r\n");
+        assertStatus(414, "GET /" + "a".repeat(80) + " HTTP/1.1\r\n\r\n");
+        assertStatus(431, "GET / HTTP/1.1\r\nA: 1\r\nB: 2\r\nC: 3\r\nD: 4\r\nE: 5\r\n\r\n");
+        assertStatus(431, "GET / HTTP/1.1\r\nA: " + "x".repeat(200));
+    }
+
+    /**
+     * Tests that the body framing is read from the head, that ambiguous or
+     * unsupported framing is refused and that a detached request keeps its
+     * head when the buffer is overwritten.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testBodyFraming() throws Exception {
+        byte[] bytes = bytes("xxPOST /up?a=1 HTTP/1.1\r\nContent-Length: 12\r\nExpect: 100-continue\r\n\r\n");
+        parser.parseHead(bytes, 2, bytes.length, request);
+        assertEquals(12, request.getBodyLength());
+        assertTrue(request.hasBody());
+        assertTrue(request.expectsContinue());
+
+        HttpRequest detached = request.detach(2, bytes.length);
+        Arrays.fill(bytes, (byte) 'z');
+        assertEquals("POST", detached.getMethod());
+        assertEquals("/up", detached.getPath());
+        assertEquals("1", detached.getQuery().get("a"));
+        assertEquals("12", detached.getHeader("Content-Length"));
+
+        bytes = bytes("POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n");
+        parser.parseHead(bytes, 0, bytes.length, request);
+        assertEquals(HttpRequest.CHUNKED, request.getBodyLength());
+        assertFalse(request.expectsContinue());
+
+        bytes = bytes("GET / HTTP/1.1\r\n\r\n");
+        parser.parseHead(bytes, 0, bytes.length, request);
+        assertFalse(request.hasBody());
+
+        assertStatus(400, "POST / HTTP/1.1\r\nContent-Length: 3\r\nTransfer-Encoding: chunked\r\n\r\n");
+        assertStatus(400, "POST / HTTP/1.1\r\nContent-Length: -3\r\n\r\n");
+        assertStatus(501, "POST / HTTP/1.1\r\nTransfer-Encoding: gzip\r\n\r\n");
+    }
+
+    /**
+     * Tests that repeated framing headers are only accepted when they
+     * cannot be read two ways: Content-Length fields must all agree and
+     * Transfer-Encoding may appear once.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testRejectsAmbiguousFraming() throws Exception {
+        assertStatus(400, "POST / HTTP/1.1\r\nContent-Length: 3\r\nContent-Length: 10\r\n\r\n");
+        assertStatus(400, "POST / HTTP/1.1\r\nContent-Length: 10\r\nHost: a\r\ncontent-length: 3\r\n\r\n");
+        assertStatus(400, "POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\nTransfer-Encoding: chunked\r\n\r\n");
+        assertStatus(400, "POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\nTransfer-Encoding: gzip\r\n\r\n");
+
+        byte[] bytes = bytes("POST / HTTP/1.1\r\nContent-Length: 10\r\nContent-Length: 10\r\n\r\n");
+        HttpRequest request = new HttpRequest();
+        parser.parseHead(bytes, 0, bytes.length, request);
+        assertEquals(10, request.getBodyLength());
+    }
+
+    /**
+     * Asserts that parsing a request fails with the given status.
+     *
+     * @param status the expected status code
+     * @param raw    the raw request
+     */
+    private void assertStatus(int status, String raw) {
+        byte[] bytes = bytes(raw);
+        try {
+            int headEnd = parser.findHeadEnd(bytes, 0, 0, bytes.length);
+            if (headEnd > 0) {
+                parser.parseHead(bytes, 0, headEnd, request);
+            }
+            fail("Expected status " + status + " for " + raw);
+        } catch (HttpParseException e) {
+            assertEquals(status, e.getStatusCode());
+        }
+    }
+
+    /**
+     * Encodes a string as it would arrive on the wire.
+     *
+     * @param value the string
+     * @return the bytes
+     */
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,96 @@
+package co.edu.escuelaing.microserver.http;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Unit tests for response head encoding and the buffers it is encoded into.
+ */
+public class HttpResponseTest {
+
+    /**
+     * Tests that heads are assembled from their parts in order, for known
+     * and unknown status codes and both connection outcomes.
+     */
+    @Test
+    public void testEncodesHead() {
+        HttpResponse response = new HttpResponse(200, "text/html", bytes("hello"), "Vary: Accept-Encoding\r\n");
+        assertEquals("HTTP/1.1 200 OK\r\nContent-Type: text/html\r\nContent-Length: 5\r\n"
+                + "Vary: Accept-Encoding\r\nConnection: keep-alive\r\nKeep-Alive: timeout=15\r\n\r\n",
+                text(response.encodeHead(true, 15)));
+
+        response = new HttpResponse(299, bytes("X-Custom: yes\r\n"), (byte[]) null);
+        assertEquals("HTTP/1.1 299 Unknown\r\nX-Custom: yes\r\nConnection: close\r\n\r\n",
+                text(response.encodeHead(false, 0)));
+    }
+
+    /**
+     * Tests that a streaming body is framed with chunks, or for a client
+     * without chunked transfer coding left unframed and ended by closing
+     * the connection.
+     */
+    @Test
+    public void testEncodesStreamingHeads() {
+        StreamingBody body = out -> out.write(bytes("report"));
+        HttpResponse chunked = new HttpResponse(200, body, null, true);
+        assertFalse(chunked.isCloseDelimited());
+        assertEquals("HTTP/1.1 200 OK\r\nContent-Type: text/html; charset=UTF-8\r\n"
+                + "Transfer-Encoding: chunked\r\nConnection: close\r\n\r\n", text(chunked.encodeHead(false, 0)));
+
+        HttpResponse delimited = new HttpResponse(200, body, null, false);
+        assertTrue(delimited.isCloseDelimited());
+        assertEquals(-1, delimited.getContentLength());
+        assertEquals("HTTP/1.1 200 OK\r\nContent-Type: text/html; charset=UTF-8\r\nConnection: close\r\n\r\n",
+                text(delimited.encodeHead(false, 0)));
+    }
+
+    /**
+     * Tests that a head is encoded into a pooled buffer when it fits one
+     * and into an array of its own otherwise, and that only pooled buffers
+     * are reused.
+     */
+    @Test
+    public void testEncodesIntoPooledBuffers() {
+        BufferPool pool = new BufferPool(128, 4);
+        HttpResponse small = HttpResponse.error(404);
+        ByteBuffer head = small.encodeHead(pool, false, 0);
+        assertEquals(128, head.array().length);
+        assertEquals(text(small.encodeHead(false, 0)),
+                new String(head.array(), 0, head.limit(), StandardCharsets.ISO_8859_1));
+        pool.release(head.array());
+        assertSame(head.array(), pool.acquire());
+
+        HttpResponse large = new HttpResponse(200, "text/plain", bytes(""), "X-Long: " + "a".repeat(200) + "\r\n");
+        ByteBuffer own = large.encodeHead(pool, true, 5);
+        assertEquals(own.limit(), own.array().length);
+        pool.release(own.array());
+        assertNotSame(own.array(), pool.acquire());
+    }
+
+    /**
+     * Encodes text as it goes on the wire.
+     *
+     * @param value the text
+     * @return the bytes
+     */
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Decodes a head.
+     *
+     * @param head the encoded head
+     * @return the head as text
+     */
+    private static String text(byte[] head) {
+        return new String(head, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,73 @@
+package co.edu.escuelaing.microserver.http;
+
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Unit tests for binding one or several listening sockets to a port.
+ */
+public class ListeningSocketsTest {
+
+    /**
+     * Tests that several acceptors on an ephemeral port all listen on the
+     * port the first one was given, each with its own socket where
+     * {@code SO_REUSEPORT} is available.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testAcceptorsShareOnePort() throws Exception {
+        ServerConfig config = new ServerConfig(0);
+        config.setAcceptorThreads(3);
+        assertTrue(config.isReusePort());
+        ServerSocketChannel[] channels = ListeningSockets.open(config, new ServerLog(config, new ServerMetrics()));
+        try {
+            assertEquals(3, channels.length);
+            int port = ((InetSocketAddress) channels[0].getLocalAddress()).getPort();
+            boolean shared = channels[0].supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+            for (ServerSocketChannel channel : channels) {
+                assertEquals(port, ((InetSocketAddress) channel.getLocalAddress()).getPort());
+                if (shared) {
+                    assertTrue(channel.getOption(StandardSocketOptions.SO_REUSEPORT));
+                }
+            }
+            if (shared) {
+                assertNotSame(channels[0], channels[1]);
+            } else {
+                assertSame(channels[0], channels[1]);
+            }
+            try (Socket client = new Socket("localhost", port)) {
+                assertTrue(client.isConnected());
+            }
+        } finally {
+            ListeningSockets.close(channels);
+        }
+    }
+
+    /**
+     * Tests that a single acceptor binds one plain socket.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testSingleAcceptorBindsOneSocket() throws Exception {
+        ServerConfig config = new ServerConfig(0);
+        ServerSocketChannel[] channels = ListeningSockets.open(config, new ServerLog(config, new ServerMetrics()));
+        try {
+            assertEquals(1, channels.length);
+            assertTrue(channels[0].isOpen());
+        } finally {
+            ListeningSockets.close(channels);
+        }
+        assertFalse(channels[0].isOpen());
+    }
+}
@@ -0,0 +1,71 @@
+package co.edu.escuelaing.microserver.http;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ * Unit tests for the QueryString.
+ */
+public class QueryStringTest {
+
+    /**
+     * Tests that names and values are percent-decoded and the first
+     * occurrence of a repeated name wins.
+     */
+    @Test
+    public void testDecodesValues() {
+        QueryString query = parse("name=Jos%C3%A9+Luis&flag&tag=a&tag=b%2Cc");
+
+        assertEquals("José Luis", query.get("name"));
+        assertEquals("", query.get("flag"));
+        assertNull(query.get("missing"));
+        assertTrue(query.contains("flag"));
+        assertFalse(query.contains("fla"));
+        assertEquals("a", query.get("tag"));
+        assertEquals(Arrays.asList("a", "b,c"), query.getAll("tag"));
+        assertEquals("José Luis", QueryString.of(query.toMap()).get("name"));
+    }
+
+    /**
+     * Tests the typed getters, including overflow and encoded digits.
+     */
+    @Test
+    public void testParsesPrimitives() {
+        QueryString query = parse("n=-42&big=9223372036854775807&over=2147483648&x=3.25&e=1e3&enc=%31%32&b=on");
+
+        assertEquals(-42, query.getInt("n", 0));
+        assertEquals(7, query.getInt("missing", 7));
+        assertEquals(Long.MAX_VALUE, query.getLong("big", 0));
+        assertEquals(12, query.getInt("enc", 0));
+        assertEquals(3.25, query.getDouble("x", 0), 0.0);
+        assertEquals(1000.0, query.getDouble("e", 0), 0.0);
+        assertTrue(query.getBoolean("b", false));
+        assertTrue(query.getBoolean("n-absent", true));
+        try {
+            query.getInt("over", 0);
+            fail("Expected overflow to be rejected");
+        } catch (NumberFormatException e) {
+            assertTrue(e.getMessage().contains("2147483648"));
+        }
+    }
+
+    /**
+     * Parses a raw query string.
+     *
+     * @param text the query string without '?'
+     * @return the view
+     */
+    private static QueryString parse(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.ISO_8859_1);
+        QueryString query = new QueryString();
+        query.reset(bytes, 0, bytes.length);
+        return query;
+    }
+}
@@ -0,0 +1,217 @@
+package co.edu.escuelaing.microserver.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ * Unit tests for request body decoding and the limits of body streams.
+ */
+public class RequestBodyTest {
+
+    /**
+     * Tests that a Content-Length body ends exactly at its length, leaving
+     * the next request untouched.
+     */
+    @Test
+    public void testDecodesContentLength() {
+        byte[] bytes = bytes("helloGET /");
+        BodyDecoder decoder = new BodyDecoder(5);
+        assertEquals(5, decoder.decode(bytes, 0, bytes.length));
+        assertEquals(5, decoder.getConsumed());
+        assertTrue(decoder.isComplete());
+        assertEquals("helloGET /", new String(bytes, StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Tests that chunked framing arriving one byte at a time is decoded,
+     * with extensions and trailers skipped and nothing read past the end.
+     */
+    @Test
+    public void testDecodesChunkedInPieces() {
+        byte[] bytes = bytes("5;name=x\r\nhello\r\n7\r\n, world\r\n0\r\nTrailer: t\r\n\r\nGET /");
+        BodyDecoder decoder = new BodyDecoder(HttpRequest.CHUNKED);
+        StringBuilder content = new StringBuilder();
+        int position = 0;
+        while (!decoder.isComplete()) {
+            int decoded = decoder.decode(bytes, position, 1);
+            content.append(new String(bytes, position, decoded, StandardCharsets.US_ASCII));
+            position += decoder.getConsumed();
+        }
+        assertEquals("hello, world", content.toString());
+        assertEquals("GET /", new String(bytes, position, bytes.length - position, StandardCharsets.US_ASCII));
+
+        byte[] whole = bytes("3\r\nabc\r\n0\r\n\r\n");
+        decoder = new BodyDecoder(HttpRequest.CHUNKED);
+        assertEquals(3, decoder.decode(whole, 0, whole.length));
+        assertEquals(whole.length, decoder.getConsumed());
+        assertEquals("abc", new String(whole, 0, 3, StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Tests that malformed chunk framing is answered with 400.
+     */
+    @Test
+    public void testRejectsMalformedChunks() {
+        for (String raw : new String[] {"x\r\n", "3\r\nabcd", "fffffffffffffffff\r\n"}) {
+            byte[] bytes = bytes(raw);
+            try {
+                new BodyDecoder(HttpRequest.CHUNKED).decode(bytes, 0, bytes.length);
+                fail("Expected 400 for " + raw);
+            } catch (HttpStatusException e) {
+                assertEquals(400, e.getStatusCode());
+            }
+        }
+    }
+
+    /**
+     * Tests that a framed body reads through the decoder, sends 100
+     * Continue once on the first read and cannot be read once detached.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testFramedBodyReadsAndContinues() throws Exception {
+        HttpRequest request = parse("POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\nExpect: 100-continue\r\n\r\n");
+        StreamSource source = new StreamSource("4\r\nbody\r\n0\r\n\r\nnext");
+        FramedBody body = new FramedBody(request, 100, source);
+        request.setBody(body);
+
+        InputStream in = request.getBody(-1);
+        assertEquals("body", new String(in.readAllBytes(), StandardCharsets.US_ASCII));
+        assertEquals(1, source.continues);
+        assertTrue(body.isComplete());
+        assertEquals("next", new String(source.in.readAllBytes(), StandardCharsets.US_ASCII));
+
+        body.detach();
+        try {
+            in.read();
+            fail("Expected the detached body to fail");
+        } catch (IOException e) {
+            // Expected.
+        }
+    }
+
+    /**
+     * Tests that a declared length over the route's limit is refused before
+     * the client is asked for the body, and that a chunked body fails once
+     * it grows past the limit.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testEnforcesLimits() throws Exception {
+        HttpRequest request = parse("POST / HTTP/1.1\r\nContent-Length: 10\r\nExpect: 100-continue\r\n\r\n");
+        StreamSource source = new StreamSource("0123456789");
+        request.setBody(new FramedBody(request, 100, source));
+        try {
+            request.getBody(5);
+            fail("Expected 413");
+        } catch (HttpStatusException e) {
+            assertEquals(413, e.getStatusCode());
+        }
+        assertEquals(0, source.continues);
+
+        request = parse("POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n");
+        FramedBody chunked = new FramedBody(request, 100, new StreamSource("8\r\n01234567\r\n0\r\n\r\n"));
+        request.setBody(chunked);
+        try {
+            request.getBody(4).readAllBytes();
+            fail("Expected 413");
+        } catch (HttpStatusException e) {
+            assertEquals(413, e.getStatusCode());
+        }
+        assertFalse(chunked.isComplete());
+    }
+
+    /**
+     * Tests that a route reading the body as a stream may accept more than
+     * the server's limit, while a body read whole into memory stays within
+     * it.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testRouteLimitRaisesStreamedBodiesOnly() throws Exception {
+        String content = "x".repeat(150);
+        HttpRequest request = parse("POST /upload HTTP/1.1\r\nContent-Length: 150\r\n\r\n");
+        request.setBody(new FramedBody(request, 100, new StreamSource(content)));
+        assertEquals(content, new String(request.getBody(200).readAllBytes(), StandardCharsets.US_ASCII));
+
+        request = parse("POST /upload HTTP/1.1\r\nContent-Length: 150\r\n\r\n");
+        request.setBody(new FramedBody(request, 100, new StreamSource(content)));
+        try {
+            request.readBody(200);
+            fail("Expected 413");
+        } catch (HttpStatusException e) {
+            assertEquals(413, e.getStatusCode());
+        }
+
+        request = parse("POST /upload HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n");
+        request.setBody(new FramedBody(request, 100, new StreamSource("96\r\n" + content + "\r\n0\r\n\r\n")));
+        try {
+            request.getBody(-1).readAllBytes();
+            fail("Expected 413");
+        } catch (HttpStatusException e) {
+            assertEquals(413, e.getStatusCode());
+        }
+    }
+
+    /**
+     * Parses a request head.
+     *
+     * @param raw the raw head
+     * @return the request
+     * @throws HttpParseException if the head is invalid
+     */
+    private static HttpRequest parse(String raw) throws HttpParseException {
+        byte[] bytes = bytes(raw);
+        HttpRequest request = new HttpRequest();
+        new HttpRequestParser(64, 256, 8).parseHead(bytes, 0, bytes.length, request);
+        return request;
+    }
+
+    /**
+     * Encodes a string as it would arrive on the wire.
+     *
+     * @param value the string
+     * @return the bytes
+     */
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Body source over fixed bytes that counts the 100 Continue responses.
+     */
+    private static class StreamSource implements FramedBody.Source {
+        private final ByteArrayInputStream in;
+        private int continues;
+
+        /**
+         * Creates a source.
+         *
+         * @param raw the framed bytes the client sends
+         */
+        StreamSource(String raw) {
+            this.in = new ByteArrayInputStream(bytes(raw));
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            return in.read(b, off, len);
+        }
+
+        @Override
+        public void sendContinue() {
+            continues++;
+        }
+    }
+}
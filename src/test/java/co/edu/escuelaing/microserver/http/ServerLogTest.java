@@ -0,0 +1,102 @@
+package co.edu.escuelaing.microserver.http;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for the asynchronous server log.
+ */
+public class ServerLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Tests that events are dropped and counted once the ring is full, and
+     * that the buffered ones are written in order when the writer starts.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testDropsWhenFullAndWritesInOrder() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("logs/access.log");
+        ServerConfig config = new ServerConfig();
+        config.setAccessLogFile(file.toString());
+        config.setAccessLogBufferSize(4);
+        config.setAccessLogFormat("%m %U %s %b %R");
+        ServerMetrics metrics = new ServerMetrics();
+        ServerLog log = new ServerLog(config, metrics);
+
+        for (int i = 0; i < 6; i++) {
+            log.access("127.0.0.1", "GET", "/items/" + i, "HTTP/1.1", "/items/{id}", 200, i, 1000);
+        }
+        assertEquals(2, metrics.getLogEventsDropped());
+
+        log.start();
+        log.stop();
+
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals(4, lines.size());
+        assertEquals("GET /items/0 200 - /items/{id}", lines.get(0));
+        assertEquals("GET /items/3 200 3 /items/{id}", lines.get(3));
+    }
+
+    /**
+     * Tests the default format and that unknown directives are rejected.
+     */
+    @Test
+    public void testFormatsCommonLogLines() {
+        LogEvent event = new LogEvent();
+        event.setAccess("10.0.0.1", "GET", "/a?b=1", "HTTP/1.1", "/a", 404, 12, 2_500_000);
+        StringBuilder line = new StringBuilder();
+        AccessLogFormat.compile(AccessLogFormat.COMMON).format(event, line);
+
+        String text = line.toString();
+        assertTrue(text, text.startsWith("10.0.0.1 - - ["));
+        assertTrue(text, text.endsWith("] \"GET /a?b=1 HTTP/1.1\" 404 12 2500"));
+
+        event.setAccess("10.0.0.1", null, null, null, ServerMetrics.ROUTE_INVALID, 400, -1, 0);
+        line.setLength(0);
+        AccessLogFormat.compile("%r %s %b %R").format(event, line);
+        assertEquals("- 400 - invalid", line.toString());
+
+        try {
+            AccessLogFormat.compile("%q");
+            fail("expected an error");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("%q"));
+        }
+    }
+
+    /**
+     * Tests that the file rolls over by size and keeps the configured number
+     * of old files.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testRollsOverBySize() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("access.log");
+        byte[] line = "0123456789\n".getBytes(StandardCharsets.US_ASCII);
+        RollingFile rolling = new RollingFile(file, 25, 2);
+        for (int i = 0; i < 10; i++) {
+            rolling.write(line, 0, line.length);
+        }
+        rolling.close();
+
+        assertEquals(22, Files.size(file));
+        assertEquals(22, Files.size(rolling.sibling(1)));
+        assertEquals(22, Files.size(rolling.sibling(2)));
+        assertFalse(Files.exists(rolling.sibling(3)));
+    }
+}
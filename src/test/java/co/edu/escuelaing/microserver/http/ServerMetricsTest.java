@@ -0,0 +1,87 @@
+package co.edu.escuelaing.microserver.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Unit tests for the latency histogram and the metrics exposition.
+ */
+public class ServerMetricsTest {
+
+    /**
+     * Tests that quantiles are reported within the histogram's precision
+     * across several orders of magnitude.
+     */
+    @Test
+    public void testQuantilesStayWithinPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100_000; value++) {
+            histogram.record(value * 1000);
+        }
+
+        long[] quantiles = histogram.quantiles(0.5, 0.99, 0.999);
+        assertWithin(50_000_000L, quantiles[0]);
+        assertWithin(99_000_000L, quantiles[1]);
+        assertWithin(99_900_000L, quantiles[2]);
+        assertEquals(100_000, histogram.getCount());
+        assertEquals(0, new LatencyHistogram().quantiles(0.5)[0]);
+
+        for (long value : new long[] {0, 1, 31, 32, 33, 1000, 123_456_789, 60_000_000_000L}) {
+            long bucket = LatencyHistogram.valueOf(LatencyHistogram.indexOf(value));
+            assertTrue(value + " -> " + bucket, Math.abs(bucket - value) <= Math.max(1, value / 32));
+        }
+    }
+
+    /**
+     * Tests that requests are counted per route and status and rendered in
+     * the Prometheus text format.
+     */
+    @Test
+    public void testRendersPrometheusText() {
+        ServerMetrics metrics = new ServerMetrics();
+        metrics.connectionOpened();
+        metrics.addBytesIn(120);
+        metrics.requestParsed(2_000);
+        metrics.recordDispatch("/users/{id}", 50_000);
+        metrics.responseWritten("/users/{id}", 200, 10_000);
+        metrics.requestParsed(2_000);
+        assertEquals(1, metrics.getInFlight());
+        metrics.responseAborted("/users/{id}", 200);
+        metrics.requestRejected(ServerMetrics.ROUTE_INVALID, 400);
+
+        assertEquals(0, metrics.getInFlight());
+        assertEquals(2, metrics.getRequestCount("/users/{id}", 200));
+        assertEquals(1, metrics.getRequestCount(ServerMetrics.ROUTE_INVALID, 400));
+
+        String text = metrics.render(new RequestDispatcher() {
+            @Override
+            public String dispatch(String path, java.util.Map<String, String> queryParams) {
+                return null;
+            }
+
+            @Override
+            public void writeMetrics(StringBuilder out) {
+                out.append("app_metric 1\n");
+            }
+        });
+        assertTrue(text.contains("# TYPE http_requests_total counter\n"));
+        assertTrue(text.contains("http_requests_total{route=\"/users/{id}\",status=\"200\"} 2\n"));
+        assertTrue(text.contains("http_requests_total{route=\"invalid\",status=\"400\"} 1\n"));
+        assertTrue(text.contains("http_connections_open 1\n"));
+        assertTrue(text.contains("http_received_bytes_total 120\n"));
+        assertTrue(text.contains("http_request_phase_seconds_count{phase=\"parse\"} 2\n"));
+        assertTrue(text.contains("http_request_phase_seconds{route=\"/users/{id}\",phase=\"dispatch\",quantile=\"0.99\"} "));
+        assertTrue(text.endsWith("app_metric 1\n"));
+    }
+
+    /**
+     * Asserts that a reported value is within 3% of the expected one.
+     *
+     * @param expected the exact value
+     * @param actual   the reported value
+     */
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(expected + " vs " + actual, Math.abs(actual - expected) <= expected * 0.03);
+    }
+}
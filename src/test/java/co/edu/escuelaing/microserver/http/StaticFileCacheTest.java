@@ -0,0 +1,125 @@
+package co.edu.escuelaing.microserver.http;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for the StaticFileCache.
+ */
+public class StaticFileCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path root;
+
+    /**
+     * Sets up the test environment.
+     *
+     * @throws Exception if test fails
+     */
+    @Before
+    public void setUp() throws Exception {
+        root = folder.getRoot().toPath();
+    }
+
+    /**
+     * Tests that cached files are reused and reloaded once they change on disk.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testReloadsChangedFiles() throws Exception {
+        Path file = write("page.html", "first");
+        StaticFileCache cache = new StaticFileCache(root, 1024, 0, 1024);
+
+        StaticResource first = cache.get("/page.html", "text/html");
+        assertSame(first, cache.get("/page.html", "text/html"));
+
+        Files.write(file, "second".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, FileTime.fromMillis(first.getLastModifiedMillis() + 5000));
+
+        StaticResource second = cache.get("/page.html", "text/html");
+        assertEquals("second", new String(second.getContent(), StandardCharsets.UTF_8));
+        assertNotEquals(first.getEtag(), second.getEtag());
+    }
+
+    /**
+     * Tests that the least recently used file is evicted when the cache is full.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws Exception {
+        write("a.txt", "aaaa");
+        write("b.txt", "bbbb");
+        write("c.txt", "cccc");
+        StaticFileCache cache = new StaticFileCache(root, 8, Long.MAX_VALUE / 1_000_000L, 1024);
+
+        StaticResource a = cache.get("/a.txt", "text/plain");
+        StaticResource b = cache.get("/b.txt", "text/plain");
+        assertSame(a, cache.get("/a.txt", "text/plain"));
+        cache.get("/c.txt", "text/plain");
+
+        assertSame(a, cache.get("/a.txt", "text/plain"));
+        assertNotSame(b, cache.get("/b.txt", "text/plain"));
+    }
+
+    /**
+     * Tests that missing files and paths leaving the root are not served.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testRejectsMissingAndEscapingPaths() throws Exception {
+        StaticFileCache cache = new StaticFileCache(root.resolve("static"), 1024, 0, 1024);
+        Files.createDirectories(root.resolve("static"));
+        write("secret.txt", "secret");
+
+        assertNull(cache.get("/missing.txt", "text/plain"));
+        assertNull(cache.get("/../secret.txt", "text/plain"));
+    }
+
+    /**
+     * Tests that files at the zero-copy threshold are streamed instead of loaded.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testStreamsLargeFilesFromDisk() throws Exception {
+        write("large.bin", "0123456789");
+        StaticFileCache cache = new StaticFileCache(root, 1024, 0, 10);
+
+        StaticResource resource = cache.get("/large.bin", "text/plain");
+        assertFalse(resource.isInMemory());
+        assertNull(resource.getContent());
+        assertEquals(10, resource.getFileRegion().getLength());
+        assertTrue(resource.getEtag().startsWith("\"a-"));
+    }
+
+    /**
+     * Writes a file under the temporary root.
+     *
+     * @param name    the file name
+     * @param content the file content
+     * @return the file
+     * @throws Exception if writing fails
+     */
+    private Path write(String name, String content) throws Exception {
+        return Files.write(root.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,201 @@
+package co.edu.escuelaing.microserver.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for range requests and content coding in the StaticFileHandler.
+ */
+public class StaticFileHandlerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StaticFileHandler handler;
+
+    /**
+     * Sets up the test environment.
+     *
+     * @throws Exception if test fails
+     */
+    @Before
+    public void setUp() throws Exception {
+        Files.write(folder.getRoot().toPath().resolve("data.txt"), bytes("0123456789"));
+        ServerConfig config = new ServerConfig(8080);
+        config.setStaticRoot(folder.getRoot().getPath());
+        handler = new StaticFileHandler(config);
+    }
+
+    /**
+     * Tests that a byte range is served as 206 Partial Content.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testServesByteRange() throws Exception {
+        HttpResponse response = handler.serve(request("Range: bytes=2-5"));
+
+        assertEquals(206, response.getStatusCode());
+        assertArrayEquals(bytes("2345"), response.getBody());
+        assertTrue(head(response).contains("Content-Range: bytes 2-5/10\r\n"));
+        assertTrue(head(response).contains("Content-Length: 4\r\n"));
+    }
+
+    /**
+     * Tests that suffix ranges and open-ended ranges are clamped to the file.
+     */
+    @Test
+    public void testParsesRangeForms() {
+        assertArrayEquals(new long[] {7, 9}, StaticFileHandler.parseRange("bytes=-3", 10));
+        assertArrayEquals(new long[] {4, 9}, StaticFileHandler.parseRange("bytes=4-", 10));
+        assertArrayEquals(new long[] {0, 9}, StaticFileHandler.parseRange("bytes=0-99", 10));
+        assertNull(StaticFileHandler.parseRange("bytes=0-1,4-5", 10));
+        assertNull(StaticFileHandler.parseRange("items=0-1", 10));
+    }
+
+    /**
+     * Tests that unsatisfiable ranges get 416 and stale If-Range gets the whole file.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testRejectsUnsatisfiableAndStaleRanges() throws Exception {
+        HttpResponse unsatisfiable = handler.serve(request("Range: bytes=10-"));
+        assertEquals(416, unsatisfiable.getStatusCode());
+        assertTrue(head(unsatisfiable).contains("Content-Range: bytes */10\r\n"));
+
+        HttpResponse stale = handler.serve(request("Range: bytes=2-5\r\nIf-Range: \"outdated\""));
+        assertEquals(200, stale.getStatusCode());
+        assertArrayEquals(bytes("0123456789"), stale.getBody());
+    }
+
+    /**
+     * Tests that text files are compressed once, served with their own ETag
+     * and replaced by a precompressed sibling when one exists.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testServesCompressedVariants() throws Exception {
+        StringBuilder css = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            css.append(".rule-").append(i).append(" { color: red; }\n");
+        }
+        Files.write(folder.getRoot().toPath().resolve("site.css"), bytes(css.toString()));
+
+        HttpResponse gzip = handler.serve(request("/site.css", "Accept-Encoding: br, gzip;q=0.8, deflate;q=0.5"));
+        assertEquals(200, gzip.getStatusCode());
+        assertTrue(head(gzip).contains("Content-Encoding: gzip\r\n"));
+        assertTrue(head(gzip).contains("Vary: Accept-Encoding\r\n"));
+        assertArrayEquals(bytes(css.toString()), gunzip(gzip.getBody()));
+        assertSame(gzip.getBody(), handler.serve(request("/site.css", "Accept-Encoding: gzip")).getBody());
+
+        HttpResponse identity = handler.serve(request("/site.css", "Accept-Encoding: identity"));
+        assertFalse(head(identity).contains("Content-Encoding"));
+        assertTrue(head(identity).contains("Vary: Accept-Encoding\r\n"));
+
+        Files.write(folder.getRoot().toPath().resolve("site.css.gz"), bytes("precompressed"));
+        ServerConfig config = new ServerConfig(8080);
+        config.setStaticRoot(folder.getRoot().getPath());
+        HttpResponse precompressed = new StaticFileHandler(config).serve(request("/site.css", "Accept-Encoding: gzip"));
+        assertArrayEquals(bytes("precompressed"), precompressed.getBody());
+        assertTrue(head(precompressed).contains("Content-Type: text/css\r\n"));
+    }
+
+    /**
+     * Tests that streamed output is framed as chunks followed by the last chunk.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testFramesChunkedOutput() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChunkedOutputStream chunked = new ChunkedOutputStream(out);
+        chunked.write(bytes("hello"));
+        chunked.flush();
+        chunked.write(bytes(" world!"));
+        chunked.finish();
+
+        assertEquals("5\r\nhello\r\n7\r\n world!\r\n0\r\n\r\n", new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parses a GET request for the test file with extra header lines.
+     *
+     * @param headers the extra header lines
+     * @return the request
+     * @throws Exception if parsing fails
+     */
+    private static HttpRequest request(String headers) throws Exception {
+        return request("/data.txt", headers);
+    }
+
+    /**
+     * Parses a GET request with extra header lines.
+     *
+     * @param path    the request path
+     * @param headers the extra header lines
+     * @return the request
+     * @throws Exception if parsing fails
+     */
+    private static HttpRequest request(String path, String headers) throws Exception {
+        byte[] head = bytes("GET " + path + " HTTP/1.1\r\nHost: localhost\r\n" + headers + "\r\n\r\n");
+        HttpRequestParser parser = new HttpRequestParser(256, 1024, 16);
+        HttpRequest request = new HttpRequest();
+        parser.parseHead(head, 0, parser.findHeadEnd(head, 0, 0, head.length), request);
+        return request;
+    }
+
+    /**
+     * Encodes a response head for inspection.
+     *
+     * @param response the response
+     * @return the head as text
+     */
+    private static String head(HttpResponse response) {
+        return new String(response.encodeHead(true, 5), StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Decompresses a gzip body.
+     *
+     * @param compressed the gzip bytes
+     * @return the decompressed bytes
+     * @throws Exception if the data is not gzip
+     */
+    private static byte[] gunzip(byte[] compressed) throws Exception {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            for (int read; (read = in.read(buffer)) > 0; ) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Encodes text as UTF-8.
+     *
+     * @param text the text
+     * @return the bytes
+     */
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,92 @@
+package co.edu.escuelaing.microserver.http;
+
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Unit tests for the timer wheel, driven with explicit times.
+ */
+public class TimerWheelTest {
+
+    /**
+     * Tests that a timer expires once its deadline has passed, and only
+     * once.
+     */
+    @Test
+    public void testExpiresAfterDeadline() {
+        TimerWheel wheel = new TimerWheel(10, 8);
+        long now = TimerWheel.currentMillis();
+        CountingTimer timer = new CountingTimer();
+        wheel.arm(timer, now + 35);
+
+        wheel.advance(now + 20);
+        assertEquals(0, timer.expired);
+        wheel.advance(now + 40);
+        assertEquals(1, timer.expired);
+        wheel.advance(now + 100);
+        assertEquals(1, timer.expired);
+    }
+
+    /**
+     * Tests that moving a deadline either way moves the expiry, including
+     * once the timer has been filed, and that a disarmed timer never
+     * expires.
+     */
+    @Test
+    public void testRearmAndDisarm() {
+        TimerWheel wheel = new TimerWheel(10, 8);
+        long now = TimerWheel.currentMillis();
+        CountingTimer moved = new CountingTimer();
+        CountingTimer earlier = new CountingTimer();
+        CountingTimer cancelled = new CountingTimer();
+        wheel.arm(moved, now + 20);
+        wheel.arm(earlier, now + 60);
+        wheel.arm(cancelled, now + 20);
+        wheel.advance(now);
+        wheel.arm(moved, now + 60);
+        wheel.arm(earlier, now + 20);
+        wheel.disarm(cancelled);
+
+        wheel.advance(now + 30);
+        assertEquals(0, moved.expired);
+        assertEquals(1, earlier.expired);
+        wheel.advance(now + 70);
+        assertEquals(1, moved.expired);
+        assertEquals(0, cancelled.expired);
+
+        wheel.arm(cancelled, now + 80);
+        wheel.advance(now + 90);
+        assertEquals(1, cancelled.expired);
+    }
+
+    /**
+     * Tests that a deadline further away than one turn of the wheel is not
+     * expired early when its slot comes round.
+     */
+    @Test
+    public void testDeadlineBeyondOneTurn() {
+        TimerWheel wheel = new TimerWheel(10, 8);
+        long now = TimerWheel.currentMillis();
+        CountingTimer timer = new CountingTimer();
+        wheel.arm(timer, now + 250);
+
+        for (long time = now; time < now + 250; time += 10) {
+            wheel.advance(time);
+        }
+        assertEquals(0, timer.expired);
+        wheel.advance(now + 260);
+        assertEquals(1, timer.expired);
+    }
+
+    /**
+     * Timer that counts its expiries.
+     */
+    private static class CountingTimer extends TimerWheel.Timer {
+        private int expired;
+
+        @Override
+        void expire() {
+            expired++;
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package co.edu.escuelaing.microserver.ioc;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Test;
+
+import co.edu.escuelaing.microserver.annotations.Component;
+import co.edu.escuelaing.microserver.annotations.Inject;
+import co.edu.escuelaing.microserver.annotations.Lazy;
+import co.edu.escuelaing.microserver.annotations.Scope;
+import co.edu.escuelaing.microserver.annotations.ScopeType;
+
+/**
+ * Unit tests for the BeanContainer.
+ */
+public class BeanContainerTest {
+
+    private static final AtomicInteger EXPENSIVE_CREATED = new AtomicInteger();
+
+    private BeanContainer beans;
+
+    /**
+     * Sets up the test environment.
+     */
+    @Before
+    public void setUp() {
+        beans = new BeanContainer();
+        EXPENSIVE_CREATED.set(0);
+    }
+
+    /**
+     * Tests constructor and field injection, shared singletons and fresh
+     * prototypes, and that unregistered components are picked up.
+     */
+    @Test
+    public void testInjectsByScope() {
+        beans.register(Service.class);
+        beans.initialize();
+
+        Service first = beans.getBean(Service.class);
+        Service second = beans.getBean(Service.class);
+        assertSame(first, second);
+        assertSame(first.pool, beans.getBean(Pool.class));
+        assertSame(first.pool, first.fieldPool);
+        assertNotSame(beans.getBean(Handle.class), beans.getBean(Handle.class));
+    }
+
+    /**
+     * Tests that lazy singletons are created on first use only, once, even
+     * when requested concurrently.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testCreatesLazySingletonsOnce() throws Exception {
+        beans.register(Expensive.class);
+        beans.initialize();
+        assertEquals(0, EXPENSIVE_CREATED.get());
+
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> beans.getBean(Expensive.class));
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(1, EXPENSIVE_CREATED.get());
+    }
+
+    /**
+     * Tests that request-scoped components live for one request and can only
+     * be reached from wider scopes through a supplier.
+     */
+    @Test
+    public void testScopesComponentsToRequests() {
+        beans.register(RequestData.class);
+        beans.register(RequestReader.class);
+        RequestReader reader = beans.getBean(RequestReader.class);
+
+        assertTrue(beans.beginRequest());
+        RequestData data = reader.data.get();
+        assertSame(data, reader.data.get());
+        beans.endRequest();
+
+        assertTrue(beans.beginRequest());
+        assertNotSame(data, reader.data.get());
+        beans.endRequest();
+
+        expectFailure(() -> reader.data.get(), "No request in progress");
+        beans.register(RequestCapture.class);
+        expectFailure(() -> beans.getBean(RequestCapture.class), "captures request-scoped");
+    }
+
+    /**
+     * Tests that cycles are reported with their path, while a supplier
+     * breaks a cycle.
+     */
+    @Test
+    public void testDetectsCycles() {
+        beans.register(CycleA.class);
+        beans.register(CycleB.class);
+        expectFailure(() -> beans.getBean(CycleA.class), "Dependency cycle: CycleA -> CycleB -> CycleA");
+
+        BeanContainer withProvider = new BeanContainer();
+        ProviderA a = withProvider.getBean(ProviderA.class);
+        assertSame(a, a.b.get().a);
+    }
+
+    /**
+     * Asserts that an action fails with a message containing a text.
+     *
+     * @param action  the action
+     * @param message the expected part of the message
+     */
+    private static void expectFailure(Runnable action, String message) {
+        try {
+            action.run();
+            fail("Expected failure: " + message);
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(message));
+        }
+    }
+
+    /**
+     * Singleton shared by other components.
+     */
+    @Component
+    public static class Pool {
+    }
+
+    /**
+     * Prototype component.
+     */
+    @Component
+    @Scope(ScopeType.PROTOTYPE)
+    public static class Handle {
+    }
+
+    /**
+     * Component with constructor and field injection.
+     */
+    @Component
+    public static class Service {
+        private final Pool pool;
+        @Inject
+        private Pool fieldPool;
+
+        /**
+         * Creates the service.
+         *
+         * @param pool   the pool
+         * @param handle a prototype
+         */
+        @Inject
+        public Service(Pool pool, Handle handle) {
+            this.pool = pool;
+        }
+    }
+
+    /**
+     * Lazy singleton counting its instances.
+     */
+    @Component
+    @Lazy
+    public static class Expensive {
+
+        /**
+         * Creates the component slowly.
+         *
+         * @throws InterruptedException if interrupted
+         */
+        public Expensive() throws InterruptedException {
+            EXPENSIVE_CREATED.incrementAndGet();
+            Thread.sleep(20);
+        }
+    }
+
+    /**
+     * Request-scoped component.
+     */
+    @Component
+    @Scope(ScopeType.REQUEST)
+    public static class RequestData {
+    }
+
+    /**
+     * Singleton reaching a request-scoped component through a supplier.
+     */
+    @Component
+    public static class RequestReader {
+        @Inject
+        private Supplier<RequestData> data;
+    }
+
+    /**
+     * Singleton that illegally captures a request-scoped component.
+     */
+    @Component
+    public static class RequestCapture {
+        @Inject
+        private RequestData data;
+    }
+
+    /**
+     * First half of a constructor cycle.
+     */
+    @Component
+    public static class CycleA {
+
+        /**
+         * Creates the component.
+         *
+         * @param b the other half
+         */
+        public CycleA(CycleB b) {
+        }
+    }
+
+    /**
+     * Second half of a constructor cycle.
+     */
+    @Component
+    public static class CycleB {
+
+        /**
+         * Creates the component.
+         *
+         * @param a the other half
+         */
+        public CycleB(CycleA a) {
+        }
+    }
+
+    /**
+     * Component that reaches back to its dependent through a supplier.
+     */
+    @Component
+    public static class ProviderA {
+        @Inject
+        private Supplier<ProviderB> b;
+    }
+
+    /**
+     * Component depending on ProviderA.
+     */
+    @Component
+    public static class ProviderB {
+        private final ProviderA a;
+
+        /**
+         * Creates the component.
+         *
+         * @param a the dependent
+         */
+        public ProviderB(ProviderA a) {
+            this.a = a;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package co.edu.escuelaing.microserver.ioc;
+
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for the ComponentScanner.
+ */
+public class ComponentScannerTest {
+
+    private static final String SAMPLE = SimpleIoCContainerTest.SampleController.class.getName();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Tests that directories are scanned from class file bytes, skipping
+     * classes without the annotation.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testScansDirectories() throws Exception {
+        List<String> controllers = scanner(getClass().getClassLoader())
+                .findComponents("co.edu.escuelaing.microserver.ioc");
+
+        assertTrue(controllers.contains(SAMPLE));
+        assertFalse(controllers.contains(Router.class.getName()));
+        assertFalse(controllers.contains(ComponentScannerTest.class.getName()));
+    }
+
+    /**
+     * Tests that jar entries are scanned, and that an index in the jar is
+     * used instead of scanning.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testScansJarsAndReadsIndex() throws Exception {
+        Path jar = folder.getRoot().toPath().resolve("controllers.jar");
+        writeJar(jar, null, SimpleIoCContainerTest.SampleController.class, Router.class);
+        try (URLClassLoader loader = new URLClassLoader(new URL[] {jar.toUri().toURL()}, null)) {
+            assertEquals(Collections.singletonList(SAMPLE),
+                    scanner(loader).findComponents("co.edu.escuelaing.microserver"));
+        }
+
+        Path indexed = folder.getRoot().toPath().resolve("indexed.jar");
+        writeJar(indexed, "co.edu.escuelaing.microserver.ioc.Listed\nother.pkg.Ignored\n", Router.class);
+        try (URLClassLoader loader = new URLClassLoader(new URL[] {indexed.toUri().toURL()}, null)) {
+            assertEquals(Arrays.asList("co.edu.escuelaing.microserver.ioc.Listed"),
+                    scanner(loader).findComponents("co.edu.escuelaing.microserver.ioc"));
+        }
+    }
+
+    /**
+     * Tests that malformed class files are not reported as controllers.
+     */
+    @Test
+    public void testRejectsMalformedClassFiles() {
+        assertFalse(ClassFileInspector.isConcreteClassAnnotatedWith(new byte[] {(byte) 0xCA, (byte) 0xFE},
+                "Lco/edu/escuelaing/microserver/annotations/RestController;"));
+    }
+
+    /**
+     * Creates a scanner over a class loader.
+     *
+     * @param loader the class loader
+     * @return the scanner
+     */
+    private static ComponentScanner scanner(ClassLoader loader) {
+        return new ComponentScanner(loader);
+    }
+
+    /**
+     * Writes a jar with directory entries, the given classes and an
+     * optional controller index.
+     *
+     * @param jar     the jar file
+     * @param index   the index content, or null for none
+     * @param classes the classes to copy into the jar
+     * @throws Exception if writing fails
+     */
+    private static void writeJar(Path jar, String index, Class<?>... classes) throws Exception {
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+            for (String directory : new String[] {"co/", "co/edu/", "co/edu/escuelaing/",
+                    "co/edu/escuelaing/microserver/", "co/edu/escuelaing/microserver/ioc/"}) {
+                out.putNextEntry(new JarEntry(directory));
+                out.closeEntry();
+            }
+            if (index != null) {
+                out.putNextEntry(new JarEntry(ComponentScanner.INDEX_RESOURCE));
+                out.write(index.getBytes("UTF-8"));
+                out.closeEntry();
+            }
+            for (Class<?> type : classes) {
+                String name = type.getName().replace('.', '/') + ".class";
+                out.putNextEntry(new JarEntry(name));
+                try (InputStream in = type.getClassLoader().getResourceAsStream(name)) {
+                    in.transferTo(out);
+                }
+                out.closeEntry();
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package co.edu.escuelaing.microserver.ioc;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+import co.edu.escuelaing.microserver.annotations.Cacheable;
+import co.edu.escuelaing.microserver.annotations.GetMapping;
+import co.edu.escuelaing.microserver.annotations.RequestParam;
+import co.edu.escuelaing.microserver.annotations.RestController;
+import co.edu.escuelaing.microserver.http.QueryString;
+
+/**
+ * Unit tests for the ResponseCache.
+ */
+public class ResponseCacheTest {
+
+    private static final AtomicInteger COMPUTED = new AtomicInteger();
+
+    /**
+     * Tests that the key covers the bound parameters only, and that entries
+     * expire and failures are not cached.
+     *
+     * @throws Throwable if test fails
+     */
+    @Test
+    public void testKeysExpiresAndSkipsFailures() throws Throwable {
+        ResponseCache cache = new ResponseCache(Collections.singletonList("name"), TimeUnit.HOURS.toNanos(1), 16);
+        AtomicInteger loads = new AtomicInteger();
+        ResponseCache.Loader loader = () -> bytes("v" + loads.incrementAndGet());
+
+        byte[] first = cache.get("/p", query("name", "a", "page", "1"), loader);
+        assertSame(first, cache.get("/p", query("name", "a", "page", "2"), loader));
+        assertArrayEquals(bytes("v2"), cache.get("/p", query("name", "b"), loader));
+        assertEquals(2, cache.getStatistics().getMisses());
+        assertEquals(1, cache.getStatistics().getHits());
+
+        try {
+            cache.get("/fail", query(), () -> {
+                throw new IllegalStateException("broken");
+            });
+            fail("Expected the loader failure");
+        } catch (IllegalStateException e) {
+            assertEquals("broken", e.getMessage());
+        }
+        assertArrayEquals(bytes("v3"), cache.get("/fail", query(), loader));
+
+        ResponseCache expiring = new ResponseCache(Collections.emptyList(), 0, 16);
+        expiring.get("/p", query(), loader);
+        assertArrayEquals(bytes("v5"), expiring.get("/p", query(), loader));
+    }
+
+    /**
+     * Tests that concurrent misses on one key run the loader once.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testRunsOneComputationPerKey() throws Exception {
+        ResponseCache cache = new ResponseCache(Collections.emptyList(), TimeUnit.HOURS.toNanos(1), 16);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            Future<?>[] results = new Future<?>[8];
+            for (int i = 0; i < results.length; i++) {
+                results[i] = pool.submit(() -> {
+                    try {
+                        return cache.get("/slow", query(), () -> {
+                            loads.incrementAndGet();
+                            release.await();
+                            return bytes("done");
+                        });
+                    } catch (Throwable e) {
+                        throw new Exception(e);
+                    }
+                });
+            }
+            Thread.sleep(50);
+            release.countDown();
+            for (Future<?> result : results) {
+                assertArrayEquals(bytes("done"), (byte[]) result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+        assertEquals(7, cache.getStatistics().getHits());
+    }
+
+    /**
+     * Tests that the least recently used entries are evicted.
+     *
+     * @throws Throwable if test fails
+     */
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws Throwable {
+        ResponseCache cache = new ResponseCache(Collections.singletonList("k"), TimeUnit.HOURS.toNanos(1), 10);
+        for (int i = 0; i < 10; i++) {
+            cache.get("/p", query("k", String.valueOf(i)), () -> bytes("x"));
+            Thread.sleep(1);
+        }
+        cache.get("/p", query("k", "0"), () -> bytes("x"));
+        cache.get("/p", query("k", "10"), () -> bytes("x"));
+
+        CacheStatistics statistics = cache.getStatistics();
+        assertTrue(statistics.getSize() <= 9);
+        assertTrue(statistics.getEvictions() >= 2);
+        long misses = statistics.getMisses();
+        cache.get("/p", query("k", "0"), () -> bytes("x"));
+        assertEquals(misses, cache.getStatistics().getMisses());
+    }
+
+    /**
+     * Tests that @Cacheable endpoints are served from the cache by the
+     * container and counted in its statistics.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testContainerCachesAnnotatedEndpoints() throws Exception {
+        SimpleIoCContainer container = new SimpleIoCContainer();
+        container.registerController(CachedController.class);
+        COMPUTED.set(0);
+
+        Map<String, String> params = new HashMap<>();
+        params.put("n", "3");
+        assertEquals("page 3", container.dispatch("/cached", params));
+        assertEquals("page 3", container.dispatch("/cached", params));
+        assertEquals(1, COMPUTED.get());
+        assertEquals(1, container.getCacheStatistics().getHits());
+        assertEquals(0.5, container.getCacheStatistics().getHitRate(), 0.0);
+    }
+
+    /**
+     * Builds a query string from name-value pairs.
+     *
+     * @param pairs alternating names and values
+     * @return the query string
+     */
+    private static QueryString query(String... pairs) {
+        Map<String, String> map = new HashMap<>();
+        for (int i = 0; i < pairs.length; i += 2) {
+            map.put(pairs[i], pairs[i + 1]);
+        }
+        return QueryString.of(map);
+    }
+
+    /**
+     * Encodes a string.
+     *
+     * @param text the text
+     * @return the UTF-8 bytes
+     */
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Controller with a cached endpoint.
+     */
+    @RestController
+    public static class CachedController {
+
+        /**
+         * Renders a page, counting the computations.
+         *
+         * @param n the page number
+         * @return the page
+         */
+        @Cacheable(ttl = 60)
+        @GetMapping("/cached")
+        public String page(@RequestParam("n") String n) {
+            COMPUTED.incrementAndGet();
+            return "page " + n;
+        }
+    }
+}
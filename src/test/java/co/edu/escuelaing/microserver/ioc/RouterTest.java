@@ -0,0 +1,86 @@
+package co.edu.escuelaing.microserver.ioc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests for the radix tree Router.
+ */
+public class RouterTest {
+
+    private Router<String> router;
+
+    /**
+     * Sets up the test environment.
+     */
+    @Before
+    public void setUp() {
+        router = new Router<>();
+        router.add("/users", "list");
+        router.add("/users/me", "me");
+        router.add("/users/{id}", "user");
+        router.add("/users/{id}/posts/{post}", "post");
+        router.add("/user-settings", "settings");
+        router.add("/files/{*path}", "file");
+        router.add("/assets/*", "asset");
+    }
+
+    /**
+     * Tests that literal segments win over variables and variables over wildcards.
+     */
+    @Test
+    public void testMatchesByPriority() {
+        assertEquals("list", router.match("/users").getHandler());
+        assertEquals("me", router.match("/users/me").getHandler());
+        assertEquals("user", router.match("/users/42").getHandler());
+        assertEquals("settings", router.match("/user-settings").getHandler());
+        assertEquals("asset", router.match("/assets/css/site.css").getHandler());
+        assertNull(router.match("/users/42/comments"));
+        assertNull(router.match("/user"));
+        assertNull(router.match("/users/"));
+    }
+
+    /**
+     * Tests that variables and named wildcards are captured and decoded.
+     */
+    @Test
+    public void testCapturesVariables() {
+        RouteMatch<String> post = router.match("/users/me/posts/7");
+        assertEquals("post", post.getHandler());
+        assertEquals("me", post.getVariable(0));
+        assertEquals("7", post.getVariable(1));
+
+        RouteMatch<String> file = router.match("/files/docs/a%20b.txt");
+        assertEquals("docs/a b.txt", file.getVariable(0));
+    }
+
+    /**
+     * Tests that duplicate shapes and malformed patterns are rejected.
+     */
+    @Test
+    public void testRejectsConflictsAndMalformedPatterns() {
+        expectFailure("/users/{name}");
+        expectFailure("/files/*");
+        expectFailure("/users/x{id}");
+        expectFailure("/files/{*path}/more");
+        expectFailure("/users/{id}/{id}");
+        expectFailure("users");
+    }
+
+    /**
+     * Adds a route that must be refused.
+     *
+     * @param pattern the route pattern
+     */
+    private void expectFailure(String pattern) {
+        try {
+            router.add(pattern, "other");
+            fail("Expected " + pattern + " to be rejected");
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            // Expected.
+        }
+    }
+}
@@ -1,16 +1,38 @@
 package co.edu.escuelaing.microserver.ioc;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import org.junit.Before;
 import org.junit.Test;
 
+import co.edu.escuelaing.microserver.annotations.Cacheable;
+import co.edu.escuelaing.microserver.annotations.GetMapping;
+import co.edu.escuelaing.microserver.annotations.PathVariable;
+import co.edu.escuelaing.microserver.annotations.PostMapping;
+import co.edu.escuelaing.microserver.annotations.PutMapping;
+import co.edu.escuelaing.microserver.annotations.RequestBody;
+import co.edu.escuelaing.microserver.annotations.RequestParam;
+import co.edu.escuelaing.microserver.annotations.RestController;
+import co.edu.escuelaing.microserver.annotations.Timeout;
 import co.edu.escuelaing.microserver.examples.GreetingController;
 import co.edu.escuelaing.microserver.examples.HelloController;
+import co.edu.escuelaing.microserver.examples.UploadController;
+import co.edu.escuelaing.microserver.http.HttpStatusException;
 
 /**
  * Unit tests for the SimpleIoCContainer.
@@ -76,6 +98,39 @@ public class SimpleIoCContainerTest {
         assertNotNull("Response should not be null", response);
         assertTrue("Response should contain default value", response.contains("World"));
     }
+
+    /**
+     * Tests that a handler returning a template view is rendered to bytes
+     * with its parameters escaped.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testTemplateViewEscapesParameters() throws Exception {
+        container.registerController(GreetingController.class);
+
+        Map<String, String> params = new HashMap<>();
+        params.put("name", "<b>x</b>");
+        String response = container.dispatch("/greeting", params);
+
+        assertTrue(response.contains("¡Hola &lt;b&gt;x&lt;/b&gt;!"));
+        assertFalse(response.contains("<b>x</b>"));
+    }
+
+    /**
+     * Tests that the notes example escapes what clients send it.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testNotesAreEscaped() throws Exception {
+        container.registerController(UploadController.class);
+
+        String response = container.dispatch("/notes/<i>", new HashMap<>());
+
+        assertTrue(response.contains("<h1>Nota &lt;i&gt;</h1>"));
+        assertFalse(response.contains("<i>"));
+    }
     
     /**
      * Tests non-existent path handling.
@@ -87,4 +142,396 @@ public class SimpleIoCContainerTest {
         
         assertNull("Response should be null for non-existent path", response);
     }
+
+    /**
+     * Tests that query parameters and path variables are bound, parameters
+     * without annotation are passed null and a failing handler produces an
+     * error message instead of an exception.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testCompiledInvokerBindsAndReportsErrors() throws Exception {
+        container.registerController(SampleController.class);
+
+        Map<String, String> params = new HashMap<>();
+        params.put("b", "2");
+        assertEquals("a=null b=2 other=null", container.dispatch("/bind", params));
+        assertEquals("Internal Server Error", container.dispatch("/fail", params));
+        assertEquals("item 7 of Ana", container.dispatch("/owners/Ana/items/7", params));
+    }
+
+    /**
+     * Tests conversion of typed parameters and that malformed or missing
+     * values are reported as 400 Bad Request.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testBindsTypedParameters() throws Exception {
+        container.registerController(SampleController.class);
+
+        Map<String, String> params = new HashMap<>();
+        params.put("n", "41");
+        params.put("ratio", "0.5");
+        params.put("mode", "fast");
+        params.put("uuid", "123e4567-e89b-12d3-a456-426614174000");
+        assertEquals("42 0.5 true FAST 426614174000 [1, 2] 9",
+                container.dispatch("/typed/9", params));
+
+        params.put("n", "4x");
+        assertStatus(400, "/typed/9", params);
+        params.put("n", "1");
+        params.put("mode", "unknown");
+        assertStatus(400, "/typed/9", params);
+        params.put("mode", "SLOW");
+        assertStatus(400, "/typed/nine", params);
+        params.remove("n");
+        assertStatus(400, "/typed/9", params);
+    }
+
+    /**
+     * Tests that futures are waited for by the String API, that @Timeout
+     * bounds the wait and that a failed future is reported as an error.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testAsynchronousHandlers() throws Exception {
+        container.registerController(AsyncController.class);
+        Map<String, String> params = new HashMap<>();
+
+        assertEquals("later", container.dispatch("/later", params));
+        long started = System.nanoTime();
+        assertEquals("Internal Server Error", container.dispatch("/never", params));
+        assertTrue("@Timeout should end the wait",
+                System.nanoTime() - started < TimeUnit.SECONDS.toNanos(5));
+        assertStatus(404, "/missing-later", params);
+    }
+
+    /**
+     * Tests that a publisher is streamed item by item and that a publisher
+     * that stalls is cut off by its idle timeout.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testPublisherBody() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new PublisherBody(new CountingPublisher(3, true), 1000).start().get(5, TimeUnit.SECONDS).writeTo(out);
+        assertEquals("item 1;item 2;item 3;", new String(out.toByteArray(), StandardCharsets.UTF_8));
+
+        out.reset();
+        try {
+            new PublisherBody(new CountingPublisher(2, false), 50).start().get(5, TimeUnit.SECONDS).writeTo(out);
+            fail("Expected the stalled publisher to time out");
+        } catch (IOException e) {
+            assertEquals("item 1;item 2;", new String(out.toByteArray(), StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Tests that a publisher that never signals is given up on after the
+     * asynchronous timeout when its handler has no @Timeout, and that its
+     * subscription is cancelled rather than left waiting.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testSilentPublisherTimesOut() throws Exception {
+        container.setAsyncTimeoutMillis(50);
+        container.registerController(AsyncController.class);
+        long started = System.nanoTime();
+        assertEquals("Internal Server Error", container.dispatch("/silent", new HashMap<>()));
+        assertTrue("The asynchronous timeout should end the wait",
+                System.nanoTime() - started < TimeUnit.SECONDS.toNanos(5));
+
+        SilentPublisher publisher = new SilentPublisher();
+        PublisherBody body = new PublisherBody(publisher, 50);
+        assertFalse(body.start().isDone());
+        try {
+            body.writeTo(new ByteArrayOutputStream());
+            fail("Expected the silent publisher to time out");
+        } catch (IOException e) {
+            assertTrue(publisher.cancelled);
+        }
+    }
+
+    /**
+     * Tests that handlers are chosen by request method, that a path mapped
+     * for other methods answers 405 and that only GET may be cached.
+     *
+     * @throws Exception if test fails
+     */
+    @Test
+    public void testMethodMappings() throws Exception {
+        container.registerController(NotesController.class);
+        Map<String, String> params = new HashMap<>();
+        assertEquals("note 4", container.dispatch("/notes/4", params));
+        assertStatus(405, "/submit", params);
+        try {
+            container.registerController(CachedPostController.class);
+            fail("Expected @Cacheable on a POST mapping to be refused");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("Cacheable"));
+        }
+    }
+
+    /**
+     * Asserts that dispatching fails with a status code.
+     *
+     * @param status the expected status code
+     * @param path   the request path
+     * @param params the query parameters
+     */
+    private void assertStatus(int status, String path, Map<String, String> params) {
+        try {
+            container.dispatch(path, params);
+            fail("Expected status " + status);
+        } catch (HttpStatusException e) {
+            assertEquals(status, e.getStatusCode());
+        }
+    }
+
+    /**
+     * Dispatch speed used by the typed binding test.
+     */
+    public enum Mode {
+        FAST, SLOW
+    }
+
+    /**
+     * Controller used to exercise parameter binding.
+     */
+    @RestController
+    public static class SampleController {
+
+        /**
+         * Echoes its arguments.
+         *
+         * @param a     an absent query parameter
+         * @param b     a present query parameter
+         * @param other a parameter without annotation
+         * @return the bound values
+         */
+        @GetMapping("/bind")
+        public String bind(@RequestParam("a") String a, @RequestParam("b") String b, Object other) {
+            return "a=" + a + " b=" + b + " other=" + other;
+        }
+
+        /**
+         * Echoes its path variables.
+         *
+         * @param item  the item variable
+         * @param owner the owner variable
+         * @return the bound values
+         */
+        @GetMapping("/owners/{owner}/items/{item}")
+        public String item(@PathVariable("item") String item, @PathVariable("owner") String owner) {
+            return "item " + item + " of " + owner;
+        }
+
+        /**
+         * Echoes typed arguments.
+         *
+         * @param n     a required int
+         * @param ratio a double
+         * @param flag  a boolean with a default
+         * @param mode  an enum
+         * @param id    a UUID
+         * @param page  a list with a default
+         * @param id2   an int path variable
+         * @return the bound values
+         */
+        @GetMapping("/typed/{id}")
+        public String typed(@RequestParam("n") int n, @RequestParam("ratio") double ratio,
+                @RequestParam(value = "flag", defaultValue = "yes") boolean flag, @RequestParam("mode") Mode mode,
+                @RequestParam("uuid") UUID id, @RequestParam(value = "page", defaultValue = "1,2") List<Integer> page,
+                @PathVariable("id") long id2) {
+            return (n + 1) + " " + ratio + " " + flag + " " + mode + " " + id.toString().substring(24)
+                    + " " + page + " " + id2;
+        }
+
+        /**
+         * Always fails.
+         *
+         * @return never returns
+         */
+        @GetMapping("/fail")
+        public String fail() {
+            throw new IllegalStateException("broken");
+        }
+    }
+
+    /**
+     * Controller mapping one path to several methods.
+     */
+    @RestController
+    public static class NotesController {
+
+        /**
+         * Reads a note.
+         *
+         * @param id the note id
+         * @return the note
+         */
+        @GetMapping("/notes/{id}")
+        public String get(@PathVariable("id") String id) {
+            return "note " + id;
+        }
+
+        /**
+         * Replaces a note.
+         *
+         * @param id   the note id
+         * @param body the new text
+         * @return a confirmation
+         */
+        @PutMapping("/notes/{id}")
+        public String put(@PathVariable("id") String id, @RequestBody String body) {
+            return "stored " + id;
+        }
+
+        /**
+         * Accepts a submission.
+         *
+         * @param body the submitted bytes
+         * @return a confirmation
+         */
+        @PostMapping("/submit")
+        public String submit(@RequestBody byte[] body) {
+            return "received " + body.length;
+        }
+    }
+
+    /**
+     * Controller that asks for a POST response to be cached.
+     */
+    @RestController
+    public static class CachedPostController {
+
+        /**
+         * Accepts a submission.
+         *
+         * @return a confirmation
+         */
+        @Cacheable
+        @PostMapping("/cached-post")
+        public String post() {
+            return "ok";
+        }
+    }
+
+    /**
+     * Controller with asynchronous handlers.
+     */
+    @RestController
+    public static class AsyncController {
+
+        /**
+         * Completes on another thread.
+         *
+         * @return the future response
+         */
+        @GetMapping("/later")
+        public CompletableFuture<String> later() {
+            return CompletableFuture.supplyAsync(() -> "later",
+                    CompletableFuture.delayedExecutor(10, TimeUnit.MILLISECONDS));
+        }
+
+        /**
+         * Never completes.
+         *
+         * @return the future response
+         */
+        @Timeout(50)
+        @GetMapping("/never")
+        public CompletableFuture<String> never() {
+            return new CompletableFuture<>();
+        }
+
+        /**
+         * Streams a publisher that never emits, without a @Timeout.
+         *
+         * @return the publisher
+         */
+        @GetMapping("/silent")
+        public Flow.Publisher<String> silent() {
+            return new SilentPublisher();
+        }
+
+        /**
+         * Completes with a status error.
+         *
+         * @return the future response
+         */
+        @GetMapping("/missing-later")
+        public CompletableFuture<String> missingLater() {
+            return CompletableFuture.failedFuture(new HttpStatusException(404, "gone"));
+        }
+    }
+
+    /**
+     * Publisher that accepts a subscriber and then never signals again.
+     */
+    private static class SilentPublisher implements Flow.Publisher<String> {
+        private volatile boolean cancelled;
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super String> subscriber) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                    cancelled = true;
+                }
+            });
+        }
+    }
+
+    /**
+     * Publisher of numbered items that emits on demand and either completes
+     * or stalls after the last one.
+     */
+    private static class CountingPublisher implements Flow.Publisher<String> {
+        private final int count;
+        private final boolean complete;
+
+        /**
+         * Creates a publisher.
+         *
+         * @param count    the number of items
+         * @param complete whether to complete after the last item
+         */
+        CountingPublisher(int count, boolean complete) {
+            this.count = count;
+            this.complete = complete;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super String> subscriber) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                private int emitted;
+
+                @Override
+                public void request(long n) {
+                    for (long i = 0; i < n && emitted < count; i++) {
+                        emitted++;
+                        subscriber.onNext("item " + emitted + ";");
+                    }
+                    if (emitted == count && complete) {
+                        subscriber.onComplete();
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                    emitted = count;
+                }
+            });
+        }
+    }
 }
@@ -0,0 +1,99 @@
+package co.edu.escuelaing.microserver.template;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ * Unit tests for compiling and rendering templates.
+ */
+public class TemplateTest {
+
+    /**
+     * Tests that slots are filled in order, between static text copied as
+     * it is, and that a slot may be used more than once.
+     */
+    @Test
+    public void testRendersSlots() {
+        Template template = Template.compile("test", "<p>¡Hola {{ name }}!</p><i>{{count}}</i><b>{{name}}</b>");
+        assertEquals("<p>¡Hola Ana!</p><i>42</i><b>Ana</b>",
+                render(template, Map.of("name", "Ana", "count", 42L)));
+        assertEquals("plain", render(Template.compile("test", "plain"), Map.of()));
+        assertEquals("", render(Template.compile("test", "{{a}}"), Collections.singletonMap("a", null)));
+    }
+
+    /**
+     * Tests that values are HTML-escaped and encoded as UTF-8, including
+     * characters outside the Basic Multilingual Plane.
+     */
+    @Test
+    public void testEscapesAndEncodesValues() {
+        Template template = Template.compile("test", "<input value='{{v}}'>");
+        String value = "<script>\"x\" & 'y'</script> ñ € 😀";
+        assertEquals("<input value='&lt;script&gt;&quot;x&quot; &amp; &#39;y&#39;&lt;/script&gt; ñ € 😀'>",
+                render(template, Map.of("v", value)));
+
+        String loneSurrogate = "a\uD800b";
+        assertArrayEquals(loneSurrogate.getBytes(StandardCharsets.UTF_8),
+                Template.compile("test", "{{v}}").render(Map.of("v", loneSurrogate)));
+    }
+
+    /**
+     * Tests that malformed templates are refused when compiled and that a
+     * model missing a slot is refused when rendered.
+     */
+    @Test
+    public void testRejectsMalformedTemplatesAndModels() {
+        for (String source : new String[] {"a {{name", "{{}}", "{{na me}}", "{{<b>}}"}) {
+            try {
+                Template.compile("bad", source);
+                fail("Expected a compile error for " + source);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        try {
+            Template.compile("test", "{{name}}").render(new HashMap<>());
+            fail("Expected a missing value error");
+        } catch (IllegalArgumentException e) {
+            assertEquals("test: no value for slot 'name'", e.getMessage());
+        }
+    }
+
+    /**
+     * Tests that templates load from the classpath and that views render
+     * their template with their model.
+     */
+    @Test
+    public void testLoadsTemplatesAndRendersViews() {
+        Template template = Template.load("templates/counter.html");
+        assertEquals("templates/counter.html", template.getName());
+        View view = template.with(Map.of("count", 7));
+        assertTrue(view.toString().contains("<strong>7</strong>"));
+        assertArrayEquals(view.toString().getBytes(StandardCharsets.UTF_8), view.render());
+        try {
+            Template.load("templates/missing.html");
+            fail("Expected a missing template error");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Renders a template to text.
+     *
+     * @param template the template
+     * @param model    the model
+     * @return the page
+     */
+    private static String render(Template template, Map<String, ?> model) {
+        return new String(template.render(model), StandardCharsets.UTF_8);
+    }
+}